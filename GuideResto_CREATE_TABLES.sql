@@ -4,6 +4,7 @@ DROP SEQUENCE seq_VILLES;
 DROP SEQUENCE SEQ_EVAL;
 DROP SEQUENCE SEQ_NOTES;
 DROP SEQUENCE SEQ_CRITERES_EVALUATION;
+DROP SEQUENCE SEQ_CHANGE_LOG;
 
 DROP TABLE RESTAURANTS CASCADE CONSTRAINTS;
 DROP TABLE TYPES_GASTRONOMIQUES CASCADE CONSTRAINTS;
@@ -12,14 +13,16 @@ DROP TABLE COMMENTAIRES CASCADE CONSTRAINTS;
 DROP TABLE LIKES CASCADE CONSTRAINTS;
 DROP TABLE NOTES CASCADE CONSTRAINTS;
 DROP TABLE CRITERES_EVALUATION CASCADE CONSTRAINTS;
+DROP TABLE CHANGE_LOG CASCADE CONSTRAINTS;
 
-CREATE TABLE RESTAURANTS (numero number(10) NOT NULL, nom varchar2(100) NOT NULL, adresse varchar2(100) NOT NULL, description clob, site_web varchar2(100), fk_type number(10) NOT NULL, fk_vill number(10) NOT NULL, PRIMARY KEY (numero));
-CREATE TABLE TYPES_GASTRONOMIQUES (numero number(10) NOT NULL, libelle varchar2(100) NOT NULL UNIQUE, description clob NOT NULL, PRIMARY KEY (numero));
-CREATE TABLE VILLES (numero number(10) NOT NULL, code_postal varchar2(100) NOT NULL, nom_ville varchar2(100) NOT NULL, PRIMARY KEY (numero));
+CREATE TABLE RESTAURANTS (numero number(10) NOT NULL, nom varchar2(100) NOT NULL, adresse varchar2(100) NOT NULL, description clob, site_web varchar2(100), fk_type number(10) NOT NULL, fk_vill number(10) NOT NULL, version number(10) DEFAULT 0 NOT NULL, PRIMARY KEY (numero));
+CREATE TABLE TYPES_GASTRONOMIQUES (numero number(10) NOT NULL, libelle varchar2(100) NOT NULL UNIQUE, description clob NOT NULL, version number(10) DEFAULT 0 NOT NULL, PRIMARY KEY (numero));
+CREATE TABLE VILLES (numero number(10) NOT NULL, code_postal varchar2(100) NOT NULL, nom_ville varchar2(100) NOT NULL, version number(10) DEFAULT 0 NOT NULL, PRIMARY KEY (numero));
 CREATE TABLE COMMENTAIRES (numero number(10) NOT NULL, date_eval date NOT NULL, commentaire clob NOT NULL, nom_utilisateur varchar2(100) NOT NULL, fk_rest number(10), PRIMARY KEY (numero));
 CREATE TABLE LIKES (numero number(10) NOT NULL, appreciation char(1) NOT NULL, date_eval date NOT NULL, adresse_ip varchar2(100) NOT NULL, fk_rest number(10) NOT NULL, PRIMARY KEY (numero));
 CREATE TABLE NOTES (numero number(10) NOT NULL, note number(3) NOT NULL, fk_comm number(10) NOT NULL, fk_crit number(10) NOT NULL, PRIMARY KEY (numero));
 CREATE TABLE CRITERES_EVALUATION (numero number(10) NOT NULL, nom varchar2(100) NOT NULL UNIQUE, description varchar2(512), PRIMARY KEY (numero));
+CREATE TABLE CHANGE_LOG (numero number(19) NOT NULL, nom_table varchar2(30) NOT NULL, fk_ligne number(10) NOT NULL, operation char(1) NOT NULL, date_modif timestamp DEFAULT SYSTIMESTAMP NOT NULL, PRIMARY KEY (numero));
 
 ALTER TABLE RESTAURANTS ADD CONSTRAINT FK_REST_TYPE FOREIGN KEY (fk_type) REFERENCES TYPES_GASTRONOMIQUES (numero);
 ALTER TABLE RESTAURANTS ADD CONSTRAINT FK_REST_VILL FOREIGN KEY (fk_vill) REFERENCES VILLES (numero);
@@ -27,6 +30,10 @@ ALTER TABLE COMMENTAIRES ADD CONSTRAINT FK_COMM_REST FOREIGN KEY (fk_rest) REFER
 ALTER TABLE NOTES ADD CONSTRAINT FK_NOTE_COMM FOREIGN KEY (fk_comm) REFERENCES COMMENTAIRES (numero);
 ALTER TABLE NOTES ADD CONSTRAINT FK_NOTE_CRIT FOREIGN KEY (fk_crit) REFERENCES CRITERES_EVALUATION (numero);
 ALTER TABLE LIKES ADD CONSTRAINT FK_LIKE_REST FOREIGN KEY (fk_rest) REFERENCES RESTAURANTS (numero);
+ALTER TABLE LIKES ADD CONSTRAINT UK_LIKES_REST_IP UNIQUE (fk_rest, adresse_ip);
+
+CREATE UNIQUE INDEX UX_VILLES_NPA_NOM ON VILLES (code_postal, nom_ville);
+CREATE INDEX IX_CHANGE_LOG_DATE ON CHANGE_LOG (date_modif);
 
 CREATE SEQUENCE SEQ_RESTAURANTS;
 CREATE SEQUENCE SEQ_TYPES_GASTRONOMIQUES;
@@ -34,6 +41,7 @@ CREATE SEQUENCE SEQ_VILLES;
 CREATE SEQUENCE SEQ_EVAL;
 CREATE SEQUENCE SEQ_NOTES;
 CREATE SEQUENCE SEQ_CRITERES_EVALUATION;
+CREATE SEQUENCE SEQ_CHANGE_LOG CACHE 1000;
 
 CREATE OR REPLACE TRIGGER TR_BIF_RESTAURANTS
 BEFORE INSERT ON RESTAURANTS
@@ -103,4 +111,69 @@ BEGIN
 		:NEW.NUMERO := SEQ_CRITERES_EVALUATION.NEXTVAL;
 	END IF;
 END;
+/
+
+-- Journal des modifications, lu par ch.hearc.ig.guideresto.persistence.ChangeTracker pour invalider les caches
+
+CREATE OR REPLACE TRIGGER TR_AIUDR_RESTAURANTS
+AFTER INSERT OR UPDATE OR DELETE ON RESTAURANTS
+FOR EACH ROW
+BEGIN
+	INSERT INTO CHANGE_LOG(numero, nom_table, fk_ligne, operation)
+	VALUES (SEQ_CHANGE_LOG.NEXTVAL, 'RESTAURANTS', NVL(:NEW.NUMERO, :OLD.NUMERO), CASE WHEN INSERTING THEN 'I' WHEN UPDATING THEN 'U' ELSE 'D' END);
+END;
+/
+
+CREATE OR REPLACE TRIGGER TR_AIUDR_TYPES_GASTRONOMIQUES
+AFTER INSERT OR UPDATE OR DELETE ON TYPES_GASTRONOMIQUES
+FOR EACH ROW
+BEGIN
+	INSERT INTO CHANGE_LOG(numero, nom_table, fk_ligne, operation)
+	VALUES (SEQ_CHANGE_LOG.NEXTVAL, 'TYPES_GASTRONOMIQUES', NVL(:NEW.NUMERO, :OLD.NUMERO), CASE WHEN INSERTING THEN 'I' WHEN UPDATING THEN 'U' ELSE 'D' END);
+END;
+/
+
+CREATE OR REPLACE TRIGGER TR_AIUDR_VILLES
+AFTER INSERT OR UPDATE OR DELETE ON VILLES
+FOR EACH ROW
+BEGIN
+	INSERT INTO CHANGE_LOG(numero, nom_table, fk_ligne, operation)
+	VALUES (SEQ_CHANGE_LOG.NEXTVAL, 'VILLES', NVL(:NEW.NUMERO, :OLD.NUMERO), CASE WHEN INSERTING THEN 'I' WHEN UPDATING THEN 'U' ELSE 'D' END);
+END;
+/
+
+CREATE OR REPLACE TRIGGER TR_AIUDR_COMMENTAIRES
+AFTER INSERT OR UPDATE OR DELETE ON COMMENTAIRES
+FOR EACH ROW
+BEGIN
+	INSERT INTO CHANGE_LOG(numero, nom_table, fk_ligne, operation)
+	VALUES (SEQ_CHANGE_LOG.NEXTVAL, 'COMMENTAIRES', NVL(:NEW.NUMERO, :OLD.NUMERO), CASE WHEN INSERTING THEN 'I' WHEN UPDATING THEN 'U' ELSE 'D' END);
+END;
+/
+
+CREATE OR REPLACE TRIGGER TR_AIUDR_LIKES
+AFTER INSERT OR UPDATE OR DELETE ON LIKES
+FOR EACH ROW
+BEGIN
+	INSERT INTO CHANGE_LOG(numero, nom_table, fk_ligne, operation)
+	VALUES (SEQ_CHANGE_LOG.NEXTVAL, 'LIKES', NVL(:NEW.NUMERO, :OLD.NUMERO), CASE WHEN INSERTING THEN 'I' WHEN UPDATING THEN 'U' ELSE 'D' END);
+END;
+/
+
+CREATE OR REPLACE TRIGGER TR_AIUDR_NOTES
+AFTER INSERT OR UPDATE OR DELETE ON NOTES
+FOR EACH ROW
+BEGIN
+	INSERT INTO CHANGE_LOG(numero, nom_table, fk_ligne, operation)
+	VALUES (SEQ_CHANGE_LOG.NEXTVAL, 'NOTES', NVL(:NEW.NUMERO, :OLD.NUMERO), CASE WHEN INSERTING THEN 'I' WHEN UPDATING THEN 'U' ELSE 'D' END);
+END;
+/
+
+CREATE OR REPLACE TRIGGER TR_AIUDR_CRITERES_EVALUATION
+AFTER INSERT OR UPDATE OR DELETE ON CRITERES_EVALUATION
+FOR EACH ROW
+BEGIN
+	INSERT INTO CHANGE_LOG(numero, nom_table, fk_ligne, operation)
+	VALUES (SEQ_CHANGE_LOG.NEXTVAL, 'CRITERES_EVALUATION', NVL(:NEW.NUMERO, :OLD.NUMERO), CASE WHEN INSERTING THEN 'I' WHEN UPDATING THEN 'U' ELSE 'D' END);
+END;
 /
\ No newline at end of file
@@ -0,0 +1,15 @@
+-- Adresses IP des likes enregistrées au format de InetAddress.toString() ("nom/a.b.c.d") : ramenées à l'adresse seule,
+-- celle que l'application enregistre désormais (ch.hearc.ig.guideresto.service.VoterAddresses).
+-- À exécuter une fois sur une base existante, application arrêtée.
+
+-- Plusieurs votes d'une même adresse pour un restaurant (ancien et nouveau format, ou nom de machine changé) violeraient
+-- UK_LIKES_REST_IP une fois normalisés : seul le plus récent est gardé.
+DELETE FROM LIKES l
+ WHERE EXISTS (SELECT 1 FROM LIKES o
+                WHERE o.fk_rest = l.fk_rest
+                  AND o.numero > l.numero
+                  AND SUBSTR(o.adresse_ip, INSTR(o.adresse_ip, '/') + 1) = SUBSTR(l.adresse_ip, INSTR(l.adresse_ip, '/') + 1));
+
+UPDATE LIKES SET adresse_ip = SUBSTR(adresse_ip, INSTR(adresse_ip, '/') + 1) WHERE INSTR(adresse_ip, '/') > 0;
+
+COMMIT;
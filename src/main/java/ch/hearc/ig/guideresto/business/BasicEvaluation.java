@@ -3,12 +3,20 @@ package ch.hearc.ig.guideresto.business;
 import java.util.Date;
 
 /**
+ * Une adresse IPv4 est stockée dans un int ; les autres adresses (IPv6...) restent en chaîne.
+ *
  * @author cedric.baudet
  */
 public class BasicEvaluation extends Evaluation {
 
-    private Boolean likeRestaurant;
-    private String ipAddress;
+    private static final byte UNKNOWN = 0;
+    private static final byte LIKE = 1;
+    private static final byte DISLIKE = 2;
+
+    private byte likeRestaurant;
+    private boolean packedIpv4;
+    private int ipv4;
+    private String otherIpAddress;
 
     public BasicEvaluation() {
         this(null, null, null, null);
@@ -20,24 +28,93 @@ public class BasicEvaluation extends Evaluation {
 
     public BasicEvaluation(Integer id, Date visitDate, Restaurant restaurant, Boolean likeRestaurant, String ipAddress) {
         super(id, visitDate, restaurant);
-        this.likeRestaurant = likeRestaurant;
-        this.ipAddress = ipAddress;
+        this.likeRestaurant = toCode(likeRestaurant);
+        storeIpAddress(ipAddress);
     }
 
     public Boolean getLikeRestaurant() {
-        return likeRestaurant;
+        return likeRestaurant == UNKNOWN ? null : likeRestaurant == LIKE;
     }
 
     public void setLikeRestaurant(Boolean likeRestaurant) {
-        this.likeRestaurant = likeRestaurant;
+        this.likeRestaurant = toCode(likeRestaurant);
     }
 
     public String getIpAddress() {
-        return ipAddress;
+        if (!packedIpv4) {
+            return otherIpAddress;
+        }
+        return (ipv4 >>> 24) + "." + ((ipv4 >>> 16) & 0xff) + "." + ((ipv4 >>> 8) & 0xff) + "." + (ipv4 & 0xff);
     }
 
     public void setIpAddress(String ipAddress) {
-        this.ipAddress = ipAddress;
+        storeIpAddress(ipAddress);
+    }
+
+    /**
+     * Appelée aussi par le constructeur, qui ne doit pas passer par un setter qu'une sous-classe pourrait redéfinir
+     */
+    private void storeIpAddress(String ipAddress) {
+        Integer packed = parseIpv4(ipAddress);
+        this.packedIpv4 = packed != null;
+        this.ipv4 = packed != null ? packed : 0;
+        this.otherIpAddress = packed != null ? null : ipAddress;
+    }
+
+    /**
+     * @return l'adresse IPv4 sous forme d'entier (premier octet en poids fort)
+     * @throws IllegalStateException si l'adresse n'est pas une IPv4
+     */
+    public int getIpv4() {
+        if (!packedIpv4) {
+            throw new IllegalStateException("Not an IPv4 address: " + otherIpAddress);
+        }
+        return ipv4;
+    }
+
+    public boolean isIpv4() {
+        return packedIpv4;
+    }
+
+    private static byte toCode(Boolean likeRestaurant) {
+        return likeRestaurant == null ? UNKNOWN : likeRestaurant ? LIKE : DISLIKE;
+    }
+
+    /**
+     * @return l'adresse en entier si elle est en notation IPv4 canonique (sans zéros non significatifs, qui ne se
+     * retrouveraient pas à l'identique dans {@link #getIpAddress()}), sinon null
+     */
+    private static Integer parseIpv4(String address) {
+        if (address == null) {
+            return null;
+        }
+        int value = 0;
+        int octets = 0;
+        int position = 0;
+        int length = address.length();
+        while (position <= length && octets < 4) {
+            int start = position;
+            int octet = 0;
+            while (position < length && position - start < 3
+                    && address.charAt(position) >= '0' && address.charAt(position) <= '9') {
+                octet = octet * 10 + (address.charAt(position) - '0');
+                position++;
+            }
+            int digits = position - start;
+            if (digits == 0 || octet > 255 || (digits > 1 && address.charAt(start) == '0')) {
+                return null;
+            }
+            value = (value << 8) | octet;
+            octets++;
+            if (position == length) {
+                break;
+            }
+            if (address.charAt(position) != '.' || octets == 4) {
+                return null;
+            }
+            position++;
+        }
+        return octets == 4 && position == length ? value : null;
     }
 
-}
\ No newline at end of file
+}
@@ -1,14 +1,17 @@
 package ch.hearc.ig.guideresto.business;
 
-import java.util.HashSet;
 import java.util.Set;
 
 /**
+ * Les NPA et noms de ville sont internés : les nombreuses villes d'un même NPA et les restaurants qui y renvoient
+ * partagent la même chaîne.
+ *
  * @author cedric.baudet
  */
 public class City implements IBusinessObject {
 
-    private Integer id;
+    private int id;
+    private int version;
     private String zipCode;
     private String cityName;
     private Set<Restaurant> restaurants;
@@ -22,18 +25,29 @@ public class City implements IBusinessObject {
     }
 
     public City(Integer id, String zipCode, String cityName) {
-        this.id = id;
-        this.zipCode = zipCode;
-        this.cityName = cityName;
-        this.restaurants = new HashSet();
+        this.id = IBusinessObject.toId(id);
+        this.zipCode = intern(zipCode);
+        this.cityName = intern(cityName);
+        this.restaurants = LazySet.empty();
     }
 
     public Integer getId() {
-        return id;
+        return IBusinessObject.fromId(id);
     }
 
     public void setId(Integer id) {
-        this.id = id;
+        this.id = IBusinessObject.toId(id);
+    }
+
+    /**
+     * Version de la ligne lue en base, incrémentée à chaque modification (verrouillage optimiste)
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
     }
 
     public String getZipCode() {
@@ -41,7 +55,7 @@ public class City implements IBusinessObject {
     }
 
     public void setZipCode(String zipCode) {
-        this.zipCode = zipCode;
+        this.zipCode = intern(zipCode);
     }
 
     public String getCityName() {
@@ -49,15 +63,19 @@ public class City implements IBusinessObject {
     }
 
     public void setCityName(String city) {
-        this.cityName = city;
+        this.cityName = intern(city);
     }
 
     public Set<Restaurant> getRestaurants() {
-        return restaurants;
+        return LazySet.view(this, () -> restaurants, set -> restaurants = set);
     }
 
     public void setRestaurants(Set<Restaurant> restaurants) {
         this.restaurants = restaurants;
     }
 
+    private static String intern(String value) {
+        return value == null ? null : value.intern();
+    }
+
 }
\ No newline at end of file
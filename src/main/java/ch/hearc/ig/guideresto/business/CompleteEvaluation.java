@@ -5,7 +5,6 @@ package ch.hearc.ig.guideresto.business;
  */
 
 import java.util.Date;
-import java.util.HashSet;
 import java.util.Set;
 
 public class CompleteEvaluation extends Evaluation {
@@ -26,7 +25,7 @@ public class CompleteEvaluation extends Evaluation {
         super(id, visitDate, restaurant);
         this.comment = comment;
         this.username = username;
-        this.grades = new HashSet();
+        this.grades = LazySet.empty();
     }
 
     public String getComment() {
@@ -46,10 +45,10 @@ public class CompleteEvaluation extends Evaluation {
     }
 
     public Set<Grade> getGrades() {
-        return grades;
+        return LazySet.view(this, () -> grades, set -> grades = set);
     }
 
     public void setGrades(Set<Grade> grades) {
         this.grades = grades;
     }
-}
\ No newline at end of file
+}
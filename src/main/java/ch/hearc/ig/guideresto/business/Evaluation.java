@@ -3,12 +3,17 @@ package ch.hearc.ig.guideresto.business;
 import java.util.Date;
 
 /**
+ * La date de visite est gardée en millisecondes depuis l'époque plutôt que dans un objet Date par évaluation.
+ *
  * @author cedric.baudet
  */
 public abstract class Evaluation implements IBusinessObject {
 
-    private Integer id;
-    private Date visitDate;
+    /** Valeur interne d'une date de visite absente */
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private int id;
+    private long visitTime;
     private Restaurant restaurant;
 
     public Evaluation() {
@@ -16,25 +21,43 @@ public abstract class Evaluation implements IBusinessObject {
     }
 
     public Evaluation(Integer id, Date visitDate, Restaurant restaurant) {
-        this.id = id;
-        this.visitDate = visitDate;
+        this.id = IBusinessObject.toId(id);
+        this.visitTime = visitDate == null ? NO_DATE : visitDate.getTime();
         this.restaurant = restaurant;
     }
 
     public Integer getId() {
-        return id;
+        return IBusinessObject.fromId(id);
     }
 
     public void setId(Integer id) {
-        this.id = id;
+        this.id = IBusinessObject.toId(id);
     }
 
+    /**
+     * @return une copie de la date de visite, ou null
+     */
     public Date getVisitDate() {
-        return visitDate;
+        return visitTime == NO_DATE ? null : new Date(visitTime);
     }
 
     public void setVisitDate(Date visitDate) {
-        this.visitDate = visitDate;
+        this.visitTime = visitDate == null ? NO_DATE : visitDate.getTime();
+    }
+
+    /**
+     * @return la date de visite en millisecondes depuis l'époque, sans allouer de Date
+     * @throws IllegalStateException si l'évaluation n'a pas de date de visite
+     */
+    public long getVisitTime() {
+        if (visitTime == NO_DATE) {
+            throw new IllegalStateException("Evaluation without visit date");
+        }
+        return visitTime;
+    }
+
+    public boolean hasVisitDate() {
+        return visitTime != NO_DATE;
     }
 
     public Restaurant getRestaurant() {
@@ -45,4 +68,4 @@ public abstract class Evaluation implements IBusinessObject {
         this.restaurant = restaurant;
     }
 
-}
\ No newline at end of file
+}
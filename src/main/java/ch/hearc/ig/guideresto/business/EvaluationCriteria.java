@@ -5,7 +5,7 @@ package ch.hearc.ig.guideresto.business;
  */
 public class EvaluationCriteria implements IBusinessObject {
 
-    private Integer id;
+    private int id;
     private String name;
     private String description;
 
@@ -18,17 +18,17 @@ public class EvaluationCriteria implements IBusinessObject {
     }
 
     public EvaluationCriteria(Integer id, String name, String description) {
-        this.id = id;
+        this.id = IBusinessObject.toId(id);
         this.name = name;
         this.description = description;
     }
 
     public Integer getId() {
-        return id;
+        return IBusinessObject.fromId(id);
     }
 
     public void setId(Integer id) {
-        this.id = id;
+        this.id = IBusinessObject.toId(id);
     }
 
     public String getName() {
@@ -5,8 +5,11 @@ package ch.hearc.ig.guideresto.business;
  */
 public class Grade implements IBusinessObject {
 
-    private Integer id;
-    private Integer grade;
+    /** Valeur interne d'une note absente */
+    private static final int NO_GRADE = Integer.MIN_VALUE;
+
+    private int id;
+    private int grade;
     private CompleteEvaluation evaluation;
     private EvaluationCriteria criteria;
 
@@ -19,26 +22,26 @@ public class Grade implements IBusinessObject {
     }
 
     public Grade(Integer id, Integer grade, CompleteEvaluation evaluation, EvaluationCriteria criteria) {
-        this.id = id;
-        this.grade = grade;
+        this.id = IBusinessObject.toId(id);
+        this.grade = grade == null ? NO_GRADE : grade;
         this.evaluation = evaluation;
         this.criteria = criteria;
     }
 
     public Integer getId() {
-        return id;
+        return IBusinessObject.fromId(id);
     }
 
     public void setId(Integer id) {
-        this.id = id;
+        this.id = IBusinessObject.toId(id);
     }
 
     public Integer getGrade() {
-        return grade;
+        return grade == NO_GRADE ? null : grade;
     }
 
     public void setGrade(Integer grade) {
-        this.grade = grade;
+        this.grade = grade == null ? NO_GRADE : grade;
     }
 
     public CompleteEvaluation getEvaluation() {
@@ -58,4 +61,4 @@ public class Grade implements IBusinessObject {
     }
 
 
-}
\ No newline at end of file
+}
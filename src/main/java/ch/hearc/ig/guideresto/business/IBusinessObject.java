@@ -1,5 +1,17 @@
 package ch.hearc.ig.guideresto.business;
 
 public interface IBusinessObject {
+
+    /** Valeur interne d'un objet sans ID : les séquences commencent à 1 */
+    int NO_ID = 0;
+
     Integer getId();
+
+    static int toId(Integer id) {
+        return id == null ? NO_ID : id;
+    }
+
+    static Integer fromId(int id) {
+        return id == NO_ID ? null : id;
+    }
 }
@@ -0,0 +1,86 @@
+package ch.hearc.ig.guideresto.business;
+
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Vue modifiable sur une collection d'objet métier qui n'a encore aucun élément. Tant qu'elle est vide, l'objet garde
+ * l'ensemble vide partagé {@link #EMPTY} au lieu d'un HashSet (et de sa HashMap) par instance ; le premier ajout
+ * crée le vrai ensemble et l'enregistre dans l'objet, sous le verrou de l'objet : deux vues qui ajoutent en même temps
+ * leur premier élément ne créent pas chacune leur ensemble, ce qui perdrait l'un des deux ajouts.
+ *
+ * @param <E> le type des éléments
+ */
+final class LazySet<E> extends AbstractSet<E> {
+
+    @SuppressWarnings("rawtypes")
+    static final Set EMPTY = Collections.emptySet();
+
+    private final Object owner;
+    private final Supplier<Set<E>> field;
+    private final Consumer<Set<E>> store;
+
+    private LazySet(Object owner, Supplier<Set<E>> field, Consumer<Set<E>> store) {
+        this.owner = owner;
+        this.field = field;
+        this.store = store;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E> Set<E> empty() {
+        return (Set<E>) EMPTY;
+    }
+
+    /**
+     * @param owner l'objet qui possède le champ, dont le verrou protège la création de l'ensemble
+     * @param field lit le champ de l'objet
+     * @param store remplace le champ de l'objet
+     * @return le contenu du champ s'il a déjà été créé, sinon une vue qui le créera au premier ajout
+     */
+    static <E> Set<E> view(Object owner, Supplier<Set<E>> field, Consumer<Set<E>> store) {
+        Set<E> current = field.get();
+        return current != EMPTY ? current : new LazySet<>(owner, field, store);
+    }
+
+    private Set<E> materialize() {
+        synchronized (owner) {
+            Set<E> current = field.get();
+            if (current == EMPTY) {
+                current = new HashSet<>();
+                store.accept(current);
+            }
+            return current;
+        }
+    }
+
+    @Override
+    public boolean add(E element) {
+        return materialize().add(element);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return field.get().iterator();
+    }
+
+    @Override
+    public int size() {
+        return field.get().size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return field.get().contains(o);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        Set<E> current = field.get();
+        return current != EMPTY && current.remove(o);
+    }
+}
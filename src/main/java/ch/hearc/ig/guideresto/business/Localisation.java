@@ -1,10 +1,14 @@
 package ch.hearc.ig.guideresto.business;
 
 /**
+ * Adresse d'un restaurant. Celle retournée par {@link Restaurant#getAddress()} est une vue sur les champs
+ * du restaurant : la modifier modifie le restaurant.
+ *
  * @author cedric.baudet
  */
 public class Localisation {
 
+    private final Restaurant owner;
     private String street;
     private City city;
 
@@ -13,23 +17,36 @@ public class Localisation {
     }
 
     public Localisation(String street, City city) {
+        this.owner = null;
         this.street = street;
         this.city = city;
     }
 
+    Localisation(Restaurant owner) {
+        this.owner = owner;
+    }
+
     public String getStreet() {
-        return street;
+        return owner != null ? owner.getStreet() : street;
     }
 
     public void setStreet(String street) {
-        this.street = street;
+        if (owner != null) {
+            owner.setStreet(street);
+        } else {
+            this.street = street;
+        }
     }
 
     public City getCity() {
-        return city;
+        return owner != null ? owner.getCity() : city;
     }
 
     public void setCity(City city) {
-        this.city = city;
+        if (owner != null) {
+            owner.setCity(city);
+        } else {
+            this.city = city;
+        }
     }
-}
\ No newline at end of file
+}
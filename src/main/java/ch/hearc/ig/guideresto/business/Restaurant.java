@@ -2,20 +2,29 @@ package ch.hearc.ig.guideresto.business;
 
 import org.apache.commons.collections4.CollectionUtils;
 
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
+ * L'adresse est gardée dans les champs du restaurant, sans objet Localisation par instance ;
+ * {@link #getAddress()} en retourne une vue.
+ *
+ * Les évaluations sont un ensemble non modifiable, remplacé à chaque modification : un restaurant de l'identity map
+ * est partagé entre les threads, et chacun parcourt ainsi une version complète de ses évaluations.
+ *
  * @author cedric.baudet
  */
 public class Restaurant implements IBusinessObject {
 
-    private Integer id;
+    private int id;
+    private int version;
     private String name;
     private String description;
     private String website;
-    private Set<Evaluation> evaluations;
-    private Localisation address;
+    private volatile Set<Evaluation> evaluations;
+    private String street;
+    private City city;
     private RestaurantType type;
 
     public Restaurant() {
@@ -23,31 +32,38 @@ public class Restaurant implements IBusinessObject {
     }
 
     public Restaurant(Integer id, String name, String description, String website, String street, City city, RestaurantType type) {
-        this.id = id;
+        this.id = IBusinessObject.toId(id);
         this.name = name;
         this.description = description;
         this.website = website;
-        this.evaluations = new HashSet();
-        this.address = new Localisation(street, city);
+        this.evaluations = LazySet.empty();
+        this.street = street;
+        this.city = city;
         this.type = type;
     }
 
     public Restaurant(Integer id, String name, String description, String website, Localisation address, RestaurantType type) {
-        this.id = id;
-        this.name = name;
-        this.description = description;
-        this.website = website;
-        this.evaluations = new HashSet();
-        this.address = address;
-        this.type = type;
+        this(id, name, description, website, address == null ? null : address.getStreet(),
+                address == null ? null : address.getCity(), type);
     }
 
     public Integer getId() {
-        return id;
+        return IBusinessObject.fromId(id);
     }
 
     public void setId(Integer id) {
-        this.id = id;
+        this.id = IBusinessObject.toId(id);
+    }
+
+    /**
+     * Version de la ligne lue en base, incrémentée à chaque modification (verrouillage optimiste)
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
     }
 
     public String getName() {
@@ -74,20 +90,55 @@ public class Restaurant implements IBusinessObject {
         this.website = website;
     }
 
+    /**
+     * @return les évaluations du restaurant au moment de l'appel, non modifiables
+     */
     public Set<Evaluation> getEvaluations() {
         return evaluations;
     }
 
-    public void setEvaluations(Set<Evaluation> evaluations) {
-        this.evaluations = evaluations;
+    /**
+     * Remplace les évaluations du restaurant par une copie de celles données
+     */
+    public synchronized void setEvaluations(Set<? extends Evaluation> evaluations) {
+        this.evaluations = evaluations.isEmpty() ? LazySet.empty() : Collections.unmodifiableSet(new LinkedHashSet<>(evaluations));
+    }
+
+    /**
+     * Ajoute une évaluation au restaurant, en publiant une nouvelle version de ses évaluations
+     */
+    public synchronized void addEvaluation(Evaluation evaluation) {
+        Set<Evaluation> copy = new LinkedHashSet<>(evaluations);
+        copy.add(evaluation);
+        this.evaluations = Collections.unmodifiableSet(copy);
     }
 
+    /**
+     * @return une vue modifiable sur la rue et la ville du restaurant
+     */
     public Localisation getAddress() {
-        return address;
+        return new Localisation(this);
     }
 
     public void setAddress(Localisation address) {
-        this.address = address;
+        this.street = address == null ? null : address.getStreet();
+        this.city = address == null ? null : address.getCity();
+    }
+
+    public String getStreet() {
+        return street;
+    }
+
+    public void setStreet(String street) {
+        this.street = street;
+    }
+
+    public City getCity() {
+        return city;
+    }
+
+    public void setCity(City city) {
+        this.city = city;
     }
 
     public RestaurantType getType() {
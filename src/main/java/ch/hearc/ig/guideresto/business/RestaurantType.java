@@ -1,6 +1,5 @@
 package ch.hearc.ig.guideresto.business;
 
-import java.util.HashSet;
 import java.util.Set;
 
 /**
@@ -8,7 +7,8 @@ import java.util.Set;
  */
 public class RestaurantType implements IBusinessObject {
 
-    private Integer id;
+    private int id;
+    private int version;
     private String label;
     private String description;
     private Set<Restaurant> restaurants;
@@ -22,8 +22,8 @@ public class RestaurantType implements IBusinessObject {
     }
 
     public RestaurantType(Integer id, String label, String description) {
-        this.restaurants = new HashSet();
-        this.id = id;
+        this.restaurants = LazySet.empty();
+        this.id = IBusinessObject.toId(id);
         this.label = label;
         this.description = description;
     }
@@ -34,11 +34,22 @@ public class RestaurantType implements IBusinessObject {
     }
 
     public Integer getId() {
-        return id;
+        return IBusinessObject.fromId(id);
     }
 
     public void setId(Integer id) {
-        this.id = id;
+        this.id = IBusinessObject.toId(id);
+    }
+
+    /**
+     * Version de la ligne lue en base, incrémentée à chaque modification (verrouillage optimiste)
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
     }
 
     public String getLabel() {
@@ -58,7 +69,7 @@ public class RestaurantType implements IBusinessObject {
     }
 
     public Set<Restaurant> getRestaurants() {
-        return restaurants;
+        return LazySet.view(this, () -> restaurants, set -> restaurants = set);
     }
 
     public void setRestaurants(Set<Restaurant> restaurants) {
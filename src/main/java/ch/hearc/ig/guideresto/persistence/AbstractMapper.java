@@ -8,14 +8,33 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
 
 public abstract class AbstractMapper<T extends IBusinessObject> {
 
     protected static final Logger logger = LogManager.getLogger();
 
+    // Oracle limite une liste IN à 1000 expressions
+    protected static final int MAX_IN_LIST_SIZE = 1000;
+    // Tailles de liste IN utilisées, pour limiter le nombre de requêtes distinctes à parser
+    private static final int[] IN_LIST_SIZES = {10, 100, MAX_IN_LIST_SIZE};
+
+    /**
+     * Identity map des objets déjà chargés, indexés par leur clé primaire.
+     * Concurrente car le {@link ChangeTracker} y retire des objets depuis son propre thread.
+     */
+    protected final Map<Integer, T> cache = new ConcurrentHashMap<>();
+
     public abstract T findById(int id);
     public abstract Set<T> findAll();
     public abstract T create(T object);
@@ -23,17 +42,243 @@ public abstract class AbstractMapper<T extends IBusinessObject> {
     public abstract boolean delete(T object);
     public abstract boolean deleteById(int id);
 
+    /**
+     * Requête SELECT sans clause WHERE, dont les colonnes sont celles attendues par {@link #mapRow(ResultSet)}
+     */
+    protected abstract String getSelectQuery();
+    protected abstract T mapRow(ResultSet rs) throws SQLException;
+
     protected abstract String getSequenceQuery();
     protected abstract String getExistsQuery();
     protected abstract String getCountQuery();
 
+    /**
+     * Nom de la table principale du mapper, tel qu'enregistré dans CHANGE_LOG.nom_table
+     * @return le nom de la table en majuscules
+     */
+    protected abstract String getTableName();
+
+    /**
+     * Charge plusieurs objets à partir de leurs IDs.
+     * Les objets déjà en cache ne sont pas relus, les autres sont chargés par listes IN de 1000 IDs au plus :
+     * un seul aller-retour suffit pour jusqu'à 1000 objets manquants au lieu d'un par objet.
+     *
+     * @param ids les IDs recherchés, les doublons et les valeurs null sont ignorés
+     * @return les objets trouvés, indexés par ID. Les IDs inexistants sont absents de la Map
+     */
+    public Map<Integer, T> findByIds(Collection<Integer> ids) {
+        Map<Integer, T> result = new HashMap<>();
+        Set<Integer> missing = new LinkedHashSet<>();
+        for (Integer id : ids) {
+            if (id == null || result.containsKey(id)) {
+                continue;
+            }
+            T cached = getFromCache(id);
+            if (cached != null) {
+                result.put(id, cached);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        int fromCache = result.size();
+        List<T> loaded = new ArrayList<>();
+        int queries = forEachRowIn(getSelectQuery() + " WHERE numero", missing, rs -> {
+            T objet = mapRow(rs);
+            result.put(objet.getId(), objet);
+            loaded.add(objet);
+        });
+        loadAssociations(loaded);
+        logger.debug("findByIds on {}: {} ids, {} from cache, {} loaded in {} queries",
+                getTableName(), ids.size(), fromCache, result.size() - fromCache, queries);
+        return result;
+    }
+
+    /**
+     * Exécute une recherche dont le résultat est gardé dans le {@link QueryCache}, sous forme d'IDs résolus ensuite
+     * par {@link #findByIds(Collection)} : une recherche répétée ne coûte qu'une lecture de l'identity map.
+     *
+     * @param query la requête, dont les colonnes sont celles attendues par {@link #mapRow(ResultSet)}
+     * @param tables les tables lues par la requête, dont toute écriture invalide le résultat
+     * @param parameters les valeurs des paramètres de la requête
+     * @return les objets trouvés, dans l'ordre du résultat
+     */
+    protected Set<T> findByCachedQuery(String query, Collection<String> tables, Object... parameters) {
+        QueryCache queryCache = QueryCache.getInstance();
+        // Dans une transaction, une lecture peut voir des écritures pas encore validées ni invalidées : pas de cache
+        boolean cacheable = !TransactionManager.getInstance().isInTransaction();
+        QueryCache.Key key = queryCache.key(query, parameters);
+        int[] ids = cacheable ? queryCache.get(key) : null;
+        if (ids != null) {
+            Set<T> cached = resolve(ids);
+            if (cached != null) {
+                return cached;
+            }
+            queryCache.remove(key);
+        }
+
+        long stamp = queryCache.stamp(tables);
+        Set<T> objects = new LinkedHashSet<>();
+        Connection connection = ConnectionUtils.getReadConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(query)) {
+            for (int i = 0; i < parameters.length; i++) {
+                stmt.setObject(i + 1, parameters[i]);
+            }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    objects.add(mapRow(rs));
+                }
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+            return objects;
+        }
+        if (cacheable) {
+            queryCache.put(key, tables, objects.stream().mapToInt(IBusinessObject::getId).toArray(), stamp);
+        }
+        return objects;
+    }
+
+    /**
+     * @return les objets de ces IDs dans le même ordre, ou null si l'un d'eux n'existe plus
+     */
+    private Set<T> resolve(int[] ids) {
+        Map<Integer, T> found = findByIds(Arrays.stream(ids).boxed().toList());
+        Set<T> objects = new LinkedHashSet<>();
+        for (int id : ids) {
+            T object = found.get(id);
+            if (object == null) {
+                return null;
+            }
+            objects.add(object);
+        }
+        return objects;
+    }
+
+    /**
+     * Exécute un INSERT, UPDATE ou DELETE sur la table du mapper, puis invalide les résultats en cache qui la lisent
+     * une fois la transaction validée
+     * @return le nombre de lignes modifiées
+     */
+    protected int executeWrite(PreparedStatement stmt) throws SQLException {
+        int rows = stmt.executeUpdate();
+        invalidateAfterCommit(getTableName());
+        return rows;
+    }
+
+    /**
+     * Invalide les résultats en cache qui lisent la table après le COMMIT de la transaction en cours. Plus tôt,
+     * une lecture sur une autre connexion pourrait remettre en cache l'état d'avant l'écriture sous la nouvelle génération.
+     * @param table le nom de la table écrite
+     */
+    protected static void invalidateAfterCommit(String table) {
+        TransactionManager.getInstance().afterCommit(() -> QueryCache.getInstance().invalidate(table));
+    }
+
+    /**
+     * Exécute "query IN (...)" pour toutes les clés, par listes IN de 1000 clés au plus, et traite chaque ligne lue.
+     *
+     * @param query la requête jusqu'à la colonne comparée, par exemple "SELECT ... FROM NOTES WHERE fk_comm"
+     * @param keys les clés recherchées, sans doublons
+     * @param handler le traitement de chaque ligne
+     * @return le nombre de requêtes exécutées
+     */
+    protected int forEachRowIn(String query, Collection<Integer> keys, RowHandler handler) {
+        Connection connection = ConnectionUtils.getReadConnection();
+        List<Integer> keyList = new ArrayList<>(keys);
+        int queries = 0;
+        for (int start = 0; start < keyList.size(); start += MAX_IN_LIST_SIZE) {
+            List<Integer> chunk = keyList.subList(start, Math.min(start + MAX_IN_LIST_SIZE, keyList.size()));
+            int size = inListSize(chunk.size());
+
+            try (PreparedStatement stmt = connection.prepareStatement(query + " IN (" + placeholders(size) + ")")) {
+                // Les places libres sont complétées avec la dernière clé, sans effet sur le résultat
+                for (int i = 0; i < size; i++) {
+                    stmt.setInt(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                }
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        handler.handle(rs);
+                    }
+                }
+                queries++;
+            } catch (SQLException ex) {
+                logger.error("SQLException: {}", ex.getMessage());
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Appelé après le chargement d'un lot d'objets par le mapper, pour charger leurs associations en une fois
+     * plutôt qu'objet par objet. Ne fait rien par défaut.
+     * @param loaded les objets lus en base
+     */
+    protected void loadAssociations(List<T> loaded) {
+    }
+
+    /**
+     * @return la taille de liste IN à utiliser pour ce nombre de clés (10, 100 ou 1000), les places libres étant
+     * complétées avec la dernière clé
+     */
+    protected static int inListSize(int count) {
+        for (int size : IN_LIST_SIZES) {
+            if (count <= size) {
+                return size;
+            }
+        }
+        return MAX_IN_LIST_SIZE;
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Interprète le résultat d'un UPDATE conditionné par "AND version = ?" (verrouillage optimiste).
+     * Aucune ligne modifiée alors que l'objet existe signifie qu'une autre transaction l'a modifié depuis sa lecture.
+     *
+     * @param updatedRows le nombre de lignes modifiées par l'UPDATE
+     * @param id l'ID de l'objet
+     * @param expectedVersion la version de l'objet en mémoire
+     * @return true si la ligne a été modifiée, false si elle n'existe plus
+     * @throws ConcurrentUpdateException si la ligne existe dans une autre version
+     */
+    protected boolean checkVersionedUpdate(int updatedRows, int id, int expectedVersion) {
+        if (updatedRows == 0 && exists(id)) {
+            throw new ConcurrentUpdateException(getTableName(), id, expectedVersion);
+        }
+        return updatedRows > 0;
+    }
+
+    /**
+     * Reporte la nouvelle version sur l'objet après le COMMIT : si la transaction est annulée, l'objet garde la version
+     * encore enregistrée en base. Un deuxième UPDATE du même objet dans la même transaction est donc vu comme un conflit.
+     *
+     * @param newVersion la version écrite par l'UPDATE
+     * @param setter la méthode qui l'affecte à l'objet
+     */
+    protected static void bumpVersionAfterCommit(int newVersion, IntConsumer setter) {
+        TransactionManager.getInstance().afterCommit(() -> setter.accept(newVersion));
+    }
+
     /**
      * Vérifie si un objet avec l'ID donné existe.
      * @param id the ID to check
      * @return true si l'objet existe, false sinon
      */
     public boolean exists(int id) {
-        Connection connection = ConnectionUtils.getConnection();
+        Connection connection = ConnectionUtils.getReadConnection();
 
         try (PreparedStatement stmt = connection.prepareStatement(getExistsQuery())) {
             stmt.setInt(1, id);
@@ -52,7 +297,7 @@ public abstract class AbstractMapper<T extends IBusinessObject> {
      * @return
      */
     public int count() {
-        Connection connection = ConnectionUtils.getConnection();
+        Connection connection = ConnectionUtils.getReadConnection();
 
         try (PreparedStatement stmt = connection.prepareStatement(getCountQuery());
              ResultSet rs = stmt.executeQuery()) {
@@ -68,23 +313,27 @@ public abstract class AbstractMapper<T extends IBusinessObject> {
     }
 
     /**
-     * Obtient la valeur de la séquence actuelle en base de données
-     * @return Le nombre de villes
-     * @En cas d'erreur SQL
+     * Obtient la valeur de la séquence actuelle en base de données, soit l'ID de la ligne insérée par la session
+     * @return l'ID généré
+     * @throws SQLException en cas d'erreur SQL ou si la séquence n'a pas de valeur courante : l'insertion doit alors échouer,
+     *                      plutôt que d'enregistrer l'objet sous un ID qui n'est pas le sien
      */
-    protected Integer getSequenceValue() {
+    protected int getSequenceValue() throws SQLException {
         Connection connection = ConnectionUtils.getConnection();
 
         try (PreparedStatement stmt = connection.prepareStatement(getSequenceQuery());
              ResultSet rs = stmt.executeQuery()) {
 
-            if (rs.next()) {
-                return rs.getInt(1);
+            if (!rs.next()) {
+                throw new SQLException("No current value for " + getTableName() + " sequence");
             }
-            return 0;
-        } catch (SQLException ex) {
-            logger.error("SQLException: {}", ex.getMessage());
-            return 0;
+            int id = rs.getInt(1);
+            if (!isCacheable(id)) {
+                // Le même numéro peut être attribué dans un autre fragment : la ligne ne doit pas être enregistrée
+                throw new SQLException(getTableName() + " #" + id + " is outside the numbers of shard "
+                        + ShardRouter.getInstance().currentShard() + ": its sequence is not aligned (see ShardRouter.prepareSequences)");
+            }
+            return id;
         }
     }
 
@@ -93,16 +342,14 @@ public abstract class AbstractMapper<T extends IBusinessObject> {
      * @return true si le cache ne contient aucun objet, false sinon
      */
     protected boolean isCacheEmpty() {
-        // TODO à implémenter par vos soins
-        throw new UnsupportedOperationException("Vous devez implémenter votre cache vous-même !");
+        return cache.isEmpty();
     }
 
     /**
      * Vide le cache
      */
     protected void resetCache() {
-        // TODO à implémenter par vos soins
-        throw new UnsupportedOperationException("Vous devez implémenter votre cache vous-même !");
+        cache.clear();
     }
 
     /**
@@ -110,8 +357,26 @@ public abstract class AbstractMapper<T extends IBusinessObject> {
      * @param objet l'objet à ajouter
      */
     protected void addToCache(T objet) {
-        // TODO à implémenter par vos soins
-        throw new UnsupportedOperationException("Vous devez implémenter votre cache vous-même !");
+        if (objet != null && objet.getId() != null && isCacheable(objet.getId())) {
+            cache.put(objet.getId(), objet);
+        }
+    }
+
+    /**
+     * Ajoute un objet créé dans la transaction en cours au cache, une fois la transaction validée :
+     * si elle est annulée, la ligne n'existe pas et l'objet ne doit pas être retrouvé par son ID
+     * @param objet l'objet à ajouter
+     */
+    protected void addToCacheAfterCommit(T objet) {
+        TransactionManager.getInstance().afterCommit(() -> addToCache(objet));
+    }
+
+    /**
+     * Retire un objet supprimé dans la transaction en cours du cache, une fois la transaction validée
+     * @param id l'ID de l'objet à retirer du cache
+     */
+    protected void removeFromCacheAfterCommit(Integer id) {
+        TransactionManager.getInstance().afterCommit(() -> removeFromCache(id));
     }
 
     /**
@@ -119,7 +384,75 @@ public abstract class AbstractMapper<T extends IBusinessObject> {
      * @param id l'ID de l'objet à retirer du cache
      */
     protected void removeFromCache(Integer id) {
-        // TODO à implémenter par vos soins
-        throw new UnsupportedOperationException("Vous devez implémenter votre cache vous-même !");
+        if (id != null && isCacheable(id)) {
+            cache.remove(id);
+        }
+    }
+
+    /**
+     * Prend en compte une ligne insérée par une autre instance (voir {@link ChangeTracker}).
+     * Par défaut rien : elle sera lue au prochain accès ; les mappers qui tiennent un index en mémoire l'y ajoutent.
+     * @param id l'ID de la ligne insérée
+     */
+    protected void addInserted(int id) {
+    }
+
+    /**
+     * Met à jour l'objet en cache dont la ligne a été modifiée par une autre instance (voir {@link ChangeTracker}).
+     * Par défaut, l'objet est retiré du cache et relu au prochain accès ; les mappers dont les objets sont référencés
+     * par d'autres objets en cache les relisent en place, pour ne pas en créer une deuxième instance.
+     * @param id l'ID de la ligne modifiée
+     */
+    protected void refreshCached(int id) {
+        removeFromCache(id);
+    }
+
+    /**
+     * Retire du cache l'objet dont la ligne a été supprimée par une autre instance (voir {@link ChangeTracker})
+     * @param id l'ID de la ligne supprimée
+     */
+    protected void forgetDeleted(int id) {
+        removeFromCache(id);
+    }
+
+    /**
+     * Retire du cache tous les objets satisfaisant la condition donnée
+     * @param condition la condition de retrait
+     */
+    protected void removeFromCacheIf(Predicate<T> condition) {
+        cache.values().removeIf(condition);
+    }
+
+    /**
+     * Retourne l'objet du cache correspondant à l'ID donné
+     * @param id l'ID de l'objet recherché
+     * @return l'objet en cache, ou null s'il n'a pas encore été chargé
+     */
+    protected T getFromCache(Integer id) {
+        return id == null || !isCacheable(id) ? null : cache.get(id);
+    }
+
+    /**
+     * @return true si la table est répartie entre les fragments (voir {@link ShardRouter}) ; false par défaut,
+     * les tables de référence ayant les mêmes numéros dans tous les fragments
+     */
+    protected boolean isPartitioned() {
+        return false;
+    }
+
+    /**
+     * Un numéro d'une table partitionnée n'a sa place dans l'identity map, commune à tous les fragments, que s'il
+     * appartient au fragment courant : une ligne plus ancienne d'un autre fragment sous le même numéro est lue à part
+     */
+    private boolean isCacheable(int id) {
+        return !isPartitioned() || ShardRouter.getInstance().owns(id);
+    }
+
+    /**
+     * Traitement d'une ligne de résultat
+     */
+    @FunctionalInterface
+    protected interface RowHandler {
+        void handle(ResultSet rs) throws SQLException;
     }
 }
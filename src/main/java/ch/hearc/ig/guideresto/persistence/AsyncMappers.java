@@ -0,0 +1,134 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.BasicEvaluation;
+import ch.hearc.ig.guideresto.business.CompleteEvaluation;
+import ch.hearc.ig.guideresto.business.Evaluation;
+import ch.hearc.ig.guideresto.business.EvaluationCriteria;
+import ch.hearc.ig.guideresto.business.Restaurant;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Façade asynchrone sur les mappers : chaque appel retourne immédiatement un {@link CompletableFuture}
+ * et la requête est exécutée par un thread dédié, sur sa propre connexion du pool.
+ * Le nombre de threads est égal à la taille du pool de connexions, les requêtes indépendantes
+ * s'exécutent donc réellement en parallèle.
+ */
+public class AsyncMappers {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final AsyncMappers instance = new AsyncMappers();
+
+    private final ExecutorService executor;
+
+    private AsyncMappers() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(ConnectionUtils.getPoolSize(), runnable -> {
+            Thread thread = new Thread(runnable, "async-mapper-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static AsyncMappers getInstance() {
+        return instance;
+    }
+
+    /**
+     * Exécute une opération de persistance quelconque sur une connexion du pool.
+     * La transaction est validée si l'opération se termine normalement, annulée sinon.
+     *
+     * @param operation l'opération à exécuter, typiquement un appel de mapper
+     * @return le résultat de l'opération, disponible une fois la transaction terminée
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> operation) {
+        return CompletableFuture.supplyAsync(() -> {
+            ConnectionUtils.bindPooledConnection();
+            boolean success = false;
+            try {
+                T result = operation.get();
+                success = true;
+                return result;
+            } finally {
+                ConnectionUtils.releaseBoundConnection(success);
+            }
+        }, executor);
+    }
+
+    public CompletableFuture<Restaurant> findRestaurantById(int id) {
+        return supply(() -> RestaurantMapper.getInstance().findById(id));
+    }
+
+    public CompletableFuture<Set<Restaurant>> findAllRestaurants() {
+        return supply(() -> RestaurantMapper.getInstance().findAll());
+    }
+
+    /**
+     * Comme {@link #supply(Supplier)}, sur le fragment qui contient les évaluations du restaurant
+     */
+    private <T> CompletableFuture<T> supplyInShard(Restaurant restaurant, Supplier<T> operation) {
+        ShardRouter shards = ShardRouter.getInstance();
+        return supply(() -> shards.inShard(shards.isEnabled() ? shards.shardOf(restaurant) : 0, operation));
+    }
+
+    public CompletableFuture<Integer> countLikes(Restaurant restaurant, boolean like) {
+        return supplyInShard(restaurant, () -> BasicEvaluationMapper.getInstance().countByRestaurant(restaurant, like));
+    }
+
+    public CompletableFuture<Set<BasicEvaluation>> findBasicEvaluations(Restaurant restaurant) {
+        return supplyInShard(restaurant, () -> BasicEvaluationMapper.getInstance().findByRestaurant(restaurant));
+    }
+
+    public CompletableFuture<Set<CompleteEvaluation>> findCompleteEvaluations(Restaurant restaurant) {
+        return supplyInShard(restaurant, () -> CompleteEvaluationMapper.getInstance().findByRestaurant(restaurant));
+    }
+
+    public CompletableFuture<Map<EvaluationCriteria, Double>> findGradeAverages(Restaurant restaurant) {
+        return supplyInShard(restaurant, () -> GradeMapper.getInstance().findAveragesByRestaurant(restaurant));
+    }
+
+    /**
+     * Charge en parallèle les évaluations basiques et complètes d'un restaurant, puis les lui attribue.
+     * La durée correspond à celle de la plus lente des deux requêtes.
+     *
+     * @param restaurant le restaurant à afficher
+     * @return le même restaurant, avec ses évaluations à jour
+     */
+    public CompletableFuture<Restaurant> loadEvaluations(Restaurant restaurant) {
+        CompletableFuture<Set<BasicEvaluation>> basics = findBasicEvaluations(restaurant);
+        CompletableFuture<Set<CompleteEvaluation>> completes = findCompleteEvaluations(restaurant);
+
+        return basics.thenCombine(completes, (basicEvaluations, completeEvaluations) -> {
+            // Nouvel ensemble publié d'un coup : un autre thread qui parcourt les évaluations garde l'ancienne version
+            Set<Evaluation> evaluations = new LinkedHashSet<>(basicEvaluations);
+            evaluations.addAll(completeEvaluations);
+            restaurant.setEvaluations(evaluations);
+            return restaurant;
+        });
+    }
+
+    /**
+     * Arrête les threads de la façade après l'exécution des tâches en cours
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warn("Async mapper tasks still running at shutdown");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
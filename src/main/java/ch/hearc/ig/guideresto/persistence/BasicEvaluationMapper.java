@@ -0,0 +1,288 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.BasicEvaluation;
+import ch.hearc.ig.guideresto.business.Restaurant;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Mapper de la table LIKES
+ */
+public class BasicEvaluationMapper extends AbstractMapper<BasicEvaluation> {
+
+    private static final String COLUMNS = "numero, appreciation, date_eval, adresse_ip, fk_rest";
+    private static final RowLayout LAYOUT = RowLayout.of(COLUMNS);
+    private static final int NUMERO = LAYOUT.index("numero");
+    private static final int APPRECIATION = LAYOUT.index("appreciation");
+    private static final int DATE_EVAL = LAYOUT.index("date_eval");
+    private static final int ADRESSE_IP = LAYOUT.index("adresse_ip");
+    private static final int FK_REST = LAYOUT.index("fk_rest");
+    private static final String FIND_BY_ID_QUERY = "SELECT " + COLUMNS + " FROM LIKES WHERE numero = ?";
+    private static final String FIND_ALL_QUERY = "SELECT " + COLUMNS + " FROM LIKES ORDER BY numero";
+    private static final String FIND_BY_RESTAURANT_QUERY = "SELECT " + COLUMNS + " FROM LIKES WHERE fk_rest = ? ORDER BY date_eval";
+    private static final String EXISTS_BY_RESTAURANT_AND_IP_QUERY = "SELECT 1 FROM LIKES WHERE fk_rest = ? AND adresse_ip = ? FETCH FIRST 1 ROWS ONLY";
+    private static final String COUNT_BY_RESTAURANT_QUERY = "SELECT COUNT(*) FROM LIKES WHERE fk_rest = ? AND appreciation = ?";
+    private static final String INSERT_QUERY = "INSERT INTO LIKES (appreciation, date_eval, adresse_ip, fk_rest) VALUES (?, ?, ?, ?)";
+    private static final String UPDATE_QUERY = "UPDATE LIKES SET appreciation = ?, date_eval = ?, adresse_ip = ?, fk_rest = ? WHERE numero = ?";
+    private static final String DELETE_QUERY = "DELETE FROM LIKES WHERE numero = ?";
+
+    private static final BasicEvaluationMapper instance = new BasicEvaluationMapper();
+
+    static {
+        ChangeTracker.getInstance().register(instance);
+    }
+
+    private BasicEvaluationMapper() {
+    }
+
+    public static BasicEvaluationMapper getInstance() {
+        return instance;
+    }
+
+    @Override
+    public BasicEvaluation findById(int id) {
+        BasicEvaluation evaluation = getFromCache(id);
+        if (evaluation != null) {
+            return evaluation;
+        }
+        Connection connection = ConnectionUtils.getReadConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(FIND_BY_ID_QUERY)) {
+            stmt.setInt(1, id);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return mapRow(rs, null);
+                }
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public Set<BasicEvaluation> findAll() {
+        Set<BasicEvaluation> evaluations = new LinkedHashSet<>();
+        Connection connection = ConnectionUtils.getReadConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(FIND_ALL_QUERY);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                evaluations.add(mapRow(rs, null));
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return evaluations;
+    }
+
+    /**
+     * Charge les likes et dislikes d'un restaurant
+     * @param restaurant le restaurant évalué
+     * @return les évaluations basiques du restaurant
+     */
+    public Set<BasicEvaluation> findByRestaurant(Restaurant restaurant) {
+        Set<BasicEvaluation> evaluations = new LinkedHashSet<>();
+        Connection connection = ConnectionUtils.getReadConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(FIND_BY_RESTAURANT_QUERY)) {
+            stmt.setInt(1, restaurant.getId());
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    evaluations.add(mapRow(rs, restaurant));
+                }
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return evaluations;
+    }
+
+    /**
+     * Compte les likes ou les dislikes d'un restaurant sans charger les évaluations
+     * @param restaurant le restaurant évalué
+     * @param like true pour compter les likes, false pour les dislikes
+     * @return le nombre d'évaluations correspondantes
+     */
+    public int countByRestaurant(Restaurant restaurant, boolean like) {
+        Connection connection = ConnectionUtils.getReadConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(COUNT_BY_RESTAURANT_QUERY)) {
+            stmt.setInt(1, restaurant.getId());
+            stmt.setString(2, like ? "T" : "F");
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return 0;
+    }
+
+    /**
+     * Vérifie si l'adresse IP donnée a déjà voté pour le restaurant (index de la contrainte UK_LIKES_REST_IP)
+     * @param restaurantId l'ID du restaurant évalué
+     * @param ipAddress l'adresse IP du votant
+     * @return true si un like ou un dislike existe déjà
+     */
+    public boolean existsByRestaurantAndIp(int restaurantId, String ipAddress) {
+        Connection connection = ConnectionUtils.getReadConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(EXISTS_BY_RESTAURANT_AND_IP_QUERY)) {
+            stmt.setInt(1, restaurantId);
+            stmt.setString(2, ipAddress);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return false;
+    }
+
+    @Override
+    public BasicEvaluation create(BasicEvaluation evaluation) {
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(INSERT_QUERY)) {
+            setParameters(stmt, evaluation);
+            executeWrite(stmt);
+
+            evaluation.setId(getSequenceValue());
+            addToCacheAfterCommit(evaluation);
+            return evaluation;
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Insère plusieurs évaluations en un seul lot JDBC, dans la transaction en cours : un aller-retour pour tout le lot.
+     * Les IDs générés ne sont pas relus, les évaluations ne sont donc pas ajoutées au cache.
+     *
+     * @param evaluations les évaluations à insérer
+     * @return true si toutes ont été insérées, false en cas d'erreur (l'appelant doit annuler la transaction)
+     */
+    public boolean createAll(Collection<BasicEvaluation> evaluations) {
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(INSERT_QUERY)) {
+            for (BasicEvaluation evaluation : evaluations) {
+                setParameters(stmt, evaluation);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            invalidateAfterCommit(getTableName());
+            return true;
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return false;
+    }
+
+    @Override
+    public boolean update(BasicEvaluation evaluation) {
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(UPDATE_QUERY)) {
+            setParameters(stmt, evaluation);
+            stmt.setInt(5, evaluation.getId());
+            return executeWrite(stmt) > 0;
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return false;
+    }
+
+    @Override
+    public boolean delete(BasicEvaluation evaluation) {
+        return deleteById(evaluation.getId());
+    }
+
+    @Override
+    public boolean deleteById(int id) {
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(DELETE_QUERY)) {
+            stmt.setInt(1, id);
+            removeFromCacheAfterCommit(id);
+            return executeWrite(stmt) > 0;
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return false;
+    }
+
+    private void setParameters(PreparedStatement stmt, BasicEvaluation evaluation) throws SQLException {
+        stmt.setString(1, Boolean.TRUE.equals(evaluation.getLikeRestaurant()) ? "T" : "F");
+        stmt.setTimestamp(2, new Timestamp(evaluation.getVisitTime()));
+        stmt.setString(3, evaluation.getIpAddress());
+        stmt.setInt(4, evaluation.getRestaurant().getId());
+    }
+
+    @Override
+    protected BasicEvaluation mapRow(ResultSet rs) throws SQLException {
+        return mapRow(rs, null);
+    }
+
+    /**
+     * Construit l'évaluation de la ligne courante, ou retourne l'instance déjà présente dans le cache
+     * @param restaurant le restaurant évalué s'il est connu, sinon il est chargé via son mapper
+     */
+    private BasicEvaluation mapRow(ResultSet rs, Restaurant restaurant) throws SQLException {
+        LAYOUT.verify(rs);
+        int id = rs.getInt(NUMERO);
+        BasicEvaluation evaluation = getFromCache(id);
+        if (evaluation == null) {
+            if (restaurant == null) {
+                restaurant = RestaurantMapper.getInstance().findById(rs.getInt(FK_REST));
+            }
+            evaluation = new BasicEvaluation(id, rs.getTimestamp(DATE_EVAL), restaurant,
+                    "T".equals(rs.getString(APPRECIATION)), rs.getString(ADRESSE_IP));
+            addToCache(evaluation);
+        }
+        return evaluation;
+    }
+
+    @Override
+    protected String getSelectQuery() {
+        return "SELECT " + COLUMNS + " FROM LIKES";
+    }
+
+    @Override
+    protected boolean isPartitioned() {
+        return true;
+    }
+
+    @Override
+    protected String getSequenceQuery() {
+        return "SELECT SEQ_EVAL.CURRVAL FROM dual";
+    }
+
+    @Override
+    protected String getExistsQuery() {
+        return "SELECT numero FROM LIKES WHERE numero = ?";
+    }
+
+    @Override
+    protected String getCountQuery() {
+        return "SELECT COUNT(*) FROM LIKES";
+    }
+
+    @Override
+    protected String getTableName() {
+        return "LIKES";
+    }
+}
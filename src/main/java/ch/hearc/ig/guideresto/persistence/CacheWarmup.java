@@ -0,0 +1,158 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Préchargement des caches et index au démarrage, en arrière-plan : le menu est utilisable pendant ce temps.
+ *
+ * Chaque partie (données de référence, restaurants, filtre des votes, index des commentaires, tendances,
+ * restaurants similaires) est chargée par un thread du préchargement (warmup.threads), sur une connexion dédiée hors pool :
+ * une requête qui attend une partie en gardant une connexion du pool (API HTTP, mode script) ne peut pas la priver
+ * de connexion. Le service attend, avant de s'en servir, uniquement les parties dont il a besoin ; une partie en échec est journalisée
+ * et n'empêche pas les autres, le service retombe alors sur la base.
+ */
+public class CacheWarmup {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    /**
+     * Les parties préchargées
+     */
+    public enum Part {
+        REFERENCE_DATA,
+        RESTAURANTS,
+        VOTE_FILTER,
+        COMMENT_INDEX,
+        TRENDS,
+        SIMILAR_RESTAURANTS
+    }
+
+    private static final CacheWarmup instance = new CacheWarmup();
+
+    // Vide tant que le préchargement n'a pas été lancé : rien à attendre, chaque cache se charge à la demande
+    private final Map<Part, CompletableFuture<Void>> parts = new EnumMap<>(Part.class);
+    private final AtomicInteger completed = new AtomicInteger();
+    private ExecutorService executor;
+
+    private CacheWarmup() {
+    }
+
+    public static CacheWarmup getInstance() {
+        return instance;
+    }
+
+    /**
+     * Lance le chargement de toutes les parties en arrière-plan et retourne immédiatement
+     * @param threads le nombre de parties chargées en parallèle
+     */
+    public synchronized void start(int threads) {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "cache-warmup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long start = System.currentTimeMillis();
+
+        CompletableFuture<Void> referenceData = load(Part.REFERENCE_DATA, () -> {
+            ReferenceData.getInstance().refresh();
+            CityMapper.getInstance().getIndex();
+        });
+        parts.put(Part.REFERENCE_DATA, referenceData);
+        // Les restaurants référencent types et villes : ceux-ci doivent déjà être dans les identity maps
+        parts.put(Part.RESTAURANTS, referenceData.handle((ignored, ex) -> null).thenCompose(ignored ->
+                load(Part.RESTAURANTS, () -> ShardRouter.getInstance().scatter(() -> RestaurantMapper.getInstance().findAll()))));
+        parts.put(Part.VOTE_FILTER, load(Part.VOTE_FILTER, () -> DuplicateVoteFilter.getInstance().rebuild()));
+        parts.put(Part.COMMENT_INDEX, load(Part.COMMENT_INDEX, () -> CommentIndex.getInstance().rebuild()));
+        parts.put(Part.TRENDS, load(Part.TRENDS, () -> EvaluationTrends.getInstance().backfill()));
+        parts.put(Part.SIMILAR_RESTAURANTS, load(Part.SIMILAR_RESTAURANTS, () -> SimilarRestaurants.getInstance().rebuild()));
+
+        CompletableFuture.allOf(parts.values().toArray(new CompletableFuture<?>[0])).handle((ignored, ex) -> {
+            logger.info("Cache warm-up finished in {} ms", System.currentTimeMillis() - start);
+            synchronized (this) {
+                executor.shutdown();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Attend la fin du chargement des parties demandées. Retourne immédiatement si elles sont prêtes
+     * ou si le préchargement n'a pas été lancé.
+     */
+    public void await(Part... required) {
+        for (Part part : required) {
+            CompletableFuture<Void> future;
+            synchronized (this) {
+                future = parts.get(part);
+            }
+            if (future != null && !future.isDone()) {
+                logger.debug("Waiting for cache warm-up: {}", part);
+                future.handle((ignored, ex) -> null).join();
+            }
+        }
+    }
+
+    /**
+     * @return le nombre de parties chargées (ou en échec), sur {@link #getPartCount()}
+     */
+    public int getCompletedCount() {
+        return completed.get();
+    }
+
+    public int getPartCount() {
+        return Part.values().length;
+    }
+
+    /**
+     * @return true si toutes les parties sont chargées, ou si le préchargement n'a pas été lancé
+     */
+    public synchronized boolean isDone() {
+        return parts.values().stream().allMatch(CompletableFuture::isDone);
+    }
+
+    /**
+     * Charge une partie sur un thread du préchargement, avec une connexion ouverte le temps du chargement
+     */
+    private CompletableFuture<Void> load(Part part, Runnable loader) {
+        return CompletableFuture.runAsync(() -> {
+            long start = System.currentTimeMillis();
+            Connection connection = ConnectionUtils.newConnection();
+            ConnectionUtils.bindConnection(connection);
+            try {
+                loader.run();
+                logger.info("Cache warm-up: {} loaded in {} ms ({}/{})", part, System.currentTimeMillis() - start,
+                        completed.incrementAndGet(), getPartCount());
+            } catch (RuntimeException ex) {
+                logger.error("Cache warm-up: {} failed ({}/{})", part, completed.incrementAndGet(), getPartCount(), ex);
+                throw ex;
+            } finally {
+                ConnectionUtils.bindConnection(null);
+                close(connection);
+            }
+        }, executor);
+    }
+
+    private static void close(Connection connection) {
+        try {
+            if (connection != null) {
+                connection.rollback();
+                connection.close();
+            }
+        } catch (SQLException ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+    }
+}
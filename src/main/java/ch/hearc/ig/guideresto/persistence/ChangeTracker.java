@@ -0,0 +1,427 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lit périodiquement la table CHANGE_LOG (alimentée par les triggers TR_AIUDR_*) et met à jour dans le cache
+ * des mappers uniquement les lignes modifiées par une autre instance ou par un script SQL : un objet modifié est relu
+ * en place, un objet supprimé est retiré, une ville insérée est ajoutée à l'index des villes
+ * (voir {@link AbstractMapper#refreshCached(int)}). Les résultats de requêtes
+ * en cache qui lisent leurs tables sont invalidés (voir {@link QueryCache}).
+ * Chaque mapper s'enregistre via {@link #register(AbstractMapper)} depuis son initialiseur statique, une fois construit,
+ * et y est indexé par son nom de table.
+ *
+ * Les numéros du journal sont attribués à l'insertion, pas au COMMIT : une transaction longue valide des numéros
+ * inférieurs à ceux déjà lus. Les numéros sautés sont donc gardés et relus à chaque passage, jusqu'à leur apparition
+ * ou pendant changetracker.gap.timeout.ms (un numéro peut ne jamais apparaître : rollback, cache de séquence perdu).
+ *
+ * Les lignes plus anciennes que changetracker.retention.ms sont supprimées du journal, au plus une fois par
+ * changetracker.purge.interval.ms. La rétention doit dépasser le délai de suivi de toutes les instances.
+ *
+ * Le suivi se fait sur une connexion dédiée afin de ne pas interférer avec la transaction de l'application.
+ * Avec plusieurs fragments (voir {@link ShardRouter}), chacun a son journal, suivi sur sa propre connexion : les objets
+ * y sont relus dans le fragment qui a reçu la modification.
+ */
+public class ChangeTracker {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final String LAST_CHANGE_QUERY = "SELECT NVL(MAX(numero), 0) FROM CHANGE_LOG";
+    private static final String CHANGE_COLUMNS = "SELECT numero, nom_table, fk_ligne, operation, date_modif, SYSTIMESTAMP FROM CHANGE_LOG ";
+    private static final String CHANGES_QUERY = CHANGE_COLUMNS + "WHERE numero > ? ORDER BY numero FETCH FIRST ? ROWS ONLY";
+    // Nombre fixe de paramètres, complétés par -1, pour réutiliser le même plan d'exécution
+    private static final int GAP_BATCH_SIZE = 100;
+    private static final String GAPS_QUERY = CHANGE_COLUMNS + "WHERE numero IN ("
+            + String.join(", ", Collections.nCopies(GAP_BATCH_SIZE, "?")) + ")";
+    private static final String PURGE_QUERY = "DELETE FROM CHANGE_LOG WHERE date_modif < SYSTIMESTAMP - ? / 86400000.0";
+
+    private static final ChangeTracker instance = new ChangeTracker();
+
+    private final Map<String, List<AbstractMapper<?>>> mappersByTable = new ConcurrentHashMap<>();
+    private final Stats stats = new Stats();
+
+    private ScheduledExecutorService scheduler;
+    // Un journal par fragment, base principale en premier. Lus par le seul thread de suivi
+    private final List<Journal> journals = new ArrayList<>();
+    private int batchSize;
+    private long gapTimeoutMillis;
+    private int maxGaps;
+    private long retentionMillis;
+    private long purgeIntervalMillis;
+
+    private ChangeTracker() {
+    }
+
+    public static ChangeTracker getInstance() {
+        return instance;
+    }
+
+    /**
+     * Enregistre un mapper dont le cache doit suivre les modifications de sa table
+     * @param mapper le mapper à enregistrer
+     */
+    public void register(AbstractMapper<?> mapper) {
+        mappersByTable.computeIfAbsent(mapper.getTableName(), k -> new CopyOnWriteArrayList<>()).add(mapper);
+    }
+
+    /**
+     * Démarre le thread de suivi. Les modifications antérieures au démarrage sont ignorées, les caches étant encore vides.
+     * @param intervalMillis délai entre deux lectures du journal
+     * @param batchSize nombre maximal de modifications lues par requête
+     */
+    public synchronized void start(long intervalMillis, int batchSize) {
+        if (scheduler != null) {
+            return;
+        }
+        ShardRouter shards = ShardRouter.getInstance();
+        journals.clear();
+        for (int shard = 0; shard < shards.getShardCount(); shard++) {
+            Connection connection = shards.newConnection(shard);
+            if (connection == null) {
+                logger.error("ChangeTracker cannot follow shard {}: no database connection available", shard);
+            } else {
+                journals.add(new Journal(shard, connection));
+            }
+        }
+        if (journals.isEmpty()) {
+            logger.error("ChangeTracker not started: no database connection available");
+            return;
+        }
+        this.batchSize = batchSize;
+        this.gapTimeoutMillis = ConnectionUtils.getIntProperty("changetracker.gap.timeout.ms", 60000);
+        this.maxGaps = ConnectionUtils.getIntProperty("changetracker.gap.max", 10000);
+        this.retentionMillis = ConnectionUtils.getIntProperty("changetracker.retention.ms", 3600000);
+        this.purgeIntervalMillis = ConnectionUtils.getIntProperty("changetracker.purge.interval.ms", 60000);
+        for (Journal journal : journals) {
+            journal.lastChangeId = readLastChangeId(journal.connection);
+            journal.lastPurge = System.currentTimeMillis();
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "change-tracker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::poll, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("ChangeTracker started on {} journal(s) from change #{} of the primary (interval {} ms, batch {})",
+                journals.size(), journals.get(0).lastChangeId, intervalMillis, batchSize);
+    }
+
+    /**
+     * Arrête le thread de suivi et ferme sa connexion
+     */
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        for (Journal journal : journals) {
+            try {
+                journal.connection.close();
+            } catch (SQLException ex) {
+                logger.error(ex.getMessage(), ex);
+            }
+        }
+        journals.clear();
+        scheduler = null;
+        logger.info("ChangeTracker stopped: {}", stats);
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    private static long readLastChangeId(Connection connection) {
+        try (PreparedStatement stmt = connection.prepareStatement(LAST_CHANGE_QUERY);
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Relit les numéros sautés encore attendus, puis lit les nouvelles modifications par lots jusqu'à épuisement du journal,
+     * pour chaque fragment
+     */
+    void poll() {
+        ConnectionUtils.setReadYourWrites(true);
+        try {
+            for (Journal journal : journals) {
+                // Les objets sont relus sur la connexion du suivi, dans le fragment qui a reçu la modification
+                ShardRouter.getInstance().inShard(journal.shard, journal.connection, () -> {
+                    poll(journal);
+                    return null;
+                });
+            }
+        } finally {
+            ConnectionUtils.setReadYourWrites(false);
+        }
+    }
+
+    private void poll(Journal journal) {
+        try {
+            pollGaps(journal);
+            int read;
+            do {
+                read = pollBatch(journal);
+            } while (read == batchSize);
+            if (System.currentTimeMillis() - journal.lastPurge >= purgeIntervalMillis) {
+                purge(journal);
+            }
+            // Termine la transaction de lecture pour voir les prochains commits des autres sessions
+            journal.connection.commit();
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        } catch (RuntimeException ex) {
+            // Une exception non traitée annulerait les exécutions suivantes du scheduler
+            logger.error(ex.getMessage(), ex);
+        }
+    }
+
+    private int pollBatch(Journal journal) throws SQLException {
+        int read = 0;
+        try (PreparedStatement stmt = journal.connection.prepareStatement(CHANGES_QUERY)) {
+            stmt.setLong(1, journal.lastChangeId);
+            stmt.setInt(2, batchSize);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    long changeId = rs.getLong("numero");
+                    if (changeId > journal.lastChangeId + 1) {
+                        addGaps(journal, journal.lastChangeId + 1, changeId);
+                    }
+                    journal.lastChangeId = changeId;
+                    apply(rs);
+                    read++;
+                }
+            }
+        }
+        if (read > 0) {
+            stats.batches.incrementAndGet();
+            logger.debug("ChangeTracker processed {} changes up to #{} on shard {}", read, journal.lastChangeId, journal.shard);
+        }
+        return read;
+    }
+
+    /**
+     * Garde les numéros de from (inclus) à to (exclu), sautés par la lecture du journal
+     */
+    private void addGaps(Journal journal, long from, long to) {
+        LinkedHashMap<Long, Long> gaps = journal.gaps;
+        long first = Math.max(from, to - maxGaps);
+        if (first > from) {
+            logger.warn("ChangeTracker skipped {} changes (#{} to #{}) on shard {} without tracking them", first - from, from, first - 1, journal.shard);
+        }
+        long now = System.currentTimeMillis();
+        for (long changeId = first; changeId < to; changeId++) {
+            gaps.put(changeId, now);
+        }
+        Iterator<Long> oldest = gaps.keySet().iterator();
+        while (gaps.size() > maxGaps) {
+            oldest.next();
+            oldest.remove();
+            stats.expiredGaps.incrementAndGet();
+        }
+    }
+
+    /**
+     * Oublie les numéros sautés depuis plus de changetracker.gap.timeout.ms, puis relit ceux qui restent
+     */
+    private void pollGaps(Journal journal) throws SQLException {
+        LinkedHashMap<Long, Long> gaps = journal.gaps;
+        long expiry = System.currentTimeMillis() - gapTimeoutMillis;
+        Iterator<Long> sinceTimes = gaps.values().iterator();
+        while (sinceTimes.hasNext() && sinceTimes.next() < expiry) {
+            sinceTimes.remove();
+            stats.expiredGaps.incrementAndGet();
+        }
+        if (gaps.isEmpty()) {
+            return;
+        }
+
+        List<Long> pending = new ArrayList<>(gaps.keySet());
+        try (PreparedStatement stmt = journal.connection.prepareStatement(GAPS_QUERY)) {
+            for (int start = 0; start < pending.size(); start += GAP_BATCH_SIZE) {
+                for (int i = 0; i < GAP_BATCH_SIZE; i++) {
+                    int index = start + i;
+                    stmt.setLong(i + 1, index < pending.size() ? pending.get(index) : -1);
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        gaps.remove(rs.getLong("numero"));
+                        apply(rs);
+                        stats.lateChanges.incrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Applique une modification du journal aux caches
+     */
+    private void apply(ResultSet rs) throws SQLException {
+        String tableName = rs.getString("nom_table");
+        // Une insertion peut ajouter une ligne à un résultat de recherche en cache
+        QueryCache.getInstance().invalidate(tableName);
+        List<AbstractMapper<?>> mappers = mappersByTable.get(tableName);
+        if (mappers != null) {
+            int id = rs.getInt("fk_ligne");
+            String operation = rs.getString("operation");
+            for (AbstractMapper<?> mapper : mappers) {
+                // Une ligne insérée ne peut pas être en cache chez nous sous une version périmée
+                if ("I".equals(operation)) {
+                    mapper.addInserted(id);
+                } else if ("U".equals(operation)) {
+                    mapper.refreshCached(id);
+                } else if ("D".equals(operation)) {
+                    mapper.forgetDeleted(id);
+                }
+            }
+        }
+        stats.recordChange(lag(rs.getTimestamp("date_modif"), rs.getTimestamp(6)));
+    }
+
+    /**
+     * Supprime du journal les modifications plus anciennes que la durée de rétention
+     */
+    private void purge(Journal journal) throws SQLException {
+        try (PreparedStatement stmt = journal.connection.prepareStatement(PURGE_QUERY)) {
+            stmt.setLong(1, retentionMillis);
+            int purged = stmt.executeUpdate();
+            stats.purged.addAndGet(purged);
+            logger.debug("ChangeTracker purged {} changes on shard {}", purged, journal.shard);
+        }
+        journal.lastPurge = System.currentTimeMillis();
+    }
+
+    /**
+     * Délai entre la modification et son traitement, mesuré avec l'horloge de la base pour éviter les décalages entre machines
+     */
+    private static long lag(Timestamp modified, Timestamp now) {
+        return modified == null || now == null ? 0 : Math.max(0, now.getTime() - modified.getTime());
+    }
+
+    /**
+     * Journal CHANGE_LOG d'un fragment et la position de sa lecture
+     */
+    private static class Journal {
+
+        private final int shard;
+        private final Connection connection;
+        private long lastChangeId;
+        // Numéros sautés, avec l'instant où ils l'ont été, du plus ancien au plus récent
+        private final LinkedHashMap<Long, Long> gaps = new LinkedHashMap<>();
+        private long lastPurge;
+
+        private Journal(int shard, Connection connection) {
+            this.shard = shard;
+            this.connection = connection;
+        }
+    }
+
+    /**
+     * Métriques du suivi : nombre de modifications traitées, débit et délai d'invalidation.
+     */
+    public static class Stats {
+
+        private final long startedAt = System.currentTimeMillis();
+        private final AtomicLong changes = new AtomicLong();
+        private final AtomicLong batches = new AtomicLong();
+        private final AtomicLong lateChanges = new AtomicLong();
+        private final AtomicLong expiredGaps = new AtomicLong();
+        private final AtomicLong purged = new AtomicLong();
+        private final AtomicLong totalLagMillis = new AtomicLong();
+        private volatile long lastLagMillis;
+        private volatile long maxLagMillis;
+
+        private void recordChange(long lagMillis) {
+            changes.incrementAndGet();
+            totalLagMillis.addAndGet(lagMillis);
+            lastLagMillis = lagMillis;
+            if (lagMillis > maxLagMillis) {
+                maxLagMillis = lagMillis;
+            }
+        }
+
+        public long getChanges() {
+            return changes.get();
+        }
+
+        public long getBatches() {
+            return batches.get();
+        }
+
+        /**
+         * @return le nombre de modifications lues après des numéros supérieurs, validées en retard
+         */
+        public long getLateChanges() {
+            return lateChanges.get();
+        }
+
+        /**
+         * @return le nombre de numéros sautés abandonnés sans être apparus
+         */
+        public long getExpiredGaps() {
+            return expiredGaps.get();
+        }
+
+        public long getPurged() {
+            return purged.get();
+        }
+
+        public long getLastLagMillis() {
+            return lastLagMillis;
+        }
+
+        public long getMaxLagMillis() {
+            return maxLagMillis;
+        }
+
+        public double getAverageLagMillis() {
+            long count = changes.get();
+            return count == 0 ? 0 : (double) totalLagMillis.get() / count;
+        }
+
+        /**
+         * @return le nombre moyen de modifications traitées par seconde depuis la création du tracker
+         */
+        public double getThroughput() {
+            long elapsed = System.currentTimeMillis() - startedAt;
+            return elapsed == 0 ? 0 : changes.get() * 1000.0 / elapsed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d changes in %d batches (%d late, %d gaps expired, %d purged), %.1f changes/s, lag avg %.0f ms / max %d ms",
+                    getChanges(), getBatches(), getLateChanges(), getExpiredGaps(), getPurged(), getThroughput(),
+                    getAverageLagMillis(), getMaxLagMillis());
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.City;
+
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Index en mémoire des villes : un arbre préfixe sur les NPA et un autre sur les noms normalisés
+ * (majuscules, sans accents). La recherche exacte coûte O(longueur de la clé), l'autocomplétion
+ * O(longueur du préfixe + nombre de résultats).
+ *
+ * Les enfants de chaque nœud sont stockés dans des tableaux triés plutôt que dans des Map,
+ * ce qui reste compact pour les ~4000 NPA suisses.
+ */
+public class CityIndex {
+
+    private final Node zipCodes = new Node();
+    private final Node names = new Node();
+    private int size;
+
+    public CityIndex() {
+    }
+
+    public CityIndex(Collection<City> cities) {
+        for (City city : cities) {
+            insert(city);
+        }
+    }
+
+    /**
+     * Ajoute une ville à l'index, par exemple après sa création ; une ville déjà indexée est ignorée
+     * @param city la ville à indexer
+     */
+    public synchronized void add(City city) {
+        insert(city);
+    }
+
+    private void insert(City city) {
+        String zipCode = normalize(city.getZipCode());
+        Node node = zipCodes.find(zipCode);
+        if (node != null && node.cities.contains(city)) {
+            return;
+        }
+        zipCodes.insert(zipCode, city);
+        names.insert(normalize(city.getCityName()), city);
+        size++;
+    }
+
+    /**
+     * Retire une ville de l'index
+     * @param city la ville à retirer
+     */
+    public synchronized void remove(City city) {
+        boolean removed = zipCodes.delete(normalize(city.getZipCode()), city);
+        names.delete(normalize(city.getCityName()), city);
+        if (removed) {
+            size--;
+        }
+    }
+
+    /**
+     * Recherche exacte par NPA
+     * @param zipCode le NPA recherché
+     * @return les villes ayant ce NPA, éventuellement aucune
+     */
+    public synchronized List<City> findByZipCode(String zipCode) {
+        Node node = zipCodes.find(normalize(zipCode));
+        return node == null ? new ArrayList<>() : new ArrayList<>(node.cities);
+    }
+
+    /**
+     * Villes dont le NPA ou le nom commence par le préfixe donné, NPA d'abord, dans l'ordre lexicographique
+     * @param prefix le début du NPA ou du nom, sans tenir compte de la casse ni des accents
+     * @param limit le nombre maximal de villes retournées
+     * @return les villes correspondantes, sans doublon
+     */
+    public synchronized List<City> autocomplete(String prefix, int limit) {
+        String key = normalize(prefix);
+        List<City> result = new ArrayList<>();
+        collect(zipCodes.find(key), result, limit);
+        collect(names.find(key), result, limit);
+        return result;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Parcours en profondeur dans l'ordre des clés, arrêté dès que la limite est atteinte
+     */
+    private static void collect(Node start, List<City> result, int limit) {
+        if (start == null) {
+            return;
+        }
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(start);
+        while (!stack.isEmpty() && result.size() < limit) {
+            Node node = stack.pop();
+            for (City city : node.cities) {
+                if (result.size() >= limit) {
+                    return;
+                }
+                if (!result.contains(city)) {
+                    result.add(city);
+                }
+            }
+            for (int i = node.childCount - 1; i >= 0; i--) {
+                stack.push(node.children[i]);
+            }
+        }
+    }
+
+    /**
+     * Clé de recherche : majuscules, sans accents ni espaces superflus
+     */
+    static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(value.trim(), Normalizer.Form.NFD);
+        return decomposed.replaceAll("\\p{M}", "").toUpperCase(Locale.ROOT);
+    }
+
+    private static class Node {
+
+        private static final Node[] NO_CHILDREN = new Node[0];
+        private static final char[] NO_KEYS = new char[0];
+
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        private int childCount;
+        private final List<City> cities = new ArrayList<>(1);
+
+        private void insert(String key, City city) {
+            Node node = this;
+            for (int i = 0; i < key.length(); i++) {
+                node = node.getOrCreateChild(key.charAt(i));
+            }
+            node.cities.add(city);
+        }
+
+        private boolean delete(String key, City city) {
+            Node node = find(key);
+            return node != null && node.cities.remove(city);
+        }
+
+        private Node find(String key) {
+            Node node = this;
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.child(key.charAt(i));
+            }
+            return node;
+        }
+
+        private Node child(char c) {
+            int index = Arrays.binarySearch(keys, 0, childCount, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private Node getOrCreateChild(char c) {
+            int index = Arrays.binarySearch(keys, 0, childCount, c);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insertAt = -index - 1;
+            if (childCount == keys.length) {
+                int capacity = Math.max(2, childCount * 2);
+                keys = Arrays.copyOf(keys, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(keys, insertAt, keys, insertAt + 1, childCount - insertAt);
+            System.arraycopy(children, insertAt, children, insertAt + 1, childCount - insertAt);
+            Node child = new Node();
+            keys[insertAt] = c;
+            children[insertAt] = child;
+            childCount++;
+            return child;
+        }
+    }
+}
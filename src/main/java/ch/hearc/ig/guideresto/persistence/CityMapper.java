@@ -0,0 +1,505 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.City;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Mapper de la table VILLES
+ */
+public class CityMapper extends AbstractMapper<City> {
+
+    private static final String COLUMNS = "numero, code_postal, nom_ville, version";
+    private static final RowLayout LAYOUT = RowLayout.of(COLUMNS);
+    private static final int NUMERO = LAYOUT.index("numero");
+    private static final int CODE_POSTAL = LAYOUT.index("code_postal");
+    private static final int NOM_VILLE = LAYOUT.index("nom_ville");
+    private static final int VERSION = LAYOUT.index("version");
+    private static final String FIND_BY_ID_QUERY = "SELECT " + COLUMNS + " FROM VILLES WHERE numero = ?";
+    private static final String FIND_ALL_QUERY = "SELECT " + COLUMNS + " FROM VILLES ORDER BY code_postal, nom_ville";
+    private static final List<String> CITY_TABLES = List.of("VILLES");
+    private static final String FIND_BY_ZIP_CODE_QUERY = "SELECT " + COLUMNS + " FROM VILLES WHERE code_postal = ? ORDER BY nom_ville";
+    private static final String FIND_BY_KEYS_QUERY = "SELECT " + COLUMNS + " FROM VILLES WHERE (code_postal, nom_ville) IN (";
+    private static final String INSERT_QUERY = "INSERT INTO VILLES (code_postal, nom_ville) VALUES (?, ?)";
+    // Insère la ville si aucune n'a ce NPA et ce nom (index unique UX_VILLES_NPA_NOM).
+    // Les CAST typent les paramètres de la sous-requête, sans quoi H2 (base des tests) refuse la requête
+    private static final String MERGE_QUERY = "MERGE INTO VILLES v"
+            + " USING (SELECT CAST(? AS VARCHAR2(100)) code_postal, CAST(? AS VARCHAR2(100)) nom_ville FROM dual) s"
+            + " ON (v.code_postal = s.code_postal AND v.nom_ville = s.nom_ville)"
+            + " WHEN NOT MATCHED THEN INSERT (code_postal, nom_ville) VALUES (s.code_postal, s.nom_ville)";
+    // MERGE puis relecture de la ligne en un seul aller-retour. Si une autre transaction insère la même ville entre-temps,
+    // le MERGE attend sa validation puis échoue sur l'index unique : la ligne est alors simplement relue.
+    private static final String FIND_OR_CREATE_QUERY = "DECLARE"
+            + " v_code_postal VILLES.code_postal%TYPE := ?;"
+            + " v_nom_ville VILLES.nom_ville%TYPE := ?;"
+            + " v_inserted NUMBER := 0;"
+            + " BEGIN"
+            + " BEGIN"
+            + " MERGE INTO VILLES v USING (SELECT v_code_postal code_postal, v_nom_ville nom_ville FROM dual) s"
+            + " ON (v.code_postal = s.code_postal AND v.nom_ville = s.nom_ville)"
+            + " WHEN NOT MATCHED THEN INSERT (code_postal, nom_ville) VALUES (s.code_postal, s.nom_ville);"
+            + " v_inserted := SQL%ROWCOUNT;"
+            + " EXCEPTION WHEN DUP_VAL_ON_INDEX THEN NULL;"
+            + " END;"
+            + " SELECT numero, version INTO ?, ? FROM VILLES WHERE code_postal = v_code_postal AND nom_ville = v_nom_ville;"
+            + " ? := v_inserted;"
+            + " END;";
+    // Idempotent : une ville déjà copiée dans le fragment est laissée telle quelle
+    private static final String INSERT_REPLICA_QUERY = "MERGE INTO VILLES v USING (SELECT ? numero, ? code_postal, ? nom_ville, ? version FROM dual) s"
+            + " ON (v.numero = s.numero)"
+            + " WHEN NOT MATCHED THEN INSERT (numero, code_postal, nom_ville, version) VALUES (s.numero, s.code_postal, s.nom_ville, s.version)";
+    private static final String UPDATE_QUERY = "UPDATE VILLES SET code_postal = ?, nom_ville = ?, version = version + 1 WHERE numero = ? AND version = ?";
+    private static final String DELETE_QUERY = "DELETE FROM VILLES WHERE numero = ?";
+
+    private static final CityMapper instance = new CityMapper();
+
+    static {
+        ChangeTracker.getInstance().register(instance);
+    }
+
+    // Index NPA / nom, construit au premier usage puis tenu à jour par create() et findOrCreate()
+    private volatile CityIndex index;
+    // Sérialise le chargement de l'index et les ajouts : une ville validée pendant le chargement n'est pas perdue
+    private final Object indexLock = new Object();
+
+    private CityMapper() {
+    }
+
+    public static CityMapper getInstance() {
+        return instance;
+    }
+
+    @Override
+    public City findById(int id) {
+        City city = getFromCache(id);
+        if (city != null) {
+            return city;
+        }
+        Connection connection = ConnectionUtils.getReadConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(FIND_BY_ID_QUERY)) {
+            stmt.setInt(1, id);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return mapRow(rs);
+                }
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public Set<City> findAll() {
+        Set<City> cities = new LinkedHashSet<>();
+        Connection connection = ConnectionUtils.getReadConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(FIND_ALL_QUERY);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                cities.add(mapRow(rs));
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return cities;
+    }
+
+    /**
+     * Recherche les villes ayant le NPA donné
+     * @param zipCode le NPA recherché
+     * @return les villes trouvées, éventuellement aucune
+     */
+    public Set<City> findByZipCode(String zipCode) {
+        return findByCachedQuery(FIND_BY_ZIP_CODE_QUERY, CITY_TABLES, zipCode);
+    }
+
+    /**
+     * Retourne l'index des villes pour la recherche par NPA et l'autocomplétion, en le chargeant si nécessaire
+     * @return l'index de toutes les villes
+     */
+    public CityIndex getIndex() {
+        CityIndex current = index;
+        if (current == null) {
+            synchronized (indexLock) {
+                current = index;
+                if (current == null) {
+                    current = new CityIndex(findAll());
+                    index = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Ajoute une ville validée à l'index s'il est chargé ; une ville déjà indexée est ignorée
+     */
+    private void addToIndex(City city) {
+        synchronized (indexLock) {
+            CityIndex current = index;
+            if (current != null) {
+                current.add(city);
+            }
+        }
+    }
+
+    @Override
+    public City create(City city) {
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(INSERT_QUERY)) {
+            stmt.setString(1, city.getZipCode());
+            stmt.setString(2, city.getCityName());
+            executeWrite(stmt);
+
+            city.setId(getSequenceValue());
+            TransactionManager.getInstance().afterCommit(() -> {
+                addToCache(city);
+                addToIndex(city);
+            });
+            return city;
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Retourne la ville ayant ce NPA et ce nom, ou la crée si elle n'existe pas, en un seul aller-retour.
+     * Deux appels concurrents avec le même NPA et le même nom retournent la même ville, sans doublon.
+     *
+     * @param zipCode le NPA
+     * @param cityName le nom de la ville, tel que saisi
+     * @return la ville existante ou créée, ou null en cas d'erreur
+     */
+    public City findOrCreate(String zipCode, String cityName) {
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (CallableStatement stmt = connection.prepareCall(FIND_OR_CREATE_QUERY)) {
+            stmt.setString(1, zipCode);
+            stmt.setString(2, cityName);
+            stmt.registerOutParameter(3, Types.INTEGER);
+            stmt.registerOutParameter(4, Types.INTEGER);
+            stmt.registerOutParameter(5, Types.INTEGER);
+            stmt.execute();
+
+            int id = stmt.getInt(3);
+            if (stmt.getInt(5) > 0) {
+                // Créée dans la transaction en cours : ni cache ni index tant qu'elle n'est pas validée
+                City created = new City(id, zipCode, cityName);
+                created.setVersion(stmt.getInt(4));
+                invalidateAfterCommit(getTableName());
+                TransactionManager.getInstance().afterCommit(() -> {
+                    addToCache(created);
+                    addToIndex(created);
+                });
+                return created;
+            }
+            City city = getFromCache(id);
+            if (city == null) {
+                city = new City(id, zipCode, cityName);
+                city.setVersion(stmt.getInt(4));
+                addToCache(city);
+            }
+            // Une ville existante peut manquer à l'index : créée par une autre instance, pas encore signalée par le ChangeTracker
+            addToIndex(city);
+            return city;
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Variante par lot de {@link #findOrCreate(String, String)}, pour importer la liste des NPA : un seul lot JDBC de MERGE,
+     * puis une relecture des seules villes demandées, par listes IN de 1000 couples (NPA, nom) au plus.
+     * Les villes lues qui ne sont pas encore en cache n'y sont ajoutées, avec l'index, qu'une fois la transaction validée :
+     * si elle est annulée, celles créées par le lot n'existent pas. Prévue pour de gros lots ; pour quelques villes,
+     * findOrCreate est moins coûteux.
+     * Contrairement à findOrCreate, un import concurrent des mêmes villes fait échouer le lot : l'appelant annule
+     * la transaction et peut recommencer.
+     *
+     * @param cities les villes à trouver ou créer, sans ID ; une même ville peut figurer plusieurs fois
+     * @return les villes existantes ou créées, dans l'ordre reçu, ou null en cas d'erreur
+     */
+    public List<City> findOrCreateAll(Collection<City> cities) {
+        Connection connection = ConnectionUtils.getConnection();
+        Map<String, City> requested = new LinkedHashMap<>();
+        for (City city : cities) {
+            requested.putIfAbsent(key(city.getZipCode(), city.getCityName()), city);
+        }
+
+        try (PreparedStatement stmt = connection.prepareStatement(MERGE_QUERY)) {
+            for (City city : requested.values()) {
+                stmt.setString(1, city.getZipCode());
+                stmt.setString(2, city.getCityName());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            invalidateAfterCommit(getTableName());
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+            return null;
+        }
+
+        Map<String, City> byKey = findByKeys(connection, new ArrayList<>(requested.values()));
+        if (byKey == null) {
+            return null;
+        }
+        List<City> result = new ArrayList<>(cities.size());
+        for (City city : cities) {
+            result.add(byKey.get(key(city.getZipCode(), city.getCityName())));
+        }
+        TransactionManager.getInstance().afterCommit(() -> {
+            for (City city : byKey.values()) {
+                City cached = getFromCache(city.getId());
+                if (cached == null) {
+                    addToCache(city);
+                    cached = city;
+                }
+                addToIndex(cached);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Lit les villes ayant ces NPA et noms par listes IN de 1000 couples au plus, sur la connexion d'écriture :
+     * un réplica ne verrait pas encore les villes créées. Une ville déjà en cache est retournée telle quelle, les autres
+     * sont construites sans être mises en cache, leur ligne pouvant n'être pas encore validée.
+     *
+     * @return les villes trouvées, indexées par {@link #key(String, String)}, ou null en cas d'erreur
+     */
+    private Map<String, City> findByKeys(Connection connection, List<City> keys) {
+        Map<String, City> byKey = new HashMap<>();
+        for (int start = 0; start < keys.size(); start += MAX_IN_LIST_SIZE) {
+            List<City> chunk = keys.subList(start, Math.min(start + MAX_IN_LIST_SIZE, keys.size()));
+            int size = inListSize(chunk.size());
+            StringBuilder query = new StringBuilder(FIND_BY_KEYS_QUERY);
+            for (int i = 0; i < size; i++) {
+                query.append(i == 0 ? "(?, ?)" : ", (?, ?)");
+            }
+
+            try (PreparedStatement stmt = connection.prepareStatement(query.append(")").toString())) {
+                // Les places libres sont complétées avec le dernier couple, sans effet sur le résultat
+                for (int i = 0; i < size; i++) {
+                    City city = chunk.get(Math.min(i, chunk.size() - 1));
+                    stmt.setString(2 * i + 1, city.getZipCode());
+                    stmt.setString(2 * i + 2, city.getCityName());
+                }
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        LAYOUT.verify(rs);
+                        int id = rs.getInt(NUMERO);
+                        City city = getFromCache(id);
+                        if (city == null) {
+                            city = new City(id, rs.getString(CODE_POSTAL), rs.getString(NOM_VILLE));
+                            city.setVersion(rs.getInt(VERSION));
+                        }
+                        byKey.put(key(city.getZipCode(), city.getCityName()), city);
+                    }
+                }
+            } catch (SQLException ex) {
+                logger.error("SQLException: {}", ex.getMessage());
+                return null;
+            }
+        }
+        return byKey;
+    }
+
+    private static String key(String zipCode, String cityName) {
+        return zipCode + "|" + cityName;
+    }
+
+    /**
+     * Copie des villes déjà créées sur la base principale dans un autre fragment, avec les mêmes numéros (voir ShardRouter).
+     * Une ville déjà présente dans le fragment n'est pas modifiée.
+     * @param cities les villes, avec leur ID
+     * @return true si toutes les villes sont présentes dans le fragment
+     */
+    boolean insertReplicas(Collection<City> cities) {
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(INSERT_REPLICA_QUERY)) {
+            for (City city : cities) {
+                stmt.setInt(1, city.getId());
+                stmt.setString(2, city.getZipCode());
+                stmt.setString(3, city.getCityName());
+                stmt.setInt(4, city.getVersion());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            invalidateAfterCommit(getTableName());
+            return true;
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * @throws ConcurrentUpdateException si la ville a été modifiée par une autre transaction depuis sa lecture
+     */
+    @Override
+    public boolean update(City city) {
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(UPDATE_QUERY)) {
+            stmt.setString(1, city.getZipCode());
+            stmt.setString(2, city.getCityName());
+            stmt.setInt(3, city.getId());
+            stmt.setInt(4, city.getVersion());
+            index = null; // Le NPA ou le nom a pu changer
+            boolean updated = checkVersionedUpdate(executeWrite(stmt), city.getId(), city.getVersion());
+            if (updated) {
+                bumpVersionAfterCommit(city.getVersion() + 1, city::setVersion);
+            }
+            return updated;
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return false;
+    }
+
+    @Override
+    public boolean delete(City city) {
+        return deleteById(city.getId());
+    }
+
+    @Override
+    public boolean deleteById(int id) {
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(DELETE_QUERY)) {
+            stmt.setInt(1, id);
+            removeFromCacheAfterCommit(id);
+            return executeWrite(stmt) > 0;
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Ajoute à l'index, s'il est chargé, la ville insérée par une autre instance : elle doit être proposée
+     * par la recherche par NPA et l'autocomplétion
+     */
+    @Override
+    protected void addInserted(int id) {
+        CityIndex current = index;
+        if (current == null) {
+            return;
+        }
+        City city = findById(id);
+        if (city != null) {
+            current.add(city);
+        }
+    }
+
+    /**
+     * Relit en place la ville modifiée par une autre instance : ses restaurants gardent la même instance
+     */
+    @Override
+    protected void refreshCached(int id) {
+        City city = getFromCache(id);
+        if (city == null) {
+            return;
+        }
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(FIND_BY_ID_QUERY)) {
+            stmt.setInt(1, id);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    forgetDeleted(id);
+                    return;
+                }
+                LAYOUT.verify(rs);
+                city.setZipCode(rs.getString(CODE_POSTAL));
+                city.setCityName(rs.getString(NOM_VILLE));
+                city.setVersion(rs.getInt(VERSION));
+                // Le NPA ou le nom a pu changer : l'index est reconstruit au prochain usage
+                index = null;
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+            removeFromCache(id);
+        }
+    }
+
+    /**
+     * Construit la ville de la ligne courante, ou retourne l'instance déjà présente dans le cache
+     */
+    @Override
+    protected City mapRow(ResultSet rs) throws SQLException {
+        LAYOUT.verify(rs);
+        int id = rs.getInt(NUMERO);
+        City city = getFromCache(id);
+        if (city == null) {
+            city = new City(id, rs.getString(CODE_POSTAL), rs.getString(NOM_VILLE));
+            city.setVersion(rs.getInt(VERSION));
+            addToCache(city);
+        }
+        return city;
+    }
+
+    /**
+     * Une ville retirée du cache (suppression ou modification externe) invalide aussi l'index, reconstruit au prochain usage
+     */
+    @Override
+    protected void removeFromCache(Integer id) {
+        if (id != null && cache.containsKey(id)) {
+            index = null;
+        }
+        super.removeFromCache(id);
+    }
+
+    @Override
+    protected void resetCache() {
+        index = null;
+        super.resetCache();
+    }
+
+    @Override
+    protected String getSelectQuery() {
+        return "SELECT " + COLUMNS + " FROM VILLES";
+    }
+
+    @Override
+    protected String getSequenceQuery() {
+        return "SELECT SEQ_VILLES.CURRVAL FROM dual";
+    }
+
+    @Override
+    protected String getExistsQuery() {
+        return "SELECT numero FROM VILLES WHERE numero = ?";
+    }
+
+    @Override
+    protected String getCountQuery() {
+        return "SELECT COUNT(*) FROM VILLES";
+    }
+
+    @Override
+    protected String getTableName() {
+        return "VILLES";
+    }
+}
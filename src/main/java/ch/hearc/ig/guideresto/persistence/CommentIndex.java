@@ -0,0 +1,382 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.CompleteEvaluation;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Index plein texte en mémoire des évaluations complètes (commentaire et nom d'utilisateur), classé par BM25.
+ * Il évite les LIKE '%...%' sur la colonne CLOB COMMENTAIRES.commentaire, qui parcourent toute la table.
+ *
+ * Analyse française : minuscules, suppression des accents et des élisions (l', d'...), mots vides,
+ * racinisation légère par suppression des suffixes flexionnels et dérivationnels courants.
+ *
+ * Chaque terme a une liste de postings compressée : numéros d'évaluation en delta puis fréquence du terme,
+ * encodés en varint. La reconstruction trie les évaluations de tous les fragments par numéro avant de remplir les listes,
+ * dont chaque ajout se fait donc en fin de liste. Une évaluation enregistrée ensuite avec un numéro inférieur au dernier
+ * indexé (fragment dont SEQ_EVAL est en retard sur un autre, voir ShardRouter) réécrit les listes de ses termes.
+ */
+public class CommentIndex {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final String COMMENTS_QUERY = "SELECT numero, fk_rest, nom_utilisateur, commentaire FROM COMMENTAIRES ORDER BY numero";
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "au", "aux", "avec", "ce", "ces", "cet", "cette", "dans", "de", "des", "du", "elle", "en", "est", "et", "etait",
+            "il", "ils", "je", "la", "le", "les", "leur", "lui", "ma", "mais", "me", "mes", "moi", "mon", "ne", "nos", "notre",
+            "nous", "on", "ou", "par", "pas", "pour", "qu", "que", "qui", "sa", "se", "ses", "son", "sur", "ta", "te", "tes",
+            "toi", "ton", "tres", "tu", "un", "une", "vos", "votre", "vous", "ete", "etre", "avoir", "ont", "sont", "ai", "as", "a",
+            "y", "c", "d", "j", "l", "m", "n", "s", "t");
+
+    /** Suffixes retirés du plus long au plus court, tant qu'il reste une racine d'au moins 3 lettres */
+    private static final String[] SUFFIXES = {
+            "issements", "issement", "ements", "ement", "ations", "ation", "atrices", "atrice", "ateurs", "ateur",
+            "ences", "ence", "ances", "ance", "ismes", "isme", "istes", "iste", "ables", "able", "ibles", "ible",
+            "ites", "ite", "euses", "euse", "eux", "ives", "ive", "ifs", "if", "elles", "elle", "ees", "ee", "es", "er", "ez",
+            "e", "s", "x"};
+
+    private static final CommentIndex instance = new CommentIndex();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final Map<Integer, Document> documents = new HashMap<>();
+    private long totalLength;
+
+    private CommentIndex() {
+    }
+
+    public static CommentIndex getInstance() {
+        return instance;
+    }
+
+    /**
+     * Reconstruit l'index à partir de la table COMMENTAIRES, en une lecture séquentielle de chaque fragment.
+     * Les numéros des fragments s'entrelacent : les évaluations de tous les fragments sont analysées puis triées
+     * par numéro avant d'être indexées, pour que chaque posting s'ajoute en fin de liste.
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documents.clear();
+            totalLength = 0;
+            List<AnalyzedDocument> loaded = new ArrayList<>();
+            ShardRouter.getInstance().forEachShard(() -> loadComments(loaded));
+            loaded.sort(Comparator.comparingInt(AnalyzedDocument::evaluationId));
+            for (AnalyzedDocument document : loaded) {
+                addDocument(document);
+            }
+            logger.info("Comment index rebuilt: {} evaluations, {} terms, {} posting bytes in {} ms",
+                    documents.size(), postings.size(), postingBytes(), System.currentTimeMillis() - start);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Analyse les évaluations de la base courante
+     * @param loaded reçoit les évaluations analysées
+     */
+    private void loadComments(List<AnalyzedDocument> loaded) {
+        Connection connection = ConnectionUtils.getReadConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(COMMENTS_QUERY)) {
+            stmt.setFetchSize(1000);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    loaded.add(analyzeDocument(rs.getInt("numero"), rs.getInt("fk_rest"), rs.getString("nom_utilisateur"), rs.getString("commentaire")));
+                }
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Indexe une évaluation qui vient d'être enregistrée
+     * @param evaluation l'évaluation, avec son ID
+     */
+    public void add(CompleteEvaluation evaluation) {
+        lock.writeLock().lock();
+        try {
+            if (!documents.containsKey(evaluation.getId())) {
+                addDocument(analyzeDocument(evaluation.getId(), evaluation.getRestaurant().getId(), evaluation.getUsername(), evaluation.getComment()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Retire de l'index les évaluations d'un restaurant supprimé.
+     * Leurs postings restent dans les listes jusqu'à la prochaine reconstruction mais sont ignorés.
+     * @param restaurantId l'ID du restaurant
+     */
+    public void forgetRestaurant(int restaurantId) {
+        lock.writeLock().lock();
+        try {
+            documents.values().removeIf(document -> {
+                if (document.restaurantId == restaurantId) {
+                    totalLength -= document.length;
+                    return true;
+                }
+                return false;
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Recherche les évaluations les plus pertinentes
+     * @param query les mots recherchés, analysés comme les commentaires
+     * @param limit le nombre maximal de résultats
+     * @return les numéros d'évaluation et leur score BM25, du plus pertinent au moins pertinent
+     */
+    public Map<Integer, Double> searchEvaluations(String query, int limit) {
+        return top(scoreDocuments(query), limit);
+    }
+
+    /**
+     * Recherche les restaurants dont les évaluations correspondent le mieux : le score d'un restaurant est la somme
+     * des scores de ses évaluations.
+     * @param query les mots recherchés
+     * @param limit le nombre maximal de restaurants
+     * @return les ID de restaurant et leur score, du plus pertinent au moins pertinent
+     */
+    public Map<Integer, Double> searchRestaurants(String query, int limit) {
+        Map<Integer, Double> scores = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<Integer, Double> entry : scoreDocuments(query).entrySet()) {
+                scores.merge(documents.get(entry.getKey()).restaurantId, entry.getValue(), Double::sum);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return top(scores, limit);
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Découpe un texte en termes indexables
+     * @param text le texte à analyser, peut être null
+     * @return les termes, dans l'ordre du texte
+     */
+    static List<String> analyze(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase(Locale.ROOT)
+                .replace('œ', 'o').replace('æ', 'a');
+        for (String token : folded.split("[^\\p{L}\\p{N}]+")) {
+            if (token.isEmpty() || STOP_WORDS.contains(token)) {
+                continue;
+            }
+            terms.add(stem(token));
+        }
+        return terms;
+    }
+
+    private static String stem(String token) {
+        for (String suffix : SUFFIXES) {
+            if (token.endsWith(suffix) && token.length() - suffix.length() >= 3) {
+                return token.substring(0, token.length() - suffix.length());
+            }
+        }
+        return token;
+    }
+
+    private static AnalyzedDocument analyzeDocument(int evaluationId, int restaurantId, String username, String comment) {
+        List<String> terms = analyze(comment);
+        terms.addAll(analyze(username));
+
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String term : terms) {
+            frequencies.merge(term, 1, Integer::sum);
+        }
+        return new AnalyzedDocument(evaluationId, restaurantId, frequencies, terms.size());
+    }
+
+    /**
+     * Doit être appelé avec le verrou en écriture
+     */
+    private void addDocument(AnalyzedDocument document) {
+        for (Map.Entry<String, Integer> entry : document.frequencies.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), k -> new Postings()).add(document.evaluationId, entry.getValue());
+        }
+        documents.put(document.evaluationId, new Document(document.restaurantId, document.length));
+        totalLength += document.length;
+    }
+
+    private Map<Integer, Double> scoreDocuments(String query) {
+        Map<Integer, Double> scores = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            int count = documents.size();
+            if (count == 0) {
+                return scores;
+            }
+            double averageLength = Math.max(1, (double) totalLength / count);
+            for (String term : new HashSet<>(analyze(query))) {
+                Postings list = postings.get(term);
+                if (list == null) {
+                    continue;
+                }
+                // Le nombre de documents est celui de la liste, y compris d'éventuelles évaluations supprimées
+                double idf = Math.log(1 + (count - list.docFreq + 0.5) / (list.docFreq + 0.5));
+                list.forEach((evaluationId, frequency) -> {
+                    Document document = documents.get(evaluationId);
+                    if (document != null) {
+                        double norm = K1 * (1 - B + B * document.length / averageLength);
+                        scores.merge(evaluationId, idf * frequency * (K1 + 1) / (frequency + norm), Double::sum);
+                    }
+                });
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return scores;
+    }
+
+    private static Map<Integer, Double> top(Map<Integer, Double> scores, int limit) {
+        Map<Integer, Double> result = new LinkedHashMap<>();
+        scores.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed())
+                .limit(limit)
+                .forEach(entry -> result.put(entry.getKey(), entry.getValue()));
+        return result;
+    }
+
+    private long postingBytes() {
+        long bytes = 0;
+        for (Postings list : postings.values()) {
+            bytes += list.length;
+        }
+        return bytes;
+    }
+
+    private record Document(int restaurantId, int length) {
+    }
+
+    /**
+     * Évaluation analysée, pas encore indexée : fréquence de chacun de ses termes et nombre total de termes
+     */
+    private record AnalyzedDocument(int evaluationId, int restaurantId, Map<String, Integer> frequencies, int length) {
+    }
+
+    private interface PostingConsumer {
+        void accept(int evaluationId, int frequency);
+    }
+
+    /**
+     * Liste de postings compressée : (numéro - numéro précédent, fréquence) en varint
+     */
+    private static class Postings {
+
+        private byte[] data = new byte[8];
+        private int length;
+        private int lastId;
+        private int docFreq;
+
+        private void add(int evaluationId, int frequency) {
+            if (evaluationId <= lastId && docFreq > 0) {
+                insert(evaluationId, frequency);
+                return;
+            }
+            writeVarint(evaluationId - lastId);
+            writeVarint(frequency);
+            lastId = evaluationId;
+            docFreq++;
+        }
+
+        /**
+         * Numéro inférieur au dernier indexé (évaluation concurrente d'une autre instance, ou d'un fragment dont SEQ_EVAL
+         * est en retard) : la liste est réécrite
+         */
+        private void insert(int evaluationId, int frequency) {
+            Map<Integer, Integer> entries = new TreeMap<>();
+            forEach(entries::put);
+            entries.put(evaluationId, frequency);
+            data = new byte[Math.max(8, length + 10)];
+            length = 0;
+            lastId = 0;
+            docFreq = 0;
+            for (Map.Entry<Integer, Integer> entry : entries.entrySet()) {
+                add(entry.getKey(), entry.getValue());
+            }
+        }
+
+        private void forEach(PostingConsumer consumer) {
+            int position = 0;
+            int id = 0;
+            while (position < length) {
+                int value = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    value |= (b & 0x7f) << shift;
+                    shift += 7;
+                } while (b < 0);
+                id += value;
+
+                int frequency = 0;
+                shift = 0;
+                do {
+                    b = data[position++];
+                    frequency |= (b & 0x7f) << shift;
+                    shift += 7;
+                } while (b < 0);
+                consumer.accept(id, frequency);
+            }
+        }
+
+        private void writeVarint(int value) {
+            if (length + 5 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            while ((value & ~0x7f) != 0) {
+                data[length++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+    }
+}
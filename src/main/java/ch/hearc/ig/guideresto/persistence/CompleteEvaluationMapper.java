@@ -0,0 +1,240 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.CompleteEvaluation;
+import ch.hearc.ig.guideresto.business.Restaurant;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Mapper de la table COMMENTAIRES.
+ * Les notes des évaluations lues sont chargées en une seule fois par {@link GradeMapper#loadGrades(java.util.Collection)},
+ * après la lecture de toutes les évaluations de la requête.
+ */
+public class CompleteEvaluationMapper extends AbstractMapper<CompleteEvaluation> {
+
+    private static final String COLUMNS = "numero, date_eval, commentaire, nom_utilisateur, fk_rest";
+    private static final RowLayout LAYOUT = RowLayout.of(COLUMNS);
+    private static final int NUMERO = LAYOUT.index("numero");
+    private static final int DATE_EVAL = LAYOUT.index("date_eval");
+    private static final int COMMENTAIRE = LAYOUT.index("commentaire");
+    private static final int NOM_UTILISATEUR = LAYOUT.index("nom_utilisateur");
+    private static final int FK_REST = LAYOUT.index("fk_rest");
+    private static final String FIND_BY_ID_QUERY = "SELECT " + COLUMNS + " FROM COMMENTAIRES WHERE numero = ?";
+    private static final String FIND_ALL_QUERY = "SELECT " + COLUMNS + " FROM COMMENTAIRES ORDER BY numero";
+    private static final String FIND_BY_RESTAURANT_QUERY = "SELECT " + COLUMNS + " FROM COMMENTAIRES WHERE fk_rest = ? ORDER BY date_eval";
+    private static final String INSERT_QUERY = "INSERT INTO COMMENTAIRES (date_eval, commentaire, nom_utilisateur, fk_rest) VALUES (?, ?, ?, ?)";
+    private static final String UPDATE_QUERY = "UPDATE COMMENTAIRES SET date_eval = ?, commentaire = ?, nom_utilisateur = ?, fk_rest = ? WHERE numero = ?";
+    private static final String DELETE_QUERY = "DELETE FROM COMMENTAIRES WHERE numero = ?";
+
+    private static final CompleteEvaluationMapper instance = new CompleteEvaluationMapper();
+
+    static {
+        ChangeTracker.getInstance().register(instance);
+    }
+
+    private CompleteEvaluationMapper() {
+    }
+
+    public static CompleteEvaluationMapper getInstance() {
+        return instance;
+    }
+
+    @Override
+    public CompleteEvaluation findById(int id) {
+        CompleteEvaluation evaluation = getFromCache(id);
+        if (evaluation != null) {
+            return evaluation;
+        }
+        Connection connection = ConnectionUtils.getReadConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(FIND_BY_ID_QUERY)) {
+            stmt.setInt(1, id);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    evaluation = mapRow(rs, null);
+                    loadAssociations(List.of(evaluation));
+                    return evaluation;
+                }
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public Set<CompleteEvaluation> findAll() {
+        Set<CompleteEvaluation> evaluations = new LinkedHashSet<>();
+        Connection connection = ConnectionUtils.getReadConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(FIND_ALL_QUERY);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                evaluations.add(mapRow(rs, null));
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        loadAssociations(new ArrayList<>(evaluations));
+        return evaluations;
+    }
+
+    /**
+     * Charge les évaluations complètes d'un restaurant, avec leurs notes
+     * @param restaurant le restaurant évalué
+     * @return les évaluations complètes du restaurant
+     */
+    public Set<CompleteEvaluation> findByRestaurant(Restaurant restaurant) {
+        Set<CompleteEvaluation> evaluations = new LinkedHashSet<>();
+        Connection connection = ConnectionUtils.getReadConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(FIND_BY_RESTAURANT_QUERY)) {
+            stmt.setInt(1, restaurant.getId());
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    evaluations.add(mapRow(rs, restaurant));
+                }
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        loadAssociations(new ArrayList<>(evaluations));
+        return evaluations;
+    }
+
+    @Override
+    public CompleteEvaluation create(CompleteEvaluation evaluation) {
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(INSERT_QUERY)) {
+            setParameters(stmt, evaluation);
+            executeWrite(stmt);
+
+            evaluation.setId(getSequenceValue());
+            addToCacheAfterCommit(evaluation);
+            return evaluation;
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public boolean update(CompleteEvaluation evaluation) {
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(UPDATE_QUERY)) {
+            setParameters(stmt, evaluation);
+            stmt.setInt(5, evaluation.getId());
+            return executeWrite(stmt) > 0;
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return false;
+    }
+
+    @Override
+    public boolean delete(CompleteEvaluation evaluation) {
+        return deleteById(evaluation.getId());
+    }
+
+    @Override
+    public boolean deleteById(int id) {
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(DELETE_QUERY)) {
+            stmt.setInt(1, id);
+            removeFromCacheAfterCommit(id);
+            return executeWrite(stmt) > 0;
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return false;
+    }
+
+    private void setParameters(PreparedStatement stmt, CompleteEvaluation evaluation) throws SQLException {
+        stmt.setTimestamp(1, new Timestamp(evaluation.getVisitTime()));
+        stmt.setString(2, evaluation.getComment());
+        stmt.setString(3, evaluation.getUsername());
+        stmt.setInt(4, evaluation.getRestaurant().getId());
+    }
+
+    @Override
+    protected CompleteEvaluation mapRow(ResultSet rs) throws SQLException {
+        return mapRow(rs, null);
+    }
+
+    /**
+     * Construit l'évaluation de la ligne courante, ou retourne l'instance déjà présente dans le cache
+     * @param restaurant le restaurant évalué s'il est connu, sinon il est chargé via son mapper
+     */
+    private CompleteEvaluation mapRow(ResultSet rs, Restaurant restaurant) throws SQLException {
+        LAYOUT.verify(rs);
+        int id = rs.getInt(NUMERO);
+        CompleteEvaluation evaluation = getFromCache(id);
+        if (evaluation == null) {
+            if (restaurant == null) {
+                restaurant = RestaurantMapper.getInstance().findById(rs.getInt(FK_REST));
+            }
+            evaluation = new CompleteEvaluation(id, rs.getTimestamp(DATE_EVAL), restaurant,
+                    rs.getString(COMMENTAIRE), rs.getString(NOM_UTILISATEUR));
+            addToCache(evaluation);
+        }
+        return evaluation;
+    }
+
+    /**
+     * Charge en une fois les notes des évaluations qui n'en ont pas encore.
+     * Une évaluation en cache a déjà ses notes, sauf si elle n'en a aucune : elle est alors simplement relue dans le lot.
+     */
+    @Override
+    protected void loadAssociations(List<CompleteEvaluation> loaded) {
+        List<CompleteEvaluation> withoutGrades = new ArrayList<>();
+        for (CompleteEvaluation evaluation : loaded) {
+            if (evaluation.getGrades().isEmpty()) {
+                withoutGrades.add(evaluation);
+            }
+        }
+        GradeMapper.getInstance().loadGrades(withoutGrades);
+    }
+
+    @Override
+    protected String getSelectQuery() {
+        return "SELECT " + COLUMNS + " FROM COMMENTAIRES";
+    }
+
+    @Override
+    protected boolean isPartitioned() {
+        return true;
+    }
+
+    @Override
+    protected String getSequenceQuery() {
+        return "SELECT SEQ_EVAL.CURRVAL FROM dual";
+    }
+
+    @Override
+    protected String getExistsQuery() {
+        return "SELECT numero FROM COMMENTAIRES WHERE numero = ?";
+    }
+
+    @Override
+    protected String getCountQuery() {
+        return "SELECT COUNT(*) FROM COMMENTAIRES";
+    }
+
+    @Override
+    protected String getTableName() {
+        return "COMMENTAIRES";
+    }
+}
@@ -0,0 +1,34 @@
+package ch.hearc.ig.guideresto.persistence;
+
+/**
+ * Levée par un mapper lorsqu'une ligne a été modifiée par quelqu'un d'autre depuis qu'elle a été lue :
+ * sa colonne version ne correspond plus à celle de l'objet en mémoire. Aucune ligne n'a été modifiée,
+ * l'appelant doit annuler sa transaction puis relire l'objet avant de réessayer.
+ */
+public class ConcurrentUpdateException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String tableName;
+    private final int id;
+    private final int expectedVersion;
+
+    public ConcurrentUpdateException(String tableName, int id, int expectedVersion) {
+        super(tableName + " #" + id + " was modified concurrently (expected version " + expectedVersion + ")");
+        this.tableName = tableName;
+        this.id = id;
+        this.expectedVersion = expectedVersion;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getExpectedVersion() {
+        return expectedVersion;
+    }
+}
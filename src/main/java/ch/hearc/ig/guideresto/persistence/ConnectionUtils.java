@@ -6,8 +6,14 @@ import org.apache.logging.log4j.Logger;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Provide helper methods to deal with database connections.
@@ -20,36 +26,289 @@ public class ConnectionUtils {
 
     private static final Logger logger = LogManager.getLogger();
 
+    // Connexion partagée, ouverte au premier usage : accès sous le verrou de la classe (voir getSharedConnection())
     private static Connection connection;
 
+    // Connexions supplémentaires réservées aux threads de travail (voir AsyncMappers)
+    private static final ThreadLocal<Connection> boundConnection = new ThreadLocal<>();
+    private static final BlockingQueue<Connection> idleConnections = new LinkedBlockingQueue<>();
+    private static final AtomicInteger pooledConnections = new AtomicInteger();
+
+    // Connexion du fragment sur lequel travaille le thread, prioritaire sur toutes les autres (voir ShardRouter)
+    private static final ThreadLocal<Connection> shardConnection = new ThreadLocal<>();
+
+    // Lecture sur les réplicas : désactivée tant que le thread a écrit récemment sur la base principale
+    private static ReadReplicas readReplicas;
+    private static final long stickinessMillis = getIntProperty("database.read.stickiness.ms", 5000);
+    private static final ThreadLocal<Long> lastPrimaryUse = new ThreadLocal<>();
+    private static final ThreadLocal<Boolean> readYourWrites = ThreadLocal.withInitial(() -> false);
+
+    /**
+     * Retourne la connexion liée au thread courant s'il en a réservé une, sinon la connexion partagée de l'application.
+     * Il s'agit toujours de la base principale : à utiliser pour les écritures et tout ce qui dépend de la session (CURRVAL...).
+     */
     public static Connection getConnection() {
+        lastPrimaryUse.set(System.currentTimeMillis());
+        return getPrimaryConnection();
+    }
+
+    private static Connection getPrimaryConnection() {
+        Connection shard = shardConnection.get();
+        if (shard != null) {
+            return shard;
+        }
+        Connection bound = boundConnection.get();
+        if (bound != null) {
+            return bound;
+        }
+        return getSharedConnection();
+    }
+
+    /**
+     * Synchronisée : deux threads sans connexion réservée ne doivent pas ouvrir chacun une connexion partagée,
+     * dont l'une serait perdue sans être fermée.
+     */
+    private static synchronized Connection getSharedConnection() {
+        try {
+            // Initialize a connection if required
+            if (ConnectionUtils.connection == null || ConnectionUtils.connection.isClosed()) {
+                ConnectionUtils.connection = newConnection();
+            }
+        } catch (SQLException ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+        return ConnectionUtils.connection;
+    }
+
+    /**
+     * Retourne une connexion pour une lecture qui peut être servie par un réplica (database.read.urls).
+     * La base principale est utilisée s'il n'y a pas de réplica, si le thread est en mode read-your-writes,
+     * ou s'il a utilisé la base principale depuis moins de database.read.stickiness.ms, le temps que les réplicas
+     * reçoivent ses écritures.
+     */
+    public static Connection getReadConnection() {
+        Connection shard = shardConnection.get();
+        if (shard != null) {
+            return shard; // Les fragments n'ont pas de réplicas
+        }
+        ReadReplicas replicas = getReadReplicas();
+        Long lastWrite = lastPrimaryUse.get();
+        boolean recentWrite = lastWrite != null
+                && System.currentTimeMillis() - lastWrite < stickinessMillis;
+        if (replicas.isEmpty() || readYourWrites.get() || recentWrite) {
+            return getPrimaryConnection();
+        }
+        Connection replica = replicas.choose();
+        return replica != null ? replica : getPrimaryConnection();
+    }
+
+    /**
+     * Force les lectures du thread courant sur la base principale, par exemple pendant l'édition d'un restaurant
+     * @param enabled true pour lire sur la base principale, false pour revenir au routage normal
+     */
+    public static void setReadYourWrites(boolean enabled) {
+        readYourWrites.set(enabled);
+    }
+
+    private static synchronized ReadReplicas getReadReplicas() {
+        if (readReplicas == null) {
+            List<String> urls = new ArrayList<>();
+            String username = null;
+            String password = null;
+            String strategy = null;
+            try {
+                ResourceBundle dbProps = ResourceBundle.getBundle("database");
+                if (dbProps.containsKey("database.read.urls")) {
+                    urls = Arrays.asList(dbProps.getString("database.read.urls").split(","));
+                }
+                username = dbProps.containsKey("database.read.username") ? dbProps.getString("database.read.username") : dbProps.getString("database.username");
+                password = dbProps.containsKey("database.read.password") ? dbProps.getString("database.read.password") : dbProps.getString("database.password");
+                strategy = dbProps.containsKey("database.read.strategy") ? dbProps.getString("database.read.strategy") : "round-robin";
+            } catch (MissingResourceException ex) {
+                logger.error(ex.getMessage(), ex);
+            }
+            readReplicas = new ReadReplicas(urls, username, password, strategy, getIntProperty("database.read.pool.size", getPoolSize()));
+        }
+        return readReplicas;
+    }
+
+    /**
+     * Ouvre une nouvelle connexion, indépendante de la connexion partagée.
+     * Utile pour les traitements en arrière-plan qui ne doivent pas interférer avec les transactions de l'application.
+     * L'appelant est responsable de la fermer.
+     *
+     * @return Une nouvelle connexion en mode autoCommit false, ou null en cas d'erreur
+     */
+    public static Connection newConnection() {
+        return SlowQueryLog.wrap(newRawConnection());
+    }
+
+    /**
+     * Ouvre une nouvelle connexion sans mesure des requêtes lentes
+     * @return Une nouvelle connexion en mode autoCommit false, ou null en cas d'erreur
+     */
+    static Connection newRawConnection() {
         try {
             // Load database credentials from resources/database.properties
             ResourceBundle dbProps = ResourceBundle.getBundle("database");
-            String url = dbProps.getString("database.url");
-            String username = dbProps.getString("database.username");
-            String password = dbProps.getString("database.password");
+            return newRawConnection(dbProps.getString("database.url"), dbProps.getString("database.username"),
+                    dbProps.getString("database.password"));
+        } catch (MissingResourceException ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+        return null;
+    }
 
+    static Connection newRawConnection(String url, String username, String password) {
+        try {
             logger.info("Trying to connect to user schema '{}' with JDBC string '{}'", username, url);
 
-            // Initialize a connection if required
-            if (ConnectionUtils.connection == null || ConnectionUtils.connection.isClosed()) {
-                Connection connection = DriverManager.getConnection(url, username, password);
-                connection.setAutoCommit(false);
-                ConnectionUtils.connection = connection;
+            Connection connection = DriverManager.getConnection(url, username, password);
+            connection.setAutoCommit(false);
+            return connection;
+        } catch (SQLException ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+        return null;
+    }
+
+    /**
+     * Réserve une connexion du pool pour le thread courant : jusqu'à {@link #releaseBoundConnection(boolean)},
+     * {@link #getConnection()} retourne cette connexion au lieu de la connexion partagée.
+     * Bloque si toutes les connexions du pool sont utilisées.
+     */
+    public static void bindPooledConnection() {
+        Connection pooled = null;
+        try {
+            while (pooled == null) {
+                pooled = idleConnections.poll();
+                if (pooled == null) {
+                    if (pooledConnections.incrementAndGet() <= getPoolSize()) {
+                        pooled = newConnection();
+                        if (pooled == null) {
+                            pooledConnections.decrementAndGet();
+                            throw new IllegalStateException("Unable to open a pooled connection");
+                        }
+                    } else {
+                        pooledConnections.decrementAndGet();
+                        pooled = idleConnections.take();
+                    }
+                }
+                if (pooled.isClosed()) { // Connexion perdue : on l'oublie et on en reprend une autre
+                    pooledConnections.decrementAndGet();
+                    pooled = null;
+                }
             }
         } catch (SQLException ex) {
             logger.error(ex.getMessage(), ex);
-        } catch (MissingResourceException ex) {
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a pooled connection", ex);
+        }
+        boundConnection.set(pooled);
+    }
+
+    /**
+     * Lie une connexion dédiée, hors pool, au thread courant (voir TransactionManager)
+     * @param connection la connexion, ou null pour délier
+     */
+    static void bindConnection(Connection connection) {
+        if (connection == null) {
+            boundConnection.remove();
+        } else {
+            boundConnection.set(connection);
+        }
+    }
+
+    /**
+     * Dirige toutes les requêtes du thread courant vers la connexion d'un fragment
+     * @param connection la connexion du fragment, ou null pour revenir à la base principale
+     * @return la connexion de fragment liée auparavant, ou null
+     */
+    static Connection bindShardConnection(Connection connection) {
+        Connection previous = shardConnection.get();
+        if (connection == null) {
+            shardConnection.remove();
+        } else {
+            shardConnection.set(connection);
+        }
+        return previous;
+    }
+
+    /**
+     * Termine la transaction de la connexion réservée par le thread courant et la rend au pool.
+     * @param commit true pour valider la transaction, false pour l'annuler
+     */
+    public static void releaseBoundConnection(boolean commit) {
+        Connection bound = boundConnection.get();
+        if (bound == null) {
+            return;
+        }
+        boundConnection.remove();
+        try {
+            if (commit) {
+                bound.commit();
+            } else {
+                bound.rollback();
+            }
+        } catch (SQLException ex) {
             logger.error(ex.getMessage(), ex);
+        } finally {
+            idleConnections.offer(bound);
+        }
+    }
+
+    /**
+     * @return le nombre maximal de connexions du pool (database.pool.size, 4 par défaut)
+     */
+    public static int getPoolSize() {
+        return getIntProperty("database.pool.size", 4);
+    }
+
+    /**
+     * Lit une propriété numérique optionnelle de resources/database.properties
+     * @param key la clé de la propriété
+     * @param defaultValue la valeur retournée si la propriété est absente ou invalide
+     */
+    public static int getIntProperty(String key, int defaultValue) {
+        try {
+            ResourceBundle dbProps = ResourceBundle.getBundle("database");
+            return dbProps.containsKey(key) ? Integer.parseInt(dbProps.getString(key).trim()) : defaultValue;
+        } catch (MissingResourceException | NumberFormatException ex) {
+            logger.warn("Invalid property '{}', using default value {}", key, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Lit une propriété décimale optionnelle de resources/database.properties
+     * @param key la clé de la propriété
+     * @param defaultValue la valeur retournée si la propriété est absente ou invalide
+     */
+    public static double getDoubleProperty(String key, double defaultValue) {
+        try {
+            ResourceBundle dbProps = ResourceBundle.getBundle("database");
+            return dbProps.containsKey(key) ? Double.parseDouble(dbProps.getString(key).trim()) : defaultValue;
+        } catch (MissingResourceException | NumberFormatException ex) {
+            logger.warn("Invalid property '{}', using default value {}", key, defaultValue);
+            return defaultValue;
         }
-        return ConnectionUtils.connection;
     }
 
     public static void closeConnection() {
         try {
-            if (ConnectionUtils.connection != null && !ConnectionUtils.connection.isClosed()) {
-                ConnectionUtils.connection.close();
+            synchronized (ConnectionUtils.class) {
+                if (ConnectionUtils.connection != null && !ConnectionUtils.connection.isClosed()) {
+                    ConnectionUtils.connection.close();
+                }
+                if (readReplicas != null) {
+                    readReplicas.close();
+                }
+            }
+            Connection pooled;
+            while ((pooled = idleConnections.poll()) != null) {
+                pooled.close();
+                pooledConnections.decrementAndGet();
             }
         } catch (SQLException e) {
             logger.error(e.getMessage(), e);
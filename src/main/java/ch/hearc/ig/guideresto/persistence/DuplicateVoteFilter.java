@@ -0,0 +1,384 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Filtre de Bloom par restaurant des adresses IP ayant déjà voté (table LIKES).
+ * Une réponse négative est certaine et évite tout accès à la base ; une réponse positive n'est que probable
+ * et est confirmée par une requête exacte sur l'index de la contrainte UK_LIKES_REST_IP, qui garantit aussi
+ * l'unicité du vote lorsque deux votes identiques sont validés en même temps.
+ *
+ * Le taux de faux positifs (votefilter.fpp) et la mémoire totale des filtres (votefilter.memory.bytes) sont configurables.
+ * Un restaurant sans filtre, faute de mémoire, passe systématiquement par la requête exacte.
+ *
+ * Les filtres sont reconstruits à côté de ceux en service, qui restent consultés jusqu'au remplacement : un filtre
+ * vide ou incomplet répondrait "jamais voté" à tort. Les votes enregistrés pendant la lecture de LIKES sont ajoutés
+ * aux deux. Si la lecture échoue, les filtres en service sont gardés.
+ */
+public class DuplicateVoteFilter {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final String COUNT_QUERY = "SELECT fk_rest, COUNT(*) FROM LIKES GROUP BY fk_rest";
+    private static final String VOTES_QUERY = "SELECT fk_rest, adresse_ip FROM LIKES";
+    private static final String VOTES_BY_RESTAURANT_QUERY = "SELECT adresse_ip FROM LIKES WHERE fk_rest = ?";
+    private static final int MIN_CAPACITY = 64;
+
+    private static final DuplicateVoteFilter instance = new DuplicateVoteFilter();
+
+    private final double falsePositiveRate;
+    private final long memoryBudget;
+    // Avant la première reconstruction, aucun filtre : toutes les vérifications passent par la base
+    private volatile Filters filters = new Filters(false);
+    // Filtres en cours de reconstruction par rebuild(), null sinon
+    private volatile Filters rebuilding;
+
+    private DuplicateVoteFilter() {
+        falsePositiveRate = ConnectionUtils.getDoubleProperty("votefilter.fpp", 0.01);
+        memoryBudget = ConnectionUtils.getIntProperty("votefilter.memory.bytes", 16 * 1024 * 1024);
+    }
+
+    public static DuplicateVoteFilter getInstance() {
+        return instance;
+    }
+
+    /**
+     * Reconstruit tous les filtres à partir de la table LIKES, en une lecture séquentielle de chaque fragment,
+     * puis les met en service d'un coup. Si la lecture d'un fragment échoue, les filtres en service sont gardés.
+     */
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        Filters next = new Filters(true);
+        rebuilding = next;
+        long[] votes = new long[1];
+        boolean[] failed = new boolean[1];
+        try {
+            ShardRouter.getInstance().forEachShard(() -> {
+                long loaded = loadVotes(next);
+                if (loaded < 0) {
+                    failed[0] = true;
+                } else {
+                    votes[0] += loaded;
+                }
+            });
+            if (failed[0]) {
+                logger.error("Vote filters not rebuilt, the filters in service are kept");
+                return;
+            }
+            filters = next;
+        } finally {
+            rebuilding = null;
+        }
+        logger.info("Vote filters rebuilt: {} votes, {} restaurants, {} bytes in {} ms",
+                votes[0], next.byRestaurant.size(), next.usedBytes.get(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Crée les filtres des restaurants de la base courante et y ajoute leurs votes.
+     * La lecture se fait sur la base principale : un réplica en retard manquerait des votes déjà enregistrés.
+     * @return le nombre de votes lus, ou -1 en cas d'erreur : les filtres créés sont alors incomplets
+     */
+    private long loadVotes(Filters next) {
+        Connection connection = ConnectionUtils.getConnection();
+        long votes = 0;
+
+        try {
+            // Dimensionnement des filtres selon le nombre de votes existants de chaque restaurant
+            Map<Integer, Integer> counts = new HashMap<>();
+            try (PreparedStatement stmt = connection.prepareStatement(COUNT_QUERY);
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    counts.put(rs.getInt(1), rs.getInt(2));
+                }
+            }
+            for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+                next.create(entry.getKey(), entry.getValue() * 2);
+            }
+
+            try (PreparedStatement stmt = connection.prepareStatement(VOTES_QUERY)) {
+                stmt.setFetchSize(1000);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        BloomFilter filter = next.byRestaurant.get(rs.getInt(1));
+                        if (filter != null) {
+                            filter.add(rs.getInt(1), rs.getString(2));
+                        }
+                        votes++;
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+            return -1;
+        }
+        return votes;
+    }
+
+    /**
+     * Indique si l'adresse IP a déjà voté pour le restaurant.
+     * La base n'est interrogée que si le filtre répond "probablement".
+     *
+     * @param restaurantId l'ID du restaurant évalué
+     * @param ipAddress l'adresse IP du votant
+     * @return true si un vote existe déjà
+     */
+    public boolean isDuplicate(int restaurantId, String ipAddress) {
+        BloomFilter filter = filters.byRestaurant.get(restaurantId);
+        if (filter != null && !filter.mightContain(restaurantId, ipAddress)) {
+            return false;
+        }
+        return BasicEvaluationMapper.getInstance().existsByRestaurantAndIp(restaurantId, ipAddress);
+    }
+
+    /**
+     * Enregistre un vote validé en base
+     * @param restaurantId l'ID du restaurant évalué
+     * @param ipAddress l'adresse IP du votant
+     */
+    public void recordVote(int restaurantId, String ipAddress) {
+        Filters current = filters;
+        BloomFilter filter = current.byRestaurant.get(restaurantId);
+        if (filter == null && current.fromLikes) {
+            filter = current.create(restaurantId, MIN_CAPACITY);
+        }
+        if (filter != null) {
+            filter.add(restaurantId, ipAddress);
+            // Au-delà de sa capacité le taux de faux positifs se dégrade : le filtre est reconstruit deux fois plus grand
+            if (filter.isFull() && filter.claimReload()) {
+                reload(current, restaurantId, filter);
+            }
+        }
+        Filters next = rebuilding;
+        if (next != null && next != current) {
+            BloomFilter pending = next.byRestaurant.get(restaurantId);
+            if (pending == null) {
+                pending = next.create(restaurantId, MIN_CAPACITY);
+            }
+            if (pending != null) {
+                pending.add(restaurantId, ipAddress);
+            }
+        }
+    }
+
+    /**
+     * Oublie le filtre d'un restaurant supprimé
+     * @param restaurantId l'ID du restaurant
+     */
+    public void forget(int restaurantId) {
+        filters.remove(restaurantId);
+        Filters next = rebuilding;
+        if (next != null) {
+            next.remove(restaurantId);
+        }
+    }
+
+    public long getUsedBytes() {
+        return filters.usedBytes.get();
+    }
+
+    /**
+     * Remplit un filtre deux fois plus grand à côté de l'ancien, qui reste en service et lui transmet les votes
+     * enregistrés entre-temps, puis le remplace. Attend la fin du préchargement : pendant la reconstruction,
+     * le filtre plein appartient à une génération qui va être remplacée.
+     */
+    private void reload(Filters current, int restaurantId, BloomFilter full) {
+        CacheWarmup.getInstance().await(CacheWarmup.Part.VOTE_FILTER);
+        if (current != filters) {
+            // La reconstruction a dimensionné le nouveau filtre d'après les votes en base
+            return;
+        }
+        BloomFilter filter = current.allocate(restaurantId, full.capacity * 2);
+        if (filter == null) {
+            return;
+        }
+        full.forwardTo(filter);
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(VOTES_BY_RESTAURANT_QUERY)) {
+            stmt.setInt(1, restaurantId);
+            stmt.setFetchSize(1000);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    filter.add(restaurantId, rs.getString(1));
+                }
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+            full.forwardTo(null);
+            current.usedBytes.addAndGet(-filter.sizeInBytes());
+            return;
+        }
+        current.replace(restaurantId, full, filter);
+    }
+
+    /**
+     * Une génération de filtres et la mémoire qu'elle occupe
+     */
+    private class Filters {
+
+        private final Map<Integer, BloomFilter> byRestaurant = new ConcurrentHashMap<>();
+        private final AtomicLong usedBytes = new AtomicLong();
+        // Génération lue dans LIKES : un restaurant sans filtre n'avait aucun vote, son premier vote peut en créer un.
+        // Sinon, un filtre créé au premier vote ignorerait les votes déjà en base
+        private final boolean fromLikes;
+
+        private Filters(boolean fromLikes) {
+            this.fromLikes = fromLikes;
+        }
+
+        /**
+         * Crée le filtre d'un restaurant s'il reste de la mémoire dans le budget
+         * @return le filtre créé, ou null si le budget est atteint
+         */
+        private BloomFilter create(int restaurantId, int capacity) {
+            BloomFilter filter = allocate(restaurantId, capacity);
+            if (filter == null) {
+                return null;
+            }
+            BloomFilter existing = byRestaurant.putIfAbsent(restaurantId, filter);
+            if (existing != null) {
+                usedBytes.addAndGet(-filter.sizeInBytes());
+                return existing;
+            }
+            return filter;
+        }
+
+        /**
+         * Réserve la mémoire d'un filtre sans le mettre en service
+         * @return le filtre, ou null si le budget est atteint
+         */
+        private BloomFilter allocate(int restaurantId, int capacity) {
+            BloomFilter filter = new BloomFilter(Math.max(capacity, MIN_CAPACITY), falsePositiveRate);
+            if (usedBytes.addAndGet(filter.sizeInBytes()) > memoryBudget) {
+                usedBytes.addAndGet(-filter.sizeInBytes());
+                logger.warn("Vote filter memory budget reached, restaurant {} will use exact checks", restaurantId);
+                return null;
+            }
+            return filter;
+        }
+
+        private void replace(int restaurantId, BloomFilter previous, BloomFilter filter) {
+            if (byRestaurant.replace(restaurantId, previous, filter)) {
+                usedBytes.addAndGet(-previous.sizeInBytes());
+            } else {
+                // Restaurant oublié pendant le rechargement
+                usedBytes.addAndGet(-filter.sizeInBytes());
+            }
+        }
+
+        private void remove(int restaurantId) {
+            BloomFilter filter = byRestaurant.remove(restaurantId);
+            if (filter != null) {
+                usedBytes.addAndGet(-filter.sizeInBytes());
+            }
+        }
+    }
+
+    /**
+     * Filtre de Bloom à double hachage sur la paire (restaurant, adresse IP)
+     */
+    private static class BloomFilter {
+
+        private final long[] bits;
+        private final int bitCount;
+        private final int hashCount;
+        private final int capacity;
+        private int size;
+        private boolean reloading;
+        // Filtre plus grand en cours de remplissage, qui reçoit aussi les votes ajoutés à celui-ci
+        private BloomFilter successor;
+
+        private BloomFilter(int capacity, double falsePositiveRate) {
+            this.capacity = capacity;
+            // m = -n ln(p) / ln(2)², k = m/n ln(2)
+            long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.bitCount = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, optimalBits));
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+            this.bits = new long[(bitCount + 63) / 64];
+        }
+
+        private synchronized void add(int restaurantId, String ipAddress) {
+            long hash = hash(restaurantId, ipAddress);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashCount; i++) {
+                int bit = Math.floorMod(h1 + i * h2, bitCount);
+                bits[bit >>> 6] |= 1L << bit;
+            }
+            size++;
+            if (successor != null) {
+                successor.add(restaurantId, ipAddress);
+            }
+        }
+
+        private synchronized boolean mightContain(int restaurantId, String ipAddress) {
+            long hash = hash(restaurantId, ipAddress);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashCount; i++) {
+                int bit = Math.floorMod(h1 + i * h2, bitCount);
+                if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private synchronized boolean isFull() {
+            return size > capacity;
+        }
+
+        /**
+         * @return true pour le seul appelant chargé de reconstruire le filtre plein
+         */
+        private synchronized boolean claimReload() {
+            if (reloading) {
+                return false;
+            }
+            reloading = true;
+            return true;
+        }
+
+        private synchronized void forwardTo(BloomFilter filter) {
+            successor = filter;
+            if (filter == null) {
+                reloading = false;
+            }
+        }
+
+        private long sizeInBytes() {
+            return bits.length * 8L;
+        }
+
+        /**
+         * FNV-1a 64 bits sur l'ID du restaurant et l'adresse, suivi d'un mélange final pour répartir les deux moitiés
+         */
+        private static long hash(int restaurantId, String ipAddress) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < 4; i++) {
+                hash ^= (restaurantId >>> (i * 8)) & 0xff;
+                hash *= 0x100000001b3L;
+            }
+            for (byte b : ipAddress.getBytes(StandardCharsets.UTF_8)) {
+                hash ^= b & 0xff;
+                hash *= 0x100000001b3L;
+            }
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+}
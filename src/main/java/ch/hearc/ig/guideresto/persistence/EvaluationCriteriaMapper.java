@@ -0,0 +1,164 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.EvaluationCriteria;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Mapper de la table CRITERES_EVALUATION
+ */
+public class EvaluationCriteriaMapper extends AbstractMapper<EvaluationCriteria> {
+
+    private static final String FIND_BY_ID_QUERY = "SELECT numero, nom, description FROM CRITERES_EVALUATION WHERE numero = ?";
+    private static final String FIND_ALL_QUERY = "SELECT numero, nom, description FROM CRITERES_EVALUATION ORDER BY numero";
+    private static final String INSERT_QUERY = "INSERT INTO CRITERES_EVALUATION (nom, description) VALUES (?, ?)";
+    private static final String UPDATE_QUERY = "UPDATE CRITERES_EVALUATION SET nom = ?, description = ? WHERE numero = ?";
+    private static final String DELETE_QUERY = "DELETE FROM CRITERES_EVALUATION WHERE numero = ?";
+
+    private static final EvaluationCriteriaMapper instance = new EvaluationCriteriaMapper();
+
+    static {
+        ChangeTracker.getInstance().register(instance);
+    }
+
+    private EvaluationCriteriaMapper() {
+    }
+
+    public static EvaluationCriteriaMapper getInstance() {
+        return instance;
+    }
+
+    @Override
+    public EvaluationCriteria findById(int id) {
+        EvaluationCriteria criteria = getFromCache(id);
+        if (criteria != null) {
+            return criteria;
+        }
+        Connection connection = ConnectionUtils.getReadConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(FIND_BY_ID_QUERY)) {
+            stmt.setInt(1, id);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return mapRow(rs);
+                }
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public Set<EvaluationCriteria> findAll() {
+        Set<EvaluationCriteria> criterias = new LinkedHashSet<>();
+        Connection connection = ConnectionUtils.getReadConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(FIND_ALL_QUERY);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                criterias.add(mapRow(rs));
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return criterias;
+    }
+
+    @Override
+    public EvaluationCriteria create(EvaluationCriteria criteria) {
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(INSERT_QUERY)) {
+            stmt.setString(1, criteria.getName());
+            stmt.setString(2, criteria.getDescription());
+            executeWrite(stmt);
+
+            criteria.setId(getSequenceValue());
+            addToCacheAfterCommit(criteria);
+            return criteria;
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public boolean update(EvaluationCriteria criteria) {
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(UPDATE_QUERY)) {
+            stmt.setString(1, criteria.getName());
+            stmt.setString(2, criteria.getDescription());
+            stmt.setInt(3, criteria.getId());
+            return executeWrite(stmt) > 0;
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return false;
+    }
+
+    @Override
+    public boolean delete(EvaluationCriteria criteria) {
+        return deleteById(criteria.getId());
+    }
+
+    @Override
+    public boolean deleteById(int id) {
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(DELETE_QUERY)) {
+            stmt.setInt(1, id);
+            removeFromCacheAfterCommit(id);
+            return executeWrite(stmt) > 0;
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Construit le critère de la ligne courante, ou retourne l'instance déjà présente dans le cache
+     */
+    @Override
+    protected EvaluationCriteria mapRow(ResultSet rs) throws SQLException {
+        int id = rs.getInt("numero");
+        EvaluationCriteria criteria = getFromCache(id);
+        if (criteria == null) {
+            criteria = new EvaluationCriteria(id, rs.getString("nom"), rs.getString("description"));
+            addToCache(criteria);
+        }
+        return criteria;
+    }
+
+    @Override
+    protected String getSelectQuery() {
+        return "SELECT numero, nom, description FROM CRITERES_EVALUATION";
+    }
+
+    @Override
+    protected String getSequenceQuery() {
+        return "SELECT SEQ_CRITERES_EVALUATION.CURRVAL FROM dual";
+    }
+
+    @Override
+    protected String getExistsQuery() {
+        return "SELECT numero FROM CRITERES_EVALUATION WHERE numero = ?";
+    }
+
+    @Override
+    protected String getCountQuery() {
+        return "SELECT COUNT(*) FROM CRITERES_EVALUATION";
+    }
+
+    @Override
+    protected String getTableName() {
+        return "CRITERES_EVALUATION";
+    }
+}
@@ -0,0 +1,375 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.BasicEvaluation;
+import ch.hearc.ig.guideresto.business.CompleteEvaluation;
+import ch.hearc.ig.guideresto.business.Evaluation;
+import ch.hearc.ig.guideresto.business.Grade;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Statistiques d'évaluations par restaurant sur des fenêtres glissantes : pour chaque jour et chaque semaine (du lundi
+ * au dimanche), le nombre de likes, de dislikes, de commentaires et la moyenne des notes.
+ *
+ * Chaque restaurant a deux tampons circulaires de taille fixe (trends.days jours, trends.weeks semaines) :
+ * une case dont la période est dépassée est réutilisée pour la nouvelle période, l'historique plus ancien est donc
+ * oublié sans aucun nettoyage. Les tampons sont remplis par une lecture unique de LIKES et COMMENTAIRES au démarrage,
+ * puis à chaque nouvelle évaluation. Cette lecture remplit de nouveaux tampons, mis en service d'un coup : les statistiques
+ * consultées entre-temps sont les précédentes, jamais des statistiques à moitié chargées. Les évaluations enregistrées
+ * et les restaurants oubliés pendant la lecture sont reportés sur les nouveaux tampons au moment de leur mise en service,
+ * sauf les évaluations que la lecture a déjà comptées.
+ */
+public class EvaluationTrends {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final String BACKFILL_QUERY =
+            "SELECT l.fk_rest, l.date_eval, l.appreciation, 0 AS nb_notes, 0 AS somme_notes, l.numero FROM LIKES l WHERE l.date_eval >= ? " +
+            "UNION ALL " +
+            "SELECT c.fk_rest, c.date_eval, 'C', COUNT(n.numero), NVL(SUM(n.note), 0), c.numero FROM COMMENTAIRES c " +
+            "LEFT JOIN NOTES n ON n.fk_comm = c.numero WHERE c.date_eval >= ? GROUP BY c.numero, c.fk_rest, c.date_eval";
+
+    private static final EvaluationTrends instance = new EvaluationTrends();
+
+    private volatile Map<Integer, Series> series = new ConcurrentHashMap<>();
+    // Reconstruction en cours par backfill(), null sinon ; lue et modifiée sous le verrou de l'instance
+    private Backfill backfilling;
+    private final int dayCount;
+    private final int weekCount;
+
+    private EvaluationTrends() {
+        dayCount = Math.max(7, ConnectionUtils.getIntProperty("trends.days", 35));
+        weekCount = Math.max(2, ConnectionUtils.getIntProperty("trends.weeks", 26));
+    }
+
+    public static EvaluationTrends getInstance() {
+        return instance;
+    }
+
+    /**
+     * Recalcule toutes les statistiques en une lecture, par fragment, des évaluations comprises dans la fenêtre la plus longue
+     */
+    public void backfill() {
+        Backfill backfill = new Backfill();
+        synchronized (this) {
+            if (backfilling != null) {
+                logger.info("Evaluation trends backfill already running");
+                return;
+            }
+            backfilling = backfill;
+        }
+        long start = System.currentTimeMillis();
+        Map<Integer, Series> next = new ConcurrentHashMap<>();
+        long today = LocalDate.now().toEpochDay();
+        long firstDay = Math.min(today - dayCount + 1, firstDayOfWeek(week(today) - weekCount + 1));
+        Date cutoff = Date.valueOf(LocalDate.ofEpochDay(firstDay));
+        long[] rows = new long[1];
+        try {
+            ShardRouter.getInstance().forEachShard(() -> rows[0] += loadEvaluations(cutoff, next, backfill.loaded));
+        } finally {
+            synchronized (this) {
+                backfilling = null;
+                for (Recorded recorded : backfill.recorded) {
+                    if (recorded.evaluationId == null || !backfill.loaded.get(recorded.evaluationId)) {
+                        seriesOf(next, recorded.restaurantId).add(recorded.day, recorded.likes, recorded.dislikes,
+                                recorded.comments, recorded.gradeSum, recorded.gradeCount);
+                    }
+                }
+                next.keySet().removeAll(backfill.forgotten);
+                series = next;
+            }
+        }
+        logger.info("Evaluation trends backfilled: {} evaluations since {}, {} restaurants, {} recorded meanwhile in {} ms",
+                rows[0], cutoff, next.size(), backfill.recorded.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @param loaded reçoit les numéros des évaluations comptabilisées
+     * @return le nombre d'évaluations de la base courante comptabilisées
+     */
+    private long loadEvaluations(Date cutoff, Map<Integer, Series> next, BitSet loaded) {
+        Connection connection = ConnectionUtils.getReadConnection();
+        long rows = 0;
+
+        try (PreparedStatement stmt = connection.prepareStatement(BACKFILL_QUERY)) {
+            stmt.setDate(1, cutoff);
+            stmt.setDate(2, cutoff);
+            stmt.setFetchSize(1000);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String kind = rs.getString(3);
+                    long day = rs.getDate(2).toLocalDate().toEpochDay();
+                    seriesOf(next, rs.getInt(1)).add(day, "T".equals(kind) ? 1 : 0, "F".equals(kind) ? 1 : 0,
+                            "C".equals(kind) ? 1 : 0, rs.getLong(5), rs.getInt(4));
+                    loaded.set(rs.getInt(6));
+                    rows++;
+                }
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return rows;
+    }
+
+    /**
+     * Comptabilise un like ou un dislike qui vient d'être enregistré
+     */
+    public void record(BasicEvaluation evaluation) {
+        boolean like = Boolean.TRUE.equals(evaluation.getLikeRestaurant());
+        record(evaluation, like ? 1 : 0, like ? 0 : 1, 0, 0, 0);
+    }
+
+    /**
+     * Comptabilise une évaluation complète qui vient d'être enregistrée, avec ses notes
+     */
+    public void record(CompleteEvaluation evaluation) {
+        long gradeSum = 0;
+        int gradeCount = 0;
+        for (Grade grade : evaluation.getGrades()) {
+            if (grade.getGrade() != null) {
+                gradeSum += grade.getGrade();
+                gradeCount++;
+            }
+        }
+        record(evaluation, 0, 0, 1, gradeSum, gradeCount);
+    }
+
+    private synchronized void record(Evaluation evaluation, int likes, int dislikes, int comments, long gradeSum, int gradeCount) {
+        int restaurantId = evaluation.getRestaurant().getId();
+        long day = dayOf(evaluation);
+        seriesOf(restaurantId).add(day, likes, dislikes, comments, gradeSum, gradeCount);
+        if (backfilling != null) {
+            backfilling.recorded.add(new Recorded(evaluation.getId(), restaurantId, day, likes, dislikes, comments, gradeSum, gradeCount));
+        }
+    }
+
+    /**
+     * Oublie les statistiques d'un restaurant supprimé
+     */
+    public synchronized void forget(int restaurantId) {
+        series.remove(restaurantId);
+        if (backfilling != null) {
+            backfilling.forgotten.add(restaurantId);
+        }
+    }
+
+    /**
+     * @param days nombre de jours, au plus trends.days
+     * @return les statistiques des derniers jours, du plus ancien à aujourd'hui
+     */
+    public List<Bucket> getDailyStats(int restaurantId, int days) {
+        long today = LocalDate.now().toEpochDay();
+        Series restaurantSeries = series.get(restaurantId);
+        List<Bucket> buckets = new ArrayList<>();
+        for (long day = today - Math.min(days, dayCount) + 1; day <= today; day++) {
+            buckets.add(restaurantSeries == null ? Bucket.empty(LocalDate.ofEpochDay(day)) : restaurantSeries.days.get(day, LocalDate.ofEpochDay(day)));
+        }
+        return buckets;
+    }
+
+    /**
+     * @param weeks nombre de semaines, au plus trends.weeks
+     * @return les statistiques des dernières semaines, de la plus ancienne à la semaine en cours
+     */
+    public List<Bucket> getWeeklyStats(int restaurantId, int weeks) {
+        long currentWeek = week(LocalDate.now().toEpochDay());
+        Series restaurantSeries = series.get(restaurantId);
+        List<Bucket> buckets = new ArrayList<>();
+        for (long week = currentWeek - Math.min(weeks, weekCount) + 1; week <= currentWeek; week++) {
+            LocalDate start = LocalDate.ofEpochDay(firstDayOfWeek(week));
+            buckets.add(restaurantSeries == null ? Bucket.empty(start) : restaurantSeries.weeks.get(week, start));
+        }
+        return buckets;
+    }
+
+    /**
+     * Restaurants les plus actifs des 7 derniers jours : likes et commentaires comptent positivement, dislikes négativement,
+     * la moyenne des notes départage les ex aequo. Seuls les 7 derniers jours de chaque tampon sont lus.
+     *
+     * @param limit le nombre maximal de restaurants
+     * @return les ID de restaurant et leurs statistiques sur 7 jours, du plus au moins tendance
+     */
+    public Map<Integer, Bucket> getTrending(int limit) {
+        long today = LocalDate.now().toEpochDay();
+        LocalDate from = LocalDate.ofEpochDay(today - 6);
+        List<Map.Entry<Integer, Bucket>> candidates = new ArrayList<>();
+        for (Map.Entry<Integer, Series> entry : series.entrySet()) {
+            Bucket lastWeek = entry.getValue().days.sum(today - 6, today, from);
+            if (lastWeek.score() > 0) {
+                candidates.add(Map.entry(entry.getKey(), lastWeek));
+            }
+        }
+        candidates.sort(Comparator.<Map.Entry<Integer, Bucket>>comparingLong(entry -> entry.getValue().score())
+                .thenComparingDouble(entry -> entry.getValue().averageGrade())
+                .reversed());
+
+        Map<Integer, Bucket> trending = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Bucket> entry : candidates.subList(0, Math.min(limit, candidates.size()))) {
+            trending.put(entry.getKey(), entry.getValue());
+        }
+        return trending;
+    }
+
+    private Series seriesOf(int restaurantId) {
+        return seriesOf(series, restaurantId);
+    }
+
+    private Series seriesOf(Map<Integer, Series> restaurants, int restaurantId) {
+        return restaurants.computeIfAbsent(restaurantId, k -> new Series(dayCount, weekCount));
+    }
+
+    private static long dayOf(Evaluation evaluation) {
+        if (!evaluation.hasVisitDate()) {
+            return LocalDate.now().toEpochDay();
+        }
+        return Instant.ofEpochMilli(evaluation.getVisitTime()).atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+    }
+
+    /**
+     * Numéro de semaine depuis l'époque ; le 1er janvier 1970 était un jeudi, les semaines commencent le lundi
+     */
+    static long week(long epochDay) {
+        return Math.floorDiv(epochDay + 3, 7);
+    }
+
+    static long firstDayOfWeek(long week) {
+        return week * 7 - 3;
+    }
+
+    /**
+     * Statistiques d'une période
+     * @param start premier jour de la période
+     */
+    public record Bucket(LocalDate start, int likes, int dislikes, int comments, long gradeSum, int gradeCount) {
+
+        private static Bucket empty(LocalDate start) {
+            return new Bucket(start, 0, 0, 0, 0, 0);
+        }
+
+        public double averageGrade() {
+            return gradeCount == 0 ? 0 : (double) gradeSum / gradeCount;
+        }
+
+        private long score() {
+            return likes + comments - dislikes;
+        }
+    }
+
+    /**
+     * Ce qui s'est passé pendant une lecture de backfill(), à reporter sur les nouveaux tampons
+     */
+    private static class Backfill {
+
+        // Numéros des évaluations déjà comptées par la lecture (LIKES et COMMENTAIRES partagent SEQ_EVAL),
+        // écrits et lus par le seul thread de backfill()
+        private final BitSet loaded = new BitSet();
+        private final List<Recorded> recorded = new ArrayList<>();
+        private final Set<Integer> forgotten = new HashSet<>();
+    }
+
+    private record Recorded(Integer evaluationId, int restaurantId, long day, int likes, int dislikes, int comments,
+                            long gradeSum, int gradeCount) {
+    }
+
+    private static class Series {
+
+        private final Ring days;
+        private final Ring weeks;
+
+        private Series(int dayCount, int weekCount) {
+            days = new Ring(dayCount);
+            weeks = new Ring(weekCount);
+        }
+
+        private void add(long day, int likes, int dislikes, int comments, long gradeSum, int gradeCount) {
+            days.add(day, likes, dislikes, comments, gradeSum, gradeCount);
+            weeks.add(week(day), likes, dislikes, comments, gradeSum, gradeCount);
+        }
+    }
+
+    /**
+     * Tampon circulaire : la période p occupe la case p modulo la taille. La période stockée dans chaque case permet
+     * de savoir si son contenu est encore valable ou s'il appartient à une période sortie de la fenêtre.
+     */
+    private static class Ring {
+
+        private final long[] periods;
+        private final int[] likes;
+        private final int[] dislikes;
+        private final int[] comments;
+        private final long[] gradeSums;
+        private final int[] gradeCounts;
+
+        private Ring(int size) {
+            periods = new long[size];
+            Arrays.fill(periods, Long.MIN_VALUE);
+            likes = new int[size];
+            dislikes = new int[size];
+            comments = new int[size];
+            gradeSums = new long[size];
+            gradeCounts = new int[size];
+        }
+
+        private synchronized void add(long period, int like, int dislike, int comment, long gradeSum, int gradeCount) {
+            int slot = (int) Math.floorMod(period, (long) periods.length);
+            if (periods[slot] != period) {
+                if (periods[slot] > period) {
+                    return; // Période plus ancienne que celle de la case : hors de la fenêtre
+                }
+                periods[slot] = period;
+                likes[slot] = 0;
+                dislikes[slot] = 0;
+                comments[slot] = 0;
+                gradeSums[slot] = 0;
+                gradeCounts[slot] = 0;
+            }
+            likes[slot] += like;
+            dislikes[slot] += dislike;
+            comments[slot] += comment;
+            gradeSums[slot] += gradeSum;
+            gradeCounts[slot] += gradeCount;
+        }
+
+        private Bucket get(long period, LocalDate start) {
+            return sum(period, period, start);
+        }
+
+        private synchronized Bucket sum(long from, long to, LocalDate start) {
+            int totalLikes = 0;
+            int totalDislikes = 0;
+            int totalComments = 0;
+            long totalGrades = 0;
+            int totalGradeCount = 0;
+            for (long period = from; period <= to; period++) {
+                int slot = (int) Math.floorMod(period, (long) periods.length);
+                if (periods[slot] == period) {
+                    totalLikes += likes[slot];
+                    totalDislikes += dislikes[slot];
+                    totalComments += comments[slot];
+                    totalGrades += gradeSums[slot];
+                    totalGradeCount += gradeCounts[slot];
+                }
+            }
+            return new Bucket(start, totalLikes, totalDislikes, totalComments, totalGrades, totalGradeCount);
+        }
+    }
+}
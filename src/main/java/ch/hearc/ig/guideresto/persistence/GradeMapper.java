@@ -0,0 +1,290 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.CompleteEvaluation;
+import ch.hearc.ig.guideresto.business.EvaluationCriteria;
+import ch.hearc.ig.guideresto.business.Grade;
+import ch.hearc.ig.guideresto.business.Restaurant;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Mapper de la table NOTES
+ */
+public class GradeMapper extends AbstractMapper<Grade> {
+
+    private static final String COLUMNS = "numero, note, fk_comm, fk_crit";
+    private static final RowLayout LAYOUT = RowLayout.of(COLUMNS);
+    private static final int NUMERO = LAYOUT.index("numero");
+    private static final int NOTE = LAYOUT.index("note");
+    private static final int FK_COMM = LAYOUT.index("fk_comm");
+    private static final int FK_CRIT = LAYOUT.index("fk_crit");
+    private static final String FIND_BY_ID_QUERY = "SELECT " + COLUMNS + " FROM NOTES WHERE numero = ?";
+    private static final String FIND_ALL_QUERY = "SELECT " + COLUMNS + " FROM NOTES ORDER BY numero";
+    private static final String FIND_BY_EVALUATION_QUERY = "SELECT " + COLUMNS + " FROM NOTES WHERE fk_comm = ? ORDER BY fk_crit";
+    private static final String AVERAGES_BY_RESTAURANT_QUERY = "SELECT n.fk_crit, AVG(n.note) FROM NOTES n " +
+            "INNER JOIN COMMENTAIRES c ON c.numero = n.fk_comm WHERE c.fk_rest = ? GROUP BY n.fk_crit ORDER BY n.fk_crit";
+    private static final String INSERT_QUERY = "INSERT INTO NOTES (note, fk_comm, fk_crit) VALUES (?, ?, ?)";
+    private static final String UPDATE_QUERY = "UPDATE NOTES SET note = ?, fk_comm = ?, fk_crit = ? WHERE numero = ?";
+    private static final String DELETE_QUERY = "DELETE FROM NOTES WHERE numero = ?";
+
+    private static final GradeMapper instance = new GradeMapper();
+
+    static {
+        ChangeTracker.getInstance().register(instance);
+    }
+
+    private GradeMapper() {
+    }
+
+    public static GradeMapper getInstance() {
+        return instance;
+    }
+
+    @Override
+    public Grade findById(int id) {
+        Grade grade = getFromCache(id);
+        if (grade != null) {
+            return grade;
+        }
+        Connection connection = ConnectionUtils.getReadConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(FIND_BY_ID_QUERY)) {
+            stmt.setInt(1, id);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return mapRow(rs, null);
+                }
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public Set<Grade> findAll() {
+        Set<Grade> grades = new LinkedHashSet<>();
+        Connection connection = ConnectionUtils.getReadConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(FIND_ALL_QUERY);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                grades.add(mapRow(rs, null));
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return grades;
+    }
+
+    /**
+     * Charge les notes d'une évaluation complète
+     * @param evaluation l'évaluation dont on veut les notes
+     * @return les notes, une par critère
+     */
+    public Set<Grade> findByEvaluation(CompleteEvaluation evaluation) {
+        Set<Grade> grades = new LinkedHashSet<>();
+        Connection connection = ConnectionUtils.getReadConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(FIND_BY_EVALUATION_QUERY)) {
+            stmt.setInt(1, evaluation.getId());
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    grades.add(mapRow(rs, evaluation));
+                }
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return grades;
+    }
+
+    /**
+     * Charge en une requête (par tranche de 1000 évaluations) les notes de plusieurs évaluations complètes
+     * et les leur attribue. Les critères viennent du {@link ReferenceData} : le nombre de requêtes ne dépend pas
+     * du nombre d'évaluations.
+     *
+     * @param evaluations les évaluations dont on veut les notes
+     */
+    public void loadGrades(Collection<CompleteEvaluation> evaluations) {
+        Map<Integer, CompleteEvaluation> evaluationsById = new HashMap<>();
+        for (CompleteEvaluation evaluation : evaluations) {
+            evaluationsById.put(evaluation.getId(), evaluation);
+        }
+        if (evaluationsById.isEmpty()) {
+            return;
+        }
+
+        int[] count = {0};
+        forEachRowIn(getSelectQuery() + " WHERE fk_comm", evaluationsById.keySet(), rs -> {
+            CompleteEvaluation evaluation = evaluationsById.get(rs.getInt(FK_COMM));
+            evaluation.getGrades().add(mapRow(rs, evaluation));
+            count[0]++;
+        });
+        logger.debug("Loaded {} grades for {} evaluations", count[0], evaluationsById.size());
+    }
+
+    /**
+     * Calcule en base la note moyenne d'un restaurant pour chaque critère
+     * @param restaurant le restaurant évalué
+     * @return la moyenne des notes, par critère
+     */
+    public Map<EvaluationCriteria, Double> findAveragesByRestaurant(Restaurant restaurant) {
+        Map<Integer, Double> averagesByCriteriaId = new LinkedHashMap<>();
+        Connection connection = ConnectionUtils.getReadConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(AVERAGES_BY_RESTAURANT_QUERY)) {
+            stmt.setInt(1, restaurant.getId());
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    averagesByCriteriaId.put(rs.getInt(1), rs.getDouble(2));
+                }
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+
+        // Les critères sont résolus en une seule fois plutôt qu'un findById par ligne
+        Map<Integer, EvaluationCriteria> criterias = EvaluationCriteriaMapper.getInstance().findByIds(averagesByCriteriaId.keySet());
+        Map<EvaluationCriteria, Double> averages = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Double> entry : averagesByCriteriaId.entrySet()) {
+            averages.put(criterias.get(entry.getKey()), entry.getValue());
+        }
+        return averages;
+    }
+
+    @Override
+    public Grade create(Grade grade) {
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(INSERT_QUERY)) {
+            setParameters(stmt, grade);
+            executeWrite(stmt);
+
+            grade.setId(getSequenceValue());
+            addToCacheAfterCommit(grade);
+            return grade;
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public boolean update(Grade grade) {
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(UPDATE_QUERY)) {
+            setParameters(stmt, grade);
+            stmt.setInt(4, grade.getId());
+            return executeWrite(stmt) > 0;
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return false;
+    }
+
+    @Override
+    public boolean delete(Grade grade) {
+        return deleteById(grade.getId());
+    }
+
+    @Override
+    public boolean deleteById(int id) {
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(DELETE_QUERY)) {
+            stmt.setInt(1, id);
+            removeFromCacheAfterCommit(id);
+            return executeWrite(stmt) > 0;
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return false;
+    }
+
+    private void setParameters(PreparedStatement stmt, Grade grade) throws SQLException {
+        stmt.setInt(1, grade.getGrade());
+        stmt.setInt(2, grade.getEvaluation().getId());
+        stmt.setInt(3, grade.getCriteria().getId());
+    }
+
+    @Override
+    protected Grade mapRow(ResultSet rs) throws SQLException {
+        return mapRow(rs, null);
+    }
+
+    /**
+     * Construit la note de la ligne courante, ou retourne l'instance déjà présente dans le cache
+     * @param evaluation l'évaluation notée si elle est connue, sinon elle est chargée via son mapper
+     */
+    private Grade mapRow(ResultSet rs, CompleteEvaluation evaluation) throws SQLException {
+        LAYOUT.verify(rs);
+        int id = rs.getInt(NUMERO);
+        Grade grade = getFromCache(id);
+        if (grade == null) {
+            if (evaluation == null) {
+                evaluation = CompleteEvaluationMapper.getInstance().findById(rs.getInt(FK_COMM));
+                // Le chargement de l'évaluation a chargé ses notes, dont celle-ci
+                grade = getFromCache(id);
+                if (grade != null) {
+                    return grade;
+                }
+            }
+            EvaluationCriteria criteria = findCriteria(rs.getInt(FK_CRIT));
+            grade = new Grade(id, rs.getInt(NOTE), evaluation, criteria);
+            addToCache(grade);
+        }
+        return grade;
+    }
+
+    /**
+     * Critère du registre de référence, ou lu par son mapper s'il a été créé depuis la dernière actualisation
+     */
+    private static EvaluationCriteria findCriteria(int id) {
+        EvaluationCriteria criteria = ReferenceData.getInstance().findCriteriaById(id);
+        return criteria != null ? criteria : EvaluationCriteriaMapper.getInstance().findById(id);
+    }
+
+    @Override
+    protected String getSelectQuery() {
+        return "SELECT " + COLUMNS + " FROM NOTES";
+    }
+
+    @Override
+    protected boolean isPartitioned() {
+        return true;
+    }
+
+    @Override
+    protected String getSequenceQuery() {
+        return "SELECT SEQ_NOTES.CURRVAL FROM dual";
+    }
+
+    @Override
+    protected String getExistsQuery() {
+        return "SELECT numero FROM NOTES WHERE numero = ?";
+    }
+
+    @Override
+    protected String getCountQuery() {
+        return "SELECT COUNT(*) FROM NOTES";
+    }
+
+    @Override
+    protected String getTableName() {
+        return "NOTES";
+    }
+}
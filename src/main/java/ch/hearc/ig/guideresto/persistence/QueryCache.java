@@ -0,0 +1,226 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache des résultats de requêtes des mappers, indexé par requête, valeurs des paramètres et fragment.
+ *
+ * Seuls les IDs des lignes sont gardés, dans l'ordre du résultat : les objets sont retrouvés dans l'identity map
+ * du mapper, si bien qu'un objet modifié ou relu n'existe jamais en deux versions.
+ *
+ * Chaque entrée est étiquetée avec les tables lues par sa requête. Une écriture d'un mapper dans une table supprime
+ * toutes les entrées qui la lisent, et seulement celles-ci, une fois sa transaction validée ; les modifications faites
+ * par d'autres instances le sont par le {@link ChangeTracker}. Un résultat lu pendant qu'une écriture invalidait une de
+ * ses tables n'est pas enregistré, pas plus qu'un résultat lu dans une transaction, qui peut contenir des écritures
+ * non validées.
+ * Une entrée expire après querycache.ttl.ms, ce qui borne l'effet d'un réplica en retard.
+ *
+ * La taille estimée des entrées est limitée à querycache.memory.bytes (0 pour désactiver le cache) : au-delà,
+ * les entrées les moins récemment utilisées sont retirées.
+ */
+public class QueryCache {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    // Estimation grossière des en-têtes d'objets, références et entrées de Map d'une entrée
+    private static final int ENTRY_OVERHEAD_BYTES = 160;
+
+    private static final QueryCache instance = new QueryCache();
+
+    private final long memoryBudget;
+    private final long timeToLiveMillis;
+    // Ordre d'accès : la première entrée est la moins récemment utilisée. Protégé par le verrou de l'instance
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, Set<Key>> keysByTable = new HashMap<>();
+    private final Map<String, Long> generations = new HashMap<>();
+    private long usedBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private QueryCache() {
+        memoryBudget = ConnectionUtils.getIntProperty("querycache.memory.bytes", 1 << 20);
+        timeToLiveMillis = ConnectionUtils.getIntProperty("querycache.ttl.ms", 60000);
+    }
+
+    public static QueryCache getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return memoryBudget > 0;
+    }
+
+    /**
+     * @param query la requête exécutée
+     * @param parameters les valeurs de ses paramètres, dans l'ordre
+     * @return la clé du résultat sur le fragment courant
+     */
+    Key key(String query, Object... parameters) {
+        return new Key(query, List.of(parameters), ShardRouter.getInstance().currentShard());
+    }
+
+    /**
+     * @return les IDs du résultat, ou null s'il n'est pas en cache ou a expiré
+     */
+    synchronized int[] get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null && System.currentTimeMillis() - entry.loadedAt > timeToLiveMillis) {
+            remove(key);
+            entry = null;
+        }
+        (entry == null ? misses : hits).incrementAndGet();
+        return entry == null ? null : entry.ids;
+    }
+
+    /**
+     * A lire avant d'exécuter la requête, puis à passer à {@link #put(Key, Collection, int[], long)}
+     * @return un marqueur qui change dès qu'une des tables est modifiée
+     */
+    synchronized long stamp(Collection<String> tables) {
+        long stamp = 0;
+        for (String table : tables) {
+            stamp += generations.getOrDefault(table, 0L);
+        }
+        return stamp;
+    }
+
+    /**
+     * Enregistre un résultat, sauf si une de ses tables a été modifiée depuis stamp ou s'il dépasse à lui seul le budget
+     * @param tables les tables lues par la requête
+     * @param ids les IDs du résultat, dans l'ordre
+     * @param stamp la valeur de {@link #stamp(Collection)} lue avant d'exécuter la requête
+     */
+    synchronized void put(Key key, Collection<String> tables, int[] ids, long stamp) {
+        if (!isEnabled() || stamp(tables) != stamp) {
+            return;
+        }
+        Entry entry = new Entry(ids, Set.copyOf(tables), key.sizeInBytes() + 4L * ids.length, System.currentTimeMillis());
+        if (entry.sizeInBytes > memoryBudget) {
+            return;
+        }
+        remove(key);
+        entries.put(key, entry);
+        usedBytes += entry.sizeInBytes;
+        for (String table : entry.tables) {
+            keysByTable.computeIfAbsent(table, k -> new HashSet<>()).add(key);
+        }
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while (usedBytes > memoryBudget && eldest.hasNext()) {
+            Map.Entry<Key, Entry> evicted = eldest.next();
+            eldest.remove();
+            forget(evicted.getKey(), evicted.getValue());
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Retire un résultat dont un objet n'existe plus
+     */
+    synchronized void remove(Key key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            forget(key, entry);
+        }
+    }
+
+    /**
+     * Retire tous les résultats qui lisent la table. Appelé par les mappers après chaque écriture, et par le ChangeTracker
+     * @param table le nom de la table en majuscules, comme {@link AbstractMapper#getTableName()}
+     */
+    public synchronized void invalidate(String table) {
+        generations.merge(table, 1L, Long::sum);
+        Set<Key> keys = keysByTable.remove(table);
+        if (keys == null) {
+            return;
+        }
+        for (Key key : keys) {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                forget(key, entry);
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Vide le cache
+     */
+    public synchronized void clear() {
+        entries.clear();
+        keysByTable.clear();
+        usedBytes = 0;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return un résumé des compteurs, pour le journal
+     */
+    @Override
+    public String toString() {
+        long found = hits.get();
+        long total = found + misses.get();
+        return String.format("%d entries, %d bytes, %d hits / %d lookups (%.1f%%), %d invalidated, %d evicted",
+                size(), getUsedBytes(), found, total, total == 0 ? 0.0 : 100.0 * found / total, invalidations.get(), evictions.get());
+    }
+
+    private void forget(Key key, Entry entry) {
+        usedBytes -= entry.sizeInBytes;
+        for (String table : entry.tables) {
+            Set<Key> keys = keysByTable.get(table);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    keysByTable.remove(table);
+                }
+            }
+        }
+        logger.trace("Query result removed from cache: {}", key);
+    }
+
+    /**
+     * Requête, valeurs des paramètres et fragment sur lequel elle a été exécutée
+     */
+    record Key(String query, List<Object> parameters, int shard) {
+
+        /**
+         * Les requêtes sont des constantes partagées : seuls les paramètres comptent
+         */
+        private long sizeInBytes() {
+            long size = ENTRY_OVERHEAD_BYTES;
+            for (Object parameter : parameters) {
+                size += parameter instanceof String text ? 48 + 2L * text.length() : 16;
+            }
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + shard + " " + query + " " + Arrays.toString(parameters.toArray());
+        }
+    }
+
+    private record Entry(int[] ids, Set<String> tables, long sizeInBytes, long loadedAt) {
+    }
+}
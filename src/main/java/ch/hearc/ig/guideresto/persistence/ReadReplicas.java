@@ -0,0 +1,289 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Répartition des lectures entre les réplicas déclarés dans database.read.urls (séparés par des virgules).
+ * Stratégie database.read.strategy : "round-robin" (par défaut) ou "least-busy", qui choisit le réplica
+ * ayant le moins de requêtes ouvertes.
+ *
+ * Chaque réplica a son pool de connexions, au plus database.read.pool.size, en autoCommit pour ne pas figer
+ * de transaction de lecture. La connexion retournée par {@link #choose()} n'est qu'une façade : chaque requête
+ * emprunte une connexion du pool à sa préparation et la rend à sa fermeture. Les requêtes ouvertes en même temps
+ * par un même thread (une lecture imbriquée dans le parcours d'un résultat) partagent la même connexion, si bien
+ * qu'un thread n'attend jamais une deuxième connexion du pool.
+ */
+class ReadReplicas {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private final List<Replica> replicas = new ArrayList<>();
+    private final boolean leastBusy;
+    private final AtomicInteger next = new AtomicInteger();
+
+    ReadReplicas(List<String> urls, String username, String password, String strategy, int poolSize) {
+        for (String url : urls) {
+            if (!url.isBlank()) {
+                replicas.add(new Replica(url.trim(), username, password, Math.max(1, poolSize)));
+            }
+        }
+        this.leastBusy = "least-busy".equalsIgnoreCase(strategy);
+        logger.info("{} read replica(s) configured, strategy {}, {} connection(s) each", replicas.size(),
+                leastBusy ? "least-busy" : "round-robin", Math.max(1, poolSize));
+    }
+
+    boolean isEmpty() {
+        return replicas.isEmpty();
+    }
+
+    /**
+     * Choisit un réplica disponible selon la stratégie configurée
+     * @return une connexion de lecture, ou null si aucun réplica n'est joignable
+     */
+    Connection choose() {
+        int count = replicas.size();
+        int start = leastBusy ? leastBusyIndex() : Math.floorMod(next.getAndIncrement(), count);
+        for (int i = 0; i < count; i++) {
+            Replica replica = replicas.get((start + i) % count);
+            if (replica.isAvailable()) {
+                return replica.facade;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return le nombre de connexions ouvertes sur chaque réplica, dans l'ordre de database.read.urls
+     */
+    List<Integer> openedConnections() {
+        List<Integer> opened = new ArrayList<>();
+        for (Replica replica : replicas) {
+            opened.add(replica.opened.get());
+        }
+        return opened;
+    }
+
+    void close() {
+        for (Replica replica : replicas) {
+            replica.close();
+        }
+    }
+
+    private int leastBusyIndex() {
+        int best = 0;
+        for (int i = 1; i < replicas.size(); i++) {
+            if (replicas.get(i).active.get() < replicas.get(best).active.get()) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static class Replica {
+
+        private final String url;
+        private final String username;
+        private final String password;
+        private final int poolSize;
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger opened = new AtomicInteger();
+        private final BlockingQueue<Connection> idle = new LinkedBlockingQueue<>();
+        // Connexion empruntée par le thread courant et nombre de ses requêtes encore ouvertes
+        private final ThreadLocal<Lease> lease = new ThreadLocal<>();
+        private final Connection facade;
+
+        private Replica(String url, String username, String password, int poolSize) {
+            this.url = url;
+            this.username = username;
+            this.password = password;
+            this.poolSize = poolSize;
+            this.facade = (Connection) Proxy.newProxyInstance(ReadReplicas.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> invokeOnLease(proxy, method, args));
+        }
+
+        /**
+         * @return true si le réplica a déjà une connexion ouverte ou en accepte une nouvelle
+         */
+        private boolean isAvailable() {
+            if (opened.get() > 0) {
+                return true;
+            }
+            if (opened.incrementAndGet() > poolSize) {
+                opened.decrementAndGet();
+                return true;
+            }
+            Connection connection = open();
+            if (connection == null) {
+                opened.decrementAndGet();
+                return false;
+            }
+            idle.offer(connection);
+            return true;
+        }
+
+        /**
+         * Exécute une méthode de la façade sur la connexion empruntée par le thread. Une requête garde la connexion
+         * jusqu'à sa fermeture ; les autres méthodes la rendent aussitôt.
+         */
+        private Object invokeOnLease(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> "ReadReplica[" + url + "]";
+                };
+            }
+            if (method.getName().equals("close") || method.getName().equals("isClosed")) {
+                // La façade reste ouverte : ce sont les connexions du pool qui sont fermées, par close() du réplica
+                return method.getName().equals("isClosed") ? false : null;
+            }
+            Lease current = acquire();
+            boolean keep = false;
+            try {
+                Object result = invoke(current.connection, method, args);
+                if (result instanceof Statement statement) {
+                    keep = true;
+                    active.incrementAndGet();
+                    return trackClose(statement, method.getReturnType(), current);
+                }
+                return result;
+            } finally {
+                if (!keep) {
+                    release(current);
+                }
+            }
+        }
+
+        private Lease acquire() throws SQLException {
+            Lease current = lease.get();
+            if (current == null) {
+                current = new Lease(borrow());
+                lease.set(current);
+            }
+            current.users++;
+            return current;
+        }
+
+        private void release(Lease current) {
+            if (--current.users == 0) {
+                lease.remove();
+                idle.offer(current.connection);
+            }
+        }
+
+        /**
+         * Prend une connexion libre du pool, en ouvre une si le pool n'est pas plein, sinon attend qu'une requête se termine
+         */
+        private Connection borrow() throws SQLException {
+            try {
+                while (true) {
+                    Connection connection = idle.poll();
+                    if (connection == null) {
+                        if (opened.incrementAndGet() <= poolSize) {
+                            connection = open();
+                            if (connection == null) {
+                                opened.decrementAndGet();
+                                throw new SQLException("Read replica " + url + " unavailable");
+                            }
+                        } else {
+                            opened.decrementAndGet();
+                            connection = idle.take();
+                        }
+                    }
+                    if (!connection.isClosed()) {
+                        return connection;
+                    }
+                    // Connexion perdue : on l'oublie et on en reprend une autre
+                    opened.decrementAndGet();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a connection to read replica " + url, ex);
+            }
+        }
+
+        /**
+         * @return une nouvelle connexion, à compter dans le pool par l'appelant, ou null si le réplica est injoignable
+         */
+        private Connection open() {
+            Connection raw = ConnectionUtils.newRawConnection(url, username, password);
+            if (raw == null) {
+                logger.error("Read replica {} unavailable", url);
+                return null;
+            }
+            try {
+                raw.setAutoCommit(true);
+            } catch (SQLException ex) {
+                logger.error("Read replica {} unavailable: {}", url, ex.getMessage());
+                return null;
+            }
+            return SlowQueryLog.wrap(raw);
+        }
+
+        /**
+         * Compte la requête comme ouverte jusqu'à sa fermeture, qui rend sa connexion au pool
+         */
+        private Object trackClose(Statement statement, Class<?> type, Lease current) {
+            boolean[] closed = {false};
+            return Proxy.newProxyInstance(ReadReplicas.class.getClassLoader(), new Class<?>[]{type},
+                    (proxy, method, args) -> {
+                        if (method.getName().equals("close") && !closed[0]) {
+                            closed[0] = true;
+                            try {
+                                return invoke(statement, method, args);
+                            } finally {
+                                active.decrementAndGet();
+                                release(current);
+                            }
+                        }
+                        return invoke(statement, method, args);
+                    });
+        }
+
+        private void close() {
+            Connection connection;
+            while ((connection = idle.poll()) != null) {
+                try {
+                    connection.close();
+                } catch (SQLException ex) {
+                    logger.error(ex.getMessage(), ex);
+                }
+                opened.decrementAndGet();
+            }
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+
+    /**
+     * Connexion du pool empruntée par un thread
+     */
+    private static class Lease {
+
+        private final Connection connection;
+        private int users;
+
+        private Lease(Connection connection) {
+            this.connection = connection;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.City;
+import ch.hearc.ig.guideresto.business.EvaluationCriteria;
+import ch.hearc.ig.guideresto.business.IBusinessObject;
+import ch.hearc.ig.guideresto.business.RestaurantType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registre des données de référence : critères d'évaluation, types gastronomiques et villes.
+ * Ces tables sont petites et changent rarement ; elles sont lues une fois et servies depuis un instantané immuable
+ * (tableaux triés par ID et Map d'index), sans requête ni verrou.
+ *
+ * Une actualisation relit les trois tables puis remplace l'instantané d'un seul coup : un lecteur voit toujours
+ * un ensemble cohérent. Elle peut être demandée explicitement ou planifiée (referencedata.refresh.ms).
+ * Les villes ajoutées pendant la lecture, que celle-ci n'a peut-être pas vues, sont reportées dans le nouvel instantané.
+ * Les objets sont ceux des identity maps des mappers, partagés avec les restaurants chargés.
+ */
+public class ReferenceData {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final ReferenceData instance = new ReferenceData();
+
+    private volatile Snapshot snapshot;
+    // Une seule actualisation à la fois ; les ajouts de villes n'attendent pas la fin de sa lecture
+    private final Object refreshLock = new Object();
+    // Villes ajoutées depuis le début de l'actualisation en cours, null hors actualisation
+    private List<City> addedDuringRefresh;
+    private ScheduledExecutorService scheduler;
+
+    private ReferenceData() {
+    }
+
+    public static ReferenceData getInstance() {
+        return instance;
+    }
+
+    /**
+     * Relit les trois tables et remplace l'instantané courant
+     */
+    public void refresh() {
+        synchronized (refreshLock) {
+            long start = System.currentTimeMillis();
+            synchronized (this) {
+                addedDuringRefresh = new ArrayList<>();
+            }
+            Snapshot loaded;
+            try {
+                EvaluationCriteria[] criterias = EvaluationCriteriaMapper.getInstance().findAll().toArray(new EvaluationCriteria[0]);
+                RestaurantType[] types = RestaurantTypeMapper.getInstance().findAll().toArray(new RestaurantType[0]);
+                Set<City> cities = CityMapper.getInstance().findAll();
+                synchronized (this) {
+                    loaded = new Snapshot(criterias, types, withCities(cities.toArray(new City[0]), addedDuringRefresh));
+                    snapshot = loaded;
+                }
+            } finally {
+                synchronized (this) {
+                    addedDuringRefresh = null;
+                }
+            }
+            logger.info("Reference data loaded: {} criterias, {} types, {} cities in {} ms",
+                    loaded.criterias.length, loaded.types.length, loaded.cities.length, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Actualise le registre périodiquement, sur une connexion du pool
+     * @param intervalMillis délai entre deux actualisations, 0 ou négatif pour ne rien planifier
+     */
+    public synchronized void startScheduledRefresh(long intervalMillis) {
+        if (scheduler != null || intervalMillis <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reference-data-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            ConnectionUtils.bindPooledConnection();
+            try {
+                refresh();
+            } catch (RuntimeException ex) {
+                // Une exception non traitée annulerait les exécutions suivantes du scheduler
+                logger.error(ex.getMessage(), ex);
+            } finally {
+                ConnectionUtils.releaseBoundConnection(true);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Ajoute une ville qui vient d'être créée, par copie de l'instantané. Une ville déjà présente est ignorée.
+     */
+    public synchronized void addCity(City city) {
+        addCities(List.of(city));
+    }
+
+    /**
+     * Ajoute des villes trouvées ou créées par lot, en une seule copie de l'instantané
+     */
+    public synchronized void addCities(Collection<City> added) {
+        if (addedDuringRefresh != null) {
+            addedDuringRefresh.addAll(added);
+        }
+        Snapshot current = snapshot;
+        if (current == null) {
+            // Pas encore chargé : le premier chargement lira ces villes ou les reprendra de addedDuringRefresh
+            return;
+        }
+        City[] cities = withCities(current.cities, added);
+        if (cities.length > current.cities.length) {
+            snapshot = new Snapshot(current.criterias, current.types, cities);
+        }
+    }
+
+    /**
+     * @return les villes données, complétées de celles ajoutées qui n'y sont pas encore
+     */
+    private static City[] withCities(City[] cities, Collection<City> added) {
+        Set<Integer> known = new HashSet<>();
+        for (City city : cities) {
+            known.add(city.getId());
+        }
+        List<City> merged = new ArrayList<>(Arrays.asList(cities));
+        for (City city : added) {
+            if (known.add(city.getId())) {
+                merged.add(city);
+            }
+        }
+        return merged.size() == cities.length ? cities : merged.toArray(new City[0]);
+    }
+
+    public List<EvaluationCriteria> getCriterias() {
+        return getSnapshot().criteriaList;
+    }
+
+    public List<RestaurantType> getTypes() {
+        return getSnapshot().typeList;
+    }
+
+    public List<City> getCities() {
+        return getSnapshot().cityList;
+    }
+
+    public EvaluationCriteria findCriteriaById(int id) {
+        return getSnapshot().criteriasById.get(id);
+    }
+
+    public RestaurantType findTypeById(int id) {
+        return getSnapshot().typesById.get(id);
+    }
+
+    /**
+     * Un type créé depuis la dernière actualisation n'est pas dans l'instantané : il est alors cherché en base.
+     * @param label le libellé, sans tenir compte de la casse
+     */
+    public RestaurantType findTypeByLabel(String label) {
+        if (label == null) {
+            return null;
+        }
+        RestaurantType type = getSnapshot().typesByLabel.get(label.toUpperCase(Locale.ROOT));
+        return type != null ? type : RestaurantTypeMapper.getInstance().findByLabel(label);
+    }
+
+    public City findCityById(int id) {
+        return getSnapshot().citiesById.get(id);
+    }
+
+    /**
+     * @return les villes ayant ce NPA (plusieurs localités peuvent partager un NPA), liste vide si aucune
+     */
+    public List<City> findCitiesByZipCode(String zipCode) {
+        return getSnapshot().citiesByZipCode.getOrDefault(zipCode, Collections.emptyList());
+    }
+
+    /**
+     * Premier accès sans actualisation préalable : le registre est chargé à la demande
+     */
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (refreshLock) {
+                if (snapshot == null) {
+                    refresh();
+                }
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * État immuable du registre. Les tableaux ne sont jamais exposés, seulement des vues non modifiables.
+     */
+    private static class Snapshot {
+
+        private final EvaluationCriteria[] criterias;
+        private final RestaurantType[] types;
+        private final City[] cities;
+        private final List<EvaluationCriteria> criteriaList;
+        private final List<RestaurantType> typeList;
+        private final List<City> cityList;
+        private final Map<Integer, EvaluationCriteria> criteriasById;
+        private final Map<Integer, RestaurantType> typesById;
+        private final Map<String, RestaurantType> typesByLabel = new HashMap<>();
+        private final Map<Integer, City> citiesById;
+        private final Map<String, List<City>> citiesByZipCode;
+
+        private Snapshot(EvaluationCriteria[] criterias, RestaurantType[] types, City[] cities) {
+            this.criterias = sortedById(criterias);
+            this.types = sortedById(types);
+            this.cities = sortedById(cities);
+            this.criteriaList = Collections.unmodifiableList(Arrays.asList(this.criterias));
+            this.typeList = Collections.unmodifiableList(Arrays.asList(this.types));
+            this.cityList = Collections.unmodifiableList(Arrays.asList(this.cities));
+            this.criteriasById = byId(this.criterias);
+            this.typesById = byId(this.types);
+            this.citiesById = byId(this.cities);
+            for (RestaurantType type : this.types) {
+                typesByLabel.put(type.getLabel().toUpperCase(Locale.ROOT), type);
+            }
+
+            Map<String, List<City>> zipCodes = new HashMap<>();
+            for (City city : this.cities) {
+                zipCodes.computeIfAbsent(city.getZipCode(), k -> new ArrayList<>(1)).add(city);
+            }
+            zipCodes.replaceAll((zipCode, list) -> List.copyOf(list));
+            this.citiesByZipCode = zipCodes;
+        }
+
+        private static <T extends IBusinessObject> T[] sortedById(T[] objects) {
+            T[] sorted = objects.clone();
+            Arrays.sort(sorted, Comparator.comparing(IBusinessObject::getId));
+            return sorted;
+        }
+
+        private static <T extends IBusinessObject> Map<Integer, T> byId(T[] objects) {
+            Map<Integer, T> map = new HashMap<>(objects.length * 2);
+            for (T object : objects) {
+                map.put(object.getId(), object);
+            }
+            return map;
+        }
+    }
+}
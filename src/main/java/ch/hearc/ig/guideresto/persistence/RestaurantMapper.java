@@ -0,0 +1,342 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.City;
+import ch.hearc.ig.guideresto.business.Restaurant;
+import ch.hearc.ig.guideresto.business.RestaurantType;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Mapper de la table RESTAURANTS.
+ * La ville et le type sont résolus via leurs propres mappers, les évaluations ne sont pas chargées.
+ * Les modifications sont protégées par la colonne version (voir {@link #update(Restaurant)}).
+ */
+public class RestaurantMapper extends AbstractMapper<Restaurant> {
+
+    private static final String COLUMNS = "r.numero, r.nom, r.adresse, r.description, r.site_web, r.fk_type, r.fk_vill, r.version";
+    private static final RowLayout LAYOUT = RowLayout.of(COLUMNS);
+    private static final int NUMERO = LAYOUT.index("numero");
+    private static final int NOM = LAYOUT.index("nom");
+    private static final int ADRESSE = LAYOUT.index("adresse");
+    private static final int DESCRIPTION = LAYOUT.index("description");
+    private static final int SITE_WEB = LAYOUT.index("site_web");
+    private static final int FK_TYPE = LAYOUT.index("fk_type");
+    private static final int FK_VILL = LAYOUT.index("fk_vill");
+    private static final int VERSION = LAYOUT.index("version");
+    private static final String FIND_BY_ID_QUERY = "SELECT " + COLUMNS + " FROM RESTAURANTS r WHERE r.numero = ?";
+    private static final String FIND_ALL_QUERY = "SELECT " + COLUMNS + " FROM RESTAURANTS r ORDER BY r.nom";
+    private static final String FIND_BY_NAME_QUERY = "SELECT " + COLUMNS + " FROM RESTAURANTS r WHERE UPPER(r.nom) LIKE UPPER(?) ORDER BY r.nom";
+    private static final String FIND_BY_CITY_NAME_QUERY = "SELECT " + COLUMNS + " FROM RESTAURANTS r INNER JOIN VILLES v ON v.numero = r.fk_vill " +
+            "WHERE UPPER(v.nom_ville) LIKE UPPER(?) ORDER BY r.nom";
+    private static final String FIND_BY_TYPE_QUERY = "SELECT " + COLUMNS + " FROM RESTAURANTS r WHERE r.fk_type = ? ORDER BY r.nom";
+    private static final String INSERT_QUERY = "INSERT INTO RESTAURANTS (nom, adresse, description, site_web, fk_type, fk_vill) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_QUERY = "UPDATE RESTAURANTS SET nom = ?, adresse = ?, description = ?, site_web = ?, fk_type = ?, fk_vill = ?, " +
+            "version = version + 1 WHERE numero = ? AND version = ?";
+    private static final String DELETE_QUERY = "DELETE FROM RESTAURANTS WHERE numero = ?";
+    // Les clés étrangères n'ont pas de ON DELETE CASCADE : les dépendances sont supprimées en premier, une requête par table
+    private static final String DELETE_GRADES_QUERY = "DELETE FROM NOTES WHERE fk_comm IN (SELECT numero FROM COMMENTAIRES WHERE fk_rest = ?)";
+    private static final String DELETE_COMMENTS_QUERY = "DELETE FROM COMMENTAIRES WHERE fk_rest = ?";
+    private static final String DELETE_LIKES_QUERY = "DELETE FROM LIKES WHERE fk_rest = ?";
+    // Tables lues par les recherches, pour le cache des résultats (voir QueryCache)
+    private static final List<String> RESTAURANT_TABLES = List.of("RESTAURANTS");
+    private static final List<String> RESTAURANT_AND_CITY_TABLES = List.of("RESTAURANTS", "VILLES");
+    private static final String[] DELETE_CASCADE_QUERIES = {DELETE_GRADES_QUERY, DELETE_COMMENTS_QUERY, DELETE_LIKES_QUERY, DELETE_QUERY};
+
+    private static final RestaurantMapper instance = new RestaurantMapper();
+
+    static {
+        ChangeTracker.getInstance().register(instance);
+    }
+
+    private RestaurantMapper() {
+    }
+
+    public static RestaurantMapper getInstance() {
+        return instance;
+    }
+
+    @Override
+    public Restaurant findById(int id) {
+        Restaurant restaurant = getFromCache(id);
+        if (restaurant != null) {
+            return restaurant;
+        }
+        Connection connection = ConnectionUtils.getReadConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(FIND_BY_ID_QUERY)) {
+            stmt.setInt(1, id);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return mapRow(rs);
+                }
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public Set<Restaurant> findAll() {
+        return findByCachedQuery(FIND_ALL_QUERY, RESTAURANT_TABLES);
+    }
+
+    /**
+     * Recherche les restaurants dont le nom contient la chaîne donnée, sans tenir compte de la casse
+     * @param name une partie du nom
+     * @return les restaurants trouvés
+     */
+    public Set<Restaurant> findByName(String name) {
+        return findByCachedQuery(FIND_BY_NAME_QUERY, RESTAURANT_TABLES, "%" + name + "%");
+    }
+
+    /**
+     * Recherche les restaurants dont le nom de la ville contient la chaîne donnée, sans tenir compte de la casse
+     * @param cityName une partie du nom de la ville
+     * @return les restaurants trouvés
+     */
+    public Set<Restaurant> findByCityName(String cityName) {
+        return findByCachedQuery(FIND_BY_CITY_NAME_QUERY, RESTAURANT_AND_CITY_TABLES, "%" + cityName + "%");
+    }
+
+    /**
+     * Recherche les restaurants d'un type donné
+     * @param type le type de restaurant
+     * @return les restaurants trouvés
+     */
+    public Set<Restaurant> findByType(RestaurantType type) {
+        return findByCachedQuery(FIND_BY_TYPE_QUERY, RESTAURANT_TABLES, type.getId());
+    }
+
+    @Override
+    public Restaurant create(Restaurant restaurant) {
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(INSERT_QUERY)) {
+            setParameters(stmt, restaurant);
+            executeWrite(stmt);
+
+            restaurant.setId(getSequenceValue());
+            addToCacheAfterCommit(restaurant);
+            return restaurant;
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Enregistre le restaurant s'il n'a pas été modifié en base depuis sa lecture, sans poser de verrou pendant la saisie.
+     * @return true si le restaurant a été modifié, false s'il n'existe plus ou en cas d'erreur
+     * @throws ConcurrentUpdateException si une autre transaction l'a modifié entre-temps ; voir {@link #reload(Restaurant)}
+     */
+    @Override
+    public boolean update(Restaurant restaurant) {
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(UPDATE_QUERY)) {
+            setParameters(stmt, restaurant);
+            stmt.setInt(7, restaurant.getId());
+            stmt.setInt(8, restaurant.getVersion());
+            boolean updated = checkVersionedUpdate(executeWrite(stmt), restaurant.getId(), restaurant.getVersion());
+            if (updated) {
+                bumpVersionAfterCommit(restaurant.getVersion() + 1, restaurant::setVersion);
+            }
+            return updated;
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Relit le restaurant sur la connexion principale et met à jour l'instance en place, version comprise,
+     * en le déplaçant si besoin dans les restaurants de sa nouvelle ville et de son nouveau type.
+     *
+     * @param restaurant le restaurant à relire
+     * @return true si le restaurant a été relu, false s'il n'existe plus
+     */
+    public boolean reload(Restaurant restaurant) {
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(FIND_BY_ID_QUERY)) {
+            stmt.setInt(1, restaurant.getId());
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return false;
+                }
+                LAYOUT.verify(rs);
+                restaurant.setName(rs.getString(NOM));
+                restaurant.setDescription(rs.getString(DESCRIPTION));
+                restaurant.setWebsite(rs.getString(SITE_WEB));
+                restaurant.setStreet(rs.getString(ADRESSE));
+                restaurant.setVersion(rs.getInt(VERSION));
+
+                City city = CityMapper.getInstance().findById(rs.getInt(FK_VILL));
+                if (city != restaurant.getAddress().getCity()) {
+                    restaurant.getAddress().getCity().getRestaurants().remove(restaurant);
+                    restaurant.getAddress().setCity(city);
+                    city.getRestaurants().add(restaurant);
+                }
+                RestaurantType type = RestaurantTypeMapper.getInstance().findById(rs.getInt(FK_TYPE));
+                if (type != restaurant.getType()) {
+                    restaurant.getType().getRestaurants().remove(restaurant);
+                    restaurant.setType(type);
+                    type.getRestaurants().add(restaurant);
+                }
+                return true;
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Relit en place le restaurant modifié par une autre instance : sa ville, son type et ses évaluations
+     * gardent la même instance
+     */
+    @Override
+    protected void refreshCached(int id) {
+        Restaurant restaurant = getFromCache(id);
+        if (restaurant != null && !reload(restaurant)) {
+            forgetDeleted(id);
+        }
+    }
+
+    /**
+     * Retire aussi le restaurant supprimé par une autre instance des restaurants de sa ville et de son type
+     */
+    @Override
+    protected void forgetDeleted(int id) {
+        Restaurant restaurant = getFromCache(id);
+        if (restaurant != null) {
+            if (restaurant.getCity() != null) {
+                restaurant.getCity().getRestaurants().remove(restaurant);
+            }
+            if (restaurant.getType() != null) {
+                restaurant.getType().getRestaurants().remove(restaurant);
+            }
+        }
+        removeFromCache(id);
+    }
+
+    @Override
+    public boolean delete(Restaurant restaurant) {
+        return deleteById(restaurant.getId());
+    }
+
+    /**
+     * Supprime le restaurant avec toutes ses évaluations et leurs notes.
+     * Quatre DELETE ensemblistes sont exécutés dans la transaction en cours, quel que soit le nombre d'évaluations :
+     * l'appelant doit valider ou annuler la transaction.
+     * Les objets supprimés sont retirés des caches de tous les mappers concernés une fois la transaction validée.
+     *
+     * @param id l'ID du restaurant à supprimer
+     * @return true si le restaurant a été supprimé, false sinon
+     */
+    @Override
+    public boolean deleteById(int id) {
+        Connection connection = ConnectionUtils.getConnection();
+        int deleted = 0;
+
+        try {
+            for (String query : DELETE_CASCADE_QUERIES) {
+                try (PreparedStatement stmt = connection.prepareStatement(query)) {
+                    stmt.setInt(1, id);
+                    deleted = executeWrite(stmt);
+                }
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+            return false;
+        }
+
+        TransactionManager.getInstance().afterCommit(() -> {
+            GradeMapper.getInstance().removeFromCacheIf(grade -> grade.getEvaluation() != null
+                    && grade.getEvaluation().getRestaurant() != null && grade.getEvaluation().getRestaurant().getId() == id);
+            CompleteEvaluationMapper.getInstance().removeFromCacheIf(evaluation -> evaluation.getRestaurant() != null
+                    && evaluation.getRestaurant().getId() == id);
+            BasicEvaluationMapper.getInstance().removeFromCacheIf(evaluation -> evaluation.getRestaurant() != null
+                    && evaluation.getRestaurant().getId() == id);
+            removeFromCache(id);
+            // Index en mémoire : un rollback doit laisser le restaurant et ses évaluations en place
+            DuplicateVoteFilter.getInstance().forget(id);
+            CommentIndex.getInstance().forgetRestaurant(id);
+            EvaluationTrends.getInstance().forget(id);
+            SimilarRestaurants.getInstance().forget(id);
+        });
+        // La suppression a aussi écrit dans les tables des évaluations
+        for (AbstractMapper<?> mapper : List.of(GradeMapper.getInstance(), CompleteEvaluationMapper.getInstance(), BasicEvaluationMapper.getInstance())) {
+            invalidateAfterCommit(mapper.getTableName());
+        }
+        return deleted > 0;
+    }
+
+    private void setParameters(PreparedStatement stmt, Restaurant restaurant) throws SQLException {
+        stmt.setString(1, restaurant.getName());
+        stmt.setString(2, restaurant.getAddress().getStreet());
+        stmt.setString(3, restaurant.getDescription());
+        stmt.setString(4, restaurant.getWebsite());
+        stmt.setInt(5, restaurant.getType().getId());
+        stmt.setInt(6, restaurant.getAddress().getCity().getId());
+    }
+
+    /**
+     * Construit le restaurant de la ligne courante, ou retourne l'instance déjà présente dans le cache
+     */
+    @Override
+    protected Restaurant mapRow(ResultSet rs) throws SQLException {
+        LAYOUT.verify(rs);
+        int id = rs.getInt(NUMERO);
+        Restaurant restaurant = getFromCache(id);
+        if (restaurant == null) {
+            City city = CityMapper.getInstance().findById(rs.getInt(FK_VILL));
+            RestaurantType type = RestaurantTypeMapper.getInstance().findById(rs.getInt(FK_TYPE));
+            restaurant = new Restaurant(id, rs.getString(NOM), rs.getString(DESCRIPTION), rs.getString(SITE_WEB),
+                    rs.getString(ADRESSE), city, type);
+            restaurant.setVersion(rs.getInt(VERSION));
+            city.getRestaurants().add(restaurant);
+            type.getRestaurants().add(restaurant);
+            addToCache(restaurant);
+        }
+        return restaurant;
+    }
+
+    @Override
+    protected String getSelectQuery() {
+        return "SELECT " + COLUMNS + " FROM RESTAURANTS r";
+    }
+
+    @Override
+    protected boolean isPartitioned() {
+        return true;
+    }
+
+    @Override
+    protected String getSequenceQuery() {
+        return "SELECT SEQ_RESTAURANTS.CURRVAL FROM dual";
+    }
+
+    @Override
+    protected String getExistsQuery() {
+        return "SELECT numero FROM RESTAURANTS WHERE numero = ?";
+    }
+
+    @Override
+    protected String getCountQuery() {
+        return "SELECT COUNT(*) FROM RESTAURANTS";
+    }
+
+    @Override
+    protected String getTableName() {
+        return "RESTAURANTS";
+    }
+}
@@ -0,0 +1,225 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.RestaurantType;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Mapper de la table TYPES_GASTRONOMIQUES
+ */
+public class RestaurantTypeMapper extends AbstractMapper<RestaurantType> {
+
+    private static final String FIND_BY_ID_QUERY = "SELECT numero, libelle, description, version FROM TYPES_GASTRONOMIQUES WHERE numero = ?";
+    private static final String FIND_ALL_QUERY = "SELECT numero, libelle, description, version FROM TYPES_GASTRONOMIQUES ORDER BY libelle";
+    private static final String FIND_BY_LABEL_QUERY = "SELECT numero, libelle, description, version FROM TYPES_GASTRONOMIQUES WHERE UPPER(libelle) = UPPER(?)";
+    private static final String INSERT_QUERY = "INSERT INTO TYPES_GASTRONOMIQUES (libelle, description) VALUES (?, ?)";
+    private static final String UPDATE_QUERY = "UPDATE TYPES_GASTRONOMIQUES SET libelle = ?, description = ?, version = version + 1 WHERE numero = ? AND version = ?";
+    private static final String DELETE_QUERY = "DELETE FROM TYPES_GASTRONOMIQUES WHERE numero = ?";
+
+    private static final RestaurantTypeMapper instance = new RestaurantTypeMapper();
+
+    static {
+        ChangeTracker.getInstance().register(instance);
+    }
+
+    private RestaurantTypeMapper() {
+    }
+
+    public static RestaurantTypeMapper getInstance() {
+        return instance;
+    }
+
+    @Override
+    public RestaurantType findById(int id) {
+        RestaurantType type = getFromCache(id);
+        if (type != null) {
+            return type;
+        }
+        Connection connection = ConnectionUtils.getReadConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(FIND_BY_ID_QUERY)) {
+            stmt.setInt(1, id);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return mapRow(rs);
+                }
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public Set<RestaurantType> findAll() {
+        Set<RestaurantType> types = new LinkedHashSet<>();
+        Connection connection = ConnectionUtils.getReadConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(FIND_ALL_QUERY);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                types.add(mapRow(rs));
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return types;
+    }
+
+    /**
+     * Recherche un type par son libellé exact, sans tenir compte de la casse
+     * @param label le libellé recherché
+     * @return le type trouvé, ou null
+     */
+    public RestaurantType findByLabel(String label) {
+        Connection connection = ConnectionUtils.getReadConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(FIND_BY_LABEL_QUERY)) {
+            stmt.setString(1, label);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return mapRow(rs);
+                }
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public RestaurantType create(RestaurantType type) {
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(INSERT_QUERY)) {
+            stmt.setString(1, type.getLabel());
+            stmt.setString(2, type.getDescription());
+            executeWrite(stmt);
+
+            type.setId(getSequenceValue());
+            addToCacheAfterCommit(type);
+            return type;
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * @throws ConcurrentUpdateException si le type a été modifié par une autre transaction depuis sa lecture
+     */
+    @Override
+    public boolean update(RestaurantType type) {
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(UPDATE_QUERY)) {
+            stmt.setString(1, type.getLabel());
+            stmt.setString(2, type.getDescription());
+            stmt.setInt(3, type.getId());
+            stmt.setInt(4, type.getVersion());
+            boolean updated = checkVersionedUpdate(executeWrite(stmt), type.getId(), type.getVersion());
+            if (updated) {
+                bumpVersionAfterCommit(type.getVersion() + 1, type::setVersion);
+            }
+            return updated;
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return false;
+    }
+
+    @Override
+    public boolean delete(RestaurantType type) {
+        return deleteById(type.getId());
+    }
+
+    @Override
+    public boolean deleteById(int id) {
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(DELETE_QUERY)) {
+            stmt.setInt(1, id);
+            removeFromCacheAfterCommit(id);
+            return executeWrite(stmt) > 0;
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Construit le type de la ligne courante, ou retourne l'instance déjà présente dans le cache
+     */
+    /**
+     * Relit en place le type modifié par une autre instance : ses restaurants gardent la même instance
+     */
+    @Override
+    protected void refreshCached(int id) {
+        RestaurantType type = getFromCache(id);
+        if (type == null) {
+            return;
+        }
+        Connection connection = ConnectionUtils.getConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(FIND_BY_ID_QUERY)) {
+            stmt.setInt(1, id);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    forgetDeleted(id);
+                    return;
+                }
+                type.setLabel(rs.getString("libelle"));
+                type.setDescription(rs.getString("description"));
+                type.setVersion(rs.getInt("version"));
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+            removeFromCache(id);
+        }
+    }
+
+    @Override
+    protected RestaurantType mapRow(ResultSet rs) throws SQLException {
+        int id = rs.getInt("numero");
+        RestaurantType type = getFromCache(id);
+        if (type == null) {
+            type = new RestaurantType(id, rs.getString("libelle"), rs.getString("description"));
+            type.setVersion(rs.getInt("version"));
+            addToCache(type);
+        }
+        return type;
+    }
+
+    @Override
+    protected String getSelectQuery() {
+        return "SELECT numero, libelle, description, version FROM TYPES_GASTRONOMIQUES";
+    }
+
+    @Override
+    protected String getSequenceQuery() {
+        return "SELECT SEQ_TYPES_GASTRONOMIQUES.CURRVAL FROM dual";
+    }
+
+    @Override
+    protected String getExistsQuery() {
+        return "SELECT numero FROM TYPES_GASTRONOMIQUES WHERE numero = ?";
+    }
+
+    @Override
+    protected String getCountQuery() {
+        return "SELECT COUNT(*) FROM TYPES_GASTRONOMIQUES";
+    }
+
+    @Override
+    protected String getTableName() {
+        return "TYPES_GASTRONOMIQUES";
+    }
+}
@@ -0,0 +1,76 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Position des colonnes d'une liste SELECT, calculée une fois pour toutes à partir de la liste elle-même.
+ * Toutes les requêtes d'un mapper sélectionnent la même liste de colonnes (sa constante COLUMNS) : leur forme est
+ * identique et les colonnes peuvent être lues par index, sans recherche par nom à chaque ligne.
+ *
+ * La première ligne lue vérifie que le résultat correspond bien à la liste (nombre et noms des colonnes),
+ * pour qu'une requête ou un schéma qui divergerait échoue immédiatement au lieu de lire les mauvaises colonnes.
+ */
+final class RowLayout {
+
+    private final String[] names;
+    private volatile boolean verified;
+
+    private RowLayout(String[] names) {
+        this.names = names;
+    }
+
+    /**
+     * @param columns la liste des colonnes, telle qu'écrite après SELECT : "r.numero, r.nom, ..." ou "numero, note AS n"
+     */
+    static RowLayout of(String columns) {
+        List<String> names = new ArrayList<>();
+        for (String column : columns.split(",")) {
+            String name = column.trim();
+            int alias = name.toUpperCase(Locale.ROOT).lastIndexOf(" AS ");
+            if (alias >= 0) {
+                name = name.substring(alias + 4).trim();
+            }
+            int dot = name.lastIndexOf('.');
+            names.add(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+        }
+        return new RowLayout(names.toArray(new String[0]));
+    }
+
+    /**
+     * @param name le nom de la colonne, sans préfixe de table
+     * @return l'index JDBC de la colonne, à partir de 1
+     */
+    int index(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equalsIgnoreCase(name)) {
+                return i + 1;
+            }
+        }
+        throw new IllegalArgumentException("Unknown column " + name);
+    }
+
+    /**
+     * Vérifie à la première ligne que le résultat a la forme attendue, puis ne fait plus rien
+     * @throws IllegalStateException si les colonnes du résultat ne correspondent pas
+     */
+    void verify(ResultSet rs) throws SQLException {
+        if (verified) {
+            return;
+        }
+        ResultSetMetaData metaData = rs.getMetaData();
+        if (metaData.getColumnCount() < names.length) {
+            throw new IllegalStateException("Expected " + names.length + " columns, got " + metaData.getColumnCount());
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (!metaData.getColumnLabel(i + 1).equalsIgnoreCase(names[i])) {
+                throw new IllegalStateException("Column " + (i + 1) + " is " + metaData.getColumnLabel(i + 1) + ", expected " + names[i]);
+            }
+        }
+        verified = true;
+    }
+}
@@ -0,0 +1,493 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.City;
+import ch.hearc.ig.guideresto.business.Restaurant;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.PriorityQueue;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Partitionnement horizontal des restaurants et de leurs évaluations (LIKES, COMMENTAIRES, NOTES) par ville.
+ * Le fragment 0 est la base principale (database.url), les suivants sont déclarés dans database.shards.urls,
+ * séparés par des virgules, avec les identifiants de la base principale ; n'importe quelle URL JDBC convient,
+ * par exemple plusieurs bases embarquées locales pour les essais. Un restaurant vit dans le fragment
+ * fk_vill modulo le nombre de fragments, avec toutes ses évaluations.
+ *
+ * Les tables de référence (VILLES, TYPES_GASTRONOMIQUES, CRITERES_EVALUATION) sont présentes dans chaque fragment :
+ * la base principale fait foi et une ville créée y est copiée partout avec le même numéro.
+ * Les identity maps des mappers étant communes à tous les fragments, les tables partitionnées y reçoivent des numéros
+ * disjoints : sur n fragments, le fragment k n'attribue que des numéros congrus à k modulo n. {@link #prepareSequences()}
+ * aligne leurs séquences au démarrage, et un numéro d'un autre fragment fait échouer l'insertion (voir {@link #owns(int)}).
+ * Une ligne plus ancienne dont le numéro appartient à un autre fragment est lue sans passer par l'identity map.
+ *
+ * Les requêtes sont dirigées vers un fragment en liant sa connexion au thread le temps d'un travail : les mappers
+ * n'en savent rien. Chaque fragment a son pool, de database.shards.pool.size connexions au plus.
+ * Les listes et recherches interrogent tous les fragments en parallèle (scatter-gather) et
+ * fusionnent les résultats déjà triés. Sans database.shards.urls, tout s'exécute directement sur la base principale.
+ * Le ChangeTracker suit le journal de chaque fragment.
+ */
+public class ShardRouter {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    /** Séquence des tables partitionnées, avec les tables qui en tirent leurs numéros */
+    private static final Map<String, List<String>> PARTITIONED_SEQUENCES = Map.of(
+            "SEQ_RESTAURANTS", List.of("RESTAURANTS"),
+            "SEQ_EVAL", List.of("LIKES", "COMMENTAIRES"),
+            "SEQ_NOTES", List.of("NOTES"));
+
+    private static final ShardRouter instance = new ShardRouter();
+
+    private volatile List<Shard> shards = List.of();
+    private final ThreadLocal<Integer> currentShard = ThreadLocal.withInitial(() -> 0);
+    private ExecutorService executor;
+
+    private ShardRouter() {
+        List<String> urls = new ArrayList<>();
+        String username = null;
+        String password = null;
+        try {
+            ResourceBundle dbProps = ResourceBundle.getBundle("database");
+            if (dbProps.containsKey("database.shards.urls")) {
+                urls = Arrays.asList(dbProps.getString("database.shards.urls").split(","));
+            }
+            username = dbProps.getString("database.username");
+            password = dbProps.getString("database.password");
+        } catch (MissingResourceException ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+        configure(urls, username, password, ConnectionUtils.getIntProperty("database.shards.pool.size", ConnectionUtils.getPoolSize()));
+    }
+
+    public static ShardRouter getInstance() {
+        return instance;
+    }
+
+    /**
+     * Remplace les fragments supplémentaires, après avoir fermé les connexions des précédents.
+     * Appelé au démarrage avec database.shards.urls, et par les tests avec leurs bases embarquées.
+     *
+     * @param urls les URL JDBC des fragments 1 à n-1, vide pour tout exécuter sur la base principale
+     * @param poolSize le nombre maximal de connexions ouvertes sur chaque fragment
+     */
+    synchronized void configure(List<String> urls, String username, String password, int poolSize) {
+        stop();
+        List<Shard> configured = new ArrayList<>();
+        for (String url : urls) {
+            if (!url.isBlank()) {
+                configured.add(new Shard(url.trim(), username, password, Math.max(1, poolSize)));
+            }
+        }
+        if (!configured.isEmpty()) {
+            AtomicInteger threadCount = new AtomicInteger();
+            executor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "shard-query-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            logger.info("{} shard(s) configured in addition to the primary database, {} connection(s) each", configured.size(), Math.max(1, poolSize));
+        }
+        shards = List.copyOf(configured);
+    }
+
+    public boolean isEnabled() {
+        return !shards.isEmpty();
+    }
+
+    /**
+     * @return le nombre de fragments, base principale comprise
+     */
+    public int getShardCount() {
+        return shards.size() + 1;
+    }
+
+    /**
+     * @return le fragment des restaurants de cette ville
+     */
+    public int shardOf(City city) {
+        return Math.floorMod(city.getId(), getShardCount());
+    }
+
+    public int shardOf(Restaurant restaurant) {
+        return shardOf(restaurant.getCity());
+    }
+
+    /**
+     * Exécute un travail avec toutes ses requêtes dirigées vers un fragment. La transaction ouverte par le travail
+     * doit être terminée à l'intérieur : ce qui n'a pas été validé est annulé à la sortie.
+     *
+     * @param shard le numéro du fragment, 0 pour la base principale
+     */
+    public <T> T inShard(int shard, Supplier<T> work) {
+        if (shard == 0) {
+            return inShard(0, null, work);
+        }
+        Shard target = shards.get(shard - 1);
+        Connection connection = target.borrow();
+        try {
+            return inShard(shard, connection, work);
+        } finally {
+            target.giveBack(connection);
+        }
+    }
+
+    /**
+     * Exécute un travail sur un fragment avec une connexion fournie par l'appelant, hors pool (voir ChangeTracker)
+     * @param connection la connexion au fragment, ou null pour la connexion habituelle du thread sur la base principale
+     */
+    <T> T inShard(int shard, Connection connection, Supplier<T> work) {
+        int previousShard = currentShard.get();
+        currentShard.set(shard);
+        Connection previous = ConnectionUtils.bindShardConnection(connection);
+        try {
+            return work.get();
+        } finally {
+            ConnectionUtils.bindShardConnection(previous);
+            currentShard.set(previousShard);
+        }
+    }
+
+    /**
+     * @return le fragment vers lequel les requêtes du thread courant sont dirigées, 0 hors de {@link #inShard(int, Supplier)}
+     */
+    int currentShard() {
+        return currentShard.get();
+    }
+
+    /**
+     * @return true si le numéro d'une table partitionnée appartient au fragment courant du thread
+     */
+    boolean owns(int id) {
+        return !isEnabled() || Math.floorMod(id, getShardCount()) == currentShard();
+    }
+
+    /**
+     * Ouvre une connexion dédiée à un fragment, hors pool ; l'appelant est responsable de la fermer
+     * @param shard le numéro du fragment, 0 pour la base principale
+     * @return la connexion en mode autoCommit false, ou null en cas d'erreur
+     */
+    Connection newConnection(int shard) {
+        return shard == 0 ? ConnectionUtils.newConnection() : shards.get(shard - 1).open();
+    }
+
+    /**
+     * @return le nombre de connexions ouvertes dans le pool de chaque fragment supplémentaire
+     */
+    List<Integer> openedConnections() {
+        List<Integer> opened = new ArrayList<>();
+        for (Shard shard : shards) {
+            opened.add(shard.opened.get());
+        }
+        return opened;
+    }
+
+    /**
+     * Aligne les séquences des tables partitionnées de chaque fragment : le fragment k sur n tire ensuite des numéros
+     * congrus à k modulo n, au-delà des numéros déjà utilisés. Une séquence déjà alignée n'est pas modifiée.
+     * À appeler au démarrage, avant toute écriture. Sans autre fragment, ne fait rien.
+     *
+     * @return true si toutes les séquences sont alignées
+     */
+    public boolean prepareSequences() {
+        if (!isEnabled()) {
+            return true;
+        }
+        boolean success = true;
+        for (int shard = 0; shard < getShardCount(); shard++) {
+            int target = shard;
+            success &= Boolean.TRUE.equals(inShard(shard, () -> {
+                Connection connection = ConnectionUtils.getConnection();
+                try {
+                    for (Map.Entry<String, List<String>> sequence : PARTITIONED_SEQUENCES.entrySet()) {
+                        alignSequence(connection, sequence.getKey(), sequence.getValue(), target);
+                    }
+                    connection.commit();
+                    return true;
+                } catch (SQLException ex) {
+                    logger.error("SQLException: {}", ex.getMessage());
+                    return false;
+                }
+            }));
+        }
+        return success;
+    }
+
+    /**
+     * Place la séquence sur le prochain numéro du fragment, en passant temporairement son pas à l'écart voulu :
+     * ALTER SEQUENCE ... INCREMENT BY existe sur toutes les bases, contrairement au redémarrage d'une séquence.
+     */
+    private void alignSequence(Connection connection, String sequence, List<String> tables, int shard) throws SQLException {
+        int count = getShardCount();
+        long first = nextValue(connection, sequence);
+        long second = nextValue(connection, sequence);
+        if (second - first == count && Math.floorMod(second, count) == shard) {
+            return;
+        }
+        long used = second;
+        for (String table : tables) {
+            try (PreparedStatement stmt = connection.prepareStatement("SELECT NVL(MAX(numero), 0) FROM " + table);
+                 ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    used = Math.max(used, rs.getLong(1));
+                }
+            }
+        }
+        long next = used + 1 + Math.floorMod(shard - (used + 1), count);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("ALTER SEQUENCE " + sequence + " INCREMENT BY " + (next - second));
+            nextValue(connection, sequence);
+            stmt.execute("ALTER SEQUENCE " + sequence + " INCREMENT BY " + count);
+        }
+        logger.info("Sequence {} of shard {} aligned: numbers {} + k * {}", sequence, shard, next + count, count);
+    }
+
+    private static long nextValue(Connection connection, String sequence) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT " + sequence + ".NEXTVAL FROM dual");
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Exécute un travail dans sa propre transaction sur un fragment (voir {@link TransactionManager#execute(Supplier)})
+     */
+    public <T> T execute(int shard, Supplier<T> work) {
+        if (!isEnabled()) {
+            return TransactionManager.getInstance().execute(work);
+        }
+        return inShard(shard, () -> TransactionManager.getInstance().executeIsolated(work));
+    }
+
+    /**
+     * Comme {@link TransactionManager#executeGrouped(Supplier)}. La validation groupée n'utilise que la base principale :
+     * avec plusieurs fragments, chaque écriture est validée dans le sien.
+     */
+    public <T> T executeGrouped(int shard, Supplier<T> work) {
+        if (!isEnabled()) {
+            return TransactionManager.getInstance().executeGrouped(work);
+        }
+        return execute(shard, work);
+    }
+
+    /**
+     * Copie une ville qui vient d'être créée sur la base principale dans chacun des autres fragments, chaque copie
+     * dans sa propre transaction. Il n'y a pas de validation en deux phases : un fragment en échec est signalé dans le log.
+     * Une ville déjà copiée est ignorée, si bien qu'une copie en échec peut simplement être refaite.
+     *
+     * @return true si tous les fragments ont validé
+     */
+    public boolean replicateCity(City city) {
+        return replicateCities(List.of(city));
+    }
+
+    /**
+     * Comme {@link #replicateCity(City)}, avec un lot JDBC par fragment
+     */
+    public boolean replicateCities(Collection<City> cities) {
+        boolean success = true;
+        for (int shard = 1; shard < getShardCount(); shard++) {
+            if (!Boolean.TRUE.equals(execute(shard, () -> CityMapper.getInstance().insertReplicas(cities)))) {
+                logger.error("{} cities could not be copied to shard {}", cities.size(), shard);
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    /**
+     * Exécute la même lecture sur tous les fragments en parallèle. La part de la base principale s'exécute sur le thread
+     * appelant, avec sa connexion habituelle ; les autres sur des threads dédiés, chacun avec une connexion du fragment.
+     *
+     * @return les résultats, dans l'ordre des fragments
+     */
+    public <T> List<T> scatter(Supplier<T> query) {
+        List<T> results = new ArrayList<>(getShardCount());
+        if (!isEnabled()) {
+            results.add(query.get());
+            return results;
+        }
+        List<CompletableFuture<T>> remote = new ArrayList<>(shards.size());
+        for (int shard = 1; shard < getShardCount(); shard++) {
+            int target = shard;
+            remote.add(CompletableFuture.supplyAsync(() -> inShard(target, query), executor));
+        }
+        results.add(inShard(0, query));
+        for (CompletableFuture<T> future : remote) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    /**
+     * Scatter-gather d'une recherche dont chaque fragment retourne un résultat trié : fusion des listes triées
+     *
+     * @param order l'ordre de tri commun des résultats des fragments
+     * @return les résultats de tous les fragments, dans cet ordre
+     */
+    public <T> Set<T> scatterSorted(Supplier<? extends Collection<T>> query, Comparator<? super T> order) {
+        List<? extends Collection<T>> partials = scatter(query);
+        if (partials.size() == 1) {
+            return new LinkedHashSet<>(partials.get(0));
+        }
+        PriorityQueue<Head<T>> heads = new PriorityQueue<>((a, b) -> order.compare(a.value, b.value));
+        for (Collection<T> partial : partials) {
+            Iterator<T> iterator = partial.iterator();
+            if (iterator.hasNext()) {
+                heads.add(new Head<>(iterator.next(), iterator));
+            }
+        }
+        Set<T> merged = new LinkedHashSet<>();
+        while (!heads.isEmpty()) {
+            Head<T> head = heads.poll();
+            merged.add(head.value);
+            if (head.rest.hasNext()) {
+                heads.add(new Head<>(head.rest.next(), head.rest));
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * @return le premier résultat non null dans l'ordre des fragments, par exemple pour une recherche par ID
+     */
+    public <T> T findFirst(Supplier<T> query) {
+        for (T result : scatter(query)) {
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Exécute un travail sur chaque fragment, l'un après l'autre : sert à charger les index en mémoire
+     */
+    public void forEachShard(Runnable work) {
+        for (int shard = 0; shard < getShardCount(); shard++) {
+            inShard(shard, () -> {
+                work.run();
+                return null;
+            });
+        }
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        for (Shard shard : shards) {
+            shard.close();
+        }
+    }
+
+    private record Head<T>(T value, Iterator<T> rest) {
+    }
+
+    /**
+     * Un fragment et son pool, borné comme celui de la base principale : une connexion est ouverte si aucune n'est libre
+     * et que le pool n'est pas plein, sinon on attend qu'un autre travail rende la sienne
+     */
+    private static class Shard {
+
+        private final String url;
+        private final String username;
+        private final String password;
+        private final int poolSize;
+        private final AtomicInteger opened = new AtomicInteger();
+        private final BlockingQueue<Connection> idle = new LinkedBlockingQueue<>();
+
+        private Shard(String url, String username, String password, int poolSize) {
+            this.url = url;
+            this.username = username;
+            this.password = password;
+            this.poolSize = poolSize;
+        }
+
+        private Connection borrow() {
+            try {
+                while (true) {
+                    Connection connection = idle.poll();
+                    if (connection == null) {
+                        if (opened.incrementAndGet() <= poolSize) {
+                            connection = open();
+                            if (connection == null) {
+                                opened.decrementAndGet();
+                                throw new IllegalStateException("Unable to connect to shard " + url);
+                            }
+                        } else {
+                            opened.decrementAndGet();
+                            connection = idle.take();
+                        }
+                    }
+                    if (!connection.isClosed()) {
+                        return connection;
+                    }
+                    // Connexion perdue : on l'oublie et on en reprend une autre
+                    opened.decrementAndGet();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a connection to shard " + url, ex);
+            } catch (SQLException ex) {
+                throw new IllegalStateException(ex.getMessage(), ex);
+            }
+        }
+
+        private Connection open() {
+            return SlowQueryLog.wrap(ConnectionUtils.newRawConnection(url, username, password));
+        }
+
+        private void giveBack(Connection connection) {
+            try {
+                connection.rollback();
+                idle.offer(connection);
+            } catch (SQLException ex) {
+                logger.error(ex.getMessage(), ex);
+                opened.decrementAndGet();
+                try {
+                    connection.close();
+                } catch (SQLException closeEx) {
+                    logger.error(closeEx.getMessage(), closeEx);
+                }
+            }
+        }
+
+        private void close() {
+            Connection connection;
+            while ((connection = idle.poll()) != null) {
+                try {
+                    connection.close();
+                } catch (SQLException ex) {
+                    logger.error(ex.getMessage(), ex);
+                }
+                opened.decrementAndGet();
+            }
+        }
+    }
+}
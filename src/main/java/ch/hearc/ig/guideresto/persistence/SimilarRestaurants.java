@@ -0,0 +1,578 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.BasicEvaluation;
+import ch.hearc.ig.guideresto.business.CompleteEvaluation;
+import ch.hearc.ig.guideresto.business.Grade;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restaurants similaires, calculés d'après les personnes qui les ont évalués (filtrage collaboratif item-item).
+ *
+ * Chaque restaurant est un vecteur creux sur les évaluateurs : un nom d'utilisateur (COMMENTAIRES) ou une adresse IP
+ * (LIKES). Un like vaut +1, un dislike -1, un commentaire (moyenne des notes - 3) / 2, soit de -1 à +1.
+ * Deux restaurants sont similaires si les mêmes personnes les ont jugés de la même façon (cosinus des vecteurs).
+ *
+ * Le calcul se fait sur une représentation CSR (lignes = restaurants) et sa transposée : pour un restaurant, seuls les
+ * restaurants ayant un évaluateur en commun sont visités. Les lignes sont réparties entre les threads d'un pool
+ * fork-join ; seuls les similar.neighbours meilleurs voisins de chaque restaurant sont gardés.
+ *
+ * Les nouvelles évaluations modifient les vecteurs et marquent leur restaurant ; l'actualisation périodique
+ * (similar.refresh.ms) ne recalcule que les voisins des restaurants marqués et corrige leurs scores chez les autres.
+ * La consultation ne fait qu'une lecture dans la table précalculée.
+ */
+public class SimilarRestaurants {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final String LIKES_QUERY = "SELECT fk_rest, adresse_ip, appreciation FROM LIKES";
+    private static final String COMMENTS_QUERY = "SELECT c.fk_rest, c.nom_utilisateur, AVG(n.note) FROM COMMENTAIRES c " +
+            "LEFT JOIN NOTES n ON n.fk_comm = c.numero GROUP BY c.numero, c.fk_rest, c.nom_utilisateur";
+
+    /** Un évaluateur qui a jugé plus de restaurants que cela (proxy, IP partagée...) n'apporte que du bruit et un coût quadratique */
+    private static final int MAX_USER_DEGREE = 500;
+    /** Nombre de lignes traitées par une tâche fork-join */
+    private static final int ROWS_PER_TASK = 64;
+
+    private static final SimilarRestaurants instance = new SimilarRestaurants();
+
+    private final int neighbourCount;
+    // Vecteurs modifiables, par restaurant puis par évaluateur ; protégés par le verrou de l'instance
+    private final Map<Integer, Map<Integer, Float>> vectors = new HashMap<>();
+    private final Map<String, Integer> users = new HashMap<>();
+    private final Set<Integer> dirty = new HashSet<>();
+    private volatile Map<Integer, Neighbours> neighbours = Map.of();
+    private ScheduledExecutorService scheduler;
+
+    private SimilarRestaurants() {
+        neighbourCount = Math.max(1, ConnectionUtils.getIntProperty("similar.neighbours", 10));
+    }
+
+    public static SimilarRestaurants getInstance() {
+        return instance;
+    }
+
+    /**
+     * Relit toutes les évaluations et recalcule les voisins de tous les restaurants
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        Csr csr;
+        int userCount;
+        synchronized (this) {
+            vectors.clear();
+            users.clear();
+            ShardRouter.getInstance().forEachShard(this::loadEvaluations);
+            // Le chargement a marqué tous les restaurants : ils sont tous recalculés ici
+            dirty.clear();
+            csr = Csr.of(vectors);
+            userCount = users.size();
+        }
+        Map<Integer, Neighbours> computed = compute(csr, allRows(csr));
+        synchronized (this) {
+            neighbours = withoutForgotten(computed, csr);
+        }
+        logger.info("Similar restaurants computed: {} restaurants, {} evaluators, {} non-zeros in {} ms",
+                csr.ids.length, userCount, csr.values.length, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Actualise les voisins périodiquement
+     * @param intervalMillis délai entre deux actualisations, 0 ou négatif pour ne rien planifier
+     */
+    public synchronized void startScheduledRefresh(long intervalMillis) {
+        if (scheduler != null || intervalMillis <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "similar-restaurants-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (RuntimeException ex) {
+                // Une exception non traitée annulerait les exécutions suivantes du scheduler
+                logger.error(ex.getMessage(), ex);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Prend en compte un like ou un dislike qui vient d'être enregistré
+     */
+    public synchronized void record(BasicEvaluation evaluation) {
+        if (evaluation.getIpAddress() != null) {
+            add(evaluation.getRestaurant().getId(), "ip:" + evaluation.getIpAddress(),
+                    Boolean.TRUE.equals(evaluation.getLikeRestaurant()) ? 1f : -1f);
+        }
+    }
+
+    /**
+     * Prend en compte une évaluation complète qui vient d'être enregistrée, avec ses notes
+     */
+    public synchronized void record(CompleteEvaluation evaluation) {
+        if (evaluation.getUsername() == null) {
+            return;
+        }
+        double sum = 0;
+        int count = 0;
+        for (Grade grade : evaluation.getGrades()) {
+            if (grade.getGrade() != null) {
+                sum += grade.getGrade();
+                count++;
+            }
+        }
+        add(evaluation.getRestaurant().getId(), "user:" + evaluation.getUsername(), count == 0 ? 0f : gradeWeight(sum / count));
+    }
+
+    /**
+     * Oublie un restaurant supprimé, y compris dans les voisins des autres.
+     * Les voisins sont remplacés sous le verrou de l'instance, comme à la fin d'une actualisation.
+     */
+    public synchronized void forget(int restaurantId) {
+        vectors.remove(restaurantId);
+        dirty.remove(restaurantId);
+        Map<Integer, Neighbours> updated = new HashMap<>(neighbours);
+        forget(updated, restaurantId);
+        neighbours = updated;
+    }
+
+    private static void forget(Map<Integer, Neighbours> updated, int restaurantId) {
+        updated.remove(restaurantId);
+        updated.replaceAll((id, list) -> list.without(restaurantId));
+    }
+
+    /**
+     * Retire des voisins calculés les restaurants oubliés pendant le calcul. Doit être appelé avec le verrou de l'instance
+     * @param csr la matrice du calcul
+     */
+    private Map<Integer, Neighbours> withoutForgotten(Map<Integer, Neighbours> updated, Csr csr) {
+        for (int id : csr.ids) {
+            if (!vectors.containsKey(id)) {
+                forget(updated, id);
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Recalcule les voisins des restaurants dont les évaluations ont changé depuis la dernière actualisation
+     */
+    public void refresh() {
+        long start = System.currentTimeMillis();
+        Csr csr;
+        Set<Integer> changed;
+        synchronized (this) {
+            if (dirty.isEmpty()) {
+                return;
+            }
+            changed = new HashSet<>(dirty);
+            dirty.clear();
+            csr = Csr.of(vectors);
+        }
+        List<Integer> rows = new ArrayList<>();
+        for (Integer id : changed) {
+            Integer row = csr.rowOf.get(id);
+            if (row != null) {
+                rows.add(row);
+            }
+        }
+        Map<Integer, Neighbours> recomputed = compute(csr, rows.stream().mapToInt(Integer::intValue).toArray());
+
+        // La similarité est symétrique : les restaurants qui avaient ou qui ont désormais un restaurant modifié comme voisin
+        // reçoivent son nouveau score. La copie et son remplacement se font sous le verrou, pour ne pas perdre un oubli.
+        synchronized (this) {
+            neighbours = withoutForgotten(merge(csr, changed, recomputed), csr);
+        }
+        logger.debug("Similar restaurants refreshed: {} changed restaurants in {} ms", changed.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @return une copie des voisins actuels avec les voisins recalculés et leurs scores chez les autres restaurants
+     */
+    private Map<Integer, Neighbours> merge(Csr csr, Set<Integer> changed, Map<Integer, Neighbours> recomputed) {
+        Map<Integer, Neighbours> updated = new HashMap<>(neighbours);
+        updated.putAll(recomputed);
+        for (Map.Entry<Integer, Neighbours> entry : updated.entrySet()) {
+            int id = entry.getKey();
+            if (changed.contains(id)) {
+                continue;
+            }
+            Neighbours list = entry.getValue();
+            for (int neighbour : list.ids) {
+                if (changed.contains(neighbour)) {
+                    list = list.with(neighbour, csr.cosine(id, neighbour), neighbourCount);
+                }
+            }
+            entry.setValue(list);
+        }
+        for (Map.Entry<Integer, Neighbours> entry : recomputed.entrySet()) {
+            Neighbours list = entry.getValue();
+            for (int i = 0; i < list.ids.length; i++) {
+                Neighbours other = updated.getOrDefault(list.ids[i], Neighbours.EMPTY);
+                updated.put(list.ids[i], other.with(entry.getKey(), list.scores[i], neighbourCount));
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * @param restaurantId l'ID du restaurant affiché
+     * @param limit le nombre maximal de restaurants, au plus similar.neighbours
+     * @return les ID des restaurants les plus similaires et leur similarité (0 à 1), du plus au moins similaire
+     */
+    public Map<Integer, Double> getSimilar(int restaurantId, int limit) {
+        Neighbours list = neighbours.getOrDefault(restaurantId, Neighbours.EMPTY);
+        Map<Integer, Double> similar = new LinkedHashMap<>();
+        for (int i = 0; i < list.ids.length && i < limit; i++) {
+            similar.put(list.ids[i], (double) list.scores[i]);
+        }
+        return similar;
+    }
+
+    /**
+     * Lit les évaluations de la base courante. Doit être appelé avec le verrou de l'instance
+     */
+    private void loadEvaluations() {
+        Connection connection = ConnectionUtils.getReadConnection();
+
+        try (PreparedStatement stmt = connection.prepareStatement(LIKES_QUERY)) {
+            stmt.setFetchSize(1000);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (rs.getString(2) != null) {
+                        add(rs.getInt(1), "ip:" + rs.getString(2), "T".equals(rs.getString(3)) ? 1f : -1f);
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+        try (PreparedStatement stmt = connection.prepareStatement(COMMENTS_QUERY)) {
+            stmt.setFetchSize(1000);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (rs.getString(2) != null) {
+                        double average = rs.getDouble(3);
+                        add(rs.getInt(1), "user:" + rs.getString(2), rs.wasNull() ? 0f : gradeWeight(average));
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+    }
+
+    private void add(int restaurantId, String user, float weight) {
+        Integer userId = users.computeIfAbsent(user, k -> users.size());
+        vectors.computeIfAbsent(restaurantId, k -> new HashMap<>()).merge(userId, weight, Float::sum);
+        dirty.add(restaurantId);
+    }
+
+    private static float gradeWeight(double average) {
+        return (float) ((average - 3) / 2);
+    }
+
+    private static int[] allRows(Csr csr) {
+        int[] rows = new int[csr.ids.length];
+        Arrays.setAll(rows, i -> i);
+        return rows;
+    }
+
+    /**
+     * Calcule en parallèle les meilleurs voisins des lignes demandées
+     * @return les voisins, par ID de restaurant
+     */
+    private Map<Integer, Neighbours> compute(Csr csr, int[] rows) {
+        Neighbours[] results = new Neighbours[rows.length];
+        ForkJoinPool.commonPool().invoke(new NeighboursTask(csr, rows, 0, rows.length, results, neighbourCount));
+        Map<Integer, Neighbours> computed = new HashMap<>(rows.length * 2);
+        for (int i = 0; i < rows.length; i++) {
+            computed.put(csr.ids[rows[i]], results[i]);
+        }
+        return computed;
+    }
+
+    /**
+     * Matrice creuse restaurants x évaluateurs au format CSR, avec sa transposée (CSC) et la norme de chaque ligne
+     */
+    private static class Csr {
+
+        private final int[] ids;
+        private final Map<Integer, Integer> rowOf;
+        private final int[] rowStart;
+        private final int[] columns;
+        private final float[] values;
+        private final double[] norms;
+        private final int[] columnStart;
+        private final int[] rows;
+        private final float[] columnValues;
+
+        private Csr(int[] ids, int[] rowStart, int[] columns, float[] values, int userCount) {
+            this.ids = ids;
+            this.rowStart = rowStart;
+            this.columns = columns;
+            this.values = values;
+            this.rowOf = new HashMap<>(ids.length * 2);
+            this.norms = new double[ids.length];
+            for (int row = 0; row < ids.length; row++) {
+                rowOf.put(ids[row], row);
+                double sum = 0;
+                for (int k = rowStart[row]; k < rowStart[row + 1]; k++) {
+                    sum += values[k] * values[k];
+                }
+                norms[row] = Math.sqrt(sum);
+            }
+
+            // Transposée par comptage : les lignes de chaque colonne restent triées
+            columnStart = new int[userCount + 1];
+            for (int column : columns) {
+                columnStart[column + 1]++;
+            }
+            for (int column = 0; column < userCount; column++) {
+                columnStart[column + 1] += columnStart[column];
+            }
+            rows = new int[columns.length];
+            columnValues = new float[columns.length];
+            int[] next = Arrays.copyOf(columnStart, userCount);
+            for (int row = 0; row < ids.length; row++) {
+                for (int k = rowStart[row]; k < rowStart[row + 1]; k++) {
+                    int position = next[columns[k]]++;
+                    rows[position] = row;
+                    columnValues[position] = values[k];
+                }
+            }
+        }
+
+        private static Csr of(Map<Integer, Map<Integer, Float>> vectors) {
+            int[] ids = vectors.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+            int[] rowStart = new int[ids.length + 1];
+            int nonZeros = 0;
+            int userCount = 0;
+            for (int row = 0; row < ids.length; row++) {
+                for (Map.Entry<Integer, Float> entry : vectors.get(ids[row]).entrySet()) {
+                    if (entry.getValue() != 0f) {
+                        nonZeros++;
+                    }
+                    userCount = Math.max(userCount, entry.getKey() + 1);
+                }
+                rowStart[row + 1] = nonZeros;
+            }
+            int[] columns = new int[nonZeros];
+            float[] values = new float[nonZeros];
+            int position = 0;
+            for (int id : ids) {
+                int start = position;
+                for (Map.Entry<Integer, Float> entry : vectors.get(id).entrySet()) {
+                    if (entry.getValue() != 0f) {
+                        columns[position++] = entry.getKey();
+                    }
+                }
+                Arrays.sort(columns, start, position);
+                Map<Integer, Float> vector = vectors.get(id);
+                for (int k = start; k < position; k++) {
+                    values[k] = vector.get(columns[k]);
+                }
+            }
+            return new Csr(ids, rowStart, columns, values, userCount);
+        }
+
+        /**
+         * Cosinus entre deux restaurants, par fusion de leurs lignes triées. Comme dans {@link NeighboursTask},
+         * les évaluateurs de plus de MAX_USER_DEGREE restaurants ne comptent que dans les normes.
+         */
+        private float cosine(int firstId, int secondId) {
+            Integer first = rowOf.get(firstId);
+            Integer second = rowOf.get(secondId);
+            if (first == null || second == null || norms[first] == 0 || norms[second] == 0) {
+                return 0f;
+            }
+            double dot = 0;
+            int i = rowStart[first];
+            int j = rowStart[second];
+            while (i < rowStart[first + 1] && j < rowStart[second + 1]) {
+                if (columns[i] == columns[j]) {
+                    int user = columns[i];
+                    if (columnStart[user + 1] - columnStart[user] <= MAX_USER_DEGREE) {
+                        dot += values[i] * values[j];
+                    }
+                    i++;
+                    j++;
+                } else if (columns[i] < columns[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return (float) (dot / (norms[first] * norms[second]));
+        }
+    }
+
+    /**
+     * Calcule les voisins d'une plage de lignes, en la coupant en deux tant qu'elle dépasse ROWS_PER_TASK
+     */
+    private static class NeighboursTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        // La tâche n'est jamais sérialisée : la matrice et les résultats restent en mémoire
+        private final transient Csr csr;
+        private final int[] rows;
+        private final int from;
+        private final int to;
+        private final transient Neighbours[] results;
+        private final int k;
+
+        private NeighboursTask(Csr csr, int[] rows, int from, int to, Neighbours[] results, int k) {
+            this.csr = csr;
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.results = results;
+            this.k = k;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > ROWS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new NeighboursTask(csr, rows, from, middle, results, k),
+                        new NeighboursTask(csr, rows, middle, to, results, k));
+                return;
+            }
+            // Produits scalaires accumulés par restaurant voisin, réutilisés d'une ligne à l'autre
+            double[] dots = new double[csr.ids.length];
+            int[] touched = new int[csr.ids.length];
+            for (int i = from; i < to; i++) {
+                int row = rows[i];
+                int touchedCount = 0;
+                for (int p = csr.rowStart[row]; p < csr.rowStart[row + 1]; p++) {
+                    int user = csr.columns[p];
+                    if (csr.columnStart[user + 1] - csr.columnStart[user] > MAX_USER_DEGREE) {
+                        continue;
+                    }
+                    float value = csr.values[p];
+                    for (int q = csr.columnStart[user]; q < csr.columnStart[user + 1]; q++) {
+                        int other = csr.rows[q];
+                        if (other == row) {
+                            continue;
+                        }
+                        if (dots[other] == 0) {
+                            touched[touchedCount++] = other;
+                        }
+                        dots[other] += value * csr.columnValues[q];
+                        if (dots[other] == 0) {
+                            dots[other] = Double.MIN_VALUE; // Reste marqué comme visité
+                        }
+                    }
+                }
+                results[i] = top(row, dots, touched, touchedCount);
+            }
+        }
+
+        private Neighbours top(int row, double[] dots, int[] touched, int touchedCount) {
+            int[] ids = new int[k];
+            float[] scores = new float[k];
+            int size = 0;
+            for (int t = 0; t < touchedCount; t++) {
+                int other = touched[t];
+                double dot = dots[other];
+                dots[other] = 0;
+                if (dot <= 0 || csr.norms[row] == 0 || csr.norms[other] == 0) {
+                    continue;
+                }
+                float score = (float) (dot / (csr.norms[row] * csr.norms[other]));
+                // Insertion dans la liste triée des k meilleurs
+                if (size == k && score <= scores[k - 1]) {
+                    continue;
+                }
+                int position = size < k ? size++ : k - 1;
+                while (position > 0 && scores[position - 1] < score) {
+                    scores[position] = scores[position - 1];
+                    ids[position] = ids[position - 1];
+                    position--;
+                }
+                scores[position] = score;
+                ids[position] = csr.ids[other];
+            }
+            return new Neighbours(Arrays.copyOf(ids, size), Arrays.copyOf(scores, size));
+        }
+    }
+
+    /**
+     * Voisins d'un restaurant, du plus au moins similaire. Immuable.
+     */
+    private record Neighbours(int[] ids, float[] scores) {
+
+        private static final Neighbours EMPTY = new Neighbours(new int[0], new float[0]);
+
+        private Neighbours without(int id) {
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == id) {
+                    int[] newIds = new int[ids.length - 1];
+                    float[] newScores = new float[ids.length - 1];
+                    System.arraycopy(ids, 0, newIds, 0, i);
+                    System.arraycopy(ids, i + 1, newIds, i, ids.length - i - 1);
+                    System.arraycopy(scores, 0, newScores, 0, i);
+                    System.arraycopy(scores, i + 1, newScores, i, ids.length - i - 1);
+                    return new Neighbours(newIds, newScores);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * @return la liste avec le score de ce voisin remplacé ou ajouté, limitée à max voisins de score positif
+         */
+        private Neighbours with(int id, float score, int max) {
+            Neighbours base = without(id);
+            if (score <= 0) {
+                return base;
+            }
+            int position = 0;
+            while (position < base.ids.length && base.scores[position] >= score) {
+                position++;
+            }
+            if (position >= max) {
+                return base;
+            }
+            int size = Math.min(max, base.ids.length + 1);
+            int[] newIds = new int[size];
+            float[] newScores = new float[size];
+            System.arraycopy(base.ids, 0, newIds, 0, position);
+            System.arraycopy(base.scores, 0, newScores, 0, position);
+            newIds[position] = id;
+            newScores[position] = score;
+            System.arraycopy(base.ids, position, newIds, position + 1, size - position - 1);
+            System.arraycopy(base.scores, position, newScores, position + 1, size - position - 1);
+            return new Neighbours(newIds, newScores);
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Journal des requêtes lentes, écrit dans le logger SLOW_QUERY (voir log4j2.xml).
+ * Les connexions ouvertes par {@link ConnectionUtils} sont enveloppées afin de chronométrer chaque PreparedStatement :
+ * pour une requête, le temps comprend l'exécution et la lecture du ResultSet, jusqu'à sa fermeture.
+ *
+ * Propriétés de database.properties :
+ * slowquery.threshold.ms (seuil, négatif pour désactiver), slowquery.mask.strings (masquage des valeurs texte),
+ * slowquery.explain.sample (capture du plan d'exécution à la N-ième exécution lente de chaque requête, 0 pour ne jamais
+ * le faire). Le plan n'est capturé qu'une fois par requête distincte, sur une connexion réservée à cet usage.
+ */
+public class SlowQueryLog {
+
+    private static final Logger logger = LogManager.getLogger();
+    private static final Logger slowLogger = LogManager.getLogger("SLOW_QUERY");
+
+    private static final long thresholdMillis = ConnectionUtils.getIntProperty("slowquery.threshold.ms", 500);
+    private static final boolean maskStrings = ConnectionUtils.getIntProperty("slowquery.mask.strings", 1) != 0;
+    private static final int explainSample = ConnectionUtils.getIntProperty("slowquery.explain.sample", 0);
+
+    // Nombre d'exécutions lentes par requête distincte
+    private static final Map<String, AtomicLong> slowCounts = new ConcurrentHashMap<>();
+    private static ExecutorService explainExecutor;
+    // Utilisée par le seul thread d'explain-plan
+    private static Connection explainConnection;
+
+    private SlowQueryLog() {
+    }
+
+    /**
+     * Enveloppe une connexion pour mesurer ses requêtes. Retourne la connexion telle quelle si le journal est désactivé.
+     * @param connection la connexion JDBC réelle
+     * @return une connexion qui journalise les requêtes lentes
+     */
+    public static Connection wrap(Connection connection) {
+        if (connection == null || thresholdMillis < 0) {
+            return connection;
+        }
+        return (Connection) Proxy.newProxyInstance(SlowQueryLog.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    if (result instanceof PreparedStatement && method.getName().equals("prepareStatement")) {
+                        return wrapStatement((PreparedStatement) result, (String) args[0]);
+                    }
+                    return result;
+                });
+    }
+
+    /**
+     * Identifiant court et stable d'une requête, pour regrouper ses occurrences dans le journal
+     */
+    static String sqlId(String sql) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < sql.length(); i++) {
+            hash ^= sql.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return Long.toHexString(hash);
+    }
+
+    private static PreparedStatement wrapStatement(PreparedStatement statement, String sql) {
+        StatementHandler handler = new StatementHandler(statement, sql);
+        return (PreparedStatement) Proxy.newProxyInstance(SlowQueryLog.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private static void report(String sql, Map<Integer, Object> binds, long rows, long elapsedNanos) {
+        long elapsedMillis = elapsedNanos / 1_000_000;
+        if (elapsedMillis < thresholdMillis) {
+            return;
+        }
+        String sqlId = sqlId(sql);
+        slowLogger.warn("sql_id={} time={}ms rows={} binds={} sql={}", sqlId, elapsedMillis, rows, formatBinds(binds), sql);
+
+        if (explainSample > 0 && slowCounts.computeIfAbsent(sqlId, k -> new AtomicLong()).incrementAndGet() == explainSample) {
+            explainAsync(sqlId, sql);
+        }
+    }
+
+    private static String formatBinds(Map<Integer, Object> binds) {
+        StringBuilder sb = new StringBuilder("[");
+        for (Map.Entry<Integer, Object> entry : binds.entrySet()) {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(entry.getKey()).append('=').append(formatValue(entry.getValue()));
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Les valeurs texte (noms d'utilisateurs, adresses IP, commentaires...) sont entièrement masquées, seule leur longueur est gardée
+     */
+    private static String formatValue(Object value) {
+        if (value == null) {
+            return "NULL";
+        }
+        if (value instanceof String && maskStrings) {
+            String text = (String) value;
+            return "'***'(" + text.length() + ")";
+        }
+        if (value instanceof String) {
+            return "'" + value + "'";
+        }
+        return value.toString();
+    }
+
+    /**
+     * Capture le plan d'exécution sur une connexion séparée, en arrière-plan pour ne pas ralentir davantage l'appelant
+     */
+    private static synchronized void explainAsync(String sqlId, String sql) {
+        if (explainExecutor == null) {
+            explainExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "slow-query-explain");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        explainExecutor.submit(() -> explain(sqlId, sql));
+    }
+
+    private static void explain(String sqlId, String sql) {
+        // EXPLAIN PLAN n'accepte pas les '?' JDBC mais des variables nommées, sans valeur
+        StringBuilder namedSql = new StringBuilder();
+        int bind = 0;
+        for (char c : sql.toCharArray()) {
+            if (c == '?') {
+                namedSql.append(":b").append(++bind);
+            } else {
+                namedSql.append(c);
+            }
+        }
+
+        try {
+            Connection connection = explainConnection();
+            if (connection == null) {
+                return;
+            }
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("EXPLAIN PLAN SET STATEMENT_ID = '" + sqlId + "' FOR " + namedSql);
+            }
+            StringBuilder plan = new StringBuilder();
+            try (PreparedStatement stmt = connection.prepareStatement("SELECT plan_table_output FROM TABLE(DBMS_XPLAN.DISPLAY('PLAN_TABLE', ?, 'TYPICAL'))")) {
+                stmt.setString(1, sqlId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        plan.append('\n').append(rs.getString(1));
+                    }
+                }
+            }
+            connection.rollback();
+            slowLogger.warn("sql_id={} plan:{}", sqlId, plan);
+        } catch (SQLException ex) {
+            logger.error("Unable to explain sql_id {}: {}", sqlId, ex.getMessage());
+            rollbackExplain();
+        }
+    }
+
+    private static void rollbackExplain() {
+        try {
+            if (explainConnection != null) {
+                explainConnection.rollback();
+            }
+        } catch (SQLException ex) {
+            logger.debug("Rollback of explain connection failed: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * @return la connexion réservée aux explain-plans, ouverte au premier usage et rouverte si elle a été perdue
+     */
+    private static Connection explainConnection() throws SQLException {
+        if (explainConnection == null || !explainConnection.isValid(5)) {
+            if (explainConnection != null) {
+                try {
+                    explainConnection.close();
+                } catch (SQLException ex) {
+                    logger.debug("Closing lost explain connection: {}", ex.getMessage());
+                }
+            }
+            explainConnection = ConnectionUtils.newRawConnection();
+        }
+        return explainConnection;
+    }
+
+    /**
+     * Mémorise les valeurs liées et chronomètre les exécutions d'un PreparedStatement
+     */
+    private static class StatementHandler implements InvocationHandler {
+
+        private final PreparedStatement statement;
+        private final String sql;
+        private final Map<Integer, Object> binds = new TreeMap<>();
+
+        private StatementHandler(PreparedStatement statement, String sql) {
+            this.statement = statement;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                binds.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+            } else if (name.equals("clearParameters")) {
+                binds.clear();
+            }
+
+            if (!name.startsWith("execute")) {
+                return SlowQueryLog.invoke(statement, method, args);
+            }
+
+            long start = System.nanoTime();
+            Object result = SlowQueryLog.invoke(statement, method, args);
+            if (result instanceof ResultSet) {
+                return wrapResultSet((ResultSet) result, start);
+            }
+            report(sql, new TreeMap<>(binds), rows(result), System.nanoTime() - start);
+            return result;
+        }
+
+        private static long rows(Object result) {
+            if (result instanceof Number) {
+                return ((Number) result).longValue();
+            }
+            if (result instanceof int[]) {
+                long total = 0;
+                for (int count : (int[]) result) {
+                    total += Math.max(0, count);
+                }
+                return total;
+            }
+            return -1;
+        }
+
+        /**
+         * Compte les lignes lues et journalise la requête à la fermeture du ResultSet
+         */
+        private ResultSet wrapResultSet(ResultSet resultSet, long start) {
+            Map<Integer, Object> executedBinds = new TreeMap<>(binds);
+            long[] rows = {0};
+            boolean[] reported = {false};
+            return (ResultSet) Proxy.newProxyInstance(SlowQueryLog.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                    (proxy, method, args) -> {
+                        Object result = SlowQueryLog.invoke(resultSet, method, args);
+                        if (method.getName().equals("next") && Boolean.TRUE.equals(result)) {
+                            rows[0]++;
+                        } else if (method.getName().equals("close") && !reported[0]) {
+                            reported[0] = true;
+                            report(sql, executedBinds, rows[0], System.nanoTime() - start);
+                        }
+                        return result;
+                    });
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Délimite les transactions des services : un travail est exécuté sur la connexion du thread puis validé s'il a réussi
+ * (résultat ni null ni false), annulé sinon ou s'il lève une exception. Un travail lancé à l'intérieur d'un autre
+ * fait partie de la même transaction, seul le plus extérieur valide ou annule. Si le COMMIT échoue, la transaction
+ * est annulée et l'appelant reçoit null.
+ *
+ * Les caches ne doivent refléter que des données validées : les mappers et services y reportent leurs écritures
+ * via {@link #afterCommit(Runnable)}, exécuté seulement une fois le COMMIT réussi.
+ *
+ * Validation groupée (transaction.group.commit.ms > 0) : les petites écritures fréquentes (votes, évaluations) sont
+ * confiées à un thread unique qui les exécute sur sa propre connexion, chacune derrière un savepoint, et valide toutes
+ * celles arrivées pendant la fenêtre en un seul COMMIT, donc une seule écriture du journal. Chaque appelant attend que
+ * ce COMMIT ait réussi avant de continuer : son écriture est durable quand il reçoit le résultat.
+ * Les écritures elles-mêmes s'exécutent donc l'une après l'autre sur ce thread : seul le COMMIT est partagé.
+ * Le mode convient aux écritures courtes, dont la durée est faible devant celle d'un COMMIT ; une écriture lente
+ * retarde toutes celles de son groupe.
+ */
+public class TransactionManager {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final TransactionManager instance = new TransactionManager();
+
+    private final ThreadLocal<Integer> depth = ThreadLocal.withInitial(() -> 0);
+    // Actions à exécuter après le COMMIT de la transaction en cours du thread, absent hors transaction
+    private final ThreadLocal<List<Runnable>> afterCommit = new ThreadLocal<>();
+    private final BlockingQueue<PendingWork<?>> pending = new LinkedBlockingQueue<>();
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private volatile Thread committer;
+    private volatile boolean running;
+    // Oracle ne libère les savepoints qu'au COMMIT et refuse releaseSavepoint()
+    private volatile boolean savepointReleaseSupported = true;
+
+    private TransactionManager() {
+        windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, ConnectionUtils.getIntProperty("transaction.group.commit.ms", 0)));
+        maxBatchSize = Math.max(1, ConnectionUtils.getIntProperty("transaction.group.max.size", 64));
+    }
+
+    public static TransactionManager getInstance() {
+        return instance;
+    }
+
+    /**
+     * Exécute un travail dans une transaction sur la connexion du thread courant
+     * @param work le travail, qui retourne null ou false en cas d'échec
+     * @return le résultat du travail, ou null si le travail a réussi mais que le COMMIT a échoué
+     */
+    public <T> T execute(Supplier<T> work) {
+        int level = depth.get();
+        if (level > 0) {
+            depth.set(level + 1);
+            try {
+                return work.get();
+            } finally {
+                depth.set(level);
+            }
+        }
+
+        List<Runnable> outerActions = afterCommit.get();
+        List<Runnable> actions = new ArrayList<>();
+        afterCommit.set(actions);
+        depth.set(1);
+        T result;
+        boolean committed = false;
+        try {
+            result = work.get();
+            if (isSuccess(result)) {
+                committed = commit(ConnectionUtils.getConnection());
+                if (!committed) {
+                    return null;
+                }
+            }
+        } finally {
+            depth.set(0);
+            restoreActions(outerActions);
+            if (!committed) {
+                rollback(ConnectionUtils.getConnection());
+            }
+        }
+        if (committed) {
+            runActions(actions);
+        }
+        return result;
+    }
+
+    /**
+     * @return true si le thread courant exécute un travail dans une transaction
+     */
+    boolean isInTransaction() {
+        return depth.get() > 0;
+    }
+
+    /**
+     * Reporte une action après le COMMIT de la transaction en cours du thread, typiquement la mise à jour d'un cache
+     * avec ce qui vient d'être écrit : elle n'est pas exécutée si la transaction est annulée ou si son COMMIT échoue.
+     * Hors transaction, l'action est exécutée immédiatement.
+     *
+     * @param action l'action, exécutée sur le thread qui valide la transaction
+     */
+    public void afterCommit(Runnable action) {
+        List<Runnable> actions = afterCommit.get();
+        if (actions == null) {
+            action.run();
+        } else {
+            actions.add(action);
+        }
+    }
+
+    /**
+     * Exécute un travail dans une nouvelle transaction de premier niveau, même si le thread est déjà dans une transaction :
+     * utilisé quand le travail s'exécute sur une autre connexion que celle de la transaction en cours (voir ShardRouter)
+     */
+    <T> T executeIsolated(Supplier<T> work) {
+        int level = depth.get();
+        depth.set(0);
+        try {
+            return execute(work);
+        } finally {
+            depth.set(level);
+        }
+    }
+
+    /**
+     * Exécute une petite écriture en profitant de la validation groupée si elle est activée, sinon comme
+     * {@link #execute(Supplier)}. Le travail s'exécute sur le thread de validation : il ne doit dépendre ni de la
+     * connexion ni des données non validées de l'appelant.
+     *
+     * @param work le travail, qui retourne null ou false en cas d'échec
+     * @return le résultat du travail une fois validé, ou null si le COMMIT groupé a échoué
+     */
+    public <T> T executeGrouped(Supplier<T> work) {
+        if (windowNanos == 0 || depth.get() > 0) {
+            return execute(work);
+        }
+        ensureCommitter();
+        PendingWork<T> item = new PendingWork<>(work);
+        pending.add(item);
+        try {
+            return item.future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Valide les écritures en attente puis arrête le thread de validation
+     */
+    public synchronized void stop() {
+        running = false;
+        if (committer != null) {
+            try {
+                committer.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            committer = null;
+        }
+    }
+
+    private synchronized void ensureCommitter() {
+        if (committer == null) {
+            running = true;
+            committer = new Thread(this::runCommitter, "group-commit");
+            committer.setDaemon(true);
+            committer.start();
+        }
+    }
+
+    private void runCommitter() {
+        Connection connection = ConnectionUtils.newConnection();
+        ConnectionUtils.bindConnection(connection);
+        List<PendingWork<?>> batch = new ArrayList<>(maxBatchSize);
+        long commits = 0;
+        long writes = 0;
+        try {
+            while (running || !pending.isEmpty()) {
+                PendingWork<?> first = pending.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                // La fenêtre s'ouvre à l'arrivée de la première écriture
+                batch.add(first);
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    PendingWork<?> next = pending.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                commitBatch(connection, batch);
+                commits++;
+                writes += batch.size();
+                batch.clear();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (PendingWork<?> item : batch) {
+                item.future.completeExceptionally(new IllegalStateException("Group commit stopped"));
+            }
+            PendingWork<?> item;
+            while ((item = pending.poll()) != null) {
+                item.future.completeExceptionally(new IllegalStateException("Group commit stopped"));
+            }
+            ConnectionUtils.bindConnection(null);
+            close(connection);
+            logger.info("Group commit stopped: {} writes in {} commits", writes, commits);
+        }
+    }
+
+    /**
+     * Exécute chaque travail derrière un savepoint (un échec n'annule que le sien) puis valide le tout en un COMMIT
+     */
+    private void commitBatch(Connection connection, List<PendingWork<?>> batch) {
+        if (connection == null) {
+            batch.forEach(item -> item.future.completeExceptionally(new IllegalStateException("No connection for group commit")));
+            return;
+        }
+        for (PendingWork<?> item : batch) {
+            // Chaque travail est une transaction de premier niveau, avec ses propres actions après COMMIT
+            afterCommit.set(item.actions);
+            depth.set(1);
+            try {
+                item.run(connection);
+            } finally {
+                depth.set(0);
+                afterCommit.remove();
+            }
+        }
+        if (commit(connection)) {
+            for (PendingWork<?> item : batch) {
+                runActions(item.actions);
+                item.acknowledge();
+            }
+        } else {
+            rollback(connection);
+            batch.forEach(PendingWork::fail);
+        }
+    }
+
+    /**
+     * @return true si le COMMIT a réussi
+     */
+    private static boolean commit(Connection connection) {
+        try {
+            connection.commit();
+            return true;
+        } catch (SQLException ex) {
+            logger.error("Commit failed: {}", ex.getMessage());
+            return false;
+        }
+    }
+
+    private static void rollback(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+    }
+
+    private void restoreActions(List<Runnable> actions) {
+        if (actions == null) {
+            afterCommit.remove();
+        } else {
+            afterCommit.set(actions);
+        }
+    }
+
+    /**
+     * Exécute les actions d'une transaction validée. Une action en échec n'empêche pas les suivantes : les données
+     * sont déjà enregistrées, l'appelant reçoit son résultat.
+     */
+    private static void runActions(List<Runnable> actions) {
+        for (Runnable action : actions) {
+            try {
+                action.run();
+            } catch (RuntimeException ex) {
+                logger.error("After-commit action failed: {}", ex.getMessage(), ex);
+            }
+        }
+    }
+
+    private void release(Connection connection, Savepoint savepoint) {
+        if (savepoint == null || !savepointReleaseSupported) {
+            return;
+        }
+        try {
+            connection.releaseSavepoint(savepoint);
+        } catch (SQLFeatureNotSupportedException ex) {
+            savepointReleaseSupported = false;
+        } catch (SQLException ex) {
+            logger.error("SQLException: {}", ex.getMessage());
+        }
+    }
+
+    private static void close(Connection connection) {
+        try {
+            if (connection != null) {
+                connection.close();
+            }
+        } catch (SQLException ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+    }
+
+    private static boolean isSuccess(Object result) {
+        return result != null && !Boolean.FALSE.equals(result);
+    }
+
+    private class PendingWork<T> {
+
+        private final Supplier<T> work;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final List<Runnable> actions = new ArrayList<>();
+        private T result;
+        private RuntimeException error;
+
+        private PendingWork(Supplier<T> work) {
+            this.work = work;
+        }
+
+        private void run(Connection connection) {
+            Savepoint savepoint = null;
+            try {
+                savepoint = connection.setSavepoint();
+                result = work.get();
+                if (!isSuccess(result)) {
+                    rollbackTo(connection, savepoint);
+                }
+            } catch (RuntimeException ex) {
+                error = ex;
+                rollbackTo(connection, savepoint);
+            } catch (SQLException ex) {
+                logger.error("SQLException: {}", ex.getMessage());
+                error = new IllegalStateException(ex.getMessage(), ex);
+            } finally {
+                release(connection, savepoint);
+            }
+        }
+
+        /**
+         * Annule ce travail seulement, ainsi que ses actions après COMMIT
+         */
+        private void rollbackTo(Connection connection, Savepoint savepoint) {
+            actions.clear();
+            try {
+                if (savepoint != null) {
+                    connection.rollback(savepoint);
+                }
+            } catch (SQLException ex) {
+                logger.error("SQLException: {}", ex.getMessage());
+            }
+        }
+
+        private void acknowledge() {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(result);
+            }
+        }
+
+        /**
+         * Le COMMIT a échoué : rien n'a été enregistré
+         */
+        private void fail() {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(null);
+            }
+        }
+    }
+}
@@ -1,12 +1,27 @@
 package ch.hearc.ig.guideresto.presentation;
 
 import ch.hearc.ig.guideresto.business.*;
-import ch.hearc.ig.guideresto.persistence.FakeItems;
+import ch.hearc.ig.guideresto.persistence.AsyncMappers;
+import ch.hearc.ig.guideresto.persistence.CacheWarmup;
+import ch.hearc.ig.guideresto.persistence.ChangeTracker;
+import ch.hearc.ig.guideresto.persistence.CityIndex;
+import ch.hearc.ig.guideresto.persistence.ConnectionUtils;
+import ch.hearc.ig.guideresto.persistence.EvaluationTrends;
+import ch.hearc.ig.guideresto.persistence.QueryCache;
+import ch.hearc.ig.guideresto.persistence.ReferenceData;
+import ch.hearc.ig.guideresto.persistence.ShardRouter;
+import ch.hearc.ig.guideresto.persistence.SimilarRestaurants;
+import ch.hearc.ig.guideresto.persistence.TransactionManager;
+import ch.hearc.ig.guideresto.service.RestaurantService;
+import ch.hearc.ig.guideresto.service.VoteFeedIngest;
+import ch.hearc.ig.guideresto.service.VoterAddresses;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.net.Inet4Address;
-import java.net.UnknownHostException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 
 /**
@@ -15,19 +30,114 @@ import java.util.*;
  */
 public class Application {
 
+    private static final int MAX_CITY_SUGGESTIONS = 20;
+    private static final int MAX_COMMENT_RESULTS = 20;
+    private static final int MAX_TRENDING_RESULTS = 10;
+    private static final int MAX_SIMILAR_RESULTS = 5;
+
     private static Scanner scanner;
     private static final Logger logger = LogManager.getLogger(Application.class);
+    private static final RestaurantService service = RestaurantService.getInstance();
 
+    /**
+     * Sans argument, lance le menu interactif. Avec "--script fichier [options]", rejoue le script sans interaction (voir {@link WorkloadDriver}).
+     * Avec "--http", sert l'API HTTP (voir {@link HttpApi}) jusqu'à ce que l'utilisateur appuie sur Enter.
+     * Avec "--import-votes fichier", importe un fichier de votes des bornes (voir {@link VoteFeedIngest}).
+     * Avec "--import-cities fichier", importe une liste de villes, une par ligne au format "NPA;nom".
+     */
     public static void main(String[] args) {
-        scanner = new Scanner(System.in);
+        VoterAddresses.getInstance().start(ConnectionUtils.getIntProperty("voter.address.refresh.ms", 300000));
+        // Numérotation sans chevauchement entre fragments, avant toute création
+        ShardRouter.getInstance().prepareSequences();
+        ChangeTracker.getInstance().start(ConnectionUtils.getIntProperty("changetracker.interval.ms", 2000),
+                ConnectionUtils.getIntProperty("changetracker.batch.size", 500));
+        // Caches et index chargés en arrière-plan ; le service attend ceux dont il a besoin
+        CacheWarmup.getInstance().start(ConnectionUtils.getIntProperty("warmup.threads", 3));
+        ReferenceData.getInstance().startScheduledRefresh(ConnectionUtils.getIntProperty("referencedata.refresh.ms", 0));
+        SimilarRestaurants.getInstance().startScheduledRefresh(ConnectionUtils.getIntProperty("similar.refresh.ms", 60000));
+
+        if (args.length > 0 && args[0].equals("--script")) {
+            WorkloadDriver.main(args);
+        } else if (args.length > 0 && args[0].equals("--http")) {
+            serveHttp();
+        } else if (args.length > 0 && args[0].equals("--import-votes")) {
+            importVotes(args);
+        } else if (args.length > 0 && args[0].equals("--import-cities")) {
+            importCities(args);
+        } else {
+            scanner = new Scanner(System.in);
+            System.out.println("Bienvenue dans GuideResto ! Que souhaitez-vous faire ?");
+            int choice;
+            do {
+                printMainMenu();
+                choice = readInt();
+                proceedMainMenu(choice);
+            } while (choice != 0);
+        }
 
-        System.out.println("Bienvenue dans GuideResto ! Que souhaitez-vous faire ?");
-        int choice;
-        do {
-            printMainMenu();
-            choice = readInt();
-            proceedMainMenu(choice);
-        } while (choice != 0);
+        ChangeTracker.getInstance().stop();
+        logger.info("Query cache: {}", QueryCache.getInstance());
+        ReferenceData.getInstance().stop();
+        SimilarRestaurants.getInstance().stop();
+        VoterAddresses.getInstance().stop();
+        AsyncMappers.getInstance().shutdown();
+        TransactionManager.getInstance().stop();
+        ShardRouter.getInstance().stop();
+        ConnectionUtils.closeConnection();
+    }
+
+    private static void serveHttp() {
+        HttpApi api = new HttpApi();
+        try {
+            api.start(ConnectionUtils.getIntProperty("http.port", 8080));
+            System.out.println("API HTTP démarrée, appuyez sur Enter pour l'arrêter");
+            new Scanner(System.in).nextLine();
+        } catch (IOException ex) {
+            logger.error("Unable to start HTTP API: {}", ex.getMessage());
+        } finally {
+            api.stop();
+        }
+    }
+
+    private static void importVotes(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage : --import-votes fichier");
+            return;
+        }
+        try {
+            VoteFeedIngest.Stats stats = new VoteFeedIngest(Path.of(args[1])).run();
+            System.out.println("Import terminé : " + stats);
+        } catch (IOException ex) {
+            logger.error("Unable to import vote feed {}: {}", args[1], ex.getMessage());
+            System.out.println("Impossible de lire le fichier " + args[1] + ", l'import reprendra au dernier point de reprise");
+        }
+    }
+
+    private static void importCities(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage : --import-cities fichier");
+            return;
+        }
+        List<City> cities = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(Path.of(args[1]), StandardCharsets.UTF_8)) {
+                String[] fields = line.split(";");
+                if (fields.length >= 2 && !fields[0].isBlank() && !fields[1].isBlank()) {
+                    cities.add(new City(fields[0].strip(), fields[1].strip()));
+                }
+            }
+        } catch (IOException ex) {
+            logger.error("Unable to read city list {}: {}", args[1], ex.getMessage());
+            System.out.println("Impossible de lire le fichier " + args[1]);
+            return;
+        }
+        int before = service.getCityIndex().size();
+        List<City> imported = service.importCities(cities);
+        if (imported == null) {
+            System.out.println("L'import des villes a échoué, aucune ville n'a été créée");
+        } else {
+            System.out.println(imported.size() + " villes importées, dont " + (service.getCityIndex().size() - before) + " nouvelles");
+        }
     }
 
     /**
@@ -41,13 +151,19 @@ public class Application {
         System.out.println("3. Rechercher un restaurant par ville");
         System.out.println("4. Rechercher un restaurant par son type de cuisine");
         System.out.println("5. Saisir un nouveau restaurant");
+        System.out.println("6. Rechercher un restaurant dans les commentaires des évaluations");
+        System.out.println("7. Afficher les restaurants tendance de la semaine");
         System.out.println("0. Quitter l'application");
+        CacheWarmup warmup = CacheWarmup.getInstance();
+        if (!warmup.isDone()) {
+            System.out.println("(Chargement des données en arrière-plan : " + warmup.getCompletedCount() + "/" + warmup.getPartCount() + ")");
+        }
     }
 
     /**
      * On gère le choix saisi par l'utilisateur
      *
-     * @param choice Un nombre entre 0 et 5.
+     * @param choice Un nombre entre 0 et 7.
      */
     private static void proceedMainMenu(int choice) {
         switch (choice) {
@@ -66,6 +182,12 @@ public class Application {
             case 5:
                 addNewRestaurant();
                 break;
+            case 6:
+                searchRestaurantByComment();
+                break;
+            case 7:
+                showTrendingRestaurants();
+                break;
             case 0:
                 System.out.println("Au revoir !");
                 break;
@@ -107,7 +229,7 @@ public class Application {
     private static void showRestaurantsList() {
         System.out.println("Liste des restaurants : ");
 
-        Restaurant restaurant = pickRestaurant(FakeItems.getAllRestaurants());
+        Restaurant restaurant = pickRestaurant(service.findAllRestaurants());
 
         if (restaurant != null) { // Si l'utilisateur a choisi un restaurant, on l'affiche, sinon on ne fait rien et l'application va réafficher le menu principal
             showRestaurant(restaurant);
@@ -121,18 +243,7 @@ public class Application {
         System.out.println("Veuillez entrer une partie du nom recherché : ");
         String research = readString();
 
-        // Comme on ne peut pas faire de requête SQL avec la classe FakeItems, on trie les données manuellement.
-        // Il est évident qu'une fois que vous utiliserez une base de données, il ne faut PAS garder ce système.
-        Set<Restaurant> fullList = FakeItems.getAllRestaurants();
-        Set<Restaurant> filteredList = new LinkedHashSet();
-
-        for (Restaurant currentRestaurant : fullList) { // On parcourt la liste complète et on ajoute les restaurants correspondants à la liste filtrée.
-            if (currentRestaurant.getName().toUpperCase().contains(research.toUpperCase())) { // On met tout en majuscules pour ne pas tenir compte de la casse
-                filteredList.add(currentRestaurant);
-            }
-        }
-
-        Restaurant restaurant = pickRestaurant(filteredList);
+        Restaurant restaurant = pickRestaurant(service.findRestaurantsByName(research));
 
         if (restaurant != null) {
             showRestaurant(restaurant);
@@ -146,18 +257,21 @@ public class Application {
         System.out.println("Veuillez entrer une partie du nom de la ville désirée : ");
         String research = readString();
 
-        // Comme on ne peut pas faire de requête SQL avec la classe FakeItems, on trie les données manuellement.
-        // Il est évident qu'une fois que vous utiliserez une base de données, il ne faut PAS garder ce système.
-        Set<Restaurant> fullList = FakeItems.getAllRestaurants();
-        Set<Restaurant> filteredList = new LinkedHashSet();
+        Restaurant restaurant = pickRestaurant(service.findRestaurantsByCityName(research));
 
-        for (Restaurant currentRestaurant : fullList) { // On parcourt la liste complète et on ajoute les restaurants correspondants à la liste filtrée.
-            if (currentRestaurant.getAddress().getCity().getCityName().toUpperCase().contains(research.toUpperCase())) { // On met tout en majuscules pour ne pas tenir compte de la casse
-                filteredList.add(currentRestaurant);
-            }
+        if (restaurant != null) {
+            showRestaurant(restaurant);
         }
+    }
 
-        Restaurant restaurant = pickRestaurant(filteredList);
+    /**
+     * Affiche les restaurants dont les évaluations mentionnent les mots saisis par l'utilisateur, les plus pertinents en premier
+     */
+    private static void searchRestaurantByComment() {
+        System.out.println("Veuillez entrer les mots recherchés dans les commentaires : ");
+        String research = readString();
+
+        Restaurant restaurant = pickRestaurant(service.findRestaurantsByComment(research, MAX_COMMENT_RESULTS));
 
         if (restaurant != null) {
             showRestaurant(restaurant);
@@ -165,32 +279,81 @@ public class Application {
     }
 
     /**
-     * L'utilisateur choisit une ville parmi celles présentes dans le système.
-     *
-     * @param cities La liste des villes à présnter à l'utilisateur
-     * @return La ville sélectionnée, ou null si aucune ville n'a été choisie.
+     * Affiche les restaurants ayant reçu le plus d'évaluations positives ces 7 derniers jours
      */
-    private static City pickCity(Set<City> cities) {
-        System.out.println("Voici la liste des villes possibles, veuillez entrer le NPA de la ville désirée : ");
+    private static void showTrendingRestaurants() {
+        System.out.println("Restaurants tendance des 7 derniers jours : ");
+        Map<Restaurant, EvaluationTrends.Bucket> trending = service.findTrendingRestaurants(MAX_TRENDING_RESULTS);
+        for (Map.Entry<Restaurant, EvaluationTrends.Bucket> entry : trending.entrySet()) {
+            EvaluationTrends.Bucket stats = entry.getValue();
+            System.out.println("\"" + entry.getKey().getName() + "\" : " + stats.likes() + " likes, " + stats.dislikes() + " dislikes, "
+                    + stats.comments() + " évaluations" + (stats.gradeCount() > 0 ? String.format(", moyenne %.1f/5", stats.averageGrade()) : ""));
+        }
+
+        Restaurant restaurant = pickRestaurant(new LinkedHashSet<>(trending.keySet()));
 
-        for (City currentCity : cities) {
-            System.out.println(currentCity.getZipCode() + " " + currentCity.getCityName());
+        if (restaurant != null) {
+            showRestaurant(restaurant);
         }
-        System.out.println("Entrez \"NEW\" pour créer une nouvelle ville");
+    }
+
+    /**
+     * L'utilisateur choisit une ville en saisissant son NPA. S'il saisit le début d'un NPA ou d'un nom de ville,
+     * les villes correspondantes lui sont proposées et il peut affiner sa saisie.
+     *
+     * @return La ville sélectionnée, ou null si aucune ville n'a été choisie.
+     */
+    private static City pickCity() {
+        CityIndex cities = service.getCityIndex();
+        System.out.println("Veuillez entrer le NPA de la ville désirée, ou le début d'un NPA ou d'un nom de ville pour afficher les villes correspondantes : ");
+        System.out.println("Entrez \"NEW\" pour créer une nouvelle ville, ou appuyez sur Enter pour revenir en arrière");
         String choice = readString();
 
-        if (choice.equals("NEW")) {
-            City city = new City();
-            city.setId(1); // A modifier quand on a la connexion avec la BDD.
-            System.out.println("Veuillez entrer le NPA de la nouvelle ville : ");
-            city.setZipCode(readString());
-            System.out.println("Veuillez entrer le nom de la nouvelle ville : ");
-            city.setCityName(readString());
-            FakeItems.getCities().add(city);
-            return city;
+        while (!choice.isEmpty()) {
+            if (choice.equals("NEW")) {
+                System.out.println("Veuillez entrer le NPA de la nouvelle ville : ");
+                String zipCode = readString();
+                System.out.println("Veuillez entrer le nom de la nouvelle ville : ");
+                return service.createCity(zipCode, readString());
+            }
+
+            List<City> found = cities.findByZipCode(choice);
+            if (found.size() == 1) {
+                return found.get(0);
+            }
+            if (found.size() > 1) {
+                City city = pickCityAmong(found);
+                if (city != null) {
+                    return city;
+                }
+            } else {
+                List<City> suggestions = cities.autocomplete(choice, MAX_CITY_SUGGESTIONS);
+                if (suggestions.isEmpty()) {
+                    System.out.println("Aucune ville ne correspond à votre saisie.");
+                }
+                for (City currentCity : suggestions) {
+                    System.out.println(currentCity.getZipCode() + " " + currentCity.getCityName());
+                }
+            }
+            System.out.println("Veuillez entrer le NPA de la ville désirée, \"NEW\" ou Enter pour revenir en arrière : ");
+            choice = readString();
         }
+        return null;
+    }
 
-        return searchCityByZipCode(cities, choice);
+    /**
+     * L'utilisateur choisit une ville parmi celles qui partagent le NPA saisi
+     *
+     * @param cities Les villes ayant le même NPA
+     * @return La ville sélectionnée, ou null si aucune ville n'a été choisie.
+     */
+    private static City pickCityAmong(List<City> cities) {
+        System.out.println("Plusieurs villes ont ce NPA, veuillez entrer le numéro de la ville désirée, ou 0 pour revenir en arrière : ");
+        for (int i = 0; i < cities.size(); i++) {
+            System.out.println((i + 1) + ". " + cities.get(i).getZipCode() + " " + cities.get(i).getCityName());
+        }
+        int choice = readInt();
+        return choice >= 1 && choice <= cities.size() ? cities.get(choice - 1) : null;
     }
 
     /**
@@ -199,7 +362,7 @@ public class Application {
      * @param types La liste des types de restaurant à présnter à l'utilisateur
      * @return Le type sélectionné, ou null si aucun type n'a été choisi.
      */
-    private static RestaurantType pickRestaurantType(Set<RestaurantType> types) {
+    private static RestaurantType pickRestaurantType(Collection<RestaurantType> types) {
         System.out.println("Voici la liste des types possibles, veuillez entrer le libellé exact du type désiré : ");
         for (RestaurantType currentType : types) {
             System.out.println("\"" + currentType.getLabel() + "\" : " + currentType.getDescription());
@@ -214,19 +377,12 @@ public class Application {
      * Si l'utilisateur sélectionne un restaurant, ce dernier lui sera affiché.
      */
     private static void searchRestaurantByType() {
-        // Comme on ne peut pas faire de requête SQL avec la classe FakeItems, on trie les données manuellement.
-        // Il est évident qu'une fois que vous utiliserez une base de données, il ne faut PAS garder ce système.
-        Set<Restaurant> fullList = FakeItems.getAllRestaurants();
         Set<Restaurant> filteredList = new LinkedHashSet();
 
-        RestaurantType chosenType = pickRestaurantType(FakeItems.getRestaurantTypes());
+        RestaurantType chosenType = pickRestaurantType(service.findAllRestaurantTypes());
 
         if (chosenType != null) { // Si l'utilisateur a sélectionné un type, sinon on ne fait rien et la liste sera vide.
-            for (Restaurant currentRestaurant : fullList) {
-                if (currentRestaurant.getType() == chosenType) {
-                    filteredList.add(currentRestaurant);
-                }
-            }
+            filteredList = service.findRestaurantsByType(chosenType);
         }
 
         Restaurant restaurant = pickRestaurant(filteredList);
@@ -252,18 +408,19 @@ public class Application {
         City city = null;
         do
         { // La sélection d'une ville est obligatoire, donc l'opération se répètera tant qu'aucune ville n'est sélectionnée.
-            city = pickCity(FakeItems.getCities());
+            city = pickCity();
         } while (city == null);
         RestaurantType restaurantType = null;
         do
         { // La sélection d'un type est obligatoire, donc l'opération se répètera tant qu'aucun type n'est sélectionné.
-            restaurantType = pickRestaurantType(FakeItems.getRestaurantTypes());
+            restaurantType = pickRestaurantType(service.findAllRestaurantTypes());
         } while (restaurantType == null);
 
-        Restaurant restaurant = new Restaurant(1, name, description, website, street, city, restaurantType);
-        city.getRestaurants().add(restaurant);
-        restaurantType.getRestaurants().add(restaurant);
-        FakeItems.getAllRestaurants().add(restaurant);
+        Restaurant restaurant = service.createRestaurant(name, description, website, street, city, restaurantType);
+        if (restaurant == null) {
+            System.out.println("Erreur : le restaurant n'a pas pu être enregistré.");
+            return;
+        }
 
         showRestaurant(restaurant);
     }
@@ -275,6 +432,7 @@ public class Application {
      */
     private static void showRestaurant(Restaurant restaurant) {
         System.out.println("Affichage d'un restaurant : ");
+        service.loadDetails(restaurant);
         StringBuilder sb = new StringBuilder();
         sb.append(restaurant.getName()).append("\n");
         sb.append(restaurant.getDescription()).append("\n");
@@ -294,6 +452,14 @@ public class Application {
             }
         }
 
+        Map<Restaurant, Double> similar = service.findSimilarRestaurants(restaurant, MAX_SIMILAR_RESULTS);
+        if (!similar.isEmpty()) {
+            sb.append("Restaurants similaires : ").append("\n");
+            for (Map.Entry<Restaurant, Double> entry : similar.entrySet()) {
+                sb.append("\"").append(entry.getKey().getName()).append("\" ").append(String.format("(%.0f%%)", entry.getValue() * 100)).append("\n");
+            }
+        }
+
         System.out.println(sb);
 
         int choice;
@@ -398,15 +564,15 @@ public class Application {
      * @param like       Est-ce un like ou un dislike ?
      */
     private static void addBasicEvaluation(Restaurant restaurant, Boolean like) {
-        String ipAddress;
-        try {
-            ipAddress = Inet4Address.getLocalHost().toString(); // Permet de retrouver l'adresse IP locale de l'utilisateur.
-        } catch (UnknownHostException ex) {
-            logger.error("Error - Couldn't retreive host IP address");
-            ipAddress = "Indisponible";
+        String ipAddress = VoterAddresses.getInstance().getLocalAddress(); // Résolue en tâche de fond dès le démarrage
+        if (service.hasAlreadyVoted(restaurant, ipAddress)) {
+            System.out.println("Vous avez déjà voté pour ce restaurant !");
+            return;
+        }
+        if (service.addBasicEvaluation(restaurant, like, ipAddress) == null) {
+            System.out.println("Erreur : votre vote n'a pas pu être enregistré.");
+            return;
         }
-        BasicEvaluation eval = new BasicEvaluation(1, new Date(), restaurant, like, ipAddress);
-        restaurant.getEvaluations().add(eval);
         System.out.println("Votre vote a été pris en compte !");
     }
 
@@ -422,16 +588,17 @@ public class Application {
         System.out.println("Quel commentaire aimeriez-vous publier ?");
         String comment = readString();
 
-        CompleteEvaluation eval = new CompleteEvaluation(1, new Date(), restaurant, comment, username);
-        restaurant.getEvaluations().add(eval);
-
-        Grade grade; // L'utilisateur va saisir une note pour chaque critère existant.
+        Map<EvaluationCriteria, Integer> grades = new LinkedHashMap<>(); // L'utilisateur va saisir une note pour chaque critère existant.
         System.out.println("Veuillez svp donner une note entre 1 et 5 pour chacun de ces critères : ");
-        for (EvaluationCriteria currentCriteria : FakeItems.getEvaluationCriterias()) {
+        for (EvaluationCriteria currentCriteria : service.findAllEvaluationCriterias()) {
             System.out.println(currentCriteria.getName() + " : " + currentCriteria.getDescription());
-            Integer note = readInt();
-            grade = new Grade(1, note, eval, currentCriteria);
-            eval.getGrades().add(grade);
+            grades.put(currentCriteria, readInt());
+        }
+
+        // L'évaluation et ses notes sont enregistrées dans une seule transaction, une fois la saisie terminée
+        if (service.addCompleteEvaluation(restaurant, username, comment, grades) == null) {
+            System.out.println("Erreur : votre évaluation n'a pas pu être enregistrée.");
+            return;
         }
 
         System.out.println("Votre évaluation a bien été enregistrée, merci !");
@@ -445,23 +612,19 @@ public class Application {
      */
     private static void editRestaurant(Restaurant restaurant) {
         System.out.println("Edition d'un restaurant !");
+        int seenVersion = restaurant.getVersion(); // Le restaurant en cache peut être actualisé pendant la saisie
 
         System.out.println("Nouveau nom : ");
-        restaurant.setName(readString());
+        String name = readString();
         System.out.println("Nouvelle description : ");
-        restaurant.setDescription(readString());
+        String description = readString();
         System.out.println("Nouveau site web : ");
-        restaurant.setWebsite(readString());
+        String website = readString();
         System.out.println("Nouveau type de restaurant : ");
 
-        RestaurantType newType = pickRestaurantType(FakeItems.getRestaurantTypes());
-        if (newType != null && newType != restaurant.getType()) {
-            restaurant.getType().getRestaurants().remove(restaurant); // Il faut d'abord supprimer notre restaurant puisque le type va peut-être changer
-            restaurant.setType(newType);
-            newType.getRestaurants().add(restaurant);
-        }
-
-        System.out.println("Merci, le restaurant a bien été modifié !");
+        RestaurantType newType = pickRestaurantType(service.findAllRestaurantTypes());
+        boolean success = service.updateRestaurant(restaurant, seenVersion, name, description, website, newType, Application::confirmOverwrite);
+        System.out.println(success ? "Merci, le restaurant a bien été modifié !" : "Erreur : le restaurant n'a pas pu être modifié.");
     }
 
     /**
@@ -472,18 +635,35 @@ public class Application {
      */
     private static void editRestaurantAddress(Restaurant restaurant) {
         System.out.println("Edition de l'adresse d'un restaurant !");
+        int seenVersion = restaurant.getVersion();
 
         System.out.println("Nouvelle rue : ");
-        restaurant.getAddress().setStreet(readString());
+        String street = readString();
 
-        City newCity = pickCity(FakeItems.getCities());
-        if (newCity != null && newCity != restaurant.getAddress().getCity()) {
-            restaurant.getAddress().getCity().getRestaurants().remove(restaurant); // On supprime l'adresse de la ville
-            restaurant.getAddress().setCity(newCity);
-            newCity.getRestaurants().add(restaurant);
-        }
+        City newCity = pickCity();
+        boolean success = service.updateRestaurantAddress(restaurant, seenVersion, street, newCity, Application::confirmOverwrite);
+        System.out.println(success ? "L'adresse a bien été modifiée ! Merci !" : "Erreur : l'adresse n'a pas pu être modifiée.");
+    }
 
-        System.out.println("L'adresse a bien été modifiée ! Merci !");
+    /**
+     * Le restaurant a été modifié par quelqu'un d'autre pendant la saisie : on montre ce qui a été enregistré
+     * et l'utilisateur choisit d'écraser ces valeurs avec les siennes ou d'abandonner.
+     *
+     * @param current le restaurant relu
+     * @param attempt le numéro de la tentative en conflit
+     * @return true pour enregistrer tout de même les modifications
+     */
+    private static boolean confirmOverwrite(Restaurant current, int attempt) {
+        System.out.println("Attention : ce restaurant vient d'être modifié par un autre utilisateur. Valeurs actuelles :");
+        System.out.println("Nom : " + current.getName());
+        System.out.println("Description : " + current.getDescription());
+        System.out.println("Site web : " + current.getWebsite());
+        System.out.println("Type : " + current.getType().getLabel());
+        System.out.println("Adresse : " + current.getAddress().getStreet() + ", "
+                + current.getAddress().getCity().getZipCode() + " " + current.getAddress().getCity().getCityName());
+        System.out.println("Voulez-vous tout de même enregistrer vos modifications ? (O/n)");
+        String choice = readString();
+        return choice.equals("o") || choice.equals("O");
     }
 
     /**
@@ -495,9 +675,11 @@ public class Application {
         System.out.println("Etes-vous sûr de vouloir supprimer ce restaurant ? (O/n)");
         String choice = readString();
         if (choice.equals("o") || choice.equals("O")) {
-            FakeItems.getAllRestaurants().remove(restaurant);
-            restaurant.getAddress().getCity().getRestaurants().remove(restaurant);
-            restaurant.getType().getRestaurants().remove(restaurant);
+            // Les notes, commentaires et likes du restaurant sont supprimés avec lui
+            if (!service.deleteRestaurant(restaurant)) {
+                System.out.println("Erreur : le restaurant n'a pas pu être supprimé.");
+                return;
+            }
             System.out.println("Le restaurant a bien été supprimé !");
         }
     }
@@ -519,32 +701,15 @@ public class Application {
         return null;
     }
 
-    /**
-     * Recherche dans le Set la ville comportant le code NPA passé en paramètre.
-     * Retourne null si la ville n'est pas trouvée
-     *
-     * @param cities  Set de villes
-     * @param zipCode NPA de la ville à rechercher
-     * @return L'instance de la ville ou null si pas trouvé
-     */
-    private static City searchCityByZipCode(Set<City> cities, String zipCode) {
-        for (City current : cities) {
-            if (current.getZipCode().equalsIgnoreCase(zipCode)) {
-                return current;
-            }
-        }
-        return null;
-    }
-
     /**
      * Recherche dans le Set le type comportant le libellé passé en paramètre.
      * Retourne null si aucun type n'est trouvé.
      *
-     * @param types Set de types de restaurant
+     * @param types Collection de types de restaurant
      * @param label Libellé du type recherché
      * @return L'instance RestaurantType ou null si pas trouvé
      */
-    private static RestaurantType searchTypeByLabel(Set<RestaurantType> types, String label) {
+    private static RestaurantType searchTypeByLabel(Collection<RestaurantType> types, String label) {
         for (RestaurantType current : types) {
             if (current.getLabel().equalsIgnoreCase(label)) {
                 return current;
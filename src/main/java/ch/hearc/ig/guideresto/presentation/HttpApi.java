@@ -0,0 +1,422 @@
+package ch.hearc.ig.guideresto.presentation;
+
+import ch.hearc.ig.guideresto.business.BasicEvaluation;
+import ch.hearc.ig.guideresto.business.CompleteEvaluation;
+import ch.hearc.ig.guideresto.business.Evaluation;
+import ch.hearc.ig.guideresto.business.EvaluationCriteria;
+import ch.hearc.ig.guideresto.business.Grade;
+import ch.hearc.ig.guideresto.business.Restaurant;
+import ch.hearc.ig.guideresto.business.RestaurantType;
+import ch.hearc.ig.guideresto.persistence.ConnectionUtils;
+import ch.hearc.ig.guideresto.service.RestaurantService;
+import ch.hearc.ig.guideresto.service.VoterAddresses;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * API HTTP/JSON du guide, servie par le HttpServer du JDK avec un thread virtuel par requête.
+ * Les handlers passent par {@link RestaurantService}, comme la console ; chaque requête réserve une connexion
+ * du pool le temps de ses accès à la base, le pool limite donc le nombre de requêtes SQL simultanées.
+ *
+ * <pre>
+ * GET  /restaurants[?name=...|city=...|type=...|comment=...|trending]  liste, encodée en flux
+ * GET  /restaurants/{id}                            détail avec évaluations, ETag et If-None-Match
+ * POST /restaurants/{id}/likes                      like=true|false
+ * POST /restaurants/{id}/evaluations                username=...&amp;comment=...&amp;{id du critère}=note
+ * GET  /criterias                                   critères d'évaluation
+ * </pre>
+ * Les corps de POST sont encodés en application/x-www-form-urlencoded. Le port est lu dans http.port (8080 par défaut).
+ */
+public class HttpApi {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final int MAX_SEARCH_RESULTS = 50;
+
+    private final RestaurantService service = RestaurantService.getInstance();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Démarre le serveur sur le port donné
+     */
+    public synchronized void start(int port) throws IOException {
+        if (server != null) {
+            return;
+        }
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(executor);
+        server.createContext("/restaurants", this::handleRestaurants);
+        server.createContext("/criterias", this::handleCriterias);
+        server.start();
+        logger.info("HTTP API listening on port {}", port);
+    }
+
+    /**
+     * Arrête le serveur en laissant une seconde aux requêtes en cours
+     */
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(1);
+        executor.shutdown();
+        server = null;
+        logger.info("HTTP API stopped");
+    }
+
+    private void handleRestaurants(HttpExchange exchange) throws IOException {
+        handle(exchange, () -> {
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            String method = exchange.getRequestMethod();
+            // path[0] est vide, path[1] vaut "restaurants"
+            if (path.length == 2 && method.equals("GET")) {
+                listRestaurants(exchange, parseForm(exchange.getRequestURI().getRawQuery()));
+            } else if (path.length == 3 && method.equals("GET")) {
+                showRestaurant(exchange, Integer.parseInt(path[2]));
+            } else if (path.length == 4 && method.equals("POST") && path[3].equals("likes")) {
+                addLike(exchange, Integer.parseInt(path[2]));
+            } else if (path.length == 4 && method.equals("POST") && path[3].equals("evaluations")) {
+                addEvaluation(exchange, Integer.parseInt(path[2]));
+            } else {
+                sendError(exchange, 404, "Ressource inconnue");
+            }
+        });
+    }
+
+    private void handleCriterias(HttpExchange exchange) throws IOException {
+        handle(exchange, () -> {
+            if (!exchange.getRequestURI().getPath().equals("/criterias")) {
+                sendError(exchange, 404, "Ressource inconnue");
+                return;
+            }
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                sendError(exchange, 405, "Méthode non autorisée");
+                return;
+            }
+            List<EvaluationCriteria> criterias = service.findAllEvaluationCriterias();
+            exchange.getResponseHeaders().set("Content-Type", JSON);
+            exchange.sendResponseHeaders(200, 0);
+            try (JsonWriter json = new JsonWriter(exchange.getResponseBody())) {
+                json.beginArray();
+                for (EvaluationCriteria criteria : criterias) {
+                    json.beginObject()
+                            .name("id").value(criteria.getId())
+                            .name("name").value(criteria.getName())
+                            .name("description").value(criteria.getDescription())
+                            .endObject();
+                }
+                json.endArray();
+            }
+        });
+    }
+
+    /**
+     * Traite la requête puis ferme l'échange ; une erreur est renvoyée au client tant que la réponse n'a pas commencé
+     */
+    private static void handle(HttpExchange exchange, Route route) throws IOException {
+        try (exchange) {
+            try {
+                route.handle();
+            } catch (NumberFormatException ex) {
+                fail(exchange, 400, "Paramètre numérique invalide : " + ex.getMessage());
+            } catch (RuntimeException ex) {
+                logger.error(ex.getMessage(), ex);
+                fail(exchange, 500, "Erreur interne");
+            }
+        }
+    }
+
+    /**
+     * Renvoie l'erreur si les en-têtes de la réponse ne sont pas encore partis. Sinon le statut ne peut plus changer :
+     * la réponse, en flux, est simplement interrompue et le client reçoit un JSON tronqué.
+     */
+    private static void fail(HttpExchange exchange, int status, String message) throws IOException {
+        if (exchange.getResponseCode() != -1) {
+            logger.warn("Response to {} interrupted after status {}: {}", exchange.getRequestURI(), exchange.getResponseCode(), message);
+            return;
+        }
+        sendError(exchange, status, message);
+    }
+
+    /**
+     * La liste est écrite en flux (réponse en chunked encoding) : le client reçoit les premiers restaurants
+     * sans attendre la sérialisation complète.
+     */
+    private void listRestaurants(HttpExchange exchange, Map<String, String> query) throws IOException {
+        Set<Restaurant> restaurants = inTransaction(() -> {
+            if (query.containsKey("name")) {
+                return service.findRestaurantsByName(query.get("name"));
+            } else if (query.containsKey("city")) {
+                return service.findRestaurantsByCityName(query.get("city"));
+            } else if (query.containsKey("comment")) {
+                return service.findRestaurantsByComment(query.get("comment"), MAX_SEARCH_RESULTS);
+            } else if (query.containsKey("trending")) {
+                return new LinkedHashSet<>(service.findTrendingRestaurants(MAX_SEARCH_RESULTS).keySet());
+            } else if (query.containsKey("type")) {
+                RestaurantType type = service.findRestaurantTypeByLabel(query.get("type"));
+                return type == null ? Collections.<Restaurant>emptySet() : service.findRestaurantsByType(type);
+            }
+            return service.findAllRestaurants();
+        });
+
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        exchange.sendResponseHeaders(200, 0);
+        try (JsonWriter json = new JsonWriter(exchange.getResponseBody())) {
+            json.beginArray();
+            for (Restaurant restaurant : restaurants) {
+                writeSummary(json, restaurant);
+            }
+            json.endArray();
+        }
+    }
+
+    /**
+     * Le détail est sérialisé en mémoire pour calculer son ETag : si le client a déjà cette version, seul un 304 est renvoyé.
+     */
+    private void showRestaurant(HttpExchange exchange, int id) throws IOException {
+        Restaurant restaurant = inTransaction(() -> service.findRestaurantById(id));
+        if (restaurant == null) {
+            sendError(exchange, 404, "Restaurant " + id + " introuvable");
+            return;
+        }
+        // Les évaluations sont chargées sur les connexions d'AsyncMappers : la requête ne garde pas la sienne en attendant
+        service.loadDetails(restaurant);
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (JsonWriter json = new JsonWriter(body)) {
+            writeDetail(json, restaurant);
+        }
+        byte[] bytes = body.toByteArray();
+        String etag = etag(bytes);
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+
+        if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private void addLike(HttpExchange exchange, int id) throws IOException {
+        Map<String, String> form = parseForm(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        String like = form.get("like");
+        if (!"true".equals(like) && !"false".equals(like)) {
+            sendError(exchange, 400, "Le paramètre like doit valoir true ou false");
+            return;
+        }
+        String ipAddress = VoterAddresses.getInstance().toText(exchange.getRemoteAddress().getAddress().getAddress());
+
+        int status = inTransaction(() -> {
+            Restaurant restaurant = service.findRestaurantById(id);
+            if (restaurant == null) {
+                return 404;
+            }
+            if (service.hasAlreadyVoted(restaurant, ipAddress)) {
+                return 409;
+            }
+            return service.addBasicEvaluation(restaurant, Boolean.parseBoolean(like), ipAddress) == null ? 500 : 201;
+        });
+        sendStatus(exchange, status);
+    }
+
+    private void addEvaluation(HttpExchange exchange, int id) throws IOException {
+        Map<String, String> form = parseForm(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        String username = form.get("username");
+        if (username == null || username.isBlank()) {
+            sendError(exchange, 400, "Le paramètre username est obligatoire");
+            return;
+        }
+        String comment = form.get("comment");
+        if (comment == null || comment.isBlank()) {
+            sendError(exchange, 400, "Le paramètre comment est obligatoire");
+            return;
+        }
+
+        int status = inTransaction(() -> {
+            Restaurant restaurant = service.findRestaurantById(id);
+            if (restaurant == null) {
+                return 404;
+            }
+            Map<EvaluationCriteria, Integer> grades = new LinkedHashMap<>();
+            for (EvaluationCriteria criteria : service.findAllEvaluationCriterias()) {
+                String note = form.get(String.valueOf(criteria.getId()));
+                if (note != null) {
+                    int grade = Integer.parseInt(note);
+                    if (grade < 1 || grade > 5) {
+                        return 400;
+                    }
+                    grades.put(criteria, grade);
+                }
+            }
+            return service.addCompleteEvaluation(restaurant, username, comment, grades) == null ? 500 : 201;
+        });
+        sendStatus(exchange, status);
+    }
+
+    private static void writeSummary(JsonWriter json, Restaurant restaurant) throws IOException {
+        json.beginObject()
+                .name("id").value(restaurant.getId())
+                .name("name").value(restaurant.getName())
+                .name("street").value(restaurant.getAddress().getStreet())
+                .name("zipCode").value(restaurant.getAddress().getCity().getZipCode())
+                .name("city").value(restaurant.getAddress().getCity().getCityName())
+                .name("type").value(restaurant.getType().getLabel())
+                .endObject();
+    }
+
+    private static void writeDetail(JsonWriter json, Restaurant restaurant) throws IOException {
+        // Ensemble non modifiable, remplacé à chaque ajout : les compteurs et la liste portent sur les mêmes évaluations
+        Set<Evaluation> evaluations = restaurant.getEvaluations();
+        int likes = 0;
+        int dislikes = 0;
+        for (Evaluation evaluation : evaluations) {
+            if (evaluation instanceof BasicEvaluation basic) {
+                if (Boolean.TRUE.equals(basic.getLikeRestaurant())) {
+                    likes++;
+                } else {
+                    dislikes++;
+                }
+            }
+        }
+
+        json.beginObject()
+                .name("id").value(restaurant.getId())
+                .name("name").value(restaurant.getName())
+                .name("description").value(restaurant.getDescription())
+                .name("website").value(restaurant.getWebsite())
+                .name("street").value(restaurant.getAddress().getStreet())
+                .name("zipCode").value(restaurant.getAddress().getCity().getZipCode())
+                .name("city").value(restaurant.getAddress().getCity().getCityName())
+                .name("type").value(restaurant.getType().getLabel())
+                .name("likes").value(likes)
+                .name("dislikes").value(dislikes)
+                .name("evaluations").beginArray();
+        for (Evaluation evaluation : evaluations) {
+            if (evaluation instanceof CompleteEvaluation complete) {
+                json.beginObject()
+                        .name("id").value(complete.getId())
+                        .name("date").value(complete.getVisitDate() == null ? null : complete.getVisitDate().getTime())
+                        .name("username").value(complete.getUsername())
+                        .name("comment").value(complete.getComment())
+                        .name("grades").beginObject();
+                for (Grade grade : complete.getGrades()) {
+                    json.name(grade.getCriteria().getName()).value(grade.getGrade());
+                }
+                json.endObject().endObject();
+            }
+        }
+        json.endArray().endObject();
+    }
+
+    /**
+     * Exécute les accès à la base sur une connexion du pool réservée au thread de la requête
+     */
+    private static <T> T inTransaction(Supplier<T> operation) {
+        ConnectionUtils.bindPooledConnection();
+        boolean success = false;
+        try {
+            T result = operation.get();
+            success = true;
+            return result;
+        } finally {
+            ConnectionUtils.releaseBoundConnection(success);
+        }
+    }
+
+    private static void sendStatus(HttpExchange exchange, int status) throws IOException {
+        switch (status) {
+            case 201 -> exchange.sendResponseHeaders(201, -1);
+            case 400 -> sendError(exchange, 400, "Note invalide, elle doit être comprise entre 1 et 5");
+            case 404 -> sendError(exchange, 404, "Restaurant introuvable");
+            case 409 -> sendError(exchange, 409, "Vous avez déjà voté pour ce restaurant");
+            default -> sendError(exchange, status, "Erreur lors de l'enregistrement");
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (JsonWriter json = new JsonWriter(body)) {
+            json.beginObject().name("error").value(message).endObject();
+        }
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        exchange.sendResponseHeaders(status, body.size());
+        try (OutputStream out = exchange.getResponseBody()) {
+            body.writeTo(out);
+        }
+    }
+
+    private static Map<String, String> parseForm(String encoded) {
+        Map<String, String> values = new HashMap<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return values;
+        }
+        for (String pair : encoded.split("&")) {
+            int separator = pair.indexOf('=');
+            String key = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            values.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    /**
+     * ETag fort : FNV-1a 64 bits du corps de la réponse
+     */
+    private static String etag(byte[] body) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : body) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return "\"" + Long.toHexString(hash) + "\"";
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.strip();
+            if (trimmed.equals("*") || trimmed.equals(etag) || trimmed.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Traitement d'une requête, dont les erreurs sont converties en réponse par {@link #handle(HttpExchange, Route)}
+     */
+    @FunctionalInterface
+    private interface Route {
+        void handle() throws IOException;
+    }
+}
@@ -0,0 +1,103 @@
+package ch.hearc.ig.guideresto.presentation;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogramme de latences à précision relative constante : chaque puissance de 2 (en microsecondes)
+ * est découpée en {@value #SUB_BUCKETS} classes, soit une erreur d'au plus 12,5 % sur les percentiles.
+ * L'enregistrement est sans verrou et peut être appelé par plusieurs threads.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Enregistre la durée d'une opération
+     * @param elapsedNanos la durée mesurée
+     * @param success false si l'opération a échoué, elle est alors aussi comptée comme erreur
+     */
+    public void record(long elapsedNanos, boolean success) {
+        long micros = Math.max(0, elapsedNanos / 1000);
+        counts.incrementAndGet(bucketOf(micros));
+        count.incrementAndGet();
+        totalMicros.addAndGet(micros);
+        maxMicros.accumulateAndGet(micros, Math::max);
+        if (!success) {
+            errors.incrementAndGet();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public double getMeanMicros() {
+        long total = count.get();
+        return total == 0 ? 0 : (double) totalMicros.get() / total;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * @param percentile entre 0 et 100
+     * @return la borne supérieure de la classe contenant le percentile demandé, en microsecondes
+     */
+    public long getPercentileMicros(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+
+    /**
+     * Les valeurs inférieures à {@value #SUB_BUCKETS} ont chacune leur classe ; au-delà, la classe est donnée
+     * par la position du bit de poids fort et les {@value #SUB_BUCKET_BITS} bits suivants.
+     */
+    private static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        int subBucket = (int) (micros >>> exponent) & (SUB_BUCKETS - 1);
+        return (exponent + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << exponent) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%7d ops %5d err  mean %8.2f ms  p50 %8.2f  p90 %8.2f  p99 %8.2f  max %8.2f ms",
+                getCount(), getErrors(), getMeanMicros() / 1000, getPercentileMicros(50) / 1000.0,
+                getPercentileMicros(90) / 1000.0, getPercentileMicros(99) / 1000.0, getMaxMicros() / 1000.0);
+    }
+}
@@ -0,0 +1,264 @@
+package ch.hearc.ig.guideresto.presentation;
+
+import ch.hearc.ig.guideresto.business.EvaluationCriteria;
+import ch.hearc.ig.guideresto.business.Restaurant;
+import ch.hearc.ig.guideresto.business.RestaurantType;
+import ch.hearc.ig.guideresto.persistence.CacheWarmup;
+import ch.hearc.ig.guideresto.persistence.ConnectionUtils;
+import ch.hearc.ig.guideresto.service.RestaurantService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Mode non interactif : rejoue un script d'opérations en passant par {@link RestaurantService}, comme la console,
+ * et affiche pour chaque type d'opération le nombre d'appels, d'erreurs et les percentiles de latence.
+ *
+ * Une opération par ligne, champs séparés par '|', lignes vides et commentaires '#' ignorés :
+ * <pre>
+ * list
+ * search-name|texte          search-city|texte          search-type|libellé          search-comment|mots
+ * show|id                    like|id[|ip]               dislike|id[|ip]
+ * evaluate|id|utilisateur|4,5,3|commentaire   (une note par critère, dans l'ordre de findAll)
+ * edit|id|nom|description|site web|libellé du type
+ * delete|id                  trending
+ * </pre>
+ *
+ * Options : --script fichier, --concurrency N (threads, 1 par défaut), --iterations N (passes sur le script, 1 par défaut),
+ * --rate N (opérations par seconde au total ; sans cette option chaque thread enchaîne les opérations au plus vite).
+ * Avec --rate, la latence est mesurée depuis l'instant prévu de l'opération : un retard du système est donc compté.
+ */
+public class WorkloadDriver {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private final RestaurantService service = RestaurantService.getInstance();
+    private final List<String[]> operations;
+    private final int concurrency;
+    private final int iterations;
+    private final double rate;
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final AtomicLong nextOperation = new AtomicLong();
+    private final AtomicInteger generatedIps = new AtomicInteger();
+
+    public WorkloadDriver(List<String[]> operations, int concurrency, int iterations, double rate) {
+        this.operations = operations;
+        this.concurrency = Math.max(1, concurrency);
+        this.iterations = Math.max(1, iterations);
+        this.rate = rate;
+    }
+
+    public static void main(String[] args) {
+        String script = null;
+        int concurrency = 1;
+        int iterations = 1;
+        double rate = 0;
+        try {
+            for (int i = 0; i + 1 < args.length; i += 2) {
+                switch (args[i]) {
+                    case "--script" -> script = args[i + 1];
+                    case "--concurrency" -> concurrency = Integer.parseInt(args[i + 1]);
+                    case "--iterations" -> iterations = Integer.parseInt(args[i + 1]);
+                    case "--rate" -> rate = Double.parseDouble(args[i + 1]);
+                    default -> throw new IllegalArgumentException("Option inconnue : " + args[i]);
+                }
+            }
+            if (script == null) {
+                throw new IllegalArgumentException("Option --script manquante");
+            }
+            WorkloadDriver driver = new WorkloadDriver(parse(Path.of(script)), concurrency, iterations, rate);
+            // Les latences mesurées ne doivent pas inclure le préchargement des caches
+            CacheWarmup.getInstance().await(CacheWarmup.Part.values());
+            driver.run();
+            driver.printReport(System.out);
+        } catch (IOException | IllegalArgumentException ex) {
+            logger.error("Unable to run script: {}", ex.getMessage());
+            System.out.println("Usage : --script fichier [--concurrency N] [--iterations N] [--rate opérations/s]");
+        }
+    }
+
+    /**
+     * Lit un script d'opérations
+     * @param script le fichier à lire, en UTF-8
+     * @return les opérations, chacune découpée en champs
+     */
+    public static List<String[]> parse(Path script) throws IOException {
+        List<String[]> operations = new ArrayList<>();
+        for (String line : Files.readAllLines(script, StandardCharsets.UTF_8)) {
+            String trimmed = line.strip();
+            if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                operations.add(trimmed.split("\\|", -1));
+            }
+        }
+        return operations;
+    }
+
+    /**
+     * Exécute toutes les opérations et attend la fin des threads
+     */
+    public void run() {
+        long total = (long) operations.size() * iterations;
+        long start = System.nanoTime();
+        long interval = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            Thread worker = new Thread(() -> work(total, start, interval), "workload-" + (i + 1));
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        logger.info("Workload of {} operations replayed in {} ms", total, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    public Map<String, LatencyHistogram> getHistograms() {
+        return histograms;
+    }
+
+    public void printReport(PrintStream out) {
+        long total = 0;
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms).entrySet()) {
+            out.printf("%-12s %s%n", entry.getKey(), entry.getValue());
+            total += entry.getValue().getCount();
+        }
+        out.printf("%-12s %7d ops%n", "total", total);
+    }
+
+    /**
+     * Les opérations sont distribuées dynamiquement : chaque thread prend la suivante dès qu'il est libre
+     */
+    private void work(long total, long start, long interval) {
+        long index;
+        while ((index = nextOperation.getAndIncrement()) < total) {
+            String[] operation = operations.get((int) (index % operations.size()));
+            long scheduled = start + index * interval;
+            long wait;
+            while (interval > 0 && (wait = scheduled - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            long begin = interval > 0 ? scheduled : System.nanoTime();
+            boolean success;
+            try {
+                success = execute(operation);
+            } catch (RuntimeException ex) {
+                logger.error("Operation {} failed: {}", String.join("|", operation), ex.getMessage());
+                success = false;
+            }
+            histograms.computeIfAbsent(operation[0], k -> new LatencyHistogram()).record(System.nanoTime() - begin, success);
+        }
+    }
+
+    /**
+     * @return false si l'opération n'a pas abouti (restaurant introuvable, erreur d'enregistrement, vote en double...)
+     */
+    private boolean execute(String[] op) {
+        switch (op[0]) {
+            case "list":
+                return inTransaction(() -> service.findAllRestaurants()) != null;
+            case "search-name":
+                return inTransaction(() -> service.findRestaurantsByName(op[1])) != null;
+            case "search-city":
+                return inTransaction(() -> service.findRestaurantsByCityName(op[1])) != null;
+            case "search-comment":
+                return inTransaction(() -> service.findRestaurantsByComment(op[1], 20)) != null;
+            case "trending":
+                return inTransaction(() -> service.findTrendingRestaurants(10)) != null;
+            case "search-type":
+                return inTransaction(() -> {
+                    RestaurantType type = service.findRestaurantTypeByLabel(op[1]);
+                    return type == null ? null : service.findRestaurantsByType(type);
+                }) != null;
+            case "show": {
+                // Les évaluations sont chargées sur les connexions d'AsyncMappers : le thread ne doit pas garder la sienne en attendant
+                Restaurant restaurant = inTransaction(() -> service.findRestaurantById(Integer.parseInt(op[1])));
+                return restaurant != null && service.loadDetails(restaurant) != null;
+            }
+            case "like":
+            case "dislike":
+                return inTransaction(() -> {
+                    Restaurant restaurant = service.findRestaurantById(Integer.parseInt(op[1]));
+                    String ipAddress = op.length > 2 ? op[2] : nextIpAddress();
+                    if (restaurant == null || service.hasAlreadyVoted(restaurant, ipAddress)) {
+                        return null;
+                    }
+                    return service.addBasicEvaluation(restaurant, op[0].equals("like"), ipAddress);
+                }) != null;
+            case "evaluate":
+                return inTransaction(() -> {
+                    Restaurant restaurant = service.findRestaurantById(Integer.parseInt(op[1]));
+                    if (restaurant == null) {
+                        return null;
+                    }
+                    Map<EvaluationCriteria, Integer> grades = new LinkedHashMap<>();
+                    Iterator<EvaluationCriteria> criterias = service.findAllEvaluationCriterias().iterator();
+                    for (String note : op[3].split(",")) {
+                        if (criterias.hasNext()) {
+                            grades.put(criterias.next(), Integer.parseInt(note.strip()));
+                        }
+                    }
+                    return service.addCompleteEvaluation(restaurant, op[2], op[4], grades);
+                }) != null;
+            case "edit":
+                return Boolean.TRUE.equals(inTransaction(() -> {
+                    Restaurant restaurant = service.findRestaurantById(Integer.parseInt(op[1]));
+                    return restaurant != null
+                            && service.updateRestaurant(restaurant, restaurant.getVersion(), op[2], op[3], op[4], service.findRestaurantTypeByLabel(op[5]),
+                            (current, attempt) -> true); // Le script impose ses valeurs : on réessaie après chaque conflit
+                }));
+            case "delete":
+                return Boolean.TRUE.equals(inTransaction(() -> {
+                    Restaurant restaurant = service.findRestaurantById(Integer.parseInt(op[1]));
+                    return restaurant != null && service.deleteRestaurant(restaurant);
+                }));
+            default:
+                throw new IllegalArgumentException("Opération inconnue : " + op[0]);
+        }
+    }
+
+    /**
+     * Exécute l'opération sur une connexion du pool réservée au thread, comme le ferait une requête concurrente
+     */
+    private static <T> T inTransaction(Supplier<T> operation) {
+        ConnectionUtils.bindPooledConnection();
+        boolean success = false;
+        try {
+            T result = operation.get();
+            success = true;
+            return result;
+        } finally {
+            ConnectionUtils.releaseBoundConnection(success);
+        }
+    }
+
+    /**
+     * Adresse IP fictive et unique pour les votes du script qui n'en précisent pas
+     */
+    private String nextIpAddress() {
+        int n = generatedIps.incrementAndGet();
+        return "/10." + ((n >>> 16) & 0xff) + "." + ((n >>> 8) & 0xff) + "." + (n & 0xff);
+    }
+}
@@ -0,0 +1,25 @@
+package ch.hearc.ig.guideresto.service;
+
+/**
+ * Décide de la suite à donner quand une modification entre en conflit avec celle d'un autre utilisateur
+ * (verrouillage optimiste) : l'objet a déjà été relu avec les valeurs et la version enregistrées en base.
+ *
+ * @param <T> le type d'objet modifié
+ */
+@FunctionalInterface
+public interface ConflictHandler<T> {
+
+    /**
+     * @param current l'objet relu, tel que l'autre utilisateur l'a enregistré
+     * @param attempt le numéro de la tentative qui vient d'échouer, à partir de 1
+     * @return true pour réappliquer les modifications sur l'objet relu et réessayer, false pour abandonner
+     */
+    boolean retry(T current, int attempt);
+
+    /**
+     * @return un gestionnaire qui abandonne la modification dès le premier conflit
+     */
+    static <T> ConflictHandler<T> abort() {
+        return (current, attempt) -> false;
+    }
+}
@@ -0,0 +1,468 @@
+package ch.hearc.ig.guideresto.service;
+
+import ch.hearc.ig.guideresto.business.BasicEvaluation;
+import ch.hearc.ig.guideresto.business.City;
+import ch.hearc.ig.guideresto.business.CompleteEvaluation;
+import ch.hearc.ig.guideresto.business.EvaluationCriteria;
+import ch.hearc.ig.guideresto.business.Grade;
+import ch.hearc.ig.guideresto.business.Restaurant;
+import ch.hearc.ig.guideresto.business.RestaurantType;
+import ch.hearc.ig.guideresto.persistence.AsyncMappers;
+import ch.hearc.ig.guideresto.persistence.BasicEvaluationMapper;
+import ch.hearc.ig.guideresto.persistence.CacheWarmup;
+import ch.hearc.ig.guideresto.persistence.CacheWarmup.Part;
+import ch.hearc.ig.guideresto.persistence.CityIndex;
+import ch.hearc.ig.guideresto.persistence.CityMapper;
+import ch.hearc.ig.guideresto.persistence.CommentIndex;
+import ch.hearc.ig.guideresto.persistence.CompleteEvaluationMapper;
+import ch.hearc.ig.guideresto.persistence.ConcurrentUpdateException;
+import ch.hearc.ig.guideresto.persistence.DuplicateVoteFilter;
+import ch.hearc.ig.guideresto.persistence.EvaluationTrends;
+import ch.hearc.ig.guideresto.persistence.GradeMapper;
+import ch.hearc.ig.guideresto.persistence.ReferenceData;
+import ch.hearc.ig.guideresto.persistence.RestaurantMapper;
+import ch.hearc.ig.guideresto.persistence.ShardRouter;
+import ch.hearc.ig.guideresto.persistence.SimilarRestaurants;
+import ch.hearc.ig.guideresto.persistence.TransactionManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Cas d'utilisation du guide, indépendants de l'interface utilisateur : la console, le mode script
+ * et tout autre front-end passent par ici. Chaque méthode qui écrit délimite sa propre transaction, sur le fragment concerné (voir ShardRouter).
+ */
+public class RestaurantService {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    /** Nombre maximal d'enregistrements tentés pour une modification en conflit avec d'autres */
+    private static final int MAX_UPDATE_ATTEMPTS = 3;
+
+    private static final RestaurantService instance = new RestaurantService();
+
+    private static final Comparator<Restaurant> BY_NAME = Comparator.comparing(Restaurant::getName, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final ShardRouter shards = ShardRouter.getInstance();
+    private final CacheWarmup warmup = CacheWarmup.getInstance();
+
+    private RestaurantService() {
+    }
+
+    public static RestaurantService getInstance() {
+        return instance;
+    }
+
+    public Set<Restaurant> findAllRestaurants() {
+        warmup.await(Part.RESTAURANTS);
+        return shards.scatterSorted(() -> RestaurantMapper.getInstance().findAll(), BY_NAME);
+    }
+
+    public Restaurant findRestaurantById(int id) {
+        // Lu pendant le préchargement, le restaurant pourrait être remplacé dans l'identity map par celui de findAll
+        warmup.await(Part.RESTAURANTS);
+        return shards.findFirst(() -> RestaurantMapper.getInstance().findById(id));
+    }
+
+    public Set<Restaurant> findRestaurantsByName(String name) {
+        warmup.await(Part.RESTAURANTS);
+        return shards.scatterSorted(() -> RestaurantMapper.getInstance().findByName(name), BY_NAME);
+    }
+
+    public Set<Restaurant> findRestaurantsByCityName(String cityName) {
+        warmup.await(Part.RESTAURANTS);
+        return shards.scatterSorted(() -> RestaurantMapper.getInstance().findByCityName(cityName), BY_NAME);
+    }
+
+    public Set<Restaurant> findRestaurantsByType(RestaurantType type) {
+        warmup.await(Part.RESTAURANTS);
+        return shards.scatterSorted(() -> RestaurantMapper.getInstance().findByType(type), BY_NAME);
+    }
+
+    /**
+     * Recherche plein texte dans les commentaires et noms d'utilisateur des évaluations
+     * @param query les mots recherchés
+     * @param limit le nombre maximal de restaurants
+     * @return les restaurants, du plus pertinent au moins pertinent
+     */
+    public Set<Restaurant> findRestaurantsByComment(String query, int limit) {
+        warmup.await(Part.COMMENT_INDEX);
+        Map<Integer, Double> scores = CommentIndex.getInstance().searchRestaurants(query, limit);
+        Map<Integer, Restaurant> found = findRestaurantsByIds(scores.keySet());
+        Set<Restaurant> restaurants = new LinkedHashSet<>();
+        for (Integer id : scores.keySet()) {
+            if (found.containsKey(id)) {
+                restaurants.add(found.get(id));
+            }
+        }
+        return restaurants;
+    }
+
+    /**
+     * @param limit le nombre maximal de restaurants
+     * @return les restaurants les plus actifs des 7 derniers jours, avec leurs statistiques, du plus au moins tendance
+     */
+    public Map<Restaurant, EvaluationTrends.Bucket> findTrendingRestaurants(int limit) {
+        warmup.await(Part.TRENDS);
+        Map<Integer, EvaluationTrends.Bucket> trending = EvaluationTrends.getInstance().getTrending(limit);
+        Map<Integer, Restaurant> found = findRestaurantsByIds(trending.keySet());
+        Map<Restaurant, EvaluationTrends.Bucket> restaurants = new LinkedHashMap<>();
+        for (Map.Entry<Integer, EvaluationTrends.Bucket> entry : trending.entrySet()) {
+            if (found.containsKey(entry.getKey())) {
+                restaurants.put(found.get(entry.getKey()), entry.getValue());
+            }
+        }
+        return restaurants;
+    }
+
+    /**
+     * @param limit le nombre maximal de restaurants
+     * @return les restaurants appréciés par les mêmes personnes que celui-ci, avec leur similarité (0 à 1), du plus au moins similaire
+     */
+    public Map<Restaurant, Double> findSimilarRestaurants(Restaurant restaurant, int limit) {
+        warmup.await(Part.SIMILAR_RESTAURANTS);
+        Map<Integer, Double> similar = SimilarRestaurants.getInstance().getSimilar(restaurant.getId(), limit);
+        Map<Integer, Restaurant> found = findRestaurantsByIds(similar.keySet());
+        Map<Restaurant, Double> restaurants = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Double> entry : similar.entrySet()) {
+            if (found.containsKey(entry.getKey())) {
+                restaurants.put(found.get(entry.getKey()), entry.getValue());
+            }
+        }
+        return restaurants;
+    }
+
+    public List<RestaurantType> findAllRestaurantTypes() {
+        warmup.await(Part.REFERENCE_DATA);
+        return ReferenceData.getInstance().getTypes();
+    }
+
+    public RestaurantType findRestaurantTypeByLabel(String label) {
+        warmup.await(Part.REFERENCE_DATA);
+        return ReferenceData.getInstance().findTypeByLabel(label);
+    }
+
+    public List<EvaluationCriteria> findAllEvaluationCriterias() {
+        warmup.await(Part.REFERENCE_DATA);
+        return ReferenceData.getInstance().getCriterias();
+    }
+
+    public CityIndex getCityIndex() {
+        warmup.await(Part.REFERENCE_DATA);
+        return CityMapper.getInstance().getIndex();
+    }
+
+    /**
+     * Charge les évaluations du restaurant (likes, commentaires et notes) pour son affichage détaillé
+     * @param restaurant le restaurant à afficher
+     * @return le même restaurant, avec ses évaluations à jour
+     */
+    public Restaurant loadDetails(Restaurant restaurant) {
+        return AsyncMappers.getInstance().loadEvaluations(restaurant).join();
+    }
+
+    /**
+     * Crée la ville sur la base principale puis la copie dans les autres fragments. Si une ville a déjà ce NPA et ce nom,
+     * y compris créée au même moment par un autre utilisateur, c'est elle qui est retournée.
+     */
+    public City createCity(String zipCode, String cityName) {
+        warmup.await(Part.REFERENCE_DATA);
+        City city = shards.execute(0, () -> CityMapper.getInstance().findOrCreate(zipCode, cityName));
+        if (city != null && shards.isEnabled()) {
+            shards.replicateCity(city);
+        }
+        if (city != null) {
+            ReferenceData.getInstance().addCity(city);
+        }
+        return city;
+    }
+
+    /**
+     * Importe une liste de villes (par exemple la liste des NPA suisses) : les villes existantes sont gardées,
+     * les autres créées, en un lot sur la base principale puis un lot par fragment.
+     *
+     * @param cities les villes à importer, sans ID
+     * @return les villes existantes ou créées, dans le même ordre, ou null si l'import a échoué
+     */
+    public List<City> importCities(Collection<City> cities) {
+        warmup.await(Part.REFERENCE_DATA);
+        List<City> imported = shards.execute(0, () -> CityMapper.getInstance().findOrCreateAll(cities));
+        if (imported != null && shards.isEnabled()) {
+            shards.replicateCities(imported);
+        }
+        if (imported != null) {
+            ReferenceData.getInstance().addCities(imported);
+        }
+        return imported;
+    }
+
+    /**
+     * @return le restaurant créé, ou null en cas d'erreur
+     */
+    public Restaurant createRestaurant(String name, String description, String website, String street, City city, RestaurantType type) {
+        Restaurant restaurant = shards.execute(shardOf(city),
+                () -> RestaurantMapper.getInstance().create(new Restaurant(null, name, description, website, street, city, type)));
+        if (restaurant != null) {
+            city.getRestaurants().add(restaurant);
+            type.getRestaurants().add(restaurant);
+        }
+        return restaurant;
+    }
+
+    /**
+     * Indique si l'adresse IP a déjà voté pour ce restaurant
+     */
+    public boolean hasAlreadyVoted(Restaurant restaurant, String ipAddress) {
+        warmup.await(Part.VOTE_FILTER);
+        return shards.inShard(shardOf(restaurant), () -> DuplicateVoteFilter.getInstance().isDuplicate(restaurant.getId(), ipAddress));
+    }
+
+    /**
+     * Enregistre un like ou un dislike. L'appelant vérifie au préalable {@link #hasAlreadyVoted(Restaurant, String)}.
+     * La transaction peut être validée avec celles d'autres votes simultanés (validation groupée).
+     * @return l'évaluation créée, ou null en cas d'erreur
+     */
+    public BasicEvaluation addBasicEvaluation(Restaurant restaurant, boolean like, String ipAddress) {
+        warmup.await(Part.VOTE_FILTER, Part.TRENDS, Part.SIMILAR_RESTAURANTS);
+        BasicEvaluation eval = shards.executeGrouped(shardOf(restaurant),
+                () -> BasicEvaluationMapper.getInstance().create(new BasicEvaluation(new Date(), restaurant, like, ipAddress)));
+        if (eval != null) {
+            // Un filtre plein est rechargé depuis LIKES, sur le fragment du restaurant
+            shards.inShard(shardOf(restaurant), () -> {
+                DuplicateVoteFilter.getInstance().recordVote(restaurant.getId(), ipAddress);
+                return null;
+            });
+            EvaluationTrends.getInstance().record(eval);
+            SimilarRestaurants.getInstance().record(eval);
+            restaurant.addEvaluation(eval);
+        }
+        return eval;
+    }
+
+    /**
+     * Enregistre des likes et dislikes importés, par un INSERT en lot et une transaction par fragment.
+     * Les votes doivent avoir été validés : restaurant existant, pas de vote de la même adresse IP.
+     *
+     * @return les évaluations enregistrées ; celles d'un fragment dont la transaction a échoué n'y sont pas
+     */
+    public List<BasicEvaluation> importBasicEvaluations(Collection<BasicEvaluation> evaluations) {
+        warmup.await(Part.VOTE_FILTER, Part.TRENDS, Part.SIMILAR_RESTAURANTS);
+        Map<Integer, List<BasicEvaluation>> byShard = new HashMap<>();
+        for (BasicEvaluation eval : evaluations) {
+            byShard.computeIfAbsent(shardOf(eval.getRestaurant()), k -> new ArrayList<>()).add(eval);
+        }
+        List<BasicEvaluation> written = new ArrayList<>(evaluations.size());
+        for (Map.Entry<Integer, List<BasicEvaluation>> entry : byShard.entrySet()) {
+            List<BasicEvaluation> batch = entry.getValue();
+            if (!Boolean.TRUE.equals(shards.execute(entry.getKey(), () -> BasicEvaluationMapper.getInstance().createAll(batch)))) {
+                continue;
+            }
+            shards.inShard(entry.getKey(), () -> {
+                for (BasicEvaluation eval : batch) {
+                    DuplicateVoteFilter.getInstance().recordVote(eval.getRestaurant().getId(), eval.getIpAddress());
+                }
+                return null;
+            });
+            for (BasicEvaluation eval : batch) {
+                EvaluationTrends.getInstance().record(eval);
+                SimilarRestaurants.getInstance().record(eval);
+                eval.getRestaurant().addEvaluation(eval);
+            }
+            written.addAll(batch);
+        }
+        return written;
+    }
+
+    /**
+     * Enregistre une évaluation complète et ses notes dans une seule transaction, éventuellement validée avec d'autres
+     * @param grades la note attribuée à chaque critère
+     * @return l'évaluation créée, ou null en cas d'erreur
+     */
+    public CompleteEvaluation addCompleteEvaluation(Restaurant restaurant, String username, String comment, Map<EvaluationCriteria, Integer> grades) {
+        warmup.await(Part.COMMENT_INDEX, Part.TRENDS, Part.SIMILAR_RESTAURANTS);
+        CompleteEvaluation eval = new CompleteEvaluation(new Date(), restaurant, comment, username);
+        for (Map.Entry<EvaluationCriteria, Integer> entry : grades.entrySet()) {
+            eval.getGrades().add(new Grade(entry.getValue(), eval, entry.getKey()));
+        }
+
+        boolean success = Boolean.TRUE.equals(shards.executeGrouped(shardOf(restaurant), () -> {
+            boolean created = CompleteEvaluationMapper.getInstance().create(eval) != null;
+            for (Grade currentGrade : eval.getGrades()) {
+                created = created && GradeMapper.getInstance().create(currentGrade) != null;
+            }
+            return created;
+        }));
+        if (!success) {
+            return null;
+        }
+        restaurant.addEvaluation(eval);
+        CommentIndex.getInstance().add(eval);
+        EvaluationTrends.getInstance().record(eval);
+        SimilarRestaurants.getInstance().record(eval);
+        return eval;
+    }
+
+    /**
+     * Met à jour les informations du restaurant, et son type s'il a changé.
+     * Abandonne si le restaurant a été modifié entre-temps par quelqu'un d'autre.
+     * @return true si la modification a été enregistrée
+     */
+    public boolean updateRestaurant(Restaurant restaurant, String name, String description, String website, RestaurantType newType) {
+        return updateRestaurant(restaurant, restaurant.getVersion(), name, description, website, newType, ConflictHandler.abort());
+    }
+
+    /**
+     * Met à jour les informations du restaurant, et son type s'il a changé
+     * @param seenVersion la version du restaurant sur laquelle l'utilisateur a fait sa saisie
+     * @param onConflict appelé si le restaurant a été modifié depuis cette version, après l'avoir relu
+     * @return true si la modification a été enregistrée
+     */
+    public boolean updateRestaurant(Restaurant restaurant, int seenVersion, String name, String description, String website, RestaurantType newType,
+                                    ConflictHandler<Restaurant> onConflict) {
+        return updateWithRetry(restaurant, seenVersion, onConflict, changed -> {
+            changed.setName(name);
+            changed.setDescription(description);
+            changed.setWebsite(website);
+            if (newType != null) {
+                changed.setType(newType);
+            }
+        });
+    }
+
+    /**
+     * Met à jour l'adresse du restaurant, et sa ville si elle a changé.
+     * Abandonne si le restaurant a été modifié entre-temps par quelqu'un d'autre.
+     * @return true si la modification a été enregistrée
+     */
+    public boolean updateRestaurantAddress(Restaurant restaurant, String street, City newCity) {
+        return updateRestaurantAddress(restaurant, restaurant.getVersion(), street, newCity, ConflictHandler.abort());
+    }
+
+    /**
+     * Met à jour l'adresse du restaurant, et sa ville si elle a changé
+     * @param seenVersion la version du restaurant sur laquelle l'utilisateur a fait sa saisie
+     * @param onConflict appelé si le restaurant a été modifié depuis cette version, après l'avoir relu
+     * @return true si la modification a été enregistrée
+     */
+    public boolean updateRestaurantAddress(Restaurant restaurant, int seenVersion, String street, City newCity, ConflictHandler<Restaurant> onConflict) {
+        if (newCity != null && shardOf(newCity) != shardOf(restaurant.getCity())) {
+            // Il faudrait déplacer le restaurant et toutes ses évaluations d'une base à l'autre
+            logger.warn("Restaurant {} cannot move to city {}: it belongs to another shard", restaurant.getId(), newCity.getId());
+            return false;
+        }
+        return updateWithRetry(restaurant, seenVersion, onConflict, changed -> {
+            changed.setStreet(street);
+            if (newCity != null) {
+                changed.setCity(newCity);
+            }
+        });
+    }
+
+    /**
+     * Supprime le restaurant avec ses likes, ses commentaires et leurs notes
+     * @return true si le restaurant a été supprimé
+     */
+    public boolean deleteRestaurant(Restaurant restaurant) {
+        warmup.await(Part.VOTE_FILTER, Part.COMMENT_INDEX, Part.TRENDS, Part.SIMILAR_RESTAURANTS);
+        boolean success = Boolean.TRUE.equals(shards.execute(shardOf(restaurant), () -> RestaurantMapper.getInstance().delete(restaurant)));
+        if (success) {
+            restaurant.getAddress().getCity().getRestaurants().remove(restaurant);
+            restaurant.getType().getRestaurants().remove(restaurant);
+        }
+        return success;
+    }
+
+    /**
+     * Applique les modifications sur une copie du restaurant puis l'enregistre : le restaurant de l'identity map,
+     * partagé avec les autres threads, ne reçoit les nouvelles valeurs qu'après le COMMIT. La première tentative est
+     * conditionnée par la version vue par l'utilisateur, et non par celle du restaurant en cache qu'une actualisation
+     * a pu avancer pendant la saisie. En cas de conflit de version, la transaction est annulée, le restaurant relu,
+     * et les modifications réappliquées sur les nouvelles valeurs si le gestionnaire l'accepte.
+     */
+    private boolean updateWithRetry(Restaurant restaurant, int seenVersion, ConflictHandler<Restaurant> onConflict, Consumer<Restaurant> changes) {
+        RestaurantMapper mapper = RestaurantMapper.getInstance();
+        int expectedVersion = seenVersion;
+        for (int attempt = 1; ; attempt++) {
+            Restaurant changed = copyOf(restaurant);
+            changed.setVersion(expectedVersion);
+            changes.accept(changed);
+            try {
+                return Boolean.TRUE.equals(shards.execute(shardOf(restaurant), () -> {
+                    boolean updated = mapper.update(changed);
+                    if (updated) {
+                        TransactionManager.getInstance().afterCommit(() -> applyChanges(restaurant, changed));
+                    }
+                    return updated;
+                }));
+            } catch (ConcurrentUpdateException ex) {
+                logger.info("Update conflict on restaurant {} (attempt {})", restaurant.getId(), attempt);
+                if (!shards.inShard(shardOf(restaurant), () -> mapper.reload(restaurant)) || attempt >= MAX_UPDATE_ATTEMPTS || !onConflict.retry(restaurant, attempt)) {
+                    return false;
+                }
+                expectedVersion = restaurant.getVersion();
+            }
+        }
+    }
+
+    /**
+     * @return un restaurant détaché, avec les valeurs et la version du restaurant donné mais sans ses évaluations
+     */
+    private static Restaurant copyOf(Restaurant restaurant) {
+        Restaurant copy = new Restaurant(restaurant.getId(), restaurant.getName(), restaurant.getDescription(), restaurant.getWebsite(),
+                restaurant.getStreet(), restaurant.getCity(), restaurant.getType());
+        copy.setVersion(restaurant.getVersion());
+        return copy;
+    }
+
+    /**
+     * Reporte les valeurs enregistrées sur le restaurant en cache, en le déplaçant si besoin dans les restaurants
+     * de sa nouvelle ville et de son nouveau type
+     */
+    private static void applyChanges(Restaurant restaurant, Restaurant changed) {
+        restaurant.setName(changed.getName());
+        restaurant.setDescription(changed.getDescription());
+        restaurant.setWebsite(changed.getWebsite());
+        restaurant.setStreet(changed.getStreet());
+        restaurant.setVersion(changed.getVersion());
+        if (changed.getCity() != restaurant.getCity()) {
+            restaurant.getCity().getRestaurants().remove(restaurant);
+            restaurant.setCity(changed.getCity());
+            changed.getCity().getRestaurants().add(restaurant);
+        }
+        if (changed.getType() != restaurant.getType()) {
+            restaurant.getType().getRestaurants().remove(restaurant);
+            restaurant.setType(changed.getType());
+            changed.getType().getRestaurants().add(restaurant);
+        }
+    }
+
+    /**
+     * Charge des restaurants par ID sur tous les fragments ; ceux qui sont en cache ne sont pas relus
+     */
+    private Map<Integer, Restaurant> findRestaurantsByIds(Collection<Integer> ids) {
+        Map<Integer, Restaurant> found = new HashMap<>();
+        for (Map<Integer, Restaurant> partial : shards.scatter(() -> RestaurantMapper.getInstance().findByIds(ids))) {
+            found.putAll(partial);
+        }
+        return found;
+    }
+
+    private int shardOf(Restaurant restaurant) {
+        return shardOf(restaurant.getCity());
+    }
+
+    private int shardOf(City city) {
+        return shards.isEnabled() ? shards.shardOf(city) : 0;
+    }
+}
@@ -0,0 +1,573 @@
+package ch.hearc.ig.guideresto.service;
+
+import ch.hearc.ig.guideresto.business.BasicEvaluation;
+import ch.hearc.ig.guideresto.business.Restaurant;
+import ch.hearc.ig.guideresto.persistence.ConnectionUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Import en flux d'un fichier de likes et dislikes envoyé par les bornes des partenaires, sans le charger en mémoire.
+ *
+ * Une ligne par vote : "restaurant;like|dislike;adresse IP[;date]" (date au format 2024-05-31T19:30:00, maintenant si absente).
+ * Les lignes vides et celles qui commencent par # sont ignorées.
+ *
+ * Trois étages reliés par des files bornées : la lecture du fichier, la validation (restaurant existant, adresse IP,
+ * vote en double) sur ingest.validators threads, et l'écriture par lots de ingest.batch.size votes sur ingest.writers
+ * threads. Quand un étage prend du retard, sa file se remplit et bloque l'étage précédent : la lecture avance au rythme
+ * de la base. Un validateur emprunte une connexion du pool le temps de valider les lignes déjà lues, un écrivain le temps
+ * d'écrire un lot : aucun étage ne garde de connexion en attendant une file, l'import avance quelle que soit la taille du pool.
+ *
+ * Le numéro de la dernière ligne traitée, sous laquelle toutes les lignes sont écrites ou rejetées, est enregistré dans
+ * le fichier "&lt;flux&gt;.checkpoint". Un import interrompu reprend après cette ligne ; les votes déjà écrits au-delà
+ * sont alors rejetés comme doublons. Un lot en échec arrête la lecture : le point de reprise ne peut plus dépasser
+ * ses lignes, inutile de lire la suite.
+ */
+public class VoteFeedIngest {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+
+    private final RestaurantService service = RestaurantService.getInstance();
+    private final VoterAddresses addresses = VoterAddresses.getInstance();
+
+    private final Path feed;
+    private final Path checkpointFile;
+    private final int validatorCount;
+    private final int writerCount;
+    private final int batchSize;
+    private final long lingerMillis;
+    private final long reportMillis;
+
+    private final BlockingQueue<Line> lines;
+    private final BlockingQueue<Vote> votes;
+    private final Progress progress = new Progress();
+    private final Stats stats = new Stats();
+    // Restaurants déjà recherchés, y compris ceux qui n'existent pas
+    private final Map<Integer, Optional<Restaurant>> restaurants = new ConcurrentHashMap<>();
+    // Votes validés mais pas encore écrits, pour rejeter un doublon à l'intérieur du fichier
+    private final Set<String> pendingVoters = ConcurrentHashMap.newKeySet();
+    // Un lot a échoué : la lecture s'arrête
+    private volatile boolean stopped;
+
+    public VoteFeedIngest(Path feed) {
+        this.feed = feed;
+        this.checkpointFile = feed.resolveSibling(feed.getFileName() + CHECKPOINT_SUFFIX);
+        this.validatorCount = Math.max(1, ConnectionUtils.getIntProperty("ingest.validators", 2));
+        this.writerCount = Math.max(1, ConnectionUtils.getIntProperty("ingest.writers", 1));
+        this.batchSize = Math.max(1, ConnectionUtils.getIntProperty("ingest.batch.size", 200));
+        this.lingerMillis = Math.max(1, ConnectionUtils.getIntProperty("ingest.linger.ms", 200));
+        this.reportMillis = ConnectionUtils.getIntProperty("ingest.report.ms", 5000);
+        int queueSize = Math.max(1, ConnectionUtils.getIntProperty("ingest.queue.size", 1000));
+        this.lines = new ArrayBlockingQueue<>(queueSize);
+        this.votes = new ArrayBlockingQueue<>(queueSize);
+    }
+
+    /**
+     * Importe le fichier depuis le dernier point de reprise et supprime celui-ci une fois le fichier entièrement traité
+     * @return les compteurs de l'import
+     * @throws IOException si le fichier ne peut pas être lu
+     */
+    public Stats run() throws IOException {
+        long resumeAfter = readCheckpoint();
+        progress.reset(resumeAfter);
+        if (resumeAfter > 0) {
+            logger.info("Resuming vote feed {} after line {}", feed, resumeAfter);
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(validatorCount + writerCount, runnable ->
+                new Thread(runnable, "vote-ingest-" + threadCount.incrementAndGet()));
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vote-ingest-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (reportMillis > 0) {
+            reporter.scheduleWithFixedDelay(this::report, reportMillis, reportMillis, TimeUnit.MILLISECONDS);
+        }
+
+        AtomicInteger runningValidators = new AtomicInteger(validatorCount);
+        for (int i = 0; i < validatorCount; i++) {
+            workers.execute(() -> {
+                try {
+                    validate();
+                } catch (RuntimeException ex) {
+                    logger.error(ex.getMessage(), ex);
+                } finally {
+                    // Le dernier validateur terminé arrête les écrivains
+                    if (runningValidators.decrementAndGet() == 0) {
+                        for (int w = 0; w < writerCount; w++) {
+                            putUninterruptibly(votes, Vote.END);
+                        }
+                    }
+                }
+            });
+        }
+        for (int i = 0; i < writerCount; i++) {
+            workers.execute(() -> {
+                try {
+                    write();
+                } catch (RuntimeException ex) {
+                    logger.error(ex.getMessage(), ex);
+                }
+            });
+        }
+
+        try {
+            read(resumeAfter);
+        } finally {
+            for (int i = 0; i < validatorCount; i++) {
+                putUninterruptibly(lines, Line.END);
+            }
+            workers.shutdown();
+            awaitUninterruptibly(workers);
+            reporter.shutdownNow();
+        }
+
+        stats.finish(progress.getWatermark());
+        if (stats.failed.get() == 0 && progress.getWatermark() >= stats.lastLine) {
+            Files.deleteIfExists(checkpointFile);
+        } else {
+            writeCheckpoint();
+            logger.warn("Vote feed {} incomplete: resume after line {}", feed, progress.getWatermark());
+        }
+        logger.info("Vote feed {} imported: {}", feed, stats);
+        return stats;
+    }
+
+    /**
+     * Étage de lecture : une ligne à la fois, bloque tant que la file de validation est pleine
+     */
+    private void read(long resumeAfter) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(feed, StandardCharsets.UTF_8)) {
+            long number = 0;
+            String text;
+            while ((text = reader.readLine()) != null && !stopped) {
+                number++;
+                if (number <= resumeAfter) {
+                    continue;
+                }
+                stats.read.incrementAndGet();
+                stats.lastLine = number;
+                String trimmed = text.strip();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    progress.done(number);
+                    continue;
+                }
+                putUninterruptibly(lines, new Line(number, trimmed));
+            }
+        }
+    }
+
+    /**
+     * Étage de validation : transforme chaque ligne en vote, ou la rejette. Les lignes déjà dans la file, au plus
+     * ingest.batch.size, sont validées avec une même connexion, rendue avant de transmettre les votes aux écrivains.
+     */
+    private void validate() {
+        boolean running = true;
+        while (running) {
+            List<Line> chunk = new ArrayList<>();
+            Line line = takeUninterruptibly(lines);
+            // Chaque validateur s'arrête à la première fin reçue : il n'en prend jamais une deuxième
+            while (line != null && line != Line.END) {
+                chunk.add(line);
+                line = chunk.size() < batchSize ? lines.poll() : null;
+            }
+            running = line != Line.END;
+
+            List<Vote> valid = new ArrayList<>(chunk.size());
+            // Après un échec, les lignes encore en file sont seulement retirées : la lecture ne reste pas bloquée
+            if (!chunk.isEmpty() && !stopped) {
+                try {
+                    withPooledConnection(() -> {
+                        for (Line current : chunk) {
+                            validate(current, valid);
+                        }
+                    });
+                } catch (RuntimeException ex) {
+                    logger.error("Vote feed {}: {}, the import stops reading", feed, ex.getMessage(), ex);
+                    stopped = true;
+                }
+            }
+            for (Vote vote : valid) {
+                putUninterruptibly(votes, vote);
+            }
+        }
+    }
+
+    private void validate(Line line, List<Vote> valid) {
+        try {
+            Vote vote = validate(line);
+            if (vote != null) {
+                valid.add(vote);
+            }
+        } catch (RuntimeException ex) {
+            // Un validateur qui s'arrête bloquerait la lecture : la ligne est rejetée et la validation continue
+            logger.error("Vote feed {} line {}: {}", feed, line.number, ex.getMessage(), ex);
+            stats.reject("erreur");
+            progress.done(line.number);
+        }
+    }
+
+    /**
+     * @return le vote de la ligne, ou null si elle est rejetée
+     */
+    private Vote validate(Line line) {
+        String[] fields = line.text.split(";", -1);
+        String reason = null;
+        BasicEvaluation evaluation = null;
+        if (fields.length < 3 || fields.length > 4) {
+            reason = "format";
+        } else {
+            Restaurant restaurant = findRestaurant(fields[0].strip());
+            Boolean like = parseLike(fields[1].strip());
+            byte[] address = addresses.parse(fields[2].strip());
+            Date date = fields.length == 4 ? parseDate(fields[3].strip()) : new Date();
+            if (restaurant == null) {
+                reason = "restaurant";
+            } else if (like == null) {
+                reason = "appreciation";
+            } else if (address == null) {
+                reason = "adresse IP";
+            } else if (date == null) {
+                reason = "date";
+            } else {
+                String ipAddress = addresses.toText(address);
+                if (!pendingVoters.add(restaurant.getId() + "|" + ipAddress) || service.hasAlreadyVoted(restaurant, ipAddress)) {
+                    reason = "doublon";
+                } else {
+                    evaluation = new BasicEvaluation(date, restaurant, like, ipAddress);
+                }
+            }
+        }
+
+        if (evaluation == null) {
+            stats.reject(reason);
+            logger.debug("Vote feed {} line {} rejected ({}): {}", feed, line.number, reason, line.text);
+            progress.done(line.number);
+            return null;
+        }
+        stats.valid.incrementAndGet();
+        return new Vote(line.number, evaluation);
+    }
+
+    /**
+     * Étage d'écriture : regroupe les votes par lots, écrits dès qu'un lot est plein ou que la file reste vide ingest.linger.ms
+     */
+    private void write() {
+        List<Vote> batch = new ArrayList<>(batchSize);
+        boolean running = true;
+        while (running) {
+            Vote vote = pollUninterruptibly(votes, lingerMillis);
+            if (vote == Vote.END) {
+                running = false;
+            } else if (vote != null) {
+                batch.add(vote);
+            }
+            if (!batch.isEmpty() && (batch.size() >= batchSize || vote == null || !running)) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Écrit un lot avec une connexion du pool, empruntée le temps de l'écriture
+     */
+    private void flush(List<Vote> batch) {
+        List<BasicEvaluation> evaluations = new ArrayList<>(batch.size());
+        for (Vote vote : batch) {
+            evaluations.add(vote.evaluation);
+        }
+        Set<BasicEvaluation> written = Collections.newSetFromMap(new IdentityHashMap<>());
+        try {
+            withPooledConnection(() -> written.addAll(service.importBasicEvaluations(evaluations)));
+        } catch (RuntimeException ex) {
+            logger.error("Vote feed {}: batch of {} votes failed: {}", feed, batch.size(), ex.getMessage(), ex);
+        }
+        stats.batches.incrementAndGet();
+        for (Vote vote : batch) {
+            pendingVoters.remove(vote.evaluation.getRestaurant().getId() + "|" + vote.evaluation.getIpAddress());
+            if (written.contains(vote.evaluation)) {
+                stats.written.incrementAndGet();
+                progress.done(vote.number);
+            } else {
+                // La ligne n'est pas marquée traitée : le point de reprise reste avant elle
+                stats.failed.incrementAndGet();
+                if (!stopped) {
+                    stopped = true;
+                    logger.error("Vote feed {}: line {} could not be written, the import stops reading", feed, vote.number);
+                }
+            }
+        }
+    }
+
+    private Restaurant findRestaurant(String text) {
+        try {
+            int id = Integer.parseInt(text);
+            return restaurants.computeIfAbsent(id, k -> Optional.ofNullable(service.findRestaurantById(k))).orElse(null);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private static Boolean parseLike(String text) {
+        return switch (text.toLowerCase()) {
+            case "like", "t", "true" -> true;
+            case "dislike", "f", "false" -> false;
+            default -> null;
+        };
+    }
+
+    private static Date parseDate(String text) {
+        try {
+            return Date.from(LocalDateTime.parse(text).atZone(ZoneId.systemDefault()).toInstant());
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Rapport périodique : enregistre aussi le point de reprise
+     */
+    private void report() {
+        try {
+            writeCheckpoint();
+            logger.info("Vote feed {}: {} lines read, {} written ({} votes/s), {} rejected, {} failed, lag {} lines, queues {}/{}",
+                    feed, stats.read.get(), stats.written.get(), String.format("%.0f", stats.getThroughput()), stats.getRejected(),
+                    stats.failed.get(), stats.lastLine - progress.getWatermark(), lines.size(), votes.size());
+        } catch (RuntimeException ex) {
+            // Une exception non traitée annulerait les exécutions suivantes du scheduler
+            logger.error(ex.getMessage(), ex);
+        }
+    }
+
+    private long readCheckpoint() {
+        try {
+            if (Files.exists(checkpointFile)) {
+                return Long.parseLong(Files.readString(checkpointFile, StandardCharsets.UTF_8).strip());
+            }
+        } catch (IOException | NumberFormatException ex) {
+            logger.error("Unable to read checkpoint {}: {}", checkpointFile, ex.getMessage());
+        }
+        return 0;
+    }
+
+    /**
+     * Écrit le point de reprise dans un fichier temporaire puis le renomme, pour ne jamais laisser un fichier à moitié écrit
+     */
+    private void writeCheckpoint() {
+        Path temporary = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try {
+            Files.writeString(temporary, Long.toString(progress.getWatermark()), StandardCharsets.UTF_8);
+            Files.move(temporary, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            logger.error("Unable to write checkpoint {}: {}", checkpointFile, ex.getMessage());
+        }
+    }
+
+    private static void withPooledConnection(Runnable work) {
+        ConnectionUtils.bindPooledConnection();
+        try {
+            work.run();
+        } finally {
+            ConnectionUtils.releaseBoundConnection(false);
+        }
+    }
+
+    private static <T> void putUninterruptibly(BlockingQueue<T> queue, T item) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(item);
+                break;
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static <T> T takeUninterruptibly(BlockingQueue<T> queue) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return queue.take();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static <T> T pollUninterruptibly(BlockingQueue<T> queue, long timeoutMillis) {
+        try {
+            return queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private static void awaitUninterruptibly(ExecutorService executor) {
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    return;
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private record Line(long number, String text) {
+        private static final Line END = new Line(-1, null);
+    }
+
+    private record Vote(long number, BasicEvaluation evaluation) {
+        private static final Vote END = new Vote(-1, null);
+    }
+
+    /**
+     * Numéro de la dernière ligne sous laquelle toutes les lignes sont traitées, alors que les étages parallèles
+     * les terminent dans le désordre
+     */
+    private static class Progress {
+
+        private final Set<Long> doneAhead = new HashSet<>();
+        private long watermark;
+
+        private synchronized void reset(long line) {
+            watermark = line;
+            doneAhead.clear();
+        }
+
+        private synchronized void done(long line) {
+            if (line != watermark + 1) {
+                doneAhead.add(line);
+                return;
+            }
+            watermark = line;
+            while (doneAhead.remove(watermark + 1)) {
+                watermark++;
+            }
+        }
+
+        private synchronized long getWatermark() {
+            return watermark;
+        }
+    }
+
+    /**
+     * Compteurs d'un import
+     */
+    public static class Stats {
+
+        private final long startedAt = System.currentTimeMillis();
+        private final AtomicLong read = new AtomicLong();
+        private final AtomicLong valid = new AtomicLong();
+        private final AtomicLong written = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong batches = new AtomicLong();
+        private final Map<String, AtomicLong> rejected = new ConcurrentHashMap<>();
+        private volatile long lastLine;
+        private volatile long durationMillis = -1;
+        private volatile long checkpoint;
+
+        private void reject(String reason) {
+            rejected.computeIfAbsent(reason, k -> new AtomicLong()).incrementAndGet();
+        }
+
+        private void finish(long checkpoint) {
+            this.checkpoint = checkpoint;
+            this.durationMillis = System.currentTimeMillis() - startedAt;
+        }
+
+        public long getRead() {
+            return read.get();
+        }
+
+        public long getWritten() {
+            return written.get();
+        }
+
+        public long getFailed() {
+            return failed.get();
+        }
+
+        public long getRejected() {
+            return rejected.values().stream().mapToLong(AtomicLong::get).sum();
+        }
+
+        /**
+         * @return les lignes rejetées, par motif
+         */
+        public Map<String, Long> getRejectedByReason() {
+            Map<String, Long> reasons = new TreeMap<>();
+            rejected.forEach((reason, count) -> reasons.put(reason, count.get()));
+            return reasons;
+        }
+
+        /**
+         * @return le nombre de votes écrits par seconde depuis le début de l'import
+         */
+        public double getThroughput() {
+            long elapsed = durationMillis >= 0 ? durationMillis : System.currentTimeMillis() - startedAt;
+            return elapsed == 0 ? 0 : written.get() * 1000.0 / elapsed;
+        }
+
+        /**
+         * @return la ligne après laquelle reprendre, égale à la dernière ligne du fichier si tout a été traité
+         */
+        public long getCheckpoint() {
+            return checkpoint;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d lines read, %d valid, %d written in %d batches (%.0f votes/s), %d rejected %s, %d failed, checkpoint at line %d",
+                    read.get(), valid.get(), written.get(), batches.get(), getThroughput(), getRejected(), getRejectedByReason(),
+                    failed.get(), checkpoint);
+        }
+    }
+}
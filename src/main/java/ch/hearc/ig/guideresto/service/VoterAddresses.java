@@ -0,0 +1,220 @@
+package ch.hearc.ig.guideresto.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adresse IP enregistrée avec un like ou un dislike, sans jamais attendre une résolution de nom.
+ *
+ * Pour la console, l'adresse locale est celle de InetAddress.getLocalHost(), qui identifiait déjà les votes enregistrés.
+ * Elle est résolue en tâche de fond dès le démarrage (voter.address.refresh.ms), hors du chemin du vote : la résolution
+ * du nom de la machine peut bloquer plusieurs secondes sur un poste mal configuré. Un vote donné avant la fin de la
+ * première résolution l'attend plutôt que d'enregistrer une autre adresse, qui ferait du même poste deux votants.
+ * La première interface réseau active ne sert que si le nom de la machine désigne la boucle locale ou ne se résout pas.
+ *
+ * Pour un front-end qui connaît déjà l'adresse de son client (HTTP), {@link #toText(byte[])} convertit les octets
+ * de l'adresse, sans aucune recherche.
+ *
+ * Les adresses IPv4 sont toujours rendues en notation canonique (a.b.c.d), celle que BasicEvaluation stocke en entier.
+ */
+public class VoterAddresses {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    /** Valeur enregistrée quand aucune adresse n'est connue */
+    public static final String UNAVAILABLE = "Indisponible";
+
+    private static final VoterAddresses instance = new VoterAddresses();
+
+    private volatile String localAddress;
+    private final CountDownLatch firstResolution = new CountDownLatch(1);
+    private ScheduledExecutorService scheduler;
+
+    private VoterAddresses() {
+    }
+
+    public static VoterAddresses getInstance() {
+        return instance;
+    }
+
+    /**
+     * Lance la résolution de l'adresse locale en tâche de fond, puis la relit périodiquement
+     * @param intervalMillis délai entre deux résolutions, 0 ou négatif pour ne résoudre qu'une fois
+     */
+    public synchronized void start(long intervalMillis) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "voter-address-resolver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (intervalMillis > 0) {
+            scheduler.scheduleWithFixedDelay(this::resolve, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            scheduler.execute(this::resolve);
+        }
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * @return l'adresse IP de ce poste : la dernière résolue, après avoir attendu la première résolution si elle est
+     * en cours. Sans {@link #start(long)}, la résolution se fait sur le thread appelant.
+     */
+    public String getLocalAddress() {
+        String address = localAddress;
+        if (address != null) {
+            return address;
+        }
+        boolean started;
+        synchronized (this) {
+            started = scheduler != null;
+        }
+        if (started) {
+            try {
+                firstResolution.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            resolve();
+        }
+        address = localAddress;
+        return address != null ? address : UNAVAILABLE;
+    }
+
+    /**
+     * @param address les octets d'une adresse IPv4 (4) ou IPv6 (16), tels que InetAddress.getAddress() les donne
+     * @return l'adresse en texte, ou UNAVAILABLE si elle est absente ou de longueur inattendue
+     */
+    public String toText(byte[] address) {
+        if (address == null) {
+            return UNAVAILABLE;
+        }
+        if (address.length == 4) {
+            return (address[0] & 0xff) + "." + (address[1] & 0xff) + "." + (address[2] & 0xff) + "." + (address[3] & 0xff);
+        }
+        try {
+            // Sans nom d'hôte fourni, getByAddress ne fait aucune recherche
+            return InetAddress.getByAddress(address).getHostAddress();
+        } catch (UnknownHostException ex) {
+            return UNAVAILABLE;
+        }
+    }
+
+    /**
+     * Lit une adresse IP littérale sans jamais déclencher de résolution de nom, par exemple pour valider un fichier importé
+     * @param text une adresse IPv4 en notation décimale (sans zéros non significatifs) ou une adresse IPv6
+     * @return les octets de l'adresse, ou null si le texte n'est pas une adresse valide
+     */
+    public byte[] parse(String text) {
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        if (text.indexOf(':') < 0) {
+            return parseIpv4(text);
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F' || c == ':' || c == '.')) {
+                return null;
+            }
+        }
+        try {
+            // Un littéral IPv6 est interprété sans recherche
+            return InetAddress.getByName(text).getAddress();
+        } catch (UnknownHostException ex) {
+            return null;
+        }
+    }
+
+    private static byte[] parseIpv4(String text) {
+        byte[] address = new byte[4];
+        int part = 0;
+        int value = 0;
+        int digits = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : '.';
+            if (c >= '0' && c <= '9') {
+                if (digits > 0 && value == 0) {
+                    return null; // Zéro non significatif, ambigu (octal)
+                }
+                value = value * 10 + (c - '0');
+                if (value > 255) {
+                    return null;
+                }
+                digits++;
+            } else if (c == '.' && digits > 0 && part < 4) {
+                address[part++] = (byte) value;
+                value = 0;
+                digits = 0;
+            } else {
+                return null;
+            }
+        }
+        return part == 4 ? address : null;
+    }
+
+    private void resolve() {
+        try {
+            InetAddress local = InetAddress.getLocalHost();
+            // Un nom de machine associé à la boucle locale (fichier hosts par défaut) ne distingue pas les votants
+            String resolved = local.isLoopbackAddress() ? firstInterfaceAddress() : toText(local.getAddress());
+            if (!resolved.equals(localAddress)) {
+                logger.info("Local voter address: {}", resolved);
+            }
+            localAddress = resolved;
+        } catch (UnknownHostException ex) {
+            logger.error("Error - Couldn't retrieve host IP address: {}", ex.getMessage());
+            // L'adresse précédente reste en place ; sans elle, la première interface évite de bloquer les votes
+            if (localAddress == null) {
+                localAddress = firstInterfaceAddress();
+            }
+        } catch (RuntimeException ex) {
+            // Une exception non traitée annulerait les exécutions suivantes du scheduler
+            logger.error(ex.getMessage(), ex);
+        } finally {
+            firstResolution.countDown();
+        }
+    }
+
+    /**
+     * Parcourt les interfaces réseau, ce qui ne demande aucune résolution de nom
+     * @return la première adresse IPv4 d'une interface active autre que la boucle locale, sinon UNAVAILABLE
+     */
+    private String firstInterfaceAddress() {
+        try {
+            for (NetworkInterface network : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+                if (!network.isUp() || network.isLoopback()) {
+                    continue;
+                }
+                for (InetAddress address : Collections.list(network.getInetAddresses())) {
+                    if (address instanceof Inet4Address) {
+                        return toText(address.getAddress());
+                    }
+                }
+            }
+        } catch (SocketException ex) {
+            logger.error("Error - Couldn't list network interfaces: {}", ex.getMessage());
+        }
+        return UNAVAILABLE;
+    }
+}
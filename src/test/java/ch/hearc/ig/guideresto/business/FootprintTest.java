@@ -0,0 +1,58 @@
+package ch.hearc.ig.guideresto.business;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.info.GraphLayout;
+import org.openjdk.jol.vm.VM;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Empreinte mémoire des objets les plus nombreux, mesurée avec JOL. Les tailles attendues sont celles d'une JVM
+ * 64 bits avec références et pointeurs de classe compressés (en-tête de 12 octets, alignement sur 8 octets),
+ * la configuration par défaut sous 32 Go de heap ; sinon les tests sont ignorés.
+ */
+class FootprintTest {
+
+    @BeforeAll
+    static void requireCompressedReferences() {
+        assumeTrue(VM.current().sizeOfField("oop") == 4 && VM.current().objectHeaderSize() == 12 && VM.current().objectAlignment() == 8, "compressed references required");
+    }
+
+    @Test
+    void restaurantTakesFortyEightBytesUntilItHasEvaluations() {
+        Restaurant restaurant = new Restaurant(1, null, null, null, null, null, null);
+
+        assertEquals(48, ClassLayout.parseInstance(restaurant).instanceSize());
+        // Pas d'ensemble ni d'objet Localisation par restaurant : les évaluations vides sont partagées
+        assertSame(restaurant.getEvaluations(), new Restaurant().getEvaluations());
+        assertEquals(48 + sizeOf(restaurant.getEvaluations()), GraphLayout.parseInstance(restaurant).totalSize());
+    }
+
+    @Test
+    void basicEvaluationWithIpv4TakesFortyBytes() {
+        BasicEvaluation evaluation = new BasicEvaluation(1, new Date(), null, true, "192.168.1.10");
+
+        assertEquals(40, ClassLayout.parseInstance(evaluation).instanceSize());
+        // Ni Date, ni Boolean, ni String pour l'adresse : l'objet seul
+        assertEquals(40, GraphLayout.parseInstance(evaluation).totalSize());
+        assertEquals("192.168.1.10", evaluation.getIpAddress());
+    }
+
+    @Test
+    void gradeTakesThirtyTwoBytes() {
+        Grade grade = new Grade(1, 4, null, null);
+
+        assertEquals(32, ClassLayout.parseInstance(grade).instanceSize());
+        assertEquals(32, GraphLayout.parseInstance(grade).totalSize());
+    }
+
+    private static long sizeOf(Object shared) {
+        return GraphLayout.parseInstance(shared).totalSize();
+    }
+}
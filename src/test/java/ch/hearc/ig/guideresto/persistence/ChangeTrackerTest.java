@@ -0,0 +1,99 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.City;
+import ch.hearc.ig.guideresto.business.Restaurant;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ChangeTrackerTest {
+
+    private final ChangeTracker tracker = ChangeTracker.getInstance();
+
+    @BeforeEach
+    void startTracker() {
+        TestDatabase.reset(TestDatabase.MAIN_URL);
+        TestDatabase.insertRestaurant(TestDatabase.MAIN_URL);
+        // Les passages sont déclenchés par le test
+        tracker.start(3_600_000, 10);
+    }
+
+    @AfterEach
+    void stopTracker() {
+        tracker.stop();
+    }
+
+    @Test
+    void appliesChangesCommittedAfterHigherNumbers() {
+        City city = CityMapper.getInstance().findById(1);
+        long lateChanges = tracker.getStats().getLateChanges();
+
+        logChange(2, "TYPES_GASTRONOMIQUES", 1, "U");
+        tracker.poll();
+        // Le numéro 1 est validé après le numéro 2
+        TestDatabase.execute(TestDatabase.MAIN_URL, "UPDATE VILLES SET nom_ville = 'Neuchâtel', version = version + 1 WHERE numero = 1");
+        logChange(1, "VILLES", 1, "U");
+        tracker.poll();
+
+        assertEquals(lateChanges + 1, tracker.getStats().getLateChanges());
+        assertSame(city, CityMapper.getInstance().findById(1));
+        assertEquals("Neuchâtel", city.getCityName());
+        assertEquals(1, city.getVersion());
+    }
+
+    @Test
+    void refreshesModifiedRestaurantInPlace() {
+        Restaurant restaurant = RestaurantMapper.getInstance().findById(1);
+        City city = restaurant.getCity();
+
+        TestDatabase.execute(TestDatabase.MAIN_URL, "UPDATE RESTAURANTS SET nom = 'Fleur de Lys', version = version + 1 WHERE numero = 1");
+        logChange(1, "RESTAURANTS", 1, "U");
+        tracker.poll();
+
+        assertSame(restaurant, RestaurantMapper.getInstance().findById(1));
+        assertEquals("Fleur de Lys", restaurant.getName());
+        assertEquals(1, city.getRestaurants().size());
+    }
+
+    @Test
+    void detachesDeletedRestaurantFromCityAndType() {
+        Restaurant restaurant = RestaurantMapper.getInstance().findById(1);
+
+        TestDatabase.execute(TestDatabase.MAIN_URL, "DELETE FROM RESTAURANTS WHERE numero = 1");
+        logChange(1, "RESTAURANTS", 1, "D");
+        tracker.poll();
+
+        assertFalse(restaurant.getCity().getRestaurants().contains(restaurant));
+        assertFalse(restaurant.getType().getRestaurants().contains(restaurant));
+    }
+
+    @Test
+    void addsCitiesInsertedElsewhereToTheIndex() {
+        CityIndex index = CityMapper.getInstance().getIndex();
+
+        TestDatabase.execute(TestDatabase.MAIN_URL, "INSERT INTO VILLES (code_postal, nom_ville) VALUES ('2000', 'Peseux')");
+        logChange(1, "VILLES", 2, "I");
+        tracker.poll();
+
+        assertEquals(2, index.findByZipCode("2000").size());
+    }
+
+    @Test
+    void purgesChangesOlderThanRetention() {
+        TestDatabase.execute(TestDatabase.MAIN_URL, "INSERT INTO CHANGE_LOG (numero, nom_table, fk_ligne, operation, date_modif)"
+                + " VALUES (1, 'VILLES', 1, 'U', SYSTIMESTAMP - 1)");
+        logChange(2, "VILLES", 1, "U");
+        tracker.poll();
+
+        assertEquals(1, TestDatabase.count(TestDatabase.MAIN_URL, "CHANGE_LOG"));
+    }
+
+    private static void logChange(long changeId, String table, int id, String operation) {
+        TestDatabase.execute(TestDatabase.MAIN_URL, "INSERT INTO CHANGE_LOG (numero, nom_table, fk_ligne, operation) VALUES ("
+                + changeId + ", '" + table + "', " + id + ", '" + operation + "')");
+    }
+}
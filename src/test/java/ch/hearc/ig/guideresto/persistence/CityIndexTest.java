@@ -0,0 +1,33 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.City;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CityIndexTest {
+
+    @Test
+    void findsCitiesByZipCodeAndPrefix() {
+        City neuchatel = new City(1, "2000", "Neuchâtel");
+        City peseux = new City(2, "2034", "Peseux");
+        CityIndex index = new CityIndex(List.of(neuchatel, peseux));
+
+        assertEquals(List.of(neuchatel), index.findByZipCode("2000"));
+        assertEquals(List.of(neuchatel, peseux), index.autocomplete("20", 10));
+        assertEquals(List.of(neuchatel), index.autocomplete("neuch", 10));
+    }
+
+    @Test
+    void ignoresCitiesAlreadyIndexed() {
+        City city = new City(1, "2000", "Neuchâtel");
+        CityIndex index = new CityIndex(List.of(city));
+
+        index.add(city);
+
+        assertEquals(1, index.size());
+        assertEquals(List.of(city), index.findByZipCode("2000"));
+    }
+}
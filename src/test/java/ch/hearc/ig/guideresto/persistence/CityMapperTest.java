@@ -0,0 +1,117 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.City;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * findOrCreate n'est pas testé : son bloc PL/SQL (MERGE protégé par EXCEPTION WHEN DUP_VAL_ON_INDEX) ne s'exécute pas
+ * sur H2. Le MERGE lui-même est couvert par findOrCreateAll.
+ */
+class CityMapperTest {
+
+    private final TransactionManager transactions = TransactionManager.getInstance();
+    private final CityMapper cities = CityMapper.getInstance();
+
+    @BeforeEach
+    void resetDatabase() {
+        TestDatabase.reset(TestDatabase.MAIN_URL);
+    }
+
+    @Test
+    void cachesCreatedCityOnlyOnCommit() {
+        AtomicReference<City> created = new AtomicReference<>();
+        transactions.execute(() -> {
+            created.set(cities.create(new City("8000", "Annulée")));
+            return false;
+        });
+        assertNull(cities.findById(created.get().getId()));
+
+        City city = transactions.execute(() -> cities.create(new City("8001", "Validée")));
+        assertSame(city, cities.findById(city.getId()));
+    }
+
+    @Test
+    void keepsDeletedCityCachedUntilCommit() {
+        City city = transactions.execute(() -> cities.create(new City("8002", "Gardée")));
+
+        transactions.execute(() -> cities.deleteById(city.getId()) && false);
+        assertSame(city, cities.findById(city.getId()));
+
+        transactions.execute(() -> cities.deleteById(city.getId()));
+        assertNull(cities.findById(city.getId()));
+        assertEquals(0, TestDatabase.count(TestDatabase.MAIN_URL, "VILLES"));
+    }
+
+    @Test
+    void bumpsVersionOnlyOnCommit() {
+        City city = transactions.execute(() -> cities.create(new City("8003", "Versionnée")));
+
+        transactions.execute(() -> cities.update(city) && false);
+        assertEquals(0, city.getVersion());
+
+        transactions.execute(() -> cities.update(city));
+        assertEquals(1, city.getVersion());
+        assertThrows(ConcurrentUpdateException.class, () -> {
+            city.setVersion(0);
+            transactions.execute(() -> cities.update(city));
+        });
+    }
+
+    @Test
+    void findsOrCreatesCitiesInTheOrderReceived() {
+        City existing = transactions.execute(() -> cities.create(new City("2000", "Neuchâtel")));
+
+        List<City> found = transactions.execute(() -> cities.findOrCreateAll(List.of(new City("2300", "La Chaux-de-Fonds"),
+                new City("2000", "Neuchâtel"), new City("2300", "La Chaux-de-Fonds"), new City("2400", "Le Locle"))));
+
+        assertEquals(4, found.size());
+        assertSame(existing, found.get(1));
+        assertSame(found.get(0), found.get(2));
+        assertEquals("2300", found.get(0).getZipCode());
+        assertEquals("Le Locle", found.get(3).getCityName());
+        assertEquals(3, TestDatabase.count(TestDatabase.MAIN_URL, "VILLES"));
+        assertSame(found.get(3), cities.findById(found.get(3).getId()));
+        assertEquals(List.of(found.get(0)), cities.getIndex().findByZipCode("2300"));
+    }
+
+    @Test
+    void readsBackMoreCitiesThanOneInList() {
+        List<City> imported = new ArrayList<>();
+        for (int i = 0; i < 1005; i++) {
+            imported.add(new City(String.valueOf(1000 + i), "Ville " + i));
+        }
+
+        List<City> found = transactions.execute(() -> cities.findOrCreateAll(imported));
+
+        assertEquals(1005, found.size());
+        for (int i = 0; i < found.size(); i++) {
+            assertEquals("Ville " + i, found.get(i).getCityName());
+        }
+    }
+
+    @Test
+    void cachesImportedCitiesOnlyOnCommit() {
+        CityIndex index = cities.getIndex();
+        AtomicReference<List<City>> found = new AtomicReference<>();
+        transactions.execute(() -> {
+            found.set(cities.findOrCreateAll(List.of(new City("8010", "Annulée"))));
+            return false;
+        });
+
+        int id = found.get().get(0).getId();
+        assertNull(cities.findById(id));
+        assertTrue(index.findByZipCode("8010").isEmpty());
+        assertEquals(0, TestDatabase.count(TestDatabase.MAIN_URL, "VILLES"));
+    }
+}
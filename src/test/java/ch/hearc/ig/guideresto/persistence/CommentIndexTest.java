@@ -0,0 +1,122 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.CompleteEvaluation;
+import ch.hearc.ig.guideresto.business.Restaurant;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommentIndexTest {
+
+    private static final String SHARD1_URL = TestDatabase.url("comments1");
+
+    private final CommentIndex index = CommentIndex.getInstance();
+    private final ShardRouter shards = ShardRouter.getInstance();
+
+    @BeforeEach
+    void resetDatabases() {
+        for (String url : List.of(TestDatabase.MAIN_URL, SHARD1_URL)) {
+            TestDatabase.reset(url);
+            TestDatabase.insertRestaurant(url);
+        }
+    }
+
+    @AfterEach
+    void removeShards() {
+        shards.configure(List.of(), TestDatabase.USERNAME, TestDatabase.PASSWORD, 2);
+    }
+
+    @Test
+    void foldsAccentsAndDropsElisionsAndStopWords() {
+        assertEquals(List.of("accueil", "chaleur"), CommentIndex.analyze("L'accueil était très chaleureux !"));
+        assertEquals(List.of("crem", "brul", "ouf"), CommentIndex.analyze("Crème brûlée et Œufs"));
+        assertEquals(List.of("servic", "qual", "15", "minut"), CommentIndex.analyze("Service d'une qualité : 15 minutes"));
+        assertTrue(CommentIndex.analyze(null).isEmpty());
+    }
+
+    @Test
+    void stemsInflectedFormsToTheSameTerm() {
+        assertEquals(CommentIndex.analyze("pizza"), CommentIndex.analyze("pizzas"));
+        assertEquals(CommentIndex.analyze("délicieux"), CommentIndex.analyze("délicieuse"));
+        assertEquals(CommentIndex.analyze("rapidement"), CommentIndex.analyze("rapide"));
+        // Une racine garde au moins 3 lettres
+        assertEquals(List.of("the"), CommentIndex.analyze("thé"));
+    }
+
+    @Test
+    void readsBackPostingsAddedOutOfOrder() {
+        index.rebuild();
+        // Écarts de 1 à 4 octets en varint, fréquence sur 2 octets, puis un numéro inférieur au dernier indexé
+        for (int id : new int[]{5, 200, 20_000, 3_000_000}) {
+            index.add(evaluation(id, 1, "truffe"));
+        }
+        index.add(evaluation(100, 1, "truffe ".repeat(200)));
+
+        Map<Integer, Double> found = index.searchEvaluations("truffes", 10);
+
+        assertEquals(Set.of(5, 100, 200, 20_000, 3_000_000), found.keySet());
+        assertEquals(100, found.keySet().iterator().next());
+    }
+
+    @Test
+    void ranksEvaluationsByBm25() {
+        index.rebuild();
+        index.add(evaluation(1, 1, "pizza"));
+        index.add(evaluation(2, 1, "pizza pizza pizza"));
+        index.add(evaluation(3, 2, "pizza avec salade, fromage, jambon et olives"));
+        index.add(evaluation(4, 2, "salade"));
+
+        // Fréquence du terme d'abord, puis longueur du commentaire
+        assertEquals(List.of(2, 1, 3), List.copyOf(index.searchEvaluations("pizza", 10).keySet()));
+        assertEquals(List.of(2), List.copyOf(index.searchEvaluations("pizza", 1).keySet()));
+        // Un terme rare pèse plus qu'un terme fréquent
+        assertEquals(3, index.searchEvaluations("pizza olives", 10).keySet().iterator().next());
+    }
+
+    @Test
+    void sumsScoresOfEachRestaurant() {
+        index.rebuild();
+        index.add(evaluation(1, 1, "bonne pizza"));
+        index.add(evaluation(2, 1, "pizza correcte"));
+        index.add(evaluation(3, 2, "pizza"));
+
+        Map<Integer, Double> restaurants = index.searchRestaurants("pizza", 10);
+
+        assertEquals(List.of(1, 2), List.copyOf(restaurants.keySet()));
+        assertEquals(index.searchEvaluations("pizza", 10).values().stream().mapToDouble(Double::doubleValue).sum(),
+                restaurants.values().stream().mapToDouble(Double::doubleValue).sum(), 1e-9);
+    }
+
+    @Test
+    void indexesInterleavedNumbersOfEveryShard() {
+        // Numéros entrelacés, comme après ShardRouter.prepareSequences : pairs dans le fragment 0, impairs dans le fragment 1
+        for (int i = 0; i < 20; i++) {
+            insertComment(i % 2 == 0 ? TestDatabase.MAIN_URL : SHARD1_URL, 100 + i, "Excellente pizza numéro " + i);
+        }
+        shards.configure(List.of(SHARD1_URL), TestDatabase.USERNAME, TestDatabase.PASSWORD, 2);
+
+        index.rebuild();
+
+        assertEquals(20, index.size());
+        assertEquals(20, index.searchEvaluations("pizza", 100).size());
+        assertEquals(Set.of(115), index.searchEvaluations("15", 100).keySet());
+    }
+
+    private static CompleteEvaluation evaluation(int id, int restaurantId, String comment) {
+        Restaurant restaurant = new Restaurant(restaurantId, "Restaurant " + restaurantId, null, null, "Rue", null, null);
+        return new CompleteEvaluation(id, new Date(), restaurant, comment, "testeur");
+    }
+
+    private static void insertComment(String url, int id, String comment) {
+        TestDatabase.execute(url, "INSERT INTO COMMENTAIRES (numero, date_eval, commentaire, nom_utilisateur, fk_rest) VALUES ("
+                + id + ", SYSDATE, '" + comment + "', 'testeur', 1)");
+    }
+}
@@ -0,0 +1,106 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.BasicEvaluation;
+import ch.hearc.ig.guideresto.business.Restaurant;
+import org.h2.api.Trigger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DuplicateVoteFilterTest {
+
+    // Nombre de lectures de LIKES après lequel le trigger FAILING_READ fait échouer les suivantes
+    private static final AtomicInteger readsBeforeFailure = new AtomicInteger();
+
+    private final DuplicateVoteFilter filter = DuplicateVoteFilter.getInstance();
+
+    @BeforeEach
+    void resetDatabase() {
+        TestDatabase.reset(TestDatabase.MAIN_URL);
+        TestDatabase.insertRestaurant(TestDatabase.MAIN_URL);
+    }
+
+    @AfterEach
+    void removeTrigger() {
+        TestDatabase.execute(TestDatabase.MAIN_URL, "DROP TRIGGER IF EXISTS TR_FAILING_READ");
+    }
+
+    @Test
+    void findsVotesLoadedByRebuild() {
+        insertLike("10.0.0.1");
+        filter.rebuild();
+
+        assertTrue(filter.isDuplicate(1, "10.0.0.1"));
+        assertFalse(filter.isDuplicate(1, "10.0.0.2"));
+    }
+
+    @Test
+    void keepsEveryVoteWhenAFullFilterIsReloaded() {
+        filter.rebuild();
+        // Le filtre minimal contient 64 votes : les suivants le font recharger deux fois plus grand
+        for (int i = 0; i < 200; i++) {
+            String ipAddress = "10.0.1." + i;
+            insertLike(ipAddress);
+            filter.recordVote(1, ipAddress);
+        }
+
+        for (int i = 0; i < 200; i++) {
+            assertTrue(filter.isDuplicate(1, "10.0.1." + i));
+        }
+        assertFalse(filter.isDuplicate(1, "10.0.2.1"));
+    }
+
+    @Test
+    void rejectsASecondVoteFromTheSameAddress() {
+        Restaurant restaurant = RestaurantMapper.getInstance().findById(1);
+        TransactionManager transactions = TransactionManager.getInstance();
+
+        transactions.execute(() -> BasicEvaluationMapper.getInstance().create(new BasicEvaluation(new Date(), restaurant, true, "10.0.0.1")) != null);
+        Boolean second = transactions.execute(() -> BasicEvaluationMapper.getInstance().create(new BasicEvaluation(new Date(), restaurant, false, "10.0.0.1")) != null);
+
+        assertEquals(Boolean.FALSE, second);
+        assertEquals(1, TestDatabase.count(TestDatabase.MAIN_URL, "LIKES"));
+    }
+
+    @Test
+    void keepsFiltersInServiceWhenVotesCannotBeRead() {
+        filter.rebuild();
+        insertLike("10.0.0.1");
+        // COUNT_QUERY réussit et dimensionne les filtres, VOTES_QUERY échoue
+        readsBeforeFailure.set(1);
+        TestDatabase.execute(TestDatabase.MAIN_URL, "CREATE TRIGGER TR_FAILING_READ BEFORE SELECT ON LIKES CALL \""
+                + FailingRead.class.getName() + "\"");
+
+        filter.rebuild();
+        removeTrigger();
+
+        assertTrue(filter.isDuplicate(1, "10.0.0.1"));
+    }
+
+    private static void insertLike(String ipAddress) {
+        TestDatabase.execute(TestDatabase.MAIN_URL, "INSERT INTO LIKES (appreciation, date_eval, adresse_ip, fk_rest) VALUES ('T', SYSDATE, '"
+                + ipAddress + "', 1)");
+    }
+
+    /**
+     * Trigger H2 déclenché avant chaque lecture de LIKES
+     */
+    public static class FailingRead implements Trigger {
+
+        @Override
+        public void fire(Connection connection, Object[] oldRow, Object[] newRow) throws SQLException {
+            if (readsBeforeFailure.getAndDecrement() <= 0) {
+                throw new SQLException("LIKES unreadable");
+            }
+        }
+    }
+}
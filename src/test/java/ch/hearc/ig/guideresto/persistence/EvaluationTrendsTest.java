@@ -0,0 +1,168 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.BasicEvaluation;
+import ch.hearc.ig.guideresto.business.CompleteEvaluation;
+import ch.hearc.ig.guideresto.business.Grade;
+import ch.hearc.ig.guideresto.business.Restaurant;
+import org.h2.api.Trigger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EvaluationTrendsTest {
+
+    // Exécuté par le trigger DURING_BACKFILL à la prochaine lecture de LIKES, pendant le backfill
+    private static volatile Runnable duringBackfill;
+
+    private final EvaluationTrends trends = EvaluationTrends.getInstance();
+
+    @BeforeEach
+    void resetDatabase() {
+        TestDatabase.reset(TestDatabase.MAIN_URL);
+        TestDatabase.insertRestaurant(TestDatabase.MAIN_URL);
+        TestDatabase.execute(TestDatabase.MAIN_URL, "INSERT INTO RESTAURANTS (nom, adresse, fk_type, fk_vill) VALUES ('Le Cardinal', 'Rue du Seyon 9', 1, 1)");
+        trends.backfill();
+    }
+
+    @AfterEach
+    void removeTrigger() {
+        duringBackfill = null;
+        TestDatabase.execute(TestDatabase.MAIN_URL, "DROP TRIGGER IF EXISTS TR_DURING_BACKFILL");
+    }
+
+    @Test
+    void keepsEvaluationsRecordedDuringBackfill() {
+        TestDatabase.execute(TestDatabase.MAIN_URL, "INSERT INTO LIKES (appreciation, date_eval, adresse_ip, fk_rest) VALUES ('T', SYSDATE, '10.0.0.1', 1)");
+        TestDatabase.execute(TestDatabase.MAIN_URL, "INSERT INTO LIKES (appreciation, date_eval, adresse_ip, fk_rest) VALUES ('T', SYSDATE, '10.0.0.1', 2)");
+        Restaurant first = RestaurantMapper.getInstance().findById(1);
+        TestDatabase.execute(TestDatabase.MAIN_URL, "CREATE TRIGGER TR_DURING_BACKFILL BEFORE SELECT ON LIKES CALL \""
+                + DuringBackfill.class.getName() + "\"");
+        duringBackfill = () -> {
+            // Le like 1, déjà en base, est compté par la lecture ; le like 100 est enregistré après elle
+            trends.record(new BasicEvaluation(1, new Date(), first, true, "10.0.0.1"));
+            trends.record(new BasicEvaluation(100, new Date(), first, true, "10.0.0.2"));
+            trends.forget(2);
+        };
+
+        trends.backfill();
+
+        assertEquals(2, today(1).likes());
+        assertEquals(0, today(2).likes());
+    }
+
+    @Test
+    void reusesTheSlotOfAnExpiredDay() {
+        // trends.days vaut 35 : le jour J-35 occupe la même case que le jour J
+        trends.record(like(3, 35));
+        trends.record(like(3, 0));
+        trends.record(like(4, 0));
+        trends.record(like(4, 35));
+
+        for (int restaurantId : new int[]{3, 4}) {
+            assertEquals(1, today(restaurantId).likes());
+            assertEquals(1, trends.getDailyStats(restaurantId, 35).stream().mapToInt(EvaluationTrends.Bucket::likes).sum());
+        }
+    }
+
+    @Test
+    void reusesTheSlotOfAnExpiredWeek() {
+        // trends.weeks vaut 26 : la semaine S-26 occupe la même case que la semaine S
+        trends.record(like(3, 26 * 7));
+        trends.record(like(3, 0));
+
+        List<EvaluationTrends.Bucket> weeks = trends.getWeeklyStats(3, 26);
+        assertEquals(26, weeks.size());
+        assertEquals(1, weeks.get(25).likes());
+        assertEquals(1, weeks.stream().mapToInt(EvaluationTrends.Bucket::likes).sum());
+        assertEquals(DayOfWeek.MONDAY, weeks.get(0).start().getDayOfWeek());
+    }
+
+    @Test
+    void startsWeeksOnMonday() {
+        // Le 1er janvier 1970 (jour 0) était un jeudi : sa semaine commence le lundi 29 décembre 1969
+        assertEquals(0, EvaluationTrends.week(0));
+        assertEquals(-3, EvaluationTrends.firstDayOfWeek(0));
+        assertEquals(0, EvaluationTrends.week(-3));
+        assertEquals(-1, EvaluationTrends.week(-4));
+        assertEquals(0, EvaluationTrends.week(3));
+        assertEquals(1, EvaluationTrends.week(4));
+
+        // Du lundi 30 décembre 2024 au dimanche 5 janvier 2025
+        long monday = LocalDate.of(2024, 12, 30).toEpochDay();
+        long week = EvaluationTrends.week(monday);
+        assertEquals(week, EvaluationTrends.week(LocalDate.of(2025, 1, 5).toEpochDay()));
+        assertEquals(week - 1, EvaluationTrends.week(LocalDate.of(2024, 12, 29).toEpochDay()));
+        assertEquals(week + 1, EvaluationTrends.week(LocalDate.of(2025, 1, 6).toEpochDay()));
+        assertEquals(monday, EvaluationTrends.firstDayOfWeek(week));
+    }
+
+    @Test
+    void ranksTrendingRestaurantsOfTheLastSevenDays() {
+        for (int i = 0; i < 3; i++) {
+            trends.record(like(10, i));
+        }
+        trends.record(like(11, 1));
+        trends.record(comment(11, 5));
+        trends.record(like(12, 2));
+        trends.record(comment(12, 3));
+        // Score négatif
+        trends.record(like(13, 0));
+        trends.record(new BasicEvaluation(null, daysAgo(0), restaurant(13), false, "10.0.0.1"));
+        trends.record(new BasicEvaluation(null, daysAgo(0), restaurant(13), false, "10.0.0.2"));
+        // Hors des 7 derniers jours
+        trends.record(like(14, 7));
+
+        assertEquals(List.of(10, 11, 12), List.copyOf(trends.getTrending(10).keySet()));
+        assertEquals(List.of(10, 11), List.copyOf(trends.getTrending(2).keySet()));
+        assertEquals(5.0, trends.getTrending(10).get(11).averageGrade());
+    }
+
+    private static BasicEvaluation like(int restaurantId, int daysAgo) {
+        return new BasicEvaluation(null, daysAgo(daysAgo), restaurant(restaurantId), true, "10.0.0.1");
+    }
+
+    private static CompleteEvaluation comment(int restaurantId, int grade) {
+        CompleteEvaluation evaluation = new CompleteEvaluation(null, daysAgo(0), restaurant(restaurantId), "Très bien", "testeur");
+        evaluation.getGrades().add(new Grade(grade, evaluation, null));
+        return evaluation;
+    }
+
+    private static Restaurant restaurant(int id) {
+        return new Restaurant(id, "Restaurant " + id, null, null, "Rue", null, null);
+    }
+
+    private static Date daysAgo(int days) {
+        return Date.from(LocalDate.now().minusDays(days).atStartOfDay(ZoneId.systemDefault()).plusHours(12).toInstant());
+    }
+
+    private EvaluationTrends.Bucket today(int restaurantId) {
+        List<EvaluationTrends.Bucket> days = trends.getDailyStats(restaurantId, 1);
+        assertEquals(1, days.size());
+        return days.get(0);
+    }
+
+    /**
+     * Trigger H2 déclenché avant chaque lecture de LIKES
+     */
+    public static class DuringBackfill implements Trigger {
+
+        @Override
+        public void fire(Connection connection, Object[] oldRow, Object[] newRow) {
+            Runnable action = duringBackfill;
+            duringBackfill = null;
+            if (action != null) {
+                action.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.City;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chargement de villes absentes du cache, une requête par ID (findById) ou par listes IN (findByIds), sur la base H2
+ * des tests. Une base en mémoire n'a pas de latence réseau : l'écart mesuré est le coût d'exécution de chaque requête,
+ * auquel s'ajoute en production un aller-retour vers Oracle par requête.
+ *
+ * Exécution, après mvn test-compile :
+ * mvn dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main FindByIdsBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindByIdsBenchmark {
+
+    @Param({"10", "500", "2000"})
+    public int count;
+
+    private final CityMapper cities = CityMapper.getInstance();
+    private List<Integer> ids;
+
+    @Setup(Level.Trial)
+    public void insertCities() {
+        TestDatabase.reset(TestDatabase.MAIN_URL);
+        TestDatabase.execute(TestDatabase.MAIN_URL, "INSERT INTO VILLES (code_postal, nom_ville)"
+                + " SELECT x, 'Ville ' || x FROM SYSTEM_RANGE(1, " + count + ")");
+        ids = new ArrayList<>();
+        for (int id = 1; id <= count; id++) {
+            ids.add(id);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void clearCache() {
+        cities.resetCache();
+    }
+
+    @Benchmark
+    public void findById(Blackhole blackhole) {
+        for (int id : ids) {
+            City city = cities.findById(id);
+            blackhole.consume(city);
+        }
+    }
+
+    @Benchmark
+    public void findByIds(Blackhole blackhole) {
+        blackhole.consume(cities.findByIds(ids));
+    }
+}
@@ -0,0 +1,104 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.City;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class FindByIdsTest {
+
+    private static final int CITIES = 1500;
+
+    private final CityMapper cities = CityMapper.getInstance();
+
+    @BeforeEach
+    void insertCities() {
+        TestDatabase.reset(TestDatabase.MAIN_URL);
+        TestDatabase.execute(TestDatabase.MAIN_URL, "INSERT INTO VILLES (code_postal, nom_ville)"
+                + " SELECT x, 'Ville ' || x FROM SYSTEM_RANGE(1, " + CITIES + ")");
+        // Les statistiques sont remises à zéro à chaque activation
+        TestDatabase.execute(TestDatabase.MAIN_URL, "SET QUERY_STATISTICS TRUE");
+    }
+
+    @AfterEach
+    void stopStatistics() {
+        TestDatabase.execute(TestDatabase.MAIN_URL, "SET QUERY_STATISTICS FALSE");
+    }
+
+    @Test
+    void padsAFewMissingIdsToTenBinds() {
+        Map<Integer, City> found = cities.findByIds(List.of(1, 2, 3, 2, 9999));
+
+        assertEquals(3, found.size());
+        assertEquals("Ville 2", found.get(2).getCityName());
+        assertEquals(List.of(10), inListSizes());
+    }
+
+    @Test
+    void readsOnlyCacheMisses() {
+        City cached = cities.findById(7);
+
+        Map<Integer, City> found = cities.findByIds(Arrays.asList(7, 8, null, 9));
+
+        assertSame(cached, found.get(7));
+        assertEquals(3, found.size());
+        assertEquals(List.of(10), inListSizes());
+        assertSame(found.get(8), cities.findById(8));
+
+        cities.findByIds(List.of(7, 8, 9));
+        assertEquals(List.of(10), inListSizes());
+    }
+
+    @Test
+    void splitsMoreThanAThousandMissingIds() {
+        for (int id = 1; id <= 150; id++) {
+            cities.findById(id);
+        }
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 1; id <= 1200; id++) {
+            ids.add(id);
+        }
+
+        Map<Integer, City> found = cities.findByIds(ids);
+
+        assertEquals(1200, found.size());
+        // 1050 absents : une liste de 1000, puis 50 complétés à 100
+        assertEquals(List.of(100, 1000), inListSizes());
+    }
+
+    /**
+     * @return le nombre de paramètres de chaque requête IN exécutée sur VILLES, en ordre croissant
+     */
+    private static List<Integer> inListSizes() {
+        List<Integer> sizes = new ArrayList<>();
+        try (Connection connection = DriverManager.getConnection(TestDatabase.MAIN_URL, TestDatabase.USERNAME, TestDatabase.PASSWORD);
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT SQL_STATEMENT, EXECUTION_COUNT FROM INFORMATION_SCHEMA.QUERY_STATISTICS")) {
+            while (rs.next()) {
+                String sql = rs.getString(1);
+                if (sql.contains("FROM VILLES WHERE numero IN (")) {
+                    for (int i = 0; i < rs.getInt(2); i++) {
+                        sizes.add((int) sql.chars().filter(c -> c == '?').count());
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            throw new IllegalStateException(ex.getMessage(), ex);
+        }
+        sizes.sort(null);
+        return sizes;
+    }
+}
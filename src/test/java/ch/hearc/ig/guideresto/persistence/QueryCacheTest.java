@@ -0,0 +1,39 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.City;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryCacheTest {
+
+    private final TransactionManager transactions = TransactionManager.getInstance();
+    private final CityMapper cities = CityMapper.getInstance();
+
+    @BeforeEach
+    void resetDatabase() {
+        TestDatabase.reset(TestDatabase.MAIN_URL);
+    }
+
+    @Test
+    void doesNotCacheReadsOfUncommittedWrites() {
+        transactions.execute(() -> {
+            cities.create(new City("9000", "Non validée"));
+            assertEquals(1, cities.findByZipCode("9000").size());
+            return false;
+        });
+
+        assertTrue(cities.findByZipCode("9000").isEmpty());
+    }
+
+    @Test
+    void invalidatesCachedResultsOnCommit() {
+        assertTrue(cities.findByZipCode("9100").isEmpty());
+
+        transactions.execute(() -> cities.create(new City("9100", "Validée")) != null);
+
+        assertEquals(1, cities.findByZipCode("9100").size());
+    }
+}
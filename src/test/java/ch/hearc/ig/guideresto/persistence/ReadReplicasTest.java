@@ -0,0 +1,115 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReadReplicasTest {
+
+    private static final String REPLICA_1 = TestDatabase.url("replica1");
+    private static final String REPLICA_2 = TestDatabase.url("replica2");
+    // Base absente : H2 refuse de la créer
+    private static final String UNREACHABLE = "jdbc:h2:mem:missing;IFEXISTS=TRUE";
+
+    private ReadReplicas replicas;
+
+    @BeforeEach
+    void resetReplicas() {
+        for (String url : List.of(REPLICA_1, REPLICA_2)) {
+            TestDatabase.reset(url);
+        }
+        TestDatabase.execute(REPLICA_1, "INSERT INTO VILLES (code_postal, nom_ville) VALUES ('1000', 'Replica 1')");
+        TestDatabase.execute(REPLICA_2, "INSERT INTO VILLES (code_postal, nom_ville) VALUES ('2000', 'Replica 2')");
+    }
+
+    @AfterEach
+    void closeReplicas() {
+        if (replicas != null) {
+            replicas.close();
+        }
+    }
+
+    @Test
+    void alternatesBetweenReplicas() throws SQLException {
+        replicas = replicas(2, REPLICA_1, REPLICA_2);
+
+        assertEquals("Replica 1", cityName(replicas.choose()));
+        assertEquals("Replica 2", cityName(replicas.choose()));
+        assertEquals("Replica 1", cityName(replicas.choose()));
+    }
+
+    @Test
+    void skipsUnreachableReplica() throws SQLException {
+        replicas = replicas(2, UNREACHABLE, REPLICA_2);
+
+        assertEquals("Replica 2", cityName(replicas.choose()));
+        assertEquals("Replica 2", cityName(replicas.choose()));
+    }
+
+    @Test
+    void boundsConnectionsUnderConcurrentReads() {
+        replicas = replicas(2, REPLICA_1, REPLICA_2);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<CompletableFuture<String>> reads = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                reads.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return cityName(replicas.choose());
+                    } catch (SQLException ex) {
+                        throw new IllegalStateException(ex.getMessage(), ex);
+                    }
+                }, executor));
+            }
+            for (CompletableFuture<String> read : reads) {
+                assertNotNull(read.join());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        for (int opened : replicas.openedConnections()) {
+            assertTrue(opened >= 1 && opened <= 2, "opened " + opened);
+        }
+    }
+
+    @Test
+    void nestedReadsOfAThreadShareItsConnection() throws SQLException {
+        replicas = replicas(1, REPLICA_1);
+        Connection connection = replicas.choose();
+
+        try (PreparedStatement outer = connection.prepareStatement("SELECT numero FROM VILLES");
+             ResultSet rs = outer.executeQuery()) {
+            while (rs.next()) {
+                // Avec une seule connexion dans le pool, attendre une deuxième connexion bloquerait indéfiniment
+                assertEquals("Replica 1", cityName(connection));
+            }
+        }
+        assertEquals(List.of(1), replicas.openedConnections());
+    }
+
+    private static ReadReplicas replicas(int poolSize, String... urls) {
+        return new ReadReplicas(List.of(urls), TestDatabase.USERNAME, TestDatabase.PASSWORD, "round-robin", poolSize);
+    }
+
+    private static String cityName(Connection connection) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT nom_ville FROM VILLES");
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+}
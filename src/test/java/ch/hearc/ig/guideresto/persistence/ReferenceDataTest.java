@@ -0,0 +1,45 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.City;
+import ch.hearc.ig.guideresto.business.RestaurantType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ReferenceDataTest {
+
+    private final ReferenceData referenceData = ReferenceData.getInstance();
+
+    @BeforeEach
+    void resetDatabase() {
+        TestDatabase.reset(TestDatabase.MAIN_URL);
+        TestDatabase.insertRestaurant(TestDatabase.MAIN_URL);
+        referenceData.refresh();
+    }
+
+    @Test
+    void findsTypeCreatedSinceLastRefresh() {
+        TestDatabase.execute(TestDatabase.MAIN_URL, "INSERT INTO TYPES_GASTRONOMIQUES (libelle, description) VALUES ('Brasserie', 'Bières')");
+
+        RestaurantType type = referenceData.findTypeByLabel("brasserie");
+
+        assertNotNull(type);
+        assertEquals("Brasserie", type.getLabel());
+        assertSame(referenceData.findTypeByLabel("Pizzeria"), RestaurantTypeMapper.getInstance().findById(1));
+    }
+
+    @Test
+    void keepsAddedCitiesAcrossRefresh() {
+        City city = TransactionManager.getInstance().execute(() -> CityMapper.getInstance().create(new City("2300", "La Chaux-de-Fonds")));
+        referenceData.addCity(city);
+        assertSame(city, referenceData.findCitiesByZipCode("2300").get(0));
+
+        referenceData.refresh();
+
+        assertSame(city, referenceData.findCityById(city.getId()));
+        assertEquals(2, referenceData.getCities().size());
+    }
+}
@@ -0,0 +1,63 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import org.h2.tools.SimpleResultSet;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.sql.Types;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RowLayoutTest {
+
+    @Test
+    void indexesColumnsWithoutTablePrefixOrAlias() {
+        RowLayout layout = RowLayout.of("r.numero, r.nom,  n.note AS valeur, v.code_postal as npa");
+
+        assertEquals(1, layout.index("numero"));
+        assertEquals(2, layout.index("NOM"));
+        assertEquals(3, layout.index("valeur"));
+        assertEquals(4, layout.index("npa"));
+        assertThrows(IllegalArgumentException.class, () -> layout.index("code_postal"));
+    }
+
+    @Test
+    void acceptsMatchingResult() {
+        RowLayout layout = RowLayout.of("numero, nom_ville");
+
+        assertDoesNotThrow(() -> layout.verify(resultSet("NUMERO", "NOM_VILLE", "VERSION")));
+    }
+
+    @Test
+    void rejectsColumnsInAnotherOrder() {
+        RowLayout layout = RowLayout.of("numero, nom_ville");
+
+        IllegalStateException ex = assertThrows(IllegalStateException.class, () -> layout.verify(resultSet("NOM_VILLE", "NUMERO")));
+        assertEquals("Column 1 is NOM_VILLE, expected numero", ex.getMessage());
+    }
+
+    @Test
+    void rejectsMissingColumns() {
+        RowLayout layout = RowLayout.of("numero, nom_ville, version");
+
+        assertThrows(IllegalStateException.class, () -> layout.verify(resultSet("NUMERO", "NOM_VILLE")));
+    }
+
+    @Test
+    void checksOnlyTheFirstResult() throws SQLException {
+        RowLayout layout = RowLayout.of("numero, nom_ville");
+        layout.verify(resultSet("NUMERO", "NOM_VILLE"));
+
+        assertDoesNotThrow(() -> layout.verify(resultSet("NOM_VILLE", "NUMERO")));
+    }
+
+    private static SimpleResultSet resultSet(String... columns) {
+        SimpleResultSet rs = new SimpleResultSet();
+        for (String column : columns) {
+            rs.addColumn(column, Types.VARCHAR, 100, 0);
+        }
+        return rs;
+    }
+}
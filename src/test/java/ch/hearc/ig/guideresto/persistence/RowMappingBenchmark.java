@@ -0,0 +1,94 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.BasicEvaluation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lecture de 10 000 lignes de LIKES en évaluations, colonnes lues par nom ou par l'index précalculé de {@link RowLayout}.
+ * La requête est la même dans les deux cas : seule la résolution des colonnes diffère.
+ *
+ * Exécution, après mvn test-compile :
+ * mvn dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main RowMappingBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowMappingBenchmark {
+
+    private static final int ROWS = 10_000;
+    private static final String COLUMNS = "numero, appreciation, date_eval, adresse_ip, fk_rest";
+    private static final String QUERY = "SELECT " + COLUMNS + " FROM LIKES";
+    private static final RowLayout LAYOUT = RowLayout.of(COLUMNS);
+    private static final int NUMERO = LAYOUT.index("numero");
+    private static final int APPRECIATION = LAYOUT.index("appreciation");
+    private static final int DATE_EVAL = LAYOUT.index("date_eval");
+    private static final int ADRESSE_IP = LAYOUT.index("adresse_ip");
+
+    private Connection connection;
+
+    @Setup(Level.Trial)
+    public void createLikes() throws SQLException {
+        connection = DriverManager.getConnection(TestDatabase.url("rowmapping"), TestDatabase.USERNAME, TestDatabase.PASSWORD);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE LIKES (numero number(10) NOT NULL, appreciation char(1) NOT NULL, date_eval date NOT NULL,"
+                    + " adresse_ip varchar2(100) NOT NULL, fk_rest number(10) NOT NULL, PRIMARY KEY (numero))");
+            stmt.execute("INSERT INTO LIKES SELECT x, CASE MOD(x, 3) WHEN 0 THEN 'F' ELSE 'T' END, SYSDATE,"
+                    + " '10.0.' || MOD(x / 256, 256) || '.' || MOD(x, 256), MOD(x, 50) + 1 FROM SYSTEM_RANGE(1, " + ROWS + ")");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void dropLikes() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE LIKES");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public void byName(Blackhole blackhole) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(QUERY);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                blackhole.consume(new BasicEvaluation(rs.getInt("numero"), rs.getTimestamp("date_eval"), null,
+                        "T".equals(rs.getString("appreciation")), rs.getString("adresse_ip")));
+            }
+        }
+    }
+
+    @Benchmark
+    public void byIndex(Blackhole blackhole) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(QUERY);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                LAYOUT.verify(rs);
+                blackhole.consume(new BasicEvaluation(rs.getInt(NUMERO), rs.getTimestamp(DATE_EVAL), null,
+                        "T".equals(rs.getString(APPRECIATION)), rs.getString(ADRESSE_IP)));
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.City;
+import ch.hearc.ig.guideresto.business.Restaurant;
+import ch.hearc.ig.guideresto.business.RestaurantType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardRouterTest {
+
+    private static final String SHARD1_URL = TestDatabase.url("shard1");
+    private static final String SHARD2_URL = TestDatabase.url("shard2");
+
+    private final ShardRouter shards = ShardRouter.getInstance();
+    private final RestaurantMapper restaurants = RestaurantMapper.getInstance();
+
+    @BeforeEach
+    void configureShards() {
+        // Trois fragments, chacun avec le restaurant 1 de la ville 1
+        for (String url : List.of(SHARD1_URL, SHARD2_URL, TestDatabase.MAIN_URL)) {
+            TestDatabase.reset(url);
+            TestDatabase.insertRestaurant(url);
+        }
+        TestDatabase.execute(SHARD1_URL, "UPDATE RESTAURANTS SET nom = 'Fragment 1' WHERE numero = 1");
+        shards.configure(List.of(SHARD1_URL, SHARD2_URL), TestDatabase.USERNAME, TestDatabase.PASSWORD, 2);
+    }
+
+    @AfterEach
+    void removeShards() {
+        shards.configure(List.of(), TestDatabase.USERNAME, TestDatabase.PASSWORD, 2);
+    }
+
+    @Test
+    void alignsSequencesOnDisjointNumbers() {
+        assertTrue(shards.prepareSequences());
+        // Une deuxième préparation ne change rien
+        assertTrue(shards.prepareSequences());
+
+        for (int shard = 0; shard < 3; shard++) {
+            Restaurant restaurant = shards.execute(shard, () -> restaurants.create(newRestaurant("Nouveau")));
+            assertEquals(shard, restaurant.getId() % 3);
+            assertTrue(restaurant.getId() > 1);
+        }
+    }
+
+    @Test
+    void refusesNumbersOfAnotherShard() {
+        // Sans préparation, SEQ_RESTAURANTS du fragment 1 attribue le numéro 2, qui appartient au fragment 2
+        assertNull(shards.execute(1, () -> restaurants.create(newRestaurant("Refusé"))));
+
+        assertEquals(1, TestDatabase.count(SHARD1_URL, "RESTAURANTS"));
+    }
+
+    @Test
+    void doesNotAliasRowsOfDifferentShards() {
+        Restaurant owned = shards.inShard(1, () -> restaurants.findById(1));
+        Restaurant foreign = shards.inShard(0, () -> restaurants.findById(1));
+
+        assertEquals("Fragment 1", owned.getName());
+        assertEquals("Fleur-de-Lys", foreign.getName());
+        assertNotSame(owned, foreign);
+        assertSame(owned, shards.inShard(1, () -> restaurants.findById(1)));
+    }
+
+    @Test
+    void boundsConnectionsOfEachShard() {
+        int workers = 8;
+        AtomicInteger maxOpened = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<CompletableFuture<Void>> results = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                results.add(CompletableFuture.runAsync(() -> shards.inShard(1, () -> {
+                    maxOpened.accumulateAndGet(shards.openedConnections().get(0), Math::max);
+                    return restaurants.findById(1);
+                }), executor));
+            }
+            for (CompletableFuture<Void> result : results) {
+                result.join();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(maxOpened.get() <= 2);
+        assertTrue(shards.openedConnections().get(0) <= 2);
+    }
+
+    @Test
+    void tracksChangesOfEveryShard() {
+        ChangeTracker tracker = ChangeTracker.getInstance();
+        Restaurant restaurant = shards.inShard(1, () -> restaurants.findById(1));
+        tracker.start(3_600_000, 10);
+        try {
+            TestDatabase.execute(SHARD1_URL, "UPDATE RESTAURANTS SET nom = 'Renommé', version = version + 1 WHERE numero = 1");
+            TestDatabase.execute(SHARD1_URL, "INSERT INTO CHANGE_LOG (numero, nom_table, fk_ligne, operation) VALUES (1, 'RESTAURANTS', 1, 'U')");
+            tracker.poll();
+        } finally {
+            tracker.stop();
+        }
+
+        assertEquals("Renommé", restaurant.getName());
+        assertEquals(1, restaurant.getVersion());
+    }
+
+    private static Restaurant newRestaurant(String name) {
+        City city = CityMapper.getInstance().findById(1);
+        RestaurantType type = RestaurantTypeMapper.getInstance().findById(1);
+        return new Restaurant(null, name, "Essai", null, "Rue du Seyon 1", city, type);
+    }
+}
@@ -0,0 +1,51 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SimilarRestaurantsTest {
+
+    private final SimilarRestaurants similar = SimilarRestaurants.getInstance();
+    private final TransactionManager transactions = TransactionManager.getInstance();
+
+    @BeforeEach
+    void resetDatabase() {
+        TestDatabase.reset(TestDatabase.MAIN_URL);
+        TestDatabase.insertRestaurant(TestDatabase.MAIN_URL);
+        TestDatabase.execute(TestDatabase.MAIN_URL, "INSERT INTO RESTAURANTS (nom, adresse, fk_type, fk_vill) VALUES ('Le Cardinal', 'Rue du Seyon 9', 1, 1)");
+        // Les deux restaurants sont aimés par les deux mêmes personnes
+        for (int restaurant = 1; restaurant <= 2; restaurant++) {
+            insertLike(restaurant, "10.0.0.1");
+            insertLike(restaurant, "10.0.0.2");
+        }
+        similar.rebuild();
+    }
+
+    @Test
+    void keepsDeletedRestaurantUntilCommit() {
+        assertEquals(1, similar.getSimilar(1, 10).size());
+
+        transactions.execute(() -> RestaurantMapper.getInstance().deleteById(2) && false);
+        assertEquals(1, similar.getSimilar(1, 10).size());
+
+        transactions.execute(() -> RestaurantMapper.getInstance().deleteById(2));
+        assertTrue(similar.getSimilar(1, 10).isEmpty());
+    }
+
+    @Test
+    void doesNotBringBackForgottenRestaurantOnRefresh() {
+        similar.forget(2);
+        similar.refresh();
+
+        assertTrue(similar.getSimilar(1, 10).isEmpty());
+        assertTrue(similar.getSimilar(2, 10).isEmpty());
+    }
+
+    private static void insertLike(int restaurant, String ipAddress) {
+        TestDatabase.execute(TestDatabase.MAIN_URL, "INSERT INTO LIKES (appreciation, date_eval, adresse_ip, fk_rest) VALUES ('T', SYSDATE, '"
+                + ipAddress + "', " + restaurant + ")");
+    }
+}
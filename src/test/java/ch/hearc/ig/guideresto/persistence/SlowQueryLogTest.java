@@ -0,0 +1,127 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.Logger;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.Property;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Seuil par défaut (500 ms), valeurs texte masquées, pas d'explain-plan : EXPLAIN PLAN et DBMS_XPLAN n'existent pas sous H2.
+ * Une requête devient lente en attendant avant de fermer son ResultSet, la mesure allant jusqu'à la fermeture.
+ */
+class SlowQueryLogTest {
+
+    private static final long SLOW_MILLIS = 550;
+    private static final String QUERY = "SELECT x FROM SYSTEM_RANGE(1, ?) WHERE CAST(? AS VARCHAR2(100)) IS NOT NULL";
+
+    private final Logger slowLogger = (Logger) LogManager.getLogger("SLOW_QUERY");
+    private final Capture capture = new Capture();
+    private Connection connection;
+
+    @BeforeEach
+    void openConnection() throws SQLException {
+        capture.start();
+        slowLogger.addAppender(capture);
+        connection = SlowQueryLog.wrap(DriverManager.getConnection(TestDatabase.MAIN_URL, TestDatabase.USERNAME, TestDatabase.PASSWORD));
+    }
+
+    @AfterEach
+    void closeConnection() throws SQLException {
+        slowLogger.removeAppender(capture);
+        capture.stop();
+        connection.close();
+    }
+
+    @Test
+    void ignoresQueriesUnderTheThreshold() throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(QUERY)) {
+            stmt.setInt(1, 3);
+            stmt.setString(2, "Neuchâtel");
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    // Lecture complète
+                }
+            }
+        }
+
+        assertTrue(capture.messages.isEmpty());
+    }
+
+    @Test
+    void reportsRowsAndMaskedBindsWhenTheResultIsClosed() throws Exception {
+        try (PreparedStatement stmt = connection.prepareStatement(QUERY)) {
+            stmt.setInt(1, 3);
+            stmt.setString(2, "10.0.0.1");
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                Thread.sleep(SLOW_MILLIS / 3 + 1);
+            }
+            assertTrue(capture.messages.isEmpty());
+
+            rs.close();
+            rs.close();
+        }
+
+        assertEquals(1, capture.messages.size());
+        String message = capture.messages.get(0);
+        assertTrue(message.startsWith("sql_id=" + SlowQueryLog.sqlId(QUERY) + " time="), message);
+        assertTrue(message.contains(" rows=3 binds=[1=3, 2='***'(8)] sql=" + QUERY), message);
+        assertFalse(message.contains("10.0.0.1"), message);
+    }
+
+    @Test
+    void logsTheBindsOfEachExecution() throws Exception {
+        try (PreparedStatement stmt = connection.prepareStatement(QUERY)) {
+            stmt.setInt(1, 1);
+            stmt.setString(2, "premier");
+            stmt.executeQuery().close();
+
+            stmt.clearParameters();
+            stmt.setInt(1, 2);
+            stmt.setNull(2, Types.VARCHAR);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    // Aucune ligne : la condition sur NULL est fausse
+                }
+                Thread.sleep(SLOW_MILLIS);
+            }
+        }
+
+        assertEquals(1, capture.messages.size());
+        assertTrue(capture.messages.get(0).contains(" rows=0 binds=[1=2, 2=NULL] "), capture.messages.get(0));
+    }
+
+    /**
+     * Garde les messages du logger SLOW_QUERY
+     */
+    private static class Capture extends AbstractAppender {
+
+        private final List<String> messages = new CopyOnWriteArrayList<>();
+
+        private Capture() {
+            super("capture", null, null, true, Property.EMPTY_ARRAY);
+        }
+
+        @Override
+        public void append(LogEvent event) {
+            messages.add(event.getMessage().getFormattedMessage());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Bases H2 en mémoire pour les tests, avec le schéma de l'application (h2-schema.sql)
+ */
+public final class TestDatabase {
+
+    /** Base principale, celle de src/test/resources/database.properties */
+    public static final String MAIN_URL = "jdbc:h2:mem:guideresto;MODE=Oracle;DB_CLOSE_DELAY=-1";
+    public static final String USERNAME = "sa";
+    public static final String PASSWORD = "";
+
+    private TestDatabase() {
+    }
+
+    /**
+     * @param name le nom d'une base supplémentaire (réplica, fragment)
+     * @return l'URL JDBC de cette base
+     */
+    public static String url(String name) {
+        return "jdbc:h2:mem:" + name + ";MODE=Oracle;DB_CLOSE_DELAY=-1";
+    }
+
+    /**
+     * Supprime tout le contenu de la base puis recrée le schéma vide
+     */
+    public static void reset(String url) {
+        try (Connection connection = DriverManager.getConnection(url, USERNAME, PASSWORD);
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP ALL OBJECTS");
+            for (String statement : readSchema().split(";")) {
+                if (!statement.isBlank()) {
+                    stmt.execute(statement);
+                }
+            }
+        } catch (SQLException ex) {
+            throw new IllegalStateException(ex.getMessage(), ex);
+        }
+        clearCaches();
+    }
+
+    /**
+     * Vide les identity maps et le cache des requêtes, dont les IDs ne correspondent plus à la base recréée
+     */
+    public static void clearCaches() {
+        for (AbstractMapper<?> mapper : List.of(CityMapper.getInstance(), RestaurantTypeMapper.getInstance(),
+                RestaurantMapper.getInstance(), BasicEvaluationMapper.getInstance(), CompleteEvaluationMapper.getInstance(),
+                GradeMapper.getInstance(), EvaluationCriteriaMapper.getInstance())) {
+            mapper.resetCache();
+        }
+        QueryCache.getInstance().clear();
+    }
+
+    /**
+     * Insère le type 1, la ville 1 et le restaurant 1 qui les référence
+     */
+    public static void insertRestaurant(String url) {
+        execute(url, "INSERT INTO TYPES_GASTRONOMIQUES (libelle, description) VALUES ('Pizzeria', 'Pizzas')");
+        execute(url, "INSERT INTO VILLES (code_postal, nom_ville) VALUES ('2000', 'Neuchatel')");
+        execute(url, "INSERT INTO RESTAURANTS (nom, adresse, fk_type, fk_vill) VALUES ('Fleur-de-Lys', 'Rue du Bassin 10', 1, 1)");
+    }
+
+    /**
+     * Exécute une requête sur une connexion séparée, qui ne voit que ce qui a été validé
+     */
+    public static void execute(String url, String sql) {
+        try (Connection connection = DriverManager.getConnection(url, USERNAME, PASSWORD);
+             Statement stmt = connection.createStatement()) {
+            stmt.execute(sql);
+        } catch (SQLException ex) {
+            throw new IllegalStateException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Compte les lignes sur une connexion séparée, qui ne voit que ce qui a été validé
+     */
+    public static int count(String url, String table) {
+        try (Connection connection = DriverManager.getConnection(url, USERNAME, PASSWORD);
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            rs.next();
+            return rs.getInt(1);
+        } catch (SQLException ex) {
+            throw new IllegalStateException(ex.getMessage(), ex);
+        }
+    }
+
+    private static String readSchema() {
+        try (InputStream in = TestDatabase.class.getResourceAsStream("/h2-schema.sql")) {
+            String script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            return script.replaceAll("(?m)^--.*$", "");
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
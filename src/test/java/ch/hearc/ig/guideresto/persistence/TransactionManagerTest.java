@@ -0,0 +1,159 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionManagerTest {
+
+    private final TransactionManager transactions = TransactionManager.getInstance();
+
+    @BeforeEach
+    void resetDatabase() {
+        TestDatabase.reset(TestDatabase.MAIN_URL);
+    }
+
+    @AfterEach
+    void unbind() {
+        ConnectionUtils.bindConnection(null);
+    }
+
+    @Test
+    void commitsSuccessfulWork() {
+        Boolean result = transactions.execute(() -> insertCity("2000", "Neuchâtel"));
+
+        assertEquals(Boolean.TRUE, result);
+        assertEquals(1, TestDatabase.count(TestDatabase.MAIN_URL, "VILLES"));
+    }
+
+    @Test
+    void rollsBackFailedOrThrowingWork() {
+        assertEquals(Boolean.FALSE, transactions.execute(() -> insertCity("2000", "Neuchâtel") && false));
+        assertThrows(IllegalStateException.class, () -> transactions.execute(() -> {
+            insertCity("2300", "La Chaux-de-Fonds");
+            throw new IllegalStateException("failure");
+        }));
+
+        assertEquals(0, TestDatabase.count(TestDatabase.MAIN_URL, "VILLES"));
+    }
+
+    @Test
+    void nestedWorkJoinsTheOuterTransaction() {
+        transactions.execute(() -> {
+            transactions.execute(() -> insertCity("2000", "Neuchâtel"));
+            // La transaction imbriquée n'a rien validé
+            assertEquals(0, TestDatabase.count(TestDatabase.MAIN_URL, "VILLES"));
+            return insertCity("2300", "La Chaux-de-Fonds") && false;
+        });
+
+        assertEquals(0, TestDatabase.count(TestDatabase.MAIN_URL, "VILLES"));
+    }
+
+    @Test
+    void runsAfterCommitActionsOnlyOnCommit() {
+        List<String> actions = new ArrayList<>();
+
+        transactions.execute(() -> {
+            transactions.afterCommit(() -> actions.add("committed"));
+            assertTrue(actions.isEmpty());
+            return true;
+        });
+        transactions.execute(() -> {
+            transactions.afterCommit(() -> actions.add("rolled back"));
+            return false;
+        });
+        transactions.afterCommit(() -> actions.add("outside"));
+
+        assertEquals(List.of("committed", "outside"), actions);
+    }
+
+    @Test
+    void returnsNullWhenCommitFails() throws SQLException {
+        Connection real = ConnectionUtils.newRawConnection();
+        ConnectionUtils.bindConnection(failingCommit(real));
+        List<String> actions = new ArrayList<>();
+        try {
+            Boolean result = transactions.execute(() -> {
+                transactions.afterCommit(() -> actions.add("committed"));
+                return insertCity("2000", "Neuchâtel");
+            });
+
+            assertNull(result);
+            assertTrue(actions.isEmpty());
+            assertEquals(0, TestDatabase.count(TestDatabase.MAIN_URL, "VILLES"));
+        } finally {
+            real.close();
+        }
+    }
+
+    @Test
+    void groupCommitsConcurrentWrites() {
+        int writers = 20;
+        List<String> actions = new CopyOnWriteArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try {
+            List<CompletableFuture<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < writers; i++) {
+                String zipCode = Integer.toString(1000 + i);
+                results.add(CompletableFuture.supplyAsync(() -> transactions.executeGrouped(() -> {
+                    transactions.afterCommit(() -> actions.add(zipCode));
+                    // Un travail en échec n'annule que le sien
+                    return insertCity(zipCode, "Ville") && !zipCode.equals("1000");
+                }), executor));
+            }
+
+            for (CompletableFuture<Boolean> result : results) {
+                result.join();
+            }
+            assertEquals(writers - 1, TestDatabase.count(TestDatabase.MAIN_URL, "VILLES"));
+            assertEquals(writers - 1, actions.size());
+            assertFalse(actions.contains("1000"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static boolean insertCity(String zipCode, String name) {
+        try (PreparedStatement stmt = ConnectionUtils.getConnection().prepareStatement("INSERT INTO VILLES (code_postal, nom_ville) VALUES (?, ?)")) {
+            stmt.setString(1, zipCode);
+            stmt.setString(2, name);
+            return stmt.executeUpdate() == 1;
+        } catch (SQLException ex) {
+            throw new IllegalStateException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * @return une connexion dont le COMMIT échoue toujours
+     */
+    private static Connection failingCommit(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            if (method.getName().equals("commit")) {
+                throw new SQLException("commit refused");
+            }
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        });
+    }
+}
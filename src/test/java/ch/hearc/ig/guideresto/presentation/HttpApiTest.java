@@ -0,0 +1,70 @@
+package ch.hearc.ig.guideresto.presentation;
+
+import ch.hearc.ig.guideresto.persistence.TestDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HttpApiTest {
+
+    private static final int PORT = 18080;
+
+    private static final HttpApi api = new HttpApi();
+    private static final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeAll
+    static void start() throws IOException {
+        TestDatabase.reset(TestDatabase.MAIN_URL);
+        TestDatabase.insertRestaurant(TestDatabase.MAIN_URL);
+        api.start(PORT);
+    }
+
+    @AfterAll
+    static void stop() {
+        api.stop();
+    }
+
+    @Test
+    void rejectsEvaluationWithoutComment() throws Exception {
+        HttpResponse<String> response = post("/restaurants/1/evaluations", "username=alice");
+
+        assertEquals(400, response.statusCode());
+        assertTrue(response.body().contains("comment"));
+    }
+
+    @Test
+    void rejectsNonNumericId() throws Exception {
+        assertEquals(400, get("/restaurants/abc").statusCode());
+    }
+
+    @Test
+    void acceptsOnlyGetOnCriterias() throws Exception {
+        HttpResponse<String> response = post("/criterias", "");
+
+        assertEquals(405, response.statusCode());
+        assertEquals("GET", response.headers().firstValue("Allow").orElse(null));
+        assertEquals(200, get("/criterias").statusCode());
+        assertEquals(404, get("/criterias/1").statusCode());
+    }
+
+    private static HttpResponse<String> get(String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + PORT + path)).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static HttpResponse<String> post(String path, String form) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + PORT + path))
+                        .header("Content-Type", "application/x-www-form-urlencoded")
+                        .POST(HttpRequest.BodyPublishers.ofString(form)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+}
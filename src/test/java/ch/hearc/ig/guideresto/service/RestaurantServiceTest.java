@@ -0,0 +1,104 @@
+package ch.hearc.ig.guideresto.service;
+
+import ch.hearc.ig.guideresto.business.Restaurant;
+import ch.hearc.ig.guideresto.business.RestaurantType;
+import ch.hearc.ig.guideresto.persistence.RestaurantMapper;
+import ch.hearc.ig.guideresto.persistence.RestaurantTypeMapper;
+import ch.hearc.ig.guideresto.persistence.TestDatabase;
+import ch.hearc.ig.guideresto.persistence.TransactionManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RestaurantServiceTest {
+
+    private final RestaurantService service = RestaurantService.getInstance();
+    private final TransactionManager transactions = TransactionManager.getInstance();
+
+    @BeforeEach
+    void resetDatabase() {
+        TestDatabase.reset(TestDatabase.MAIN_URL);
+        TestDatabase.insertRestaurant(TestDatabase.MAIN_URL);
+        TestDatabase.execute(TestDatabase.MAIN_URL, "INSERT INTO TYPES_GASTRONOMIQUES (libelle, description) VALUES ('Brasserie', 'Bières')");
+    }
+
+    @Test
+    void leavesCachedRestaurantUntouchedUntilCommit() {
+        Restaurant restaurant = RestaurantMapper.getInstance().findById(1);
+        RestaurantType pizzeria = restaurant.getType();
+        RestaurantType brasserie = RestaurantTypeMapper.getInstance().findById(2);
+
+        transactions.execute(() -> {
+            assertTrue(service.updateRestaurant(restaurant, "Annulé", "Annulée", null, brasserie));
+            // Les autres threads voient encore le restaurant enregistré
+            assertEquals("Fleur-de-Lys", restaurant.getName());
+            return false;
+        });
+
+        assertEquals("Fleur-de-Lys", restaurant.getName());
+        assertEquals(0, restaurant.getVersion());
+        assertSame(pizzeria, restaurant.getType());
+        assertTrue(pizzeria.getRestaurants().contains(restaurant));
+        assertFalse(brasserie.getRestaurants().contains(restaurant));
+    }
+
+    @Test
+    void appliesChangesToCachedRestaurantOnCommit() {
+        Restaurant restaurant = RestaurantMapper.getInstance().findById(1);
+        RestaurantType pizzeria = restaurant.getType();
+        RestaurantType brasserie = RestaurantTypeMapper.getInstance().findById(2);
+
+        assertTrue(service.updateRestaurant(restaurant, "Fleur-de-Lys 2", "Rénové", "https://fleur.ch", brasserie));
+
+        assertEquals("Fleur-de-Lys 2", restaurant.getName());
+        assertEquals(1, restaurant.getVersion());
+        assertSame(brasserie, restaurant.getType());
+        assertFalse(pizzeria.getRestaurants().contains(restaurant));
+        assertTrue(brasserie.getRestaurants().contains(restaurant));
+        assertSame(restaurant, RestaurantMapper.getInstance().findById(1));
+    }
+
+    @Test
+    void detectsConflictWithTheVersionTheUserSaw() {
+        Restaurant restaurant = RestaurantMapper.getInstance().findById(1);
+        int seenVersion = restaurant.getVersion();
+        modifiedByAnotherUser(restaurant);
+
+        assertFalse(service.updateRestaurant(restaurant, seenVersion, "Ecrasé", null, null, null, ConflictHandler.abort()));
+
+        assertEquals("Modifié ailleurs", restaurant.getName());
+        assertEquals(seenVersion + 1, restaurant.getVersion());
+    }
+
+    @Test
+    void reappliesChangesOnTheReloadedRestaurantWhenAllowed() {
+        Restaurant restaurant = RestaurantMapper.getInstance().findById(1);
+        int seenVersion = restaurant.getVersion();
+        modifiedByAnotherUser(restaurant);
+        List<String> seenNames = new ArrayList<>();
+
+        assertTrue(service.updateRestaurant(restaurant, seenVersion, "Ecrasé", null, null, null, (current, attempt) -> {
+            seenNames.add(current.getName());
+            return true;
+        }));
+
+        assertEquals(List.of("Modifié ailleurs"), seenNames);
+        assertEquals("Ecrasé", restaurant.getName());
+        assertEquals(seenVersion + 2, restaurant.getVersion());
+    }
+
+    /**
+     * Un autre utilisateur enregistre le restaurant, puis l'actualisation du cache (ChangeTracker) relit l'instance partagée
+     */
+    private static void modifiedByAnotherUser(Restaurant restaurant) {
+        TestDatabase.execute(TestDatabase.MAIN_URL, "UPDATE RESTAURANTS SET nom = 'Modifié ailleurs', version = version + 1 WHERE numero = 1");
+        RestaurantMapper.getInstance().reload(restaurant);
+    }
+}
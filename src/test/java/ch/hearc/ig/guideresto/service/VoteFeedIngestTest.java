@@ -0,0 +1,64 @@
+package ch.hearc.ig.guideresto.service;
+
+import ch.hearc.ig.guideresto.business.Restaurant;
+import ch.hearc.ig.guideresto.persistence.RestaurantMapper;
+import ch.hearc.ig.guideresto.persistence.TestDatabase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class VoteFeedIngestTest {
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void resetDatabase() {
+        TestDatabase.reset(TestDatabase.MAIN_URL);
+        TestDatabase.insertRestaurant(TestDatabase.MAIN_URL);
+    }
+
+    @Test
+    void addsWrittenVotesToTheRestaurant() throws IOException {
+        Restaurant restaurant = RestaurantMapper.getInstance().findById(1);
+        int before = restaurant.getEvaluations().size();
+        Path feed = directory.resolve("votes.txt");
+        Files.write(feed, List.of("# Borne 1", "1;like;10.0.0.1", "1;dislike;10.0.0.2", "1;like;10.0.0.1", "2;like;10.0.0.3"),
+                StandardCharsets.UTF_8);
+
+        VoteFeedIngest.Stats stats = new VoteFeedIngest(feed).run();
+
+        assertEquals(2, stats.getWritten());
+        assertEquals(2, stats.getRejected());
+        assertEquals(5, stats.getCheckpoint());
+        assertEquals(before + 2, restaurant.getEvaluations().size());
+        assertEquals(2, TestDatabase.count(TestDatabase.MAIN_URL, "LIKES"));
+        assertFalse(Files.exists(directory.resolve("votes.txt.checkpoint")));
+    }
+
+    @Test
+    void importsMoreLinesThanTheQueuesHold() throws IOException {
+        // Plus de lignes que ingest.queue.size : les étages se bloquent tour à tour sans jamais garder de connexion
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            lines.add("1;like;10." + (i / 65536) + "." + (i / 256 % 256) + "." + (i % 256));
+        }
+        Path feed = directory.resolve("many.txt");
+        Files.write(feed, lines, StandardCharsets.UTF_8);
+
+        VoteFeedIngest.Stats stats = new VoteFeedIngest(feed).run();
+
+        assertEquals(2500, stats.getWritten());
+        assertEquals(2500, TestDatabase.count(TestDatabase.MAIN_URL, "LIKES"));
+    }
+}
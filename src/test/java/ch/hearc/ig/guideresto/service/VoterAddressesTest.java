@@ -0,0 +1,74 @@
+package ch.hearc.ig.guideresto.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class VoterAddressesTest {
+
+    private final VoterAddresses addresses = VoterAddresses.getInstance();
+
+    @Test
+    void parsesDottedDecimalIpv4() {
+        assertArrayEquals(new byte[]{0, 0, 0, 0}, addresses.parse("0.0.0.0"));
+        assertArrayEquals(new byte[]{10, 0, 0, 1}, addresses.parse("10.0.0.1"));
+        assertArrayEquals(new byte[]{(byte) 255, (byte) 255, (byte) 255, (byte) 255}, addresses.parse("255.255.255.255"));
+    }
+
+    @Test
+    void rejectsMalformedIpv4() {
+        // Zéro non significatif : lu en octal par certaines bibliothèques
+        assertNull(addresses.parse("01.2.3.4"));
+        assertNull(addresses.parse("1.2.3.00"));
+        assertNull(addresses.parse("256.1.1.1"));
+        assertNull(addresses.parse("1.2.3"));
+        assertNull(addresses.parse("1.2.3.4."));
+        assertNull(addresses.parse(".1.2.3.4"));
+        assertNull(addresses.parse("1..2.3"));
+        assertNull(addresses.parse("1.2.3.4.5"));
+        assertNull(addresses.parse("1.2.3.-4"));
+        assertNull(addresses.parse(" 1.2.3.4"));
+        assertNull(addresses.parse("localhost"));
+        assertNull(addresses.parse(""));
+        assertNull(addresses.parse(null));
+    }
+
+    @Test
+    void parsesIpv6Literals() {
+        byte[] loopback = new byte[16];
+        loopback[15] = 1;
+        assertArrayEquals(loopback, addresses.parse("::1"));
+        assertEquals(16, addresses.parse("2001:DB8::1").length);
+        assertEquals(16, addresses.parse("2001:db8::1.2.3.4").length);
+        // Une adresse IPv4 mappée est ramenée à l'adresse IPv4, celle enregistrée pour le même votant
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, addresses.parse("::ffff:1.2.3.4"));
+    }
+
+    @Test
+    void rejectsInvalidIpv6() {
+        assertNull(addresses.parse(":::"));
+        assertNull(addresses.parse("1:2:3:4:5:6:7:8:9"));
+        assertNull(addresses.parse("2001:db8::g"));
+        assertNull(addresses.parse("fe80::1%eth0"));
+        assertNull(addresses.parse("[::1]"));
+        assertNull(addresses.parse("1.2.3.4:80"));
+    }
+
+    @Test
+    void formatsAddressBytes() {
+        assertEquals("0.0.0.0", addresses.toText(new byte[4]));
+        assertEquals("192.168.1.254", addresses.toText(new byte[]{(byte) 192, (byte) 168, 1, (byte) 254}));
+        assertEquals("0:0:0:0:0:0:0:1", addresses.toText(addresses.parse("::1")));
+        assertEquals(VoterAddresses.UNAVAILABLE, addresses.toText(null));
+        assertEquals(VoterAddresses.UNAVAILABLE, addresses.toText(new byte[5]));
+    }
+
+    @Test
+    void roundTripsParsedAddresses() {
+        for (String text : new String[]{"0.0.0.0", "10.20.30.40", "255.0.255.1"}) {
+            assertEquals(text, addresses.toText(addresses.parse(text)));
+        }
+    }
+}
@@ -0,0 +1,28 @@
+-- Schéma de GuideResto_CREATE_TABLES.sql pour H2 : les numéros viennent des séquences par défaut de colonne, sans trigger
+CREATE SEQUENCE SEQ_RESTAURANTS;
+CREATE SEQUENCE SEQ_TYPES_GASTRONOMIQUES;
+CREATE SEQUENCE SEQ_VILLES;
+CREATE SEQUENCE SEQ_EVAL;
+CREATE SEQUENCE SEQ_NOTES;
+CREATE SEQUENCE SEQ_CRITERES_EVALUATION;
+CREATE SEQUENCE SEQ_CHANGE_LOG;
+
+CREATE TABLE TYPES_GASTRONOMIQUES (numero number(10) DEFAULT SEQ_TYPES_GASTRONOMIQUES.NEXTVAL NOT NULL, libelle varchar2(100) NOT NULL UNIQUE, description clob NOT NULL, version number(10) DEFAULT 0 NOT NULL, PRIMARY KEY (numero));
+CREATE TABLE VILLES (numero number(10) DEFAULT SEQ_VILLES.NEXTVAL NOT NULL, code_postal varchar2(100) NOT NULL, nom_ville varchar2(100) NOT NULL, version number(10) DEFAULT 0 NOT NULL, PRIMARY KEY (numero));
+CREATE TABLE RESTAURANTS (numero number(10) DEFAULT SEQ_RESTAURANTS.NEXTVAL NOT NULL, nom varchar2(100) NOT NULL, adresse varchar2(100) NOT NULL, description clob, site_web varchar2(100), fk_type number(10) NOT NULL, fk_vill number(10) NOT NULL, version number(10) DEFAULT 0 NOT NULL, PRIMARY KEY (numero));
+CREATE TABLE COMMENTAIRES (numero number(10) DEFAULT SEQ_EVAL.NEXTVAL NOT NULL, date_eval date NOT NULL, commentaire clob NOT NULL, nom_utilisateur varchar2(100) NOT NULL, fk_rest number(10), PRIMARY KEY (numero));
+CREATE TABLE LIKES (numero number(10) DEFAULT SEQ_EVAL.NEXTVAL NOT NULL, appreciation char(1) NOT NULL, date_eval date NOT NULL, adresse_ip varchar2(100) NOT NULL, fk_rest number(10) NOT NULL, PRIMARY KEY (numero));
+CREATE TABLE CRITERES_EVALUATION (numero number(10) DEFAULT SEQ_CRITERES_EVALUATION.NEXTVAL NOT NULL, nom varchar2(100) NOT NULL UNIQUE, description varchar2(512), PRIMARY KEY (numero));
+CREATE TABLE NOTES (numero number(10) DEFAULT SEQ_NOTES.NEXTVAL NOT NULL, note number(3) NOT NULL, fk_comm number(10) NOT NULL, fk_crit number(10) NOT NULL, PRIMARY KEY (numero));
+CREATE TABLE CHANGE_LOG (numero number(19) NOT NULL, nom_table varchar2(30) NOT NULL, fk_ligne number(10) NOT NULL, operation char(1) NOT NULL, date_modif timestamp DEFAULT SYSTIMESTAMP NOT NULL, PRIMARY KEY (numero));
+
+ALTER TABLE RESTAURANTS ADD CONSTRAINT FK_REST_TYPE FOREIGN KEY (fk_type) REFERENCES TYPES_GASTRONOMIQUES (numero);
+ALTER TABLE RESTAURANTS ADD CONSTRAINT FK_REST_VILL FOREIGN KEY (fk_vill) REFERENCES VILLES (numero);
+ALTER TABLE COMMENTAIRES ADD CONSTRAINT FK_COMM_REST FOREIGN KEY (fk_rest) REFERENCES RESTAURANTS (numero);
+ALTER TABLE NOTES ADD CONSTRAINT FK_NOTE_COMM FOREIGN KEY (fk_comm) REFERENCES COMMENTAIRES (numero);
+ALTER TABLE NOTES ADD CONSTRAINT FK_NOTE_CRIT FOREIGN KEY (fk_crit) REFERENCES CRITERES_EVALUATION (numero);
+ALTER TABLE LIKES ADD CONSTRAINT FK_LIKE_REST FOREIGN KEY (fk_rest) REFERENCES RESTAURANTS (numero);
+ALTER TABLE LIKES ADD CONSTRAINT UK_LIKES_REST_IP UNIQUE (fk_rest, adresse_ip);
+
+CREATE UNIQUE INDEX UX_VILLES_NPA_NOM ON VILLES (code_postal, nom_ville);
+CREATE INDEX IX_CHANGE_LOG_DATE ON CHANGE_LOG (date_modif);